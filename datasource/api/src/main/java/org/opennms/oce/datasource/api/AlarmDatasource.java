@@ -29,11 +29,20 @@
 package org.opennms.oce.datasource.api;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface AlarmDatasource {
 
     List<Alarm> getAlarms();
 
+    /**
+     * @return a stream of the alarms, which should be closed once consumed
+     * @see InventoryDatasource#streamInventory()
+     */
+    default Stream<Alarm> streamAlarms() {
+        return getAlarms().stream();
+    }
+
     List<Alarm> getAlarmsAndRegisterHandler(AlarmHandler handler);
 
     void registerHandler(AlarmHandler handler);
@@ -29,6 +29,7 @@
 package org.opennms.oce.datasource.api;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * The datasource providing {@link AlarmFeedback alarm feedback}.
@@ -36,6 +37,14 @@ import java.util.List;
 public interface AlarmFeedbackDatasource {
     List<AlarmFeedback> getAlarmFeedback();
 
+    /**
+     * @return a stream of the alarm feedback, which should be closed once consumed
+     * @see InventoryDatasource#streamInventory()
+     */
+    default Stream<AlarmFeedback> streamAlarmFeedback() {
+        return getAlarmFeedback().stream();
+    }
+
     List<AlarmFeedback> getAlarmFeedbackAndRegisterHandler(AlarmFeedbackHandler handler);
 
     void registerHandler(AlarmFeedbackHandler handler);
@@ -28,10 +28,35 @@
 
 package org.opennms.oce.datasource.api;
 
+import java.util.Collection;
+
 public interface AlarmHandler {
 
     void onAlarmCreatedOrUpdated(Alarm alarm);
 
     void onAlarmCleared(Alarm alarm);
 
+    /**
+     * Handle a batch of alarms that were created or updated.
+     *
+     * Handlers that can process many alarms more efficiently than one at a time should override this,
+     * by default the alarms are passed to {@link #onAlarmCreatedOrUpdated(Alarm)} one by one.
+     *
+     * @param alarms alarms, in the order in which they were created or updated
+     */
+    default void onAlarmsCreatedOrUpdated(Collection<Alarm> alarms) {
+        alarms.forEach(this::onAlarmCreatedOrUpdated);
+    }
+
+    /**
+     * Handle a batch of alarms that were cleared.
+     *
+     * By default the alarms are passed to {@link #onAlarmCleared(Alarm)} one by one.
+     *
+     * @param alarms alarms, in the order in which they were cleared
+     */
+    default void onAlarmsCleared(Collection<Alarm> alarms) {
+        alarms.forEach(this::onAlarmCleared);
+    }
+
 }
@@ -29,11 +29,24 @@
 package org.opennms.oce.datasource.api;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface InventoryDatasource {
 
     List<InventoryObject> getInventory();
 
+    /**
+     * Stream the inventory instead of retrieving it all at once.
+     *
+     * The stream may be parallel, in which case the elements are delivered concurrently from multiple threads.
+     * The stream should be closed once consumed.
+     *
+     * @return a stream of the inventory
+     */
+    default Stream<InventoryObject> streamInventory() {
+        return getInventory().stream();
+    }
+
     List<InventoryObject> getInventoryAndRegisterHandler(InventoryHandler handler);
 
     void registerHandler(InventoryHandler handler);
@@ -29,11 +29,20 @@
 package org.opennms.oce.datasource.api;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface SituationDatasource {
 
     List<Situation> getSituations();
 
+    /**
+     * @return a stream of the situations, which should be closed once consumed
+     * @see InventoryDatasource#streamInventory()
+     */
+    default Stream<Situation> streamSituations() {
+        return getSituations().stream();
+    }
+
     void forwardSituation(Situation situation) throws Exception;
 
     void registerHandler(SituationHandler handler);
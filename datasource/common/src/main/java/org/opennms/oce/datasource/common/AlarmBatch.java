@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opennms.oce.datasource.api.Alarm;
+import org.opennms.oce.datasource.api.AlarmHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Accumulates alarm callbacks so that these can be delivered to handlers in batches.
+ *
+ * The order of the callbacks is preserved: consecutive alarms of the same kind (created/updated or cleared)
+ * are delivered together, and the batches are delivered in the order in which they were accumulated.
+ *
+ * If the handler fails to process a batch, the alarms in that batch are delivered to the handler one at a time
+ * so that a single bad alarm does not cause the other alarms in the batch to be lost. Handlers are expected
+ * to handle alarms they have already processed gracefully, since these may be delivered again in this case.
+ *
+ * This class is not thread safe.
+ */
+public class AlarmBatch {
+    private static final Logger LOG = LoggerFactory.getLogger(AlarmBatch.class);
+
+    private final List<List<Alarm>> runs = new ArrayList<>();
+    private final List<Boolean> runIsCleared = new ArrayList<>();
+    private int size = 0;
+
+    public void addCreatedOrUpdated(Alarm alarm) {
+        add(alarm, false);
+    }
+
+    public void addCleared(Alarm alarm) {
+        add(alarm, true);
+    }
+
+    private void add(Alarm alarm, boolean cleared) {
+        final int lastRun = runs.size() - 1;
+        if (lastRun >= 0 && runIsCleared.get(lastRun) == cleared) {
+            runs.get(lastRun).add(alarm);
+        } else {
+            final List<Alarm> run = new ArrayList<>();
+            run.add(alarm);
+            runs.add(run);
+            runIsCleared.add(cleared);
+        }
+        size++;
+    }
+
+    /**
+     * @return the total number of alarms in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Deliver the alarms in this batch to the given handler.
+     *
+     * @param handler handler
+     */
+    public void deliverTo(AlarmHandler handler) {
+        for (int i = 0; i < runs.size(); i++) {
+            final List<Alarm> run = runs.get(i);
+            final boolean cleared = runIsCleared.get(i);
+            try {
+                if (cleared) {
+                    handler.onAlarmsCleared(run);
+                } else {
+                    handler.onAlarmsCreatedOrUpdated(run);
+                }
+            } catch (Exception e) {
+                LOG.warn("Delivering batch of {} alarms failed on handler: {}. Delivering the alarms one at a time.",
+                        run.size(), handler, e);
+                deliverOneAtATime(handler, run, cleared);
+            }
+        }
+    }
+
+    private static void deliverOneAtATime(AlarmHandler handler, List<Alarm> alarms, boolean cleared) {
+        for (Alarm alarm : alarms) {
+            try {
+                if (cleared) {
+                    handler.onAlarmCleared(alarm);
+                } else {
+                    handler.onAlarmCreatedOrUpdated(alarm);
+                }
+            } catch (Exception e) {
+                LOG.error("{}() call failed with alarm: {} on handler: {}",
+                        cleared ? "onAlarmCleared" : "onAlarmCreatedOrUpdated", alarm, handler, e);
+            }
+        }
+    }
+
+    public void clear() {
+        runs.clear();
+        runIsCleared.clear();
+        size = 0;
+    }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.common;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.oce.datasource.api.Alarm;
+import org.opennms.oce.datasource.api.AlarmHandler;
+
+public class AlarmBatchTest {
+
+    @Test
+    public void canDeliverRunsInOrder() {
+        final AlarmBatch batch = new AlarmBatch();
+        batch.addCreatedOrUpdated(alarm("1"));
+        batch.addCreatedOrUpdated(alarm("2"));
+        batch.addCleared(alarm("1"));
+        batch.addCreatedOrUpdated(alarm("3"));
+        batch.addCleared(alarm("2"));
+        batch.addCleared(alarm("3"));
+        assertThat(batch.size(), equalTo(6));
+
+        final RecordingAlarmHandler handler = new RecordingAlarmHandler();
+        batch.deliverTo(handler);
+        // Consecutive alarms of the same kind are delivered together
+        assertThat(handler.calls, contains("updated:1,2", "cleared:1", "updated:3", "cleared:2,3"));
+
+        batch.clear();
+        assertThat(batch.isEmpty(), equalTo(true));
+        final RecordingAlarmHandler otherHandler = new RecordingAlarmHandler();
+        batch.deliverTo(otherHandler);
+        assertThat(otherHandler.calls, empty());
+    }
+
+    @Test
+    public void canIsolateFailuresToSingleAlarms() {
+        final AlarmBatch batch = new AlarmBatch();
+        batch.addCreatedOrUpdated(alarm("1"));
+        batch.addCreatedOrUpdated(alarm("bad"));
+        batch.addCreatedOrUpdated(alarm("3"));
+        batch.addCleared(alarm("4"));
+
+        final List<String> updatedAlarmIds = new ArrayList<>();
+        final List<String> clearedAlarmIds = new ArrayList<>();
+        batch.deliverTo(new AlarmHandler() {
+            @Override
+            public void onAlarmCreatedOrUpdated(Alarm alarm) {
+                if ("bad".equals(alarm.getId())) {
+                    throw new IllegalArgumentException("bad alarm");
+                }
+                updatedAlarmIds.add(alarm.getId());
+            }
+
+            @Override
+            public void onAlarmCleared(Alarm alarm) {
+                clearedAlarmIds.add(alarm.getId());
+            }
+
+            @Override
+            public void onAlarmsCreatedOrUpdated(Collection<Alarm> alarms) {
+                throw new IllegalStateException("failed batch");
+            }
+        });
+
+        // Only the bad alarm is lost, and the following runs are still delivered
+        assertThat(updatedAlarmIds, contains("1", "3"));
+        assertThat(clearedAlarmIds, contains("4"));
+    }
+
+    private static Alarm alarm(String id) {
+        return ImmutableAlarm.newBuilder().setId(id).build();
+    }
+
+    private static class RecordingAlarmHandler implements AlarmHandler {
+        private final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void onAlarmCreatedOrUpdated(Alarm alarm) {
+            throw new UnsupportedOperationException("Alarms should be delivered in batches.");
+        }
+
+        @Override
+        public void onAlarmCleared(Alarm alarm) {
+            throw new UnsupportedOperationException("Alarms should be delivered in batches.");
+        }
+
+        @Override
+        public void onAlarmsCreatedOrUpdated(Collection<Alarm> alarms) {
+            calls.add("updated:" + toIds(alarms));
+        }
+
+        @Override
+        public void onAlarmsCleared(Collection<Alarm> alarms) {
+            calls.add("cleared:" + toIds(alarms));
+        }
+
+        private static String toIds(Collection<Alarm> alarms) {
+            return alarms.stream().map(Alarm::getId).collect(Collectors.joining(","));
+        }
+    }
+}
@@ -145,6 +145,13 @@ public abstract class AbstractScriptedInventory {
         configurationTimestamp = System.currentTimeMillis();
     }
 
+    /**
+     * @return true if the default script is used, either from the classpath or from the source tree
+     */
+    public boolean isUsingDefaultScript() {
+        return usingClasspathScript || DEFAULT_SCRIPT_FULL_PATH.equals(scriptPath);
+    }
+
     protected Invocable getInvocable() {
         // if the script is on disk, check every so often to see if it has been updated
         if (!usingClasspathScript && scriptCacheExpired()) {
@@ -50,6 +50,7 @@ import org.opennms.oce.datasource.api.AlarmHandler;
 import org.opennms.oce.datasource.api.Situation;
 import org.opennms.oce.datasource.api.SituationDatasource;
 import org.opennms.oce.datasource.api.SituationHandler;
+import org.opennms.oce.datasource.common.AlarmBatch;
 import org.opennms.oce.datasource.common.HandlerRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -101,26 +102,30 @@ public class DirectAlarmDatasource implements AlarmDatasource, AlarmLifecycleLis
                 .collect(Collectors.toMap(org.opennms.integration.api.v1.model.Alarm::getId, a -> a));
         rwLock.writeLock().lock();
         try {
+            // Deliver the alarm callbacks for the whole snapshot in batches
+            final AlarmBatch batch = new AlarmBatch();
             final Set<Integer> alarmIdsInMap = alarmsById.keySet();
             final Set<Integer> alarmIdsInSnapshot = snapshotAlarmsById.keySet();
 
             // Push clears for alarms that are in the map, but not in the snapshot
             final Set<Integer> alarmIdsToDelete = Sets.newHashSet(Sets.difference(alarmIdsInMap, alarmIdsInSnapshot));
             for (Integer alarmIdToDelete : alarmIdsToDelete) {
-                handleDeletedNoLock(alarmIdToDelete);
+                handleDeletedNoLock(alarmIdToDelete, batch);
             }
 
             // Push new alarms for ids that are in the snapshot, but not in the map
             final Set<Integer> alarmIdsToAdd = Sets.newHashSet(Sets.difference(alarmIdsInSnapshot, alarmIdsInMap));
             for (Integer alarmIdToAdd : alarmIdsToAdd) {
-                handleNewOrUpdatedAlarmNoLock(snapshotAlarmsById.get(alarmIdToAdd));
+                handleNewOrUpdatedAlarmNoLock(snapshotAlarmsById.get(alarmIdToAdd), batch);
             }
 
             // Handle Updates
             final Set<Integer> commonAlarmIds = Sets.newHashSet(Sets.intersection(alarmIdsInSnapshot, alarmIdsInMap));
             commonAlarmIds.forEach(id -> {
-                handleNewOrUpdatedAlarmNoLock(snapshotAlarmsById.get(id));
+                handleNewOrUpdatedAlarmNoLock(snapshotAlarmsById.get(id), batch);
             });
+
+            deliver(batch);
         } finally {
             rwLock.writeLock().unlock();
         }
@@ -132,26 +137,28 @@ public class DirectAlarmDatasource implements AlarmDatasource, AlarmLifecycleLis
 
         rwLock.writeLock().lock();
         try {
-            handleNewOrUpdatedAlarmNoLock(alarm);
+            final AlarmBatch batch = new AlarmBatch();
+            handleNewOrUpdatedAlarmNoLock(alarm, batch);
+            deliver(batch);
         } finally {
             rwLock.writeLock().unlock();
         }
     }
 
-    private void handleNewOrUpdatedAlarmNoLock(org.opennms.integration.api.v1.model.Alarm alarm) {
+    private void handleNewOrUpdatedAlarmNoLock(org.opennms.integration.api.v1.model.Alarm alarm, AlarmBatch batch) {
         final org.opennms.integration.api.v1.model.Alarm existingAlarm = alarmsById.get(alarm.getId());
         alarmsById.put(alarm.getId(), alarm);
         final Alarm oceAlarm = mapper.toAlarm(alarm);
 
         if (!alarm.isSituation()) {
             if (existingAlarm == null && !isCleared(alarm)) {
-                alarmHandlers.forEach(h -> h.onAlarmCreatedOrUpdated(oceAlarm));
+                batch.addCreatedOrUpdated(oceAlarm);
                 // if there was no existing alarm, and the new one is cleared, don't bother issuing the callback
             } else if (existingAlarm != null) {
                 if (!isCleared(alarm)) {
-                    alarmHandlers.forEach(h -> h.onAlarmCreatedOrUpdated(oceAlarm));
+                    batch.addCreatedOrUpdated(oceAlarm);
                 } else {
-                    alarmHandlers.forEach(h -> h.onAlarmCleared(oceAlarm));
+                    batch.addCleared(oceAlarm);
                 }
             }
         } else {
@@ -166,18 +173,19 @@ public class DirectAlarmDatasource implements AlarmDatasource, AlarmLifecycleLis
 
         rwLock.writeLock().lock();
         try {
-            handleDeletedNoLock(alarmId);
+            final AlarmBatch batch = new AlarmBatch();
+            handleDeletedNoLock(alarmId, batch);
+            deliver(batch);
         } finally {
             rwLock.writeLock().unlock();
         }
     }
 
-    private void handleDeletedNoLock(int alarmId) {
+    private void handleDeletedNoLock(int alarmId, AlarmBatch batch) {
         final org.opennms.integration.api.v1.model.Alarm existingAlarm = alarmsById.remove(alarmId);
         if (existingAlarm != null) {
             if (!existingAlarm.isSituation()) {
-                final Alarm oceAlarm = mapper.toAlarm(existingAlarm);
-                alarmHandlers.forEach(h -> h.onAlarmCleared(oceAlarm));
+                batch.addCleared(mapper.toAlarm(existingAlarm));
             } else {
                 final Situation oceSituation = mapper.toSituation(existingAlarm);
                 situationHandlers.forEach(h -> h.onSituation(oceSituation));
@@ -185,6 +193,12 @@ public class DirectAlarmDatasource implements AlarmDatasource, AlarmLifecycleLis
         }
     }
 
+    private void deliver(AlarmBatch batch) {
+        if (!batch.isEmpty()) {
+            alarmHandlers.forEach(batch::deliverTo);
+        }
+    }
+
     @Override
     public List<Alarm> getAlarms() {
         waitForInit();
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.opennms.oce.datasource.api.Alarm;
+import org.opennms.oce.datasource.common.ImmutableAlarm;
+import org.opennms.oce.datasource.opennms.proto.OpennmsModelProtos;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Works with alarms in their serialized form, without building the {@link OpennmsModelProtos.Alarm} messages.
+ *
+ * Only the fields used by {@link OpennmsMapper#toAlarm(OpennmsModelProtos.Alarm)} are decoded, and all of the
+ * others, including the last event and the related alarms which make up most of the message, are skipped.
+ */
+public final class AlarmBytes {
+
+    private static final int NODE_CRITERIA_TAG = OpennmsModelProtos.Alarm.NODE_CRITERIA_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int REDUCTION_KEY_TAG = OpennmsModelProtos.Alarm.REDUCTION_KEY_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int SEVERITY_TAG = OpennmsModelProtos.Alarm.SEVERITY_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_VARINT;
+    private static final int DESCRIPTION_TAG = OpennmsModelProtos.Alarm.DESCRIPTION_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int LOG_MESSAGE_TAG = OpennmsModelProtos.Alarm.LOG_MESSAGE_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int LAST_EVENT_TIME_TAG = OpennmsModelProtos.Alarm.LAST_EVENT_TIME_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_VARINT;
+    private static final int MANAGED_OBJECT_INSTANCE_TAG = OpennmsModelProtos.Alarm.MANAGED_OBJECT_INSTANCE_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int MANAGED_OBJECT_TYPE_TAG = OpennmsModelProtos.Alarm.MANAGED_OBJECT_TYPE_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int NODE_ID_TAG = OpennmsModelProtos.NodeCriteria.ID_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_VARINT;
+
+    private AlarmBytes() {}
+
+    /**
+     * Map the serialized alarm to an {@link Alarm}.
+     *
+     * This is equivalent to calling {@link OpennmsMapper#toAlarm(OpennmsModelProtos.Alarm)} with the parsed message.
+     *
+     * @param bytes serialized {@link OpennmsModelProtos.Alarm}
+     * @return the alarm
+     */
+    public static Alarm toAlarm(byte[] bytes) {
+        final ImmutableAlarm.Builder alarmBuilder = ImmutableAlarm.newBuilder();
+        // Singular fields may appear more than once, in which case the last one wins
+        String reductionKey = "";
+        long lastEventTime = 0;
+        int severity = 0;
+        String managedObjectType = "";
+        String managedObjectInstance = "";
+        String logMessage = "";
+        String description = "";
+        Long nodeId = null;
+        try {
+            final CodedInputStream input = CodedInputStream.newInstance(bytes);
+            while (true) {
+                final int tag = input.readTag();
+                switch (tag) {
+                    case 0:
+                        alarmBuilder.setId(reductionKey)
+                                .setTime(lastEventTime)
+                                .setSeverity(OpennmsMapper.toSeverity(toSeverity(severity)))
+                                .setInventoryObjectType(managedObjectType)
+                                .setInventoryObjectId(managedObjectInstance)
+                                .setSummary(logMessage)
+                                .setDescription(description);
+                        if (nodeId != null) {
+                            alarmBuilder.setNodeId(nodeId);
+                        }
+                        return alarmBuilder.build();
+                    case NODE_CRITERIA_TAG:
+                        nodeId = readNodeId(input, nodeId != null ? nodeId : 0);
+                        break;
+                    case REDUCTION_KEY_TAG:
+                        reductionKey = input.readStringRequireUtf8();
+                        break;
+                    case SEVERITY_TAG:
+                        severity = input.readEnum();
+                        break;
+                    case DESCRIPTION_TAG:
+                        description = input.readStringRequireUtf8();
+                        break;
+                    case LOG_MESSAGE_TAG:
+                        logMessage = input.readStringRequireUtf8();
+                        break;
+                    case LAST_EVENT_TIME_TAG:
+                        lastEventTime = input.readUInt64();
+                        break;
+                    case MANAGED_OBJECT_INSTANCE_TAG:
+                        managedObjectInstance = input.readStringRequireUtf8();
+                        break;
+                    case MANAGED_OBJECT_TYPE_TAG:
+                        managedObjectType = input.readStringRequireUtf8();
+                        break;
+                    default:
+                        if (!input.skipField(tag)) {
+                            throw new IllegalArgumentException("Unexpected end group tag in alarm.");
+                        }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read alarm.", e);
+        }
+    }
+
+    /**
+     * Decode the fields of the serialized alarm that are read by the default inventory script.
+     *
+     * Only the reduction key, the managed object and the node criteria are set on the returned message.
+     *
+     * @param bytes serialized {@link OpennmsModelProtos.Alarm}
+     * @return the alarm with the fields used for enrichment
+     */
+    public static OpennmsModelProtos.Alarm toEnrichmentAlarm(byte[] bytes) {
+        final OpennmsModelProtos.Alarm.Builder alarmBuilder = OpennmsModelProtos.Alarm.newBuilder();
+        try {
+            final CodedInputStream input = CodedInputStream.newInstance(bytes);
+            while (true) {
+                final int tag = input.readTag();
+                switch (tag) {
+                    case 0:
+                        return alarmBuilder.build();
+                    case NODE_CRITERIA_TAG:
+                        // Repeated occurrences of the node criteria are merged, as they would be when parsing
+                        alarmBuilder.mergeNodeCriteria(OpennmsModelProtos.NodeCriteria.parseFrom(input.readBytes()));
+                        break;
+                    case REDUCTION_KEY_TAG:
+                        alarmBuilder.setReductionKey(input.readStringRequireUtf8());
+                        break;
+                    case MANAGED_OBJECT_INSTANCE_TAG:
+                        alarmBuilder.setManagedObjectInstance(input.readStringRequireUtf8());
+                        break;
+                    case MANAGED_OBJECT_TYPE_TAG:
+                        alarmBuilder.setManagedObjectType(input.readStringRequireUtf8());
+                        break;
+                    default:
+                        if (!input.skipField(tag)) {
+                            throw new IllegalArgumentException("Unexpected end group tag in alarm.");
+                        }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read alarm.", e);
+        }
+    }
+
+    /**
+     * Override the managed object of the serialized alarm.
+     *
+     * The fields are appended to a copy of the given bytes, and since the last value of a singular field
+     * wins when parsing, the result is equivalent to re-encoding the message with these fields set,
+     * without having to parse and re-encode the rest of the message.
+     *
+     * @param bytes serialized {@link OpennmsModelProtos.Alarm}
+     * @param managedObjectType the new managed object type, or null to keep the existing one
+     * @param managedObjectInstance the new managed object instance, or null to keep the existing one
+     * @return the serialized alarm with the given managed object
+     */
+    public static byte[] withManagedObject(byte[] bytes, String managedObjectType, String managedObjectInstance) {
+        int size = 0;
+        if (managedObjectInstance != null) {
+            size += CodedOutputStream.computeStringSize(OpennmsModelProtos.Alarm.MANAGED_OBJECT_INSTANCE_FIELD_NUMBER, managedObjectInstance);
+        }
+        if (managedObjectType != null) {
+            size += CodedOutputStream.computeStringSize(OpennmsModelProtos.Alarm.MANAGED_OBJECT_TYPE_FIELD_NUMBER, managedObjectType);
+        }
+        if (size == 0) {
+            return bytes;
+        }
+        final byte[] result = Arrays.copyOf(bytes, bytes.length + size);
+        final CodedOutputStream output = CodedOutputStream.newInstance(result, bytes.length, size);
+        try {
+            if (managedObjectInstance != null) {
+                output.writeString(OpennmsModelProtos.Alarm.MANAGED_OBJECT_INSTANCE_FIELD_NUMBER, managedObjectInstance);
+            }
+            if (managedObjectType != null) {
+                output.writeString(OpennmsModelProtos.Alarm.MANAGED_OBJECT_TYPE_FIELD_NUMBER, managedObjectType);
+            }
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Read the id from the node criteria, repeated occurrences of the node criteria are merged.
+     */
+    private static long readNodeId(CodedInputStream input, long nodeId) throws IOException {
+        final int oldLimit = input.pushLimit(input.readRawVarint32());
+        while (true) {
+            final int tag = input.readTag();
+            if (tag == 0) {
+                break;
+            } else if (tag == NODE_ID_TAG) {
+                nodeId = input.readUInt64();
+            } else if (!input.skipField(tag)) {
+                throw new IllegalArgumentException("Unexpected end group tag in node criteria.");
+            }
+        }
+        input.popLimit(oldLimit);
+        return nodeId;
+    }
+
+    private static OpennmsModelProtos.Severity toSeverity(int severity) {
+        final OpennmsModelProtos.Severity value = OpennmsModelProtos.Severity.forNumber(severity);
+        return value != null ? value : OpennmsModelProtos.Severity.UNRECOGNIZED;
+    }
+}
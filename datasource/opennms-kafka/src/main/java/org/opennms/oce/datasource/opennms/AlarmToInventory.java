@@ -32,6 +32,7 @@ import java.util.Objects;
 
 import org.opennms.oce.datasource.common.inventory.script.ScriptedInventoryException;
 import org.opennms.oce.datasource.opennms.proto.OpennmsModelProtos;
+import org.opennms.oce.datasource.opennms.serialization.AlarmDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,11 +41,31 @@ public class AlarmToInventory {
     private static final Logger LOG = LoggerFactory.getLogger(AlarmToInventory.class);
 
     private final ScriptedInventoryService inventoryService;
+    private final AlarmDeserializer alarmDeserializer = new AlarmDeserializer();
 
     public AlarmToInventory(ScriptedInventoryService inventoryService) {
         this.inventoryService = Objects.requireNonNull(inventoryService);
     }
 
+    /**
+     * Enrich the serialized alarm.
+     *
+     * Custom scripts may use any of the fields of the alarm, so it is fully parsed for these, whereas only the fields
+     * read by the default script are decoded when it is used, see {@link AlarmBytes#toEnrichmentAlarm(byte[])}.
+     *
+     * @param alarmBytes serialized {@link OpennmsModelProtos.Alarm}
+     * @return the enriched alarm
+     */
+    public EnrichedAlarm enrichAlarm(byte[] alarmBytes) {
+        final OpennmsModelProtos.Alarm alarm;
+        if (inventoryService.isUsingDefaultScript()) {
+            alarm = AlarmBytes.toEnrichmentAlarm(alarmBytes);
+        } else {
+            alarm = alarmDeserializer.deserialize(null, alarmBytes);
+        }
+        return enrichAlarm(alarm);
+    }
+
     public EnrichedAlarm enrichAlarm(OpennmsModelProtos.Alarm alarm) {
         try {
             return inventoryService.enrichAlarm(alarm);
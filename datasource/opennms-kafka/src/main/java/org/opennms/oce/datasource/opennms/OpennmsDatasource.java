@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashSet;
@@ -39,8 +40,10 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
@@ -56,7 +59,7 @@ import org.apache.kafka.streams.errors.InvalidStateStoreException;
 import org.apache.kafka.streams.errors.StreamsException;
 import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.state.KeyValueStore;
-import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.QueryableStoreType;
 import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
 import org.apache.kafka.streams.state.StoreBuilder;
 import org.apache.kafka.streams.state.Stores;
@@ -111,12 +114,16 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
 
     public static final long DEFAULT_INVENTORY_GC_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
     public static final long DEFAULT_INVENTORY_TTL_MS = TimeUnit.DAYS.toMillis(1);
+    public static final int DEFAULT_ALARM_BATCH_SIZE = 1000;
+    public static final long DEFAULT_ALARM_BATCH_INTERVAL_MS = 100;
 
     private static final String INVENTORY_STORE_NODE_PREFIX = "node:";
     private static final String INVENTORY_STORE_ALARM_PREFIX = "alarm:";
     private static final String INVENTORY_STORE_EDGE_PREFIX = "edge:";
 
     public static final String INVENTORY_STORE = "inventoryStore";
+    public static final String INVENTORY_EXPIRY_STORE = "inventoryExpiryStore";
+    public static final String INVENTORY_REFERENCE_STORE = "inventoryReferenceStore";
     public static final String ALARM_STORE = "alarmStore";
     public static final String ALARM_FEEDBACK_STORE = "alarmFeedbackStore";
     public static final String SITUATION_STORE = "situationStore";
@@ -131,6 +138,9 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
 
     private KafkaStreams streams;
 
+    private final StoreReadiness storeReadiness = new StoreReadiness(
+            Arrays.asList(INVENTORY_STORE, ALARM_STORE, ALARM_FEEDBACK_STORE, SITUATION_STORE, EDGE_STORE));
+
     private String alarmTopic = DEFAULT_ALARM_TOPIC;
     private String alarmFeedbackTopic = DEFAULT_ALARM_FEEDBACK_TOPIC;
     private String nodeTopic = DEFAULT_NODE_TOPIC;
@@ -140,6 +150,8 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
 
     private long inventoryGcIntervalMs = DEFAULT_INVENTORY_GC_INTERVAL_MS;
     private long inventoryTtlMs = DEFAULT_INVENTORY_TTL_MS;
+    private int alarmBatchSize = DEFAULT_ALARM_BATCH_SIZE;
+    private long alarmBatchIntervalMs = DEFAULT_ALARM_BATCH_INTERVAL_MS;
 
     private KafkaProducer<String, String> producer;
 
@@ -162,13 +174,17 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         producer = KafkaUtils.runWithGivenClassLoader(() -> new KafkaProducer<>(producerProperties), KafkaProducer.class.getClassLoader());
 
         final Properties streamProperties = loadStreamsProperties();
+        final StateStoreConfig storeConfig = new StateStoreConfig(streamProperties);
 
         // Use the class-loader for the KStream class, since the kafka-client bundle
         // does not import the required classes from the kafka-streams bundle
-        streams = KafkaUtils.runWithGivenClassLoader(() -> new KafkaStreams(getKTopology(), streamProperties), KStream.class.getClassLoader());
+        streams = KafkaUtils.runWithGivenClassLoader(() -> new KafkaStreams(getKTopology(storeConfig), streamProperties), KStream.class.getClassLoader());
 
         streams.setUncaughtExceptionHandler((t, e) ->
                 LOG.error(String.format("Stream error on thread: %s", t.getName()), e));
+        // Track the state of the stores, these need to be set before the streams are started
+        streams.setStateListener(storeReadiness);
+        streams.setGlobalStateRestoreListener(storeReadiness);
         try {
             streams.start();
         } catch (StreamsException | IllegalStateException e) {
@@ -213,6 +229,7 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         final Path kafkaDir = Paths.get(System.getProperty("karaf.data"), "kafka");
         streamsProperties.put(StreamsConfig.STATE_DIR_CONFIG, kafkaDir.toString());
         streamsProperties.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, Math.max(Runtime.getRuntime().availableProcessors()-2, 1));
+        streamsProperties.put(StreamsConfig.ROCKSDB_CONFIG_SETTER_CLASS_CONFIG, RocksDBStoreConfigSetter.class);
         // User
         final Dictionary<String, Object> properties = configAdmin.getConfiguration(KAFKA_STREAMS_PID).getProperties();
         putProperties(properties, streamsProperties);
@@ -223,20 +240,31 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         return streamsProperties;
     }
 
-    protected Topology getKTopology() {
+    protected Topology getKTopology(StateStoreConfig storeConfig) {
         final StreamsBuilder builder = new StreamsBuilder();
-        createStores(builder);
+        createStores(builder, storeConfig);
 
-        // Produce a KStream of EnrichedAlarm objects from the alarm stream
-        final AlarmDeserializer alarmDeserializer = new AlarmDeserializer();
-        KStream<String, byte[]> alarmBytesStream = builder.stream(getAlarmTopic());
-        KStream<String, OpennmsModelProtos.Alarm> allAlarmStream = alarmBytesStream.mapValues(alarmBytes -> alarmDeserializer.deserialize(null, alarmBytes));
-        KStream<String, OpennmsModelProtos.Alarm> alarmStream = allAlarmStream.filter((k, v) -> !isSituation(k));
-        KStream<String, EnrichedAlarm> enrichedAlarmStream = alarmStream.mapValues(alarmToInventory::enrichAlarm);
+        // Split the alarm stream using the reduction keys, before deserializing the alarms, so that
+        // the situations are only parsed by the situation processor
+        KStream<String, byte[]> allAlarmBytesStream = builder.stream(getAlarmTopic());
+        KStream<String, byte[]> alarmBytesStream = allAlarmBytesStream.filter((k, v) -> !isSituation(k));
+        KStream<String, byte[]> situationBytesStream = allAlarmBytesStream.filter((k, v) -> isSituation(k));
+
+        // Produce a KStream of EnrichedAlarm objects from the alarm stream, keeping the original bytes along with these
+        KStream<String, EnrichedAlarmBytes> enrichedAlarmBytesStream = alarmBytesStream.mapValues(alarmBytes -> {
+            if (alarmBytes == null) {
+                return null;
+            }
+            // Custom inventory scripts may use any of the fields of the alarm, so these are only fully parsed
+            // when such a script is configured
+            final EnrichedAlarm enrichedAlarm = alarmToInventory.enrichAlarm(alarmBytes);
+            return enrichedAlarm != null ? new EnrichedAlarmBytes(alarmBytes, enrichedAlarm) : null;
+        });
+        KStream<String, EnrichedAlarm> enrichedAlarmStream = enrichedAlarmBytesStream.mapValues(e -> e != null ? e.enrichedAlarm : null);
 
         mapEnrichedAlarmsToInventory(enrichedAlarmStream);
-        processEnrichedAlarms(enrichedAlarmStream);
-        processSituations(allAlarmStream);
+        processEnrichedAlarms(enrichedAlarmBytesStream);
+        processSituations(situationBytesStream);
         mapEdgesToInventory(builder);
         mapNodesToInventory(builder);
         processInventory(builder);
@@ -260,21 +288,16 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
 
     // Map the enriched alarms back to regular alarm objects overriding the MO type and id with the ones set in the
     // enriched alarm, since these were updated to be properly scoped and reference the inventory
-    private void processEnrichedAlarms(KStream<String, EnrichedAlarm> enrichedAlarmStream) {
-        enrichedAlarmStream.mapValues(enrichedAlarm -> {
-            if (enrichedAlarm == null) {
+    private void processEnrichedAlarms(KStream<String, EnrichedAlarmBytes> enrichedAlarmBytesStream) {
+        enrichedAlarmBytesStream.mapValues(enrichedAlarmBytes -> {
+            if (enrichedAlarmBytes == null) {
                 return null;
             }
-            final OpennmsModelProtos.Alarm.Builder alarmBuilder =
-                    OpennmsModelProtos.Alarm.newBuilder(enrichedAlarm.getAlarm());
-            if (enrichedAlarm.getManagedObjectInstance() != null) {
-                alarmBuilder.setManagedObjectInstance(enrichedAlarm.getManagedObjectInstance());
-            }
-            if (enrichedAlarm.getManagedObjectType() != null) {
-                alarmBuilder.setManagedObjectType(enrichedAlarm.getManagedObjectType());
-            }
-            return alarmBuilder.build();
-        }).process(() -> new AlarmTableProcessor(alarmHandlers), ALARM_STORE);
+            // Append the overrides to the original bytes instead of re-encoding the alarm
+            final EnrichedAlarm enrichedAlarm = enrichedAlarmBytes.enrichedAlarm;
+            return AlarmBytes.withManagedObject(enrichedAlarmBytes.alarmBytes, enrichedAlarm.getManagedObjectType(),
+                    enrichedAlarm.getManagedObjectInstance());
+        }).process(() -> new AlarmTableProcessor(alarmHandlers, alarmBatchSize, alarmBatchIntervalMs), ALARM_STORE);
     }
 
     // Handle converting topology edges to inventory links
@@ -296,9 +319,11 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         edgesInventoryStream.mapValues(ios -> ios != null ? ios.toByteArray() : null).to(getInventoryTopic());
     }
 
-    // Filter out situations from the alarm stream and process them
-    private void processSituations(KStream<String, OpennmsModelProtos.Alarm> allAlarmStream) {
-        KStream<String, OpennmsModelProtos.Alarm> situationStream = allAlarmStream.filter((k, v) -> isSituation(k));
+    // Process the situations that were filtered out from the alarm stream
+    private void processSituations(KStream<String, byte[]> situationBytesStream) {
+        final AlarmDeserializer alarmDeserializer = new AlarmDeserializer();
+        KStream<String, OpennmsModelProtos.Alarm> situationStream =
+                situationBytesStream.mapValues(situationBytes -> alarmDeserializer.deserialize(null, situationBytes));
         situationStream.process(() -> new SituationTableProcessor(situationHandlers), SITUATION_STORE);
     }
 
@@ -332,7 +357,7 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         KStream<String, InventoryModelProtos.InventoryObjects> inventoryStream =
                 inventoryByteStream.mapValues(iosBytes -> inventoryObjectsDeserializer.deserialize(null, iosBytes));
         inventoryStream.process(() -> new InventoryTableProcessor(inventoryHandlers, inventoryGcIntervalMs,
-                inventoryTtlMs), INVENTORY_STORE);
+                inventoryTtlMs), INVENTORY_STORE, INVENTORY_EXPIRY_STORE, INVENTORY_REFERENCE_STORE);
 
         // Process the alarm feedback
         final AlarmFeedbackDeserializer alarmFeedbackDeserializer = new AlarmFeedbackDeserializer();
@@ -343,33 +368,47 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         alarmFeedbackStream.process(() -> new AlarmFeedbackTableProcessor(alarmFeedbackHandlers), ALARM_FEEDBACK_STORE);
     }
 
-    private void createStores(StreamsBuilder builder) {
+    private void createStores(StreamsBuilder builder, StateStoreConfig storeConfig) {
         final StoreBuilder<KeyValueStore<String, InventoryModelProtos.InventoryObjects>> inventoryStore =
                 Stores.keyValueStoreBuilder(
-                        Stores.persistentKeyValueStore(INVENTORY_STORE),
+                        storeConfig.getStoreSupplier(INVENTORY_STORE),
                         Serdes.String(),
                         OpennmsSerdes.InventoryObjects());
-        final StoreBuilder<KeyValueStore<String, OpennmsModelProtos.Alarm>> alarmStore = Stores.keyValueStoreBuilder(
-                Stores.persistentKeyValueStore(ALARM_STORE),
+        // Indexes the keys of the deleted inventory by expiry time, see InventoryTableProcessor
+        final StoreBuilder<KeyValueStore<String, String>> inventoryExpiryStore =
+                Stores.keyValueStoreBuilder(
+                        storeConfig.getStoreSupplier(INVENTORY_EXPIRY_STORE),
+                        Serdes.String(),
+                        Serdes.String());
+        final StoreBuilder<KeyValueStore<String, Integer>> inventoryReferenceStore =
+                Stores.keyValueStoreBuilder(
+                        storeConfig.getStoreSupplier(INVENTORY_REFERENCE_STORE),
+                        Serdes.String(),
+                        Serdes.Integer());
+        // The alarms are stored in their serialized form, see AlarmTableProcessor
+        final StoreBuilder<KeyValueStore<String, byte[]>> alarmStore = Stores.keyValueStoreBuilder(
+                storeConfig.getStoreSupplier(ALARM_STORE),
                 Serdes.String(),
-                OpennmsSerdes.Alarm());
+                Serdes.ByteArray());
         final StoreBuilder<KeyValueStore<String, OpennmsModelProtos.Alarm>> situationStore =
                 Stores.keyValueStoreBuilder(
-                        Stores.persistentKeyValueStore(SITUATION_STORE),
+                        storeConfig.getStoreSupplier(SITUATION_STORE),
                         Serdes.String(),
                         OpennmsSerdes.Alarm());
         final StoreBuilder<KeyValueStore<String, FeedbackModelProtos.AlarmFeedbacks>> alarmFeedbackStore =
                 Stores.keyValueStoreBuilder(
-                        Stores.persistentKeyValueStore(ALARM_FEEDBACK_STORE),
+                        storeConfig.getStoreSupplier(ALARM_FEEDBACK_STORE),
                         Serdes.String(),
                         OpennmsSerdes.AlarmFeedbacks());
         final StoreBuilder<KeyValueStore<String, OpennmsModelProtos.TopologyEdge>> topologyEdgeStore =
                 Stores.keyValueStoreBuilder(
-                        Stores.persistentKeyValueStore(EDGE_STORE),
+                        storeConfig.getStoreSupplier(EDGE_STORE),
                         Serdes.String(),
                         OpennmsSerdes.TopologyEdge());
 
         builder.addStateStore(inventoryStore);
+        builder.addStateStore(inventoryExpiryStore);
+        builder.addStateStore(inventoryReferenceStore);
         builder.addStateStore(alarmStore);
         builder.addStateStore(situationStore);
         builder.addStateStore(alarmFeedbackStore);
@@ -378,15 +417,15 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
 
     @Override
     public List<Alarm> getAlarms() {
-        final List<Alarm> alarms = new ArrayList<>();
-        try {
-            waitUntilAlarmStoreIsQueryable().all().forEachRemaining(entry -> {
-                alarms.add(OpennmsMapper.toAlarm(entry.value));
-            });
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        try (Stream<Alarm> alarms = streamAlarms()) {
+            return alarms.collect(Collectors.toList());
         }
-        return alarms;
+    }
+
+    @Override
+    public Stream<Alarm> streamAlarms() {
+        return this.<String, byte[]>streamStore(ALARM_STORE)
+                .map(entry -> AlarmBytes.toAlarm(entry.value));
     }
 
     @Override
@@ -408,15 +447,15 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
 
     @Override
     public List<AlarmFeedback> getAlarmFeedback() {
-        final List<AlarmFeedback> alarmFeedback = new ArrayList<>();
-        try {
-            waitUntilAlarmFeedbackStoreIsQueryable().all().forEachRemaining(entry ->
-                    alarmFeedback.addAll(OpennmsMapper.toAlarmFeedbackList(entry.value))
-            );
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        try (Stream<AlarmFeedback> alarmFeedback = streamAlarmFeedback()) {
+            return alarmFeedback.collect(Collectors.toList());
         }
-        return alarmFeedback;
+    }
+
+    @Override
+    public Stream<AlarmFeedback> streamAlarmFeedback() {
+        return this.<String, FeedbackModelProtos.AlarmFeedbacks>streamStore(ALARM_FEEDBACK_STORE)
+                .flatMap(entry -> OpennmsMapper.toAlarmFeedbackList(entry.value).stream());
     }
 
     @Override
@@ -448,19 +487,15 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
 
     @Override
     public List<InventoryObject> getInventory() {
-        final List<InventoryModelProtos.InventoryObjects> inventory = new ArrayList<>();
-        try {
-            waitUntilInventoryStoreIsQueryable().all().forEachRemaining(entry -> {
-                inventory.add(entry.value);
-            });
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        final List<InventoryObject> inventory;
+        try (Stream<InventoryObject> inventoryStream = streamInventory()) {
+            inventory = inventoryStream.collect(Collectors.toList());
         }
 
         Set<ResourceKey> uniqueIds = new HashSet<>();
 
         // Discard any duplicate inventory objects
-        return InventoryTableProcessor.toInventory(inventory).stream()
+        return inventory.stream()
                 .filter(io -> {
                     ResourceKey id = new ResourceKey(io.getId(), io.getType());
 
@@ -475,6 +510,18 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Stream the inventory objects in the store.
+     *
+     * Unlike {@link #getInventory()}, the same inventory object may be present more than once.
+     */
+    @Override
+    public Stream<InventoryObject> streamInventory() {
+        return this.<String, InventoryModelProtos.InventoryObjects>streamStore(INVENTORY_STORE)
+                .flatMap(entry -> entry.value.getInventoryObjectList().stream())
+                .map(InventoryTableProcessor::toInventory);
+    }
+
     @Override
     public List<InventoryObject> getInventoryAndRegisterHandler(InventoryHandler handler) {
         final List<InventoryObject> inventory = new ArrayList<>();
@@ -494,46 +541,63 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
 
     @Override
     public List<Situation> getSituations() {
-        final List<Situation> situations = new ArrayList<>();
-        try {
-            waitUntilSituationStoreIsQueryable().all().forEachRemaining(entry -> {
-                situations.add(OpennmsMapper.toSituation(entry.value));
-            });
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        try (Stream<Situation> situations = streamSituations()) {
+            return situations.collect(Collectors.toList());
         }
-        return situations;
     }
 
-    private ReadOnlyKeyValueStore<String, OpennmsModelProtos.Alarm> waitUntilSituationStoreIsQueryable() throws InterruptedException {
-        return waitUntilStoreIsQueryable(SITUATION_STORE);
-    }
-
-    private ReadOnlyKeyValueStore<String, OpennmsModelProtos.Alarm> waitUntilAlarmStoreIsQueryable() throws InterruptedException {
-        return waitUntilStoreIsQueryable(ALARM_STORE);
-    }
-
-    private ReadOnlyKeyValueStore<String, InventoryModelProtos.InventoryObjects> waitUntilInventoryStoreIsQueryable() throws InterruptedException {
-        return waitUntilStoreIsQueryable(INVENTORY_STORE);
+    @Override
+    public Stream<Situation> streamSituations() {
+        return this.<String, OpennmsModelProtos.Alarm>streamStore(SITUATION_STORE)
+                .map(entry -> OpennmsMapper.toSituation(entry.value));
     }
 
-    private ReadOnlyKeyValueStore<String, FeedbackModelProtos.AlarmFeedbacks> waitUntilAlarmFeedbackStoreIsQueryable() throws InterruptedException {
-        return waitUntilStoreIsQueryable(ALARM_FEEDBACK_STORE);
+    /**
+     * Stream the entries of all the local instances of the given store in parallel, so that these
+     * are read and deserialized concurrently, one task per partition.
+     */
+    private <K, V> Stream<KeyValue<K, V>> streamStore(String storeName) {
+        final List<ReadOnlyKeyValueStore<K, V>> stores;
+        try {
+            stores = waitUntilStoreIsQueryable(storeName, StateStores.keyValueStoresByTask());
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        LOG.debug("Streaming {} instances of store: {}", stores.size(), storeName);
+        return StateStores.stream(stores, true);
     }
 
-    private <K,V> ReadOnlyKeyValueStore<K, V> waitUntilStoreIsQueryable(String storeName) throws InterruptedException {
+    private <T> T waitUntilStoreIsQueryable(String storeName, QueryableStoreType<T> queryableStoreType) throws InterruptedException {
         if (streams == null) {
             throw new IllegalStateException("Datasource must be started first.");
         }
         while (true) {
+            waitUntilStoresAreReady(storeName);
             try {
-                return streams.store(storeName, QueryableStoreTypes.keyValueStore());
-            } catch (InvalidStateStoreException ignored) {
+                return streams.store(storeName, queryableStoreType);
+            } catch (InvalidStateStoreException e) {
+                // A rebalance started, but we were not notified yet, give the state listener a chance to catch up
+                LOG.debug("Store: {} is not queryable. Waiting for the streams to be running again.", storeName, e);
                 Thread.sleep(100);
             }
         }
     }
 
+    private void waitUntilStoresAreReady(String... storeNames) throws InterruptedException {
+        try {
+            storeReadiness.getReadyFuture(storeNames).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Stores will not become queryable: " + Arrays.toString(storeNames), e.getCause());
+        }
+    }
+
+    /**
+     * @return the readiness of the state stores, along with the progress made restoring these
+     */
+    public StoreReadiness getStoreReadiness() {
+        return storeReadiness;
+    }
+
     @Override
     public void forwardSituation(Situation situation) {
         if (situation.getAlarms().size() < 1) {
@@ -621,17 +685,43 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         this.inventoryTtlMs = inventoryTtlMs;
     }
 
+    public int getAlarmBatchSize() {
+        return alarmBatchSize;
+    }
+
+    public void setAlarmBatchSize(int alarmBatchSize) {
+        this.alarmBatchSize = alarmBatchSize;
+    }
+
+    public long getAlarmBatchIntervalMs() {
+        return alarmBatchIntervalMs;
+    }
+
+    public void setAlarmBatchIntervalMs(long alarmBatchIntervalMs) {
+        this.alarmBatchIntervalMs = alarmBatchIntervalMs;
+    }
+
     @Override
     public void waitUntilReady() throws InterruptedException {
-        // These will block until Kafka is available and the topics are created
-        LOG.debug("Waiting for inventory store...");
-        waitUntilInventoryStoreIsQueryable();
-        LOG.debug("Waiting for alarm store...");
-        waitUntilAlarmStoreIsQueryable();
-        LOG.debug("Waiting for situation store...");
-        waitUntilSituationStoreIsQueryable();
-        LOG.debug("Waiting for alarm feedback store...");
-        waitUntilAlarmFeedbackStoreIsQueryable();
+        if (streams == null) {
+            throw new IllegalStateException("Datasource must be started first.");
+        }
+        // This will block until Kafka is available, the topics are created and the stores are restored
+        LOG.debug("Waiting for stores...");
+        waitUntilStoresAreReady(INVENTORY_STORE, ALARM_STORE, SITUATION_STORE, ALARM_FEEDBACK_STORE);
         LOG.debug("All stores are available");
     }
+
+    /**
+     * An enriched alarm along with the bytes from which it was parsed.
+     */
+    private static class EnrichedAlarmBytes {
+        private final byte[] alarmBytes;
+        private final EnrichedAlarm enrichedAlarm;
+
+        private EnrichedAlarmBytes(byte[] alarmBytes, EnrichedAlarm enrichedAlarm) {
+            this.alarmBytes = alarmBytes;
+            this.enrichedAlarm = enrichedAlarm;
+        }
+    }
 }
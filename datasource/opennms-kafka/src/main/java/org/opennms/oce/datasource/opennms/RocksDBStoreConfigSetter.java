@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import java.util.Map;
+
+import org.apache.kafka.streams.state.RocksDBConfigSetter;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tunes the RocksDB instances backing the persistent state stores using the properties of the streams configuration.
+ *
+ * The options are set with <code>oce.rocksdb.&lt;option&gt;</code> for all of the stores, and can be overridden for
+ * a specific store with <code>oce.rocksdb.&lt;storeName&gt;.&lt;option&gt;</code>. Options that are not set
+ * keep the defaults of Kafka Streams.
+ *
+ * Each task has its own instance of the store, so the sizes apply to every partition.
+ */
+public class RocksDBStoreConfigSetter implements RocksDBConfigSetter {
+    private static final Logger LOG = LoggerFactory.getLogger(RocksDBStoreConfigSetter.class);
+
+    public static final String PREFIX = "oce.rocksdb.";
+    public static final String BLOCK_CACHE_SIZE = "block.cache.size";
+    public static final String BLOCK_SIZE = "block.size";
+    public static final String BLOOM_FILTER_BITS_PER_KEY = "bloom.filter.bits.per.key";
+    public static final String CACHE_INDEX_AND_FILTER_BLOCKS = "cache.index.and.filter.blocks";
+    public static final String COMPACTION_STYLE = "compaction.style";
+    public static final String WRITE_BUFFER_SIZE = "write.buffer.size";
+    public static final String MAX_WRITE_BUFFERS = "max.write.buffers";
+
+    @Override
+    public void setConfig(String storeName, Options options, Map<String, Object> configs) {
+        // The table config needs to be set again for the changes to be applied
+        final BlockBasedTableConfig tableConfig = (BlockBasedTableConfig) options.tableFormatConfig();
+        final String blockCacheSize = getProperty(configs, storeName, BLOCK_CACHE_SIZE);
+        if (blockCacheSize != null) {
+            tableConfig.setBlockCacheSize(Long.parseLong(blockCacheSize));
+        }
+        final String blockSize = getProperty(configs, storeName, BLOCK_SIZE);
+        if (blockSize != null) {
+            tableConfig.setBlockSize(Long.parseLong(blockSize));
+        }
+        final String bloomFilterBitsPerKey = getProperty(configs, storeName, BLOOM_FILTER_BITS_PER_KEY);
+        if (bloomFilterBitsPerKey != null) {
+            tableConfig.setFilter(new BloomFilter(Integer.parseInt(bloomFilterBitsPerKey), false));
+        }
+        final String cacheIndexAndFilterBlocks = getProperty(configs, storeName, CACHE_INDEX_AND_FILTER_BLOCKS);
+        if (cacheIndexAndFilterBlocks != null) {
+            tableConfig.setCacheIndexAndFilterBlocks(Boolean.parseBoolean(cacheIndexAndFilterBlocks));
+        }
+        options.setTableFormatConfig(tableConfig);
+
+        final String compactionStyle = getProperty(configs, storeName, COMPACTION_STYLE);
+        if (compactionStyle != null) {
+            options.setCompactionStyle(CompactionStyle.valueOf(compactionStyle.toUpperCase()));
+        }
+        final String writeBufferSize = getProperty(configs, storeName, WRITE_BUFFER_SIZE);
+        if (writeBufferSize != null) {
+            options.setWriteBufferSize(Long.parseLong(writeBufferSize));
+        }
+        final String maxWriteBuffers = getProperty(configs, storeName, MAX_WRITE_BUFFERS);
+        if (maxWriteBuffers != null) {
+            options.setMaxWriteBufferNumber(Integer.parseInt(maxWriteBuffers));
+        }
+        LOG.debug("Configured RocksDB for store: {} with block cache size: {}, compaction style: {}, write buffer size: {}.",
+                storeName, tableConfig.blockCacheSize(), options.compactionStyle(), options.writeBufferSize());
+    }
+
+    private static String getProperty(Map<String, Object> configs, String storeName, String key) {
+        Object value = configs.get(PREFIX + storeName + "." + key);
+        if (value == null) {
+            value = configs.get(PREFIX + key);
+        }
+        return value != null ? value.toString().trim() : null;
+    }
+}
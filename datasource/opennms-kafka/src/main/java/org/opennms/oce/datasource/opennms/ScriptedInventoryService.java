@@ -43,6 +43,16 @@ public interface ScriptedInventoryService {
 
     EnrichedAlarm enrichAlarm(Alarm alarm) throws ScriptedInventoryException;
 
+    /**
+     * The default script only reads the reduction key, the managed object and the node criteria of the alarms
+     * it enriches, so the other fields do not need to be parsed when it is used.
+     *
+     * @return true if the alarms are enriched by the default script
+     */
+    default boolean isUsingDefaultScript() {
+        return false;
+    }
+
     InventoryObjects edgeToInventory(TopologyEdge edge) throws ScriptedInventoryException;
 
 }
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.kafka.streams.state.KeyValueBytesStoreSupplier;
+import org.apache.kafka.streams.state.Stores;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects the backend of the state stores using the properties of the streams configuration.
+ *
+ * The backend is set with <code>oce.store.type</code> for all of the stores, and can be overridden for a specific
+ * store with <code>oce.store.&lt;storeName&gt;.type</code>. The same goes for the other properties.
+ *
+ * All of the backends are backed by a changelog topic, the in-memory ones are restored from it on startup.
+ *
+ * The LRU backend evicts entries, which the alarm and inventory stores cannot afford, so it is rejected when set
+ * for one of these, and these keep the default backend when it is set for all of the stores.
+ */
+public class StateStoreConfig {
+    private static final Logger LOG = LoggerFactory.getLogger(StateStoreConfig.class);
+
+    public static final String PREFIX = "oce.store.";
+    public static final String TYPE = "type";
+    public static final String LRU_MAX_ENTRIES = "lru.max.entries";
+
+    public static final int DEFAULT_LRU_MAX_ENTRIES = 100000;
+
+    /**
+     * Stores that hold the only copy of their entries, or that index the entries of these.
+     */
+    public static final Set<String> NON_EVICTABLE_STORES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            OpennmsDatasource.INVENTORY_STORE,
+            OpennmsDatasource.INVENTORY_EXPIRY_STORE,
+            OpennmsDatasource.INVENTORY_REFERENCE_STORE,
+            OpennmsDatasource.ALARM_STORE)));
+
+    public enum StoreType {
+        /**
+         * Entries are stored in RocksDB on disk, see {@link RocksDBStoreConfigSetter} for tuning.
+         */
+        PERSISTENT("persistent"),
+        /**
+         * All of the entries are kept on the heap.
+         */
+        IN_MEMORY("in-memory"),
+        /**
+         * Up to a fixed number of entries are kept on the heap, and the least recently used ones are evicted.
+         */
+        LRU("lru");
+
+        private final String name;
+
+        StoreType(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static StoreType fromName(String name) {
+            for (StoreType type : values()) {
+                if (type.name.equalsIgnoreCase(name)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Invalid store type: " + name);
+        }
+    }
+
+    private final Map<?, ?> properties;
+
+    public StateStoreConfig(Map<?, ?> properties) {
+        this.properties = Objects.requireNonNull(properties);
+    }
+
+    public StoreType getStoreType(String storeName) {
+        final boolean evictable = !NON_EVICTABLE_STORES.contains(storeName);
+        final String storeType = getStoreProperty(storeName, TYPE);
+        if (storeType != null) {
+            final StoreType type = StoreType.fromName(storeType);
+            if (type == StoreType.LRU && !evictable) {
+                throw new IllegalArgumentException("Store type " + type.getName() + " cannot be used for store: " + storeName);
+            }
+            return type;
+        }
+        final String globalType = getGlobalProperty(TYPE);
+        if (globalType != null) {
+            final StoreType type = StoreType.fromName(globalType);
+            if (type == StoreType.LRU && !evictable) {
+                LOG.debug("Ignoring store type {} for store: {}", type.getName(), storeName);
+                return StoreType.PERSISTENT;
+            }
+            return type;
+        }
+        return StoreType.PERSISTENT;
+    }
+
+    public int getLruMaxEntries(String storeName) {
+        final String maxEntries = getProperty(storeName, LRU_MAX_ENTRIES);
+        return maxEntries != null ? Integer.parseInt(maxEntries) : DEFAULT_LRU_MAX_ENTRIES;
+    }
+
+    public KeyValueBytesStoreSupplier getStoreSupplier(String storeName) {
+        final StoreType storeType = getStoreType(storeName);
+        LOG.info("Using {} backend for store: {}", storeType.getName(), storeName);
+        switch (storeType) {
+            case IN_MEMORY:
+                return Stores.inMemoryKeyValueStore(storeName);
+            case LRU:
+                return Stores.lruMap(storeName, getLruMaxEntries(storeName));
+            default:
+                return Stores.persistentKeyValueStore(storeName);
+        }
+    }
+
+    /**
+     * Retrieve the value of the property for the given store, or the value for all of the stores if not set.
+     */
+    private String getProperty(String storeName, String key) {
+        final String value = getStoreProperty(storeName, key);
+        return value != null ? value : getGlobalProperty(key);
+    }
+
+    private String getStoreProperty(String storeName, String key) {
+        return toString(properties.get(PREFIX + storeName + "." + key));
+    }
+
+    private String getGlobalProperty(String key) {
+        return toString(properties.get(PREFIX + key));
+    }
+
+    private static String toString(Object value) {
+        return value != null ? value.toString().trim() : null;
+    }
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.QueryableStoreType;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.apache.kafka.streams.state.internals.StateStoreProvider;
+
+/**
+ * Reads the local instances of the state stores, one per stream task (and hence per partition), concurrently.
+ *
+ * The store returned by {@link QueryableStoreTypes#keyValueStore()} iterates over the instances of the store one
+ * after another, on the calling thread. Here we retrieve the instances themselves, and expose their entries as a
+ * {@link Stream} which is split by instance, so that reading and deserializing the entries can be spread over
+ * multiple threads when the stream is parallel.
+ */
+public class StateStores {
+
+    private StateStores() {}
+
+    /**
+     * A {@link QueryableStoreType} that retrieves all of the local instances of a key-value store.
+     */
+    public static <K, V> QueryableStoreType<List<ReadOnlyKeyValueStore<K, V>>> keyValueStoresByTask() {
+        return new KeyValueStoresByTaskType<>();
+    }
+
+    /**
+     * Stream the entries of the given stores.
+     *
+     * The iterators are opened lazily as the stream is consumed, and are closed when the stream is closed,
+     * so the stream should be used in a try-with-resources block.
+     *
+     * @param stores the stores, typically the instances returned by {@link #keyValueStoresByTask()}
+     * @param parallel whether or not the stream should be parallel
+     * @return a stream of the entries in all of the stores
+     */
+    public static <K, V> Stream<KeyValue<K, V>> stream(List<ReadOnlyKeyValueStore<K, V>> stores, boolean parallel) {
+        final Queue<KeyValueIterator<K, V>> openIterators = new ConcurrentLinkedQueue<>();
+        return StreamSupport.stream(new StoreSpliterator<>(stores, 0, stores.size(), openIterators), parallel)
+                .onClose(() -> {
+                    KeyValueIterator<K, V> it;
+                    while ((it = openIterators.poll()) != null) {
+                        it.close();
+                    }
+                });
+    }
+
+    private static class KeyValueStoresByTaskType<K, V> implements QueryableStoreType<List<ReadOnlyKeyValueStore<K, V>>> {
+        private final QueryableStoreType<ReadOnlyKeyValueStore<K, V>> keyValueStoreType = QueryableStoreTypes.keyValueStore();
+
+        @Override
+        public boolean accepts(StateStore stateStore) {
+            return keyValueStoreType.accepts(stateStore);
+        }
+
+        @Override
+        public List<ReadOnlyKeyValueStore<K, V>> create(StateStoreProvider storeProvider, String storeName) {
+            final List<ReadOnlyKeyValueStore<K, V>> stores = storeProvider.stores(storeName, keyValueStoreType);
+            if (stores.isEmpty()) {
+                throw new InvalidStateStoreException("No instances of store " + storeName + " are available.");
+            }
+            return stores;
+        }
+    }
+
+    /**
+     * Iterates over a range of stores, splitting the range in two until it contains a single store.
+     */
+    private static class StoreSpliterator<K, V> implements Spliterator<KeyValue<K, V>> {
+        private final List<ReadOnlyKeyValueStore<K, V>> stores;
+        private final Queue<KeyValueIterator<K, V>> openIterators;
+        private int from;
+        private final int to;
+        private KeyValueIterator<K, V> iterator;
+
+        private StoreSpliterator(List<ReadOnlyKeyValueStore<K, V>> stores, int from, int to, Queue<KeyValueIterator<K, V>> openIterators) {
+            this.stores = Objects.requireNonNull(stores);
+            this.from = from;
+            this.to = to;
+            this.openIterators = openIterators;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super KeyValue<K, V>> action) {
+            while (from < to) {
+                if (iterator == null) {
+                    iterator = stores.get(from).all();
+                    openIterators.add(iterator);
+                }
+                if (iterator.hasNext()) {
+                    action.accept(iterator.next());
+                    return true;
+                }
+                // Release the store's resources as soon as we're done with it
+                iterator.close();
+                openIterators.remove(iterator);
+                iterator = null;
+                from++;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<KeyValue<K, V>> trySplit() {
+            // Don't split once we've started iterating, or when there is a single store left
+            if (iterator != null || to - from < 2) {
+                return null;
+            }
+            final int mid = (from + to) >>> 1;
+            final StoreSpliterator<K, V> prefix = new StoreSpliterator<>(stores, from, mid, openIterators);
+            from = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = 0;
+            for (int i = from; i < to; i++) {
+                final long numEntries = stores.get(i).approximateNumEntries();
+                if (numEntries < 0 || size + numEntries < 0) {
+                    return Long.MAX_VALUE;
+                }
+                size += numEntries;
+            }
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.processor.StateRestoreListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the readiness of the state stores using the state transitions of the {@link KafkaStreams} instance,
+ * and the progress made while restoring the stores from their changelogs.
+ *
+ * Each store has a future which completes once the store becomes queryable. The local instances of the stores
+ * can only be queried while the streams are running, so these all complete when the streams transition from
+ * {@link KafkaStreams.State#REBALANCING} to {@link KafkaStreams.State#RUNNING}, once the partitions were assigned
+ * and the stores restored. The streams also transition directly from {@link KafkaStreams.State#CREATED} to
+ * {@link KafkaStreams.State#RUNNING} when started, before any of the stream threads are running, so this first
+ * transition is ignored. Futures that were completed are replaced with new ones while the streams are rebalancing,
+ * and pending futures are failed if the streams are shut down or fail.
+ */
+public class StoreReadiness implements KafkaStreams.StateListener, StateRestoreListener {
+    private static final Logger LOG = LoggerFactory.getLogger(StoreReadiness.class);
+
+    private final Map<String, CompletableFuture<Void>> readyFutures = new ConcurrentHashMap<>();
+    private final Map<String, RestoreProgress> restoreProgress = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    private volatile KafkaStreams.State state = KafkaStreams.State.CREATED;
+
+    public StoreReadiness(Collection<String> storeNames) {
+        this(storeNames, System::currentTimeMillis);
+    }
+
+    StoreReadiness(Collection<String> storeNames, LongSupplier clock) {
+        this.clock = Objects.requireNonNull(clock);
+        for (String storeName : storeNames) {
+            readyFutures.put(storeName, new CompletableFuture<>());
+            restoreProgress.put(storeName, new RestoreProgress(storeName, clock));
+        }
+    }
+
+    /**
+     * @param storeName name of the store
+     * @return a future that completes once the store is queryable
+     */
+    public synchronized CompletableFuture<Void> getReadyFuture(String storeName) {
+        final CompletableFuture<Void> future = readyFutures.get(storeName);
+        if (future == null) {
+            throw new IllegalArgumentException("Unknown store: " + storeName);
+        }
+        return future;
+    }
+
+    /**
+     * @param storeNames names of the stores
+     * @return a future that completes once all of the given stores are queryable
+     */
+    public CompletableFuture<Void> getReadyFuture(String... storeNames) {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[storeNames.length];
+        for (int i = 0; i < storeNames.length; i++) {
+            futures[i] = getReadyFuture(storeNames[i]);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    public RestoreProgress getRestoreProgress(String storeName) {
+        final RestoreProgress progress = restoreProgress.get(storeName);
+        if (progress == null) {
+            throw new IllegalArgumentException("Unknown store: " + storeName);
+        }
+        return progress;
+    }
+
+    public KafkaStreams.State getState() {
+        return state;
+    }
+
+    @Override
+    public synchronized void onChange(KafkaStreams.State newState, KafkaStreams.State oldState) {
+        LOG.info("Streams transitioned from {} to {}.", oldState, newState);
+        state = newState;
+        switch (newState) {
+            case RUNNING:
+                if (oldState == KafkaStreams.State.CREATED) {
+                    // The stream threads were just started, and no partitions are assigned yet
+                    LOG.debug("Streams were started. Waiting for the partitions to be assigned.");
+                    break;
+                }
+                readyFutures.values().forEach(f -> f.complete(null));
+                break;
+            case REBALANCING:
+                // The stores are not queryable until the rebalance completes
+                readyFutures.replaceAll((storeName, f) -> f.isDone() ? new CompletableFuture<>() : f);
+                break;
+            case PENDING_SHUTDOWN:
+            case NOT_RUNNING:
+            case ERROR:
+                final IllegalStateException e = new IllegalStateException("Streams are no longer running. State: " + newState);
+                readyFutures.replaceAll((storeName, f) -> {
+                    final CompletableFuture<Void> future = f.isDone() ? new CompletableFuture<>() : f;
+                    future.completeExceptionally(e);
+                    return future;
+                });
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onRestoreStart(TopicPartition topicPartition, String storeName, long startingOffset, long endingOffset) {
+        final RestoreProgress progress = restoreProgress.get(storeName);
+        if (progress != null) {
+            progress.onRestoreStart(topicPartition, endingOffset - startingOffset);
+            LOG.info("Restoring store: {} from: {}. {}", storeName, topicPartition, progress);
+        }
+    }
+
+    @Override
+    public void onBatchRestored(TopicPartition topicPartition, String storeName, long batchEndOffset, long numRestored) {
+        final RestoreProgress progress = restoreProgress.get(storeName);
+        if (progress != null) {
+            progress.onBatchRestored(numRestored);
+            LOG.debug("Restored batch of {} records for store: {} from: {}. {}", numRestored, storeName, topicPartition, progress);
+        }
+    }
+
+    @Override
+    public void onRestoreEnd(TopicPartition topicPartition, String storeName, long totalRestored) {
+        final RestoreProgress progress = restoreProgress.get(storeName);
+        if (progress != null) {
+            progress.onRestoreEnd(topicPartition, totalRestored);
+            LOG.info("Done restoring store: {} from: {}. {}", storeName, topicPartition, progress);
+        }
+    }
+
+    /**
+     * The progress made restoring the partitions of a store from their changelogs.
+     *
+     * The number of records to restore is derived from the offsets, so it is an upper bound when the changelog
+     * is compacted, and is adjusted once the restoration of a partition ends.
+     */
+    public static class RestoreProgress {
+        private final String storeName;
+        private final LongSupplier clock;
+        private final Map<TopicPartition, Long> numRecordsToRestoreByPartition = new ConcurrentHashMap<>();
+
+        private long numRecordsToRestore;
+        private long numRecordsRestored;
+        private int numPartitionsRestoring;
+        private long restoreStartMs = -1;
+
+        private RestoreProgress(String storeName, LongSupplier clock) {
+            this.storeName = storeName;
+            this.clock = clock;
+        }
+
+        private synchronized void onRestoreStart(TopicPartition topicPartition, long numRecords) {
+            if (numPartitionsRestoring == 0) {
+                // Only measure the rate while we're restoring
+                restoreStartMs = clock.getAsLong();
+                numRecordsToRestore -= numRecordsRestored;
+                numRecordsRestored = 0;
+            }
+            numPartitionsRestoring++;
+            numRecordsToRestore += numRecords;
+            numRecordsToRestoreByPartition.put(topicPartition, numRecords);
+        }
+
+        private synchronized void onBatchRestored(long numRestored) {
+            numRecordsRestored += numRestored;
+        }
+
+        private synchronized void onRestoreEnd(TopicPartition topicPartition, long totalRestored) {
+            final Long numRecords = numRecordsToRestoreByPartition.remove(topicPartition);
+            if (numRecords != null) {
+                // There are fewer records than offsets in compacted topics
+                numRecordsToRestore -= numRecords - totalRestored;
+                numPartitionsRestoring--;
+            }
+        }
+
+        public String getStoreName() {
+            return storeName;
+        }
+
+        public synchronized long getNumRecordsToRestore() {
+            return numRecordsToRestore;
+        }
+
+        public synchronized long getNumRecordsRestored() {
+            return numRecordsRestored;
+        }
+
+        public synchronized boolean isRestoring() {
+            return numPartitionsRestoring > 0;
+        }
+
+        /**
+         * @return the fraction of the records that were restored, between 0 and 1
+         */
+        public synchronized double getProgress() {
+            return numRecordsToRestore > 0 ? Math.min(1d, (double)numRecordsRestored / numRecordsToRestore) : 1d;
+        }
+
+        /**
+         * Estimate the time left until the store is restored using the rate at which the records were restored so far.
+         *
+         * @return the estimated time left in milliseconds, 0 if not restoring, or -1 if unknown
+         */
+        public synchronized long getEtaMs() {
+            if (numPartitionsRestoring < 1) {
+                return 0;
+            }
+            final long elapsedMs = clock.getAsLong() - restoreStartMs;
+            if (numRecordsRestored < 1 || elapsedMs < 1) {
+                return -1;
+            }
+            final long numRecordsLeft = Math.max(0, numRecordsToRestore - numRecordsRestored);
+            return (long)(numRecordsLeft * ((double)elapsedMs / numRecordsRestored));
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("Restored %d/%d records (%.1f%%), ETA: %s", numRecordsRestored, numRecordsToRestore,
+                    getProgress() * 100, getEtaMs() >= 0 ? getEtaMs() + "ms" : "unknown");
+        }
+    }
+}
@@ -32,23 +32,38 @@ import java.util.Objects;
 
 import org.apache.kafka.streams.processor.Processor;
 import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
 import org.apache.kafka.streams.state.KeyValueStore;
 import org.opennms.oce.datasource.api.Alarm;
 import org.opennms.oce.datasource.api.AlarmHandler;
+import org.opennms.oce.datasource.common.AlarmBatch;
 import org.opennms.oce.datasource.common.HandlerRegistry;
+import org.opennms.oce.datasource.opennms.AlarmBytes;
 import org.opennms.oce.datasource.opennms.OpennmsDatasource;
-import org.opennms.oce.datasource.opennms.OpennmsMapper;
-import org.opennms.oce.datasource.opennms.proto.OpennmsModelProtos;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class AlarmTableProcessor implements Processor<String, OpennmsModelProtos.Alarm> {
+/**
+ * Maintains the alarm store and forwards the alarms to the handlers.
+ *
+ * When the maximum batch size is greater than 1, the alarms are accumulated and delivered to the handlers in
+ * micro-batches, either once the batch is full, or when the batch interval elapses, whichever comes first.
+ *
+ * The alarms are kept in their serialized form, so these are stored as-is and only the fields
+ * used by the handlers are decoded.
+ */
+public class AlarmTableProcessor implements Processor<String, byte[]> {
     private final Logger LOG = LoggerFactory.getLogger(AlarmTableProcessor.class);
     private final HandlerRegistry<AlarmHandler> alarmHandlers;
-    private KeyValueStore<String, OpennmsModelProtos.Alarm> kvStore;
+    private final int maxBatchSize;
+    private final long batchIntervalMs;
+    private final AlarmBatch batch = new AlarmBatch();
+    private KeyValueStore<String, byte[]> kvStore;
 
-    public AlarmTableProcessor(HandlerRegistry<AlarmHandler> alarmHandlers) {
+    public AlarmTableProcessor(HandlerRegistry<AlarmHandler> alarmHandlers, int maxBatchSize, long batchIntervalMs) {
         this.alarmHandlers = Objects.requireNonNull(alarmHandlers);
+        this.maxBatchSize = maxBatchSize;
+        this.batchIntervalMs = batchIntervalMs;
     }
 
     @Override
@@ -56,37 +71,41 @@ public class AlarmTableProcessor implements Processor<String, OpennmsModelProtos
     public void init(ProcessorContext context) {
         // retrieve the key-value store
         kvStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.ALARM_STORE);
+        if (maxBatchSize > 1) {
+            // deliver partial batches periodically
+            context.schedule(batchIntervalMs, PunctuationType.WALL_CLOCK_TIME, timestamp -> flush());
+        }
     }
 
     @Override
-    public void process(String reductionKey, OpennmsModelProtos.Alarm alarm) {
-        if (alarm != null) {
-            kvStore.put(reductionKey, alarm);
-            final Alarm mappedAlarm = OpennmsMapper.toAlarm(alarm);
-            alarmHandlers.forEach(h -> {
-                try {
-                    h.onAlarmCreatedOrUpdated(mappedAlarm);
-                } catch (Exception e) {
-                    LOG.error("onAlarmCreatedOrUpdated() call failed with alarm: {} on handler: {}", mappedAlarm, h, e);
-                }
-            });
+    public void process(String reductionKey, byte[] alarmBytes) {
+        if (alarmBytes != null) {
+            kvStore.put(reductionKey, alarmBytes);
+            batch.addCreatedOrUpdated(AlarmBytes.toAlarm(alarmBytes));
         } else {
-            final OpennmsModelProtos.Alarm prevAlarm = kvStore.delete(reductionKey);
-            if (prevAlarm != null) {
-                final Alarm mappedAlarm = OpennmsMapper.toAlarm(prevAlarm);
-                alarmHandlers.forEach(h -> {
-                    try {
-                        h.onAlarmCleared(mappedAlarm);
-                    } catch (Exception e) {
-                        LOG.error("onAlarmCleared() call failed with alarm: {} on handler: {}", mappedAlarm, h, e);
-                    }
-                });
+            final byte[] prevAlarmBytes = kvStore.delete(reductionKey);
+            if (prevAlarmBytes != null) {
+                batch.addCleared(AlarmBytes.toAlarm(prevAlarmBytes));
             }
         }
+        if (batch.size() >= maxBatchSize) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        LOG.debug("Delivering batch of {} alarms.", batch.size());
+        // failures are isolated to the alarms that caused them by the batch
+        alarmHandlers.forEach(batch::deliverTo);
+        batch.clear();
     }
 
     @Override
     public void close() {
-        // pass, no external resources managed by this processor
+        // deliver any remaining alarms, no external resources managed by this processor
+        flush();
     }
 }
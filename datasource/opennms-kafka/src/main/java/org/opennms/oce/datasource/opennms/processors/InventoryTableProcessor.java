@@ -30,15 +30,8 @@ package org.opennms.oce.datasource.opennms.processors;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.processor.Processor;
@@ -61,6 +54,16 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Strings;
 
+/**
+ * Maintains the inventory store, and notifies the handlers when inventory objects are first referenced,
+ * and when these are no longer referenced by any of the entries in the store.
+ *
+ * Deleted entries are kept until their TTL expires. The keys of these entries are indexed by expiry time in
+ * {@link OpennmsDatasource#INVENTORY_EXPIRY_STORE}, so that the garbage collection only visits the entries
+ * that are due. The number of entries referencing each inventory object is kept in
+ * {@link OpennmsDatasource#INVENTORY_REFERENCE_STORE}, which is restored along with the inventory store
+ * instead of being rebuilt by scanning it.
+ */
 public class InventoryTableProcessor implements Processor<String, InventoryModelProtos.InventoryObjects> {
     private static final Logger LOG = LoggerFactory.getLogger(InventoryTableProcessor.class);
 
@@ -70,10 +73,8 @@ public class InventoryTableProcessor implements Processor<String, InventoryModel
 
     private ProcessorContext context;
     private KeyValueStore<String, InventoryModelProtos.InventoryObjects> kvStore;
-
-    private final Map<ResourceKey, AtomicInteger> inventoryReferences =
-            new ConcurrentHashMap<>();
-    private final CountDownLatch initLock = new CountDownLatch(1);
+    private KeyValueStore<String, String> expiryStore;
+    private KeyValueStore<String, Integer> referenceStore;
 
     public InventoryTableProcessor(HandlerRegistry<InventoryHandler> inventoryHandlers, long inventoryGcIntervalMs, long inventoryTtlMs) {
         this.inventoryHandlers = Objects.requireNonNull(inventoryHandlers);
@@ -87,123 +88,132 @@ public class InventoryTableProcessor implements Processor<String, InventoryModel
         // keep the processor context locally because we need it in punctuate() and commit()
         this.context = context;
 
-        try {
-            // retrieve the key-value store
-            kvStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.INVENTORY_STORE);
-            kvStore.all().forEachRemaining(this::initReferences);
-        } finally {
-            initLock.countDown();
+        // retrieve the key-value stores
+        kvStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.INVENTORY_STORE);
+        expiryStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.INVENTORY_EXPIRY_STORE);
+        referenceStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.INVENTORY_REFERENCE_STORE);
+
+        // The references and expiry index are missing when upgrading from a version that did not persist these
+        if (isEmpty(referenceStore) && !isEmpty(kvStore)) {
+            LOG.info("Rebuilding the inventory references and expiry index.");
+            try (KeyValueIterator<String, InventoryModelProtos.InventoryObjects> iter = kvStore.all()) {
+                iter.forEachRemaining(entry -> {
+                    retain(entry.value);
+                    if (entry.value.getExpiresAt() > 0) {
+                        expiryStore.put(toExpiryKey(entry.value.getExpiresAt(), entry.key), entry.key);
+                    }
+                });
+            }
         }
 
         // schedule a punctuate() method based on clock time
         this.context.schedule(inventoryGcIntervalMs, PunctuationType.WALL_CLOCK_TIME, this::onPunctuate);
     }
-    
-    private void initReferences(KeyValue<String, InventoryModelProtos.InventoryObjects> keyValue) {
-        keyValue.value.getInventoryObjectList().forEach(io -> recordReference(toInventory(io)));
-    }
-    
+
     private void onPunctuate(long timestamp) {
         LOG.debug("onPunctuate({})", timestamp);
-        final Set<String> keysToDelete = new HashSet<>();
-        try (KeyValueIterator<String, InventoryModelProtos.InventoryObjects> iter = this.kvStore.all()) {
-            while (iter.hasNext()) {
-                KeyValue<String, InventoryModelProtos.InventoryObjects> entry = iter.next();
-                if (entry.value.getExpiresAt() > 0 && entry.value.getExpiresAt() <= timestamp) {
-                    LOG.debug("Deleting expired inventory for key: {} with expiry: {} at: {}", entry.key, entry.value.getExpiresAt(), timestamp);
-                    keysToDelete.add(entry.key);
-                }
-            }
+        // Only visit the entries that are due
+        final List<KeyValue<String, String>> expiredKeys = new ArrayList<>();
+        try (KeyValueIterator<String, String> iter = expiryStore.range(toExpiryKey(0, ""), toExpiryUpperBound(timestamp))) {
+            iter.forEachRemaining(expiredKeys::add);
         }
 
         final List<InventoryModelProtos.InventoryObjects> inventoryObjects = new ArrayList<>();
-        keysToDelete.forEach(key -> {
-            final InventoryModelProtos.InventoryObjects deletedIos = this.kvStore.delete(key);
-            if (deletedIos != null) {
-                inventoryObjects.add(deletedIos);
+        for (KeyValue<String, String> expiredKey : expiredKeys) {
+            expiryStore.delete(expiredKey.key);
+            final String key = expiredKey.value;
+            final InventoryModelProtos.InventoryObjects ios = kvStore.get(key);
+            // The entry may have been replaced since it was indexed
+            if (ios != null && ios.getExpiresAt() > 0 && ios.getExpiresAt() <= timestamp) {
+                LOG.debug("Deleting expired inventory for key: {} with expiry: {} at: {}", key, ios.getExpiresAt(), timestamp);
+                kvStore.delete(key);
+                inventoryObjects.add(ios);
             }
-        });
+        }
 
         if (inventoryObjects.size() > 0) {
             // Only notify handlers of a removal for inventory that is no longer referenced
-            List<InventoryObject> inventoryToDelete = toInventory(inventoryObjects).stream()
-                    .filter(io -> {
-                        ResourceKey id = new ResourceKey(io.getId(), io.getType());
-                        AtomicInteger references = inventoryReferences.get(id);
-
-                        if (references.decrementAndGet() > 0) {
-                            LOG.trace("Inventory object {} references decreased to {}", io, references);
-
-                            return false;
-                        }
-
-                        LOG.debug("Inventory object {} is no longer referenced and will be removed", io);
-                        inventoryReferences.remove(id);
-
-                        return true;
-                    })
-                    .collect(Collectors.toList());
-
-            if (!inventoryToDelete.isEmpty()) {
-                inventoryHandlers.forEach(h -> {
-                    try {
-                        h.onInventoryRemoved(inventoryToDelete);
-                    } catch (Exception e) {
-                        LOG.error("onInventoryRemoved() call failed with inventory: {} on handler: {}",
-                                inventoryObjects, h, e);
-                    }
-                });
-            }
+            final List<InventoryObject> inventoryToDelete = new ArrayList<>();
+            inventoryObjects.forEach(ios -> inventoryToDelete.addAll(release(ios)));
+            notifyRemoved(inventoryToDelete, inventoryObjects);
         }
 
         // commit the current processing progress
         context.commit();
     }
-    
-    private boolean recordReference(InventoryObject inventoryObject) {
-        ResourceKey id = new ResourceKey(inventoryObject.getId(), inventoryObject.getType());
-        AtomicInteger references = inventoryReferences.putIfAbsent(id, new AtomicInteger(1));
 
-        if (references == null) {
-            LOG.trace("Inventory object {} is new and will be added", id);
-
-            return true;
+    /**
+     * Increment the references to the inventory objects in the given entry.
+     *
+     * @return the inventory objects that were not referenced before
+     */
+    private List<InventoryObject> retain(InventoryModelProtos.InventoryObjects ios) {
+        final List<InventoryObject> newInventory = new ArrayList<>();
+        for (InventoryModelProtos.InventoryObject io : ios.getInventoryObjectList()) {
+            final String referenceKey = toReferenceKey(io);
+            final Integer references = referenceStore.get(referenceKey);
+            if (references == null) {
+                LOG.trace("Inventory object {} is new and will be added", referenceKey);
+                referenceStore.put(referenceKey, 1);
+                newInventory.add(toInventory(io));
+            } else {
+                LOG.trace("Inventory object {} references increased to {}", referenceKey, references + 1);
+                referenceStore.put(referenceKey, references + 1);
+            }
         }
+        return newInventory;
+    }
 
-        references.incrementAndGet();
-        LOG.trace("Inventory object {} references increased to {}", inventoryObject, references);
-
-        return false;
+    /**
+     * Decrement the references to the inventory objects in the given entry.
+     *
+     * @return the inventory objects that are no longer referenced
+     */
+    private List<InventoryObject> release(InventoryModelProtos.InventoryObjects ios) {
+        final List<InventoryObject> removedInventory = new ArrayList<>();
+        for (InventoryModelProtos.InventoryObject io : ios.getInventoryObjectList()) {
+            final String referenceKey = toReferenceKey(io);
+            final Integer references = referenceStore.get(referenceKey);
+            if (references == null) {
+                LOG.warn("Inventory object {} was released, but is not referenced.", referenceKey);
+            } else if (references > 1) {
+                LOG.trace("Inventory object {} references decreased to {}", referenceKey, references - 1);
+                referenceStore.put(referenceKey, references - 1);
+            } else {
+                LOG.debug("Inventory object {} is no longer referenced and will be removed", referenceKey);
+                referenceStore.delete(referenceKey);
+                removedInventory.add(toInventory(io));
+            }
+        }
+        return removedInventory;
     }
 
     @Override
     public void process(String key, InventoryModelProtos.InventoryObjects inventory) {
-        try {
-            initLock.await();
-        } catch (InterruptedException e) {
-            LOG.debug("Interrupted while waiting for init lock to unlock, skipping processing");
-            Thread.currentThread().interrupt();
-
-            return;
+        final InventoryModelProtos.InventoryObjects previousInventory = this.kvStore.get(key);
+        if (previousInventory != null && previousInventory.getExpiresAt() > 0) {
+            this.expiryStore.delete(toExpiryKey(previousInventory.getExpiresAt(), key));
         }
 
         if (inventory == null) {
-            final InventoryModelProtos.InventoryObjects ios = this.kvStore.get(key);
-            if (ios == null) {
+            if (previousInventory == null) {
                 LOG.info("No inventory found for key: {}", key);
             } else {
-                this.kvStore.put(key, InventoryModelProtos.InventoryObjects.newBuilder(ios)
-                        .setExpiresAt(context.timestamp() + inventoryTtlMs)
+                final long expiresAt = context.timestamp() + inventoryTtlMs;
+                this.kvStore.put(key, InventoryModelProtos.InventoryObjects.newBuilder(previousInventory)
+                        .setExpiresAt(expiresAt)
                         .build());
+                this.expiryStore.put(toExpiryKey(expiresAt, key), key);
             }
         } else {
             this.kvStore.put(key, inventory);
+            if (inventory.getExpiresAt() > 0) {
+                this.expiryStore.put(toExpiryKey(inventory.getExpiresAt(), key), key);
+            }
 
-            // Only handle inventory that has not been referenced before
-            List<InventoryObject> newInventory = toInventory(Collections.singletonList(inventory)).stream()
-                    .filter(this::recordReference)
-                    .collect(Collectors.toList());
-
+            // Only handle inventory that has not been referenced before, and retain the new entry before
+            // releasing the previous one so that the objects they have in common are not removed
+            final List<InventoryObject> newInventory = retain(inventory);
             if (!newInventory.isEmpty()) {
                 inventoryHandlers.forEach(h -> {
                     try {
@@ -213,6 +223,22 @@ public class InventoryTableProcessor implements Processor<String, InventoryModel
                     }
                 });
             }
+            if (previousInventory != null) {
+                notifyRemoved(release(previousInventory), Collections.singletonList(previousInventory));
+            }
+        }
+    }
+
+    private void notifyRemoved(List<InventoryObject> inventoryToDelete, List<InventoryModelProtos.InventoryObjects> inventoryObjects) {
+        if (!inventoryToDelete.isEmpty()) {
+            inventoryHandlers.forEach(h -> {
+                try {
+                    h.onInventoryRemoved(inventoryToDelete);
+                } catch (Exception e) {
+                    LOG.error("onInventoryRemoved() call failed with inventory: {} on handler: {}",
+                            inventoryObjects, h, e);
+                }
+            });
         }
     }
 
@@ -221,6 +247,38 @@ public class InventoryTableProcessor implements Processor<String, InventoryModel
         // pass, no external resources managed by this processor
     }
 
+    /**
+     * Build the key used to index the entry in the expiry store.
+     *
+     * The expiry time is zero-padded so that the keys sort by time.
+     */
+    static String toExpiryKey(long expiresAt, String key) {
+        return String.format("%019d:%s", expiresAt, key);
+    }
+
+    /**
+     * @return a key that sorts after all of the keys that expire at, or before the given time
+     */
+    static String toExpiryUpperBound(long timestamp) {
+        // ';' comes right after ':'
+        return String.format("%019d;", timestamp);
+    }
+
+    /**
+     * Build the key used to count the references to the inventory object.
+     *
+     * The type comes first since, unlike the id, it does not contain any colons.
+     */
+    static String toReferenceKey(InventoryModelProtos.InventoryObject io) {
+        return io.getType() + ":" + io.getId();
+    }
+
+    private static boolean isEmpty(KeyValueStore<?, ?> store) {
+        try (KeyValueIterator<?, ?> iter = store.all()) {
+            return !iter.hasNext();
+        }
+    }
+
     public static List<InventoryObject> toInventory(List<InventoryModelProtos.InventoryObjects> listOfIos) {
         final List<InventoryObject> inventory = new ArrayList<>();
         for (InventoryModelProtos.InventoryObjects ios : listOfIos) {
@@ -231,7 +289,7 @@ public class InventoryTableProcessor implements Processor<String, InventoryModel
         return inventory;
     }
 
-    private static InventoryObject toInventory(InventoryModelProtos.InventoryObject io) {
+    public static InventoryObject toInventory(InventoryModelProtos.InventoryObject io) {
         final ImmutableInventoryObject.Builder ioBuilder = ImmutableInventoryObject.newBuilder()
                 .setId(io.getId())
                 .setType(io.getType());
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.oce.datasource.opennms.proto.OpennmsModelProtos;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+public class AlarmBytesTest {
+
+    @Test
+    public void canMapSerializedAlarms() {
+        final List<OpennmsModelProtos.Alarm> alarms = Arrays.asList(
+                OpennmsModelProtos.Alarm.newBuilder().build(),
+                OpennmsModelProtos.Alarm.newBuilder()
+                        .setReductionKey("nodeLostService::1")
+                        .setLastEventTime(2)
+                        .setSeverity(OpennmsModelProtos.Severity.CRITICAL)
+                        .setDescription("description")
+                        .setLogMessage("log message")
+                        .setNodeCriteria(OpennmsModelProtos.NodeCriteria.newBuilder()
+                                .setForeignSource("FS")
+                                .setForeignId("FID")
+                                .setId(22)
+                                .build())
+                        .build(),
+                // Node criteria without an id
+                OpennmsModelProtos.Alarm.newBuilder()
+                        .setReductionKey("nodeDown::2")
+                        .setNodeCriteria(OpennmsModelProtos.NodeCriteria.newBuilder()
+                                .setForeignSource("FS")
+                                .build())
+                        .build(),
+                MockNetwork.createNodeDownAlarmFor(MockNetwork.getNode1()),
+                MockNetwork.createSnmpInterfaceDownAlarmFor(MockNetwork.getNode1(), 2),
+                MockNetwork.createSnmpInterfaceLinkDownAlarmFor(MockNetwork.getNode1(), 1, MockNetwork.getNode2(), 11),
+                MockNetwork.createBgpPeerAlarmFor(MockNetwork.getNode2(), "10.0.0.1", "vrf1"),
+                // Situations carry the related alarms, which should be skipped
+                OpennmsModelProtos.Alarm.newBuilder()
+                        .setReductionKey("uei.opennms.org/alarms/trigger::1")
+                        .setSeverity(OpennmsModelProtos.Severity.MAJOR)
+                        .addRelatedAlarm(MockNetwork.createNodeDownAlarmFor(MockNetwork.getNode1()))
+                        .addRelatedAlarm(MockNetwork.createNodeDownAlarmFor(MockNetwork.getNode2()))
+                        .build());
+
+        for (OpennmsModelProtos.Alarm alarm : alarms) {
+            assertThat(AlarmBytes.toAlarm(alarm.toByteArray()), equalTo(OpennmsMapper.toAlarm(alarm)));
+        }
+    }
+
+    @Test
+    public void canMapRepeatedFields() throws InvalidProtocolBufferException {
+        final OpennmsModelProtos.Alarm first = OpennmsModelProtos.Alarm.newBuilder()
+                .setReductionKey("nodeDown::1")
+                .setSeverity(OpennmsModelProtos.Severity.MAJOR)
+                .setNodeCriteria(OpennmsModelProtos.NodeCriteria.newBuilder()
+                        .setId(1)
+                        .setForeignSource("FS")
+                        .build())
+                .build();
+        final OpennmsModelProtos.Alarm second = OpennmsModelProtos.Alarm.newBuilder()
+                .setSeverity(OpennmsModelProtos.Severity.MINOR)
+                .setNodeCriteria(OpennmsModelProtos.NodeCriteria.newBuilder()
+                        .setForeignId("FID")
+                        .build())
+                .build();
+
+        // Concatenating messages merges these
+        final byte[] bytes = concat(first.toByteArray(), second.toByteArray());
+        final OpennmsModelProtos.Alarm merged = OpennmsModelProtos.Alarm.parseFrom(bytes);
+        assertThat(merged.getNodeCriteria().getId(), equalTo(1L));
+        assertThat(AlarmBytes.toAlarm(bytes), equalTo(OpennmsMapper.toAlarm(merged)));
+        assertThat(AlarmBytes.toEnrichmentAlarm(bytes).getNodeCriteria(), equalTo(merged.getNodeCriteria()));
+    }
+
+    /**
+     * Verifies that the default script enriches the alarms decoded for enrichment
+     * in the same way as the fully parsed alarms.
+     */
+    @Test
+    public void canDecodeFieldsUsedForEnrichment() {
+        final OpennmsKafkaScriptedInventory inventoryService = OpennmsKafkaScriptedInventory.withDefaults();
+        assertThat(inventoryService.isUsingDefaultScript(), equalTo(true));
+        final AlarmToInventory alarmToInventory = new AlarmToInventory(inventoryService);
+
+        final List<OpennmsModelProtos.Alarm> alarms = Arrays.asList(
+                OpennmsModelProtos.Alarm.newBuilder().build(),
+                MockNetwork.createNodeDownAlarmFor(MockNetwork.getNode1()),
+                MockNetwork.createSnmpInterfaceDownAlarmFor(MockNetwork.getNode1(), 2),
+                MockNetwork.createSnmpInterfaceLinkDownAlarmFor(MockNetwork.getNode1(), 1, MockNetwork.getNode2(), 11),
+                MockNetwork.createBgpPeerAlarmFor(MockNetwork.getNode2(), "10.0.0.1", "vrf1"));
+        for (OpennmsModelProtos.Alarm alarm : alarms) {
+            final byte[] bytes = alarm.toByteArray();
+            final OpennmsModelProtos.Alarm decoded = AlarmBytes.toEnrichmentAlarm(bytes);
+            assertThat(decoded.getReductionKey(), equalTo(alarm.getReductionKey()));
+            assertThat(decoded.getManagedObjectType(), equalTo(alarm.getManagedObjectType()));
+            assertThat(decoded.getManagedObjectInstance(), equalTo(alarm.getManagedObjectInstance()));
+            assertThat(decoded.getNodeCriteria(), equalTo(alarm.getNodeCriteria()));
+
+            final EnrichedAlarm expected = alarmToInventory.enrichAlarm(alarm);
+            final EnrichedAlarm actual = alarmToInventory.enrichAlarm(bytes);
+            assertThat(actual.getInventory(), equalTo(expected.getInventory()));
+            assertThat(actual.getManagedObjectType(), equalTo(expected.getManagedObjectType()));
+            assertThat(actual.getManagedObjectInstance(), equalTo(expected.getManagedObjectInstance()));
+        }
+    }
+
+    @Test
+    public void canOverrideManagedObject() throws InvalidProtocolBufferException {
+        final OpennmsModelProtos.Alarm alarm = MockNetwork.createSnmpInterfaceDownAlarmFor(MockNetwork.getNode1(), 2);
+
+        final byte[] bytes = AlarmBytes.withManagedObject(alarm.toByteArray(), "type", "instance");
+        final OpennmsModelProtos.Alarm expectedAlarm = alarm.toBuilder()
+                .setManagedObjectType("type")
+                .setManagedObjectInstance("instance")
+                .build();
+        assertThat(OpennmsModelProtos.Alarm.parseFrom(bytes), equalTo(expectedAlarm));
+        assertThat(AlarmBytes.toAlarm(bytes), equalTo(OpennmsMapper.toAlarm(expectedAlarm)));
+
+        // Only override the type
+        assertThat(OpennmsModelProtos.Alarm.parseFrom(AlarmBytes.withManagedObject(alarm.toByteArray(), "type", null)),
+                equalTo(alarm.toBuilder().setManagedObjectType("type").build()));
+
+        // Nothing to override
+        final byte[] alarmBytes = alarm.toByteArray();
+        assertThat(AlarmBytes.withManagedObject(alarmBytes, null, null), equalTo(alarmBytes));
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        final byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.opennms.oce.datasource.opennms.OpennmsMapper.toNodeCriteria;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.test.ConsumerRecordFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.oce.datasource.api.Alarm;
+import org.opennms.oce.datasource.api.AlarmHandler;
+import org.opennms.oce.datasource.opennms.proto.OpennmsModelProtos;
+import org.opennms.oce.datasource.opennms.serialization.AlarmSerializer;
+import org.opennms.oce.datasource.opennms.serialization.NodeSerializer;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+/**
+ * Verifies how the alarms are batched before being delivered to the handlers.
+ */
+public class OpennmsDatasourceAlarmBatchTest implements AlarmHandler {
+
+    private static final int BATCH_SIZE = 3;
+    private static final long BATCH_INTERVAL_MS = 1000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ConsumerRecordFactory<String, OpennmsModelProtos.Alarm> alarmRecordFactory =
+            new ConsumerRecordFactory<>(new StringSerializer(), new AlarmSerializer());
+    private final ConsumerRecordFactory<String, OpennmsModelProtos.Node> nodeRecordFactory =
+            new ConsumerRecordFactory<>(new StringSerializer(), new NodeSerializer());
+
+    private final List<String> batches = new ArrayList<>();
+
+    private OpennmsDatasource datasource;
+    private TopologyTestDriver testDriver;
+
+    @Before
+    public void setUp() throws IOException {
+        ConfigurationAdmin configAdmin = mock(ConfigurationAdmin.class, RETURNS_DEEP_STUBS);
+        ScriptedInventoryService inventoryService = OpennmsKafkaScriptedInventory.withDefaults();
+        datasource = new OpennmsDatasource(configAdmin, new NodeToInventory(inventoryService),
+                new AlarmToInventory(inventoryService), new EdgeToInventory(inventoryService));
+        datasource.setAlarmBatchSize(BATCH_SIZE);
+        datasource.setAlarmBatchIntervalMs(BATCH_INTERVAL_MS);
+        datasource.registerHandler(this);
+
+        Properties props = datasource.loadStreamsProperties();
+        Topology topology = datasource.getKTopology(new StateStoreConfig(props));
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, temporaryFolder.newFolder().getAbsolutePath());
+        testDriver = new TopologyTestDriver(topology, props, 0);
+    }
+
+    @After
+    public void tearDown() {
+        if (testDriver != null) {
+            testDriver.close();
+        }
+    }
+
+    @Test
+    public void canDeliverAlarmsInBatches() {
+        final OpennmsModelProtos.Node node = MockNetwork.getNode1();
+        testDriver.pipeInput(nodeRecordFactory.create(datasource.getNodeTopic(), toNodeCriteria(node), node, 1));
+
+        // The batch is delivered once it is full
+        final List<OpennmsModelProtos.Alarm> alarms = new ArrayList<>();
+        for (int ifIndex = 1; ifIndex <= BATCH_SIZE; ifIndex++) {
+            assertThat(batches, empty());
+            final OpennmsModelProtos.Alarm alarm = MockNetwork.createSnmpInterfaceDownAlarmFor(node, ifIndex, 1);
+            testDriver.pipeInput(alarmRecordFactory.create(datasource.getAlarmTopic(), alarm.getReductionKey(), alarm, 1));
+            alarms.add(alarm);
+        }
+        assertThat(batches, contains("updated:3"));
+
+        // Partial batches are delivered when the interval elapses, and keep the order of the updates and clears
+        final OpennmsModelProtos.Alarm alarm = MockNetwork.createSnmpInterfaceDownAlarmFor(node, BATCH_SIZE + 1, 2);
+        testDriver.pipeInput(alarmRecordFactory.create(datasource.getAlarmTopic(), alarm.getReductionKey(), alarm, 2));
+        testDriver.pipeInput(alarmRecordFactory.create(datasource.getAlarmTopic(), alarms.get(0).getReductionKey(), null, 2));
+        assertThat(batches, contains("updated:3"));
+
+        testDriver.advanceWallClockTime(BATCH_INTERVAL_MS);
+        assertThat(batches, contains("updated:3", "updated:1", "cleared:1"));
+
+        // Nothing left to deliver
+        testDriver.advanceWallClockTime(BATCH_INTERVAL_MS);
+        assertThat(batches, contains("updated:3", "updated:1", "cleared:1"));
+    }
+
+    @Override
+    public void onAlarmCreatedOrUpdated(Alarm alarm) {
+        throw new UnsupportedOperationException("Alarms should be delivered in batches.");
+    }
+
+    @Override
+    public void onAlarmCleared(Alarm alarm) {
+        throw new UnsupportedOperationException("Alarms should be delivered in batches.");
+    }
+
+    @Override
+    public void onAlarmsCreatedOrUpdated(Collection<Alarm> alarms) {
+        batches.add("updated:" + alarms.size());
+    }
+
+    @Override
+    public void onAlarmsCleared(Collection<Alarm> alarms) {
+        batches.add("cleared:" + alarms.size());
+    }
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.test.ConsumerRecordFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.oce.datasource.api.InventoryHandler;
+import org.opennms.oce.datasource.api.InventoryObject;
+import org.opennms.oce.datasource.opennms.proto.InventoryModelProtos;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * Verifies how the inventory is garbage collected, and how the inventory handlers are notified.
+ */
+public class OpennmsDatasourceInventoryTest implements InventoryHandler {
+
+    private static final long STEP = 10000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ConsumerRecordFactory<String, byte[]> inventoryRecordFactory =
+            new ConsumerRecordFactory<>(new StringSerializer(), new ByteArraySerializer());
+
+    private final List<String> addedInventory = new ArrayList<>();
+    private final List<String> removedInventory = new ArrayList<>();
+
+    private OpennmsDatasource datasource;
+    private TopologyTestDriver testDriver;
+    private KeyValueStore<String, InventoryModelProtos.InventoryObjects> inventoryStore;
+    private KeyValueStore<String, String> expiryStore;
+    private KeyValueStore<String, Integer> referenceStore;
+
+    @Before
+    public void setUp() throws IOException {
+        ConfigurationAdmin configAdmin = mock(ConfigurationAdmin.class, RETURNS_DEEP_STUBS);
+        ScriptedInventoryService inventoryService = OpennmsKafkaScriptedInventory.withDefaults();
+        datasource = new OpennmsDatasource(configAdmin, new NodeToInventory(inventoryService),
+                new AlarmToInventory(inventoryService), new EdgeToInventory(inventoryService));
+        datasource.setInventoryTtlMs(STEP - 1);
+        datasource.setInventoryGcIntervalMs(STEP);
+        datasource.registerHandler(this);
+
+        Properties props = datasource.loadStreamsProperties();
+        Topology topology = datasource.getKTopology(new StateStoreConfig(props));
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, temporaryFolder.newFolder().getAbsolutePath());
+        testDriver = new TopologyTestDriver(topology, props, 0);
+
+        inventoryStore = testDriver.getKeyValueStore(OpennmsDatasource.INVENTORY_STORE);
+        expiryStore = testDriver.getKeyValueStore(OpennmsDatasource.INVENTORY_EXPIRY_STORE);
+        referenceStore = testDriver.getKeyValueStore(OpennmsDatasource.INVENTORY_REFERENCE_STORE);
+    }
+
+    @After
+    public void tearDown() {
+        if (testDriver != null) {
+            testDriver.close();
+        }
+    }
+
+    @Test
+    public void canCountReferencesAndExpireInventory() {
+        final InventoryModelProtos.InventoryObject node = inventoryObject("Node", "n1");
+        final InventoryModelProtos.InventoryObject snmpInterface = inventoryObject("SnmpInterface", "n1:if1");
+
+        // Add a node and its interface, and an alarm referencing the same interface
+        long t = STEP;
+        pipeInventory("node:n1", t, node, snmpInterface);
+        pipeInventory("alarm:a1", t, snmpInterface);
+        assertThat(addedInventory, containsInAnyOrder("Node:n1", "SnmpInterface:n1:if1"));
+        assertThat(referenceStore.get("SnmpInterface:n1:if1"), equalTo(2));
+        assertThat(Iterators.size(expiryStore.all()), equalTo(0));
+
+        // Replacing an entry with the same inventory should not change the references
+        pipeInventory("alarm:a1", t, snmpInterface);
+        assertThat(referenceStore.get("SnmpInterface:n1:if1"), equalTo(2));
+
+        // The interface is still referenced by the alarm when it is dropped from the node
+        pipeInventory("node:n1", t, node);
+        assertThat(referenceStore.get("Node:n1"), equalTo(1));
+        assertThat(referenceStore.get("SnmpInterface:n1:if1"), equalTo(1));
+        assertThat(removedInventory, empty());
+
+        // Delete the alarm, the entry is indexed but kept until it expires
+        pipeInventory("alarm:a1", t);
+        assertThat(Iterators.size(expiryStore.all()), equalTo(1));
+        assertThat(inventoryStore.get("alarm:a1").getExpiresAt(), equalTo(t + STEP - 1));
+        testDriver.advanceWallClockTime(STEP);
+        assertThat(removedInventory, empty());
+
+        testDriver.advanceWallClockTime(STEP);
+        assertThat(removedInventory, containsInAnyOrder("SnmpInterface:n1:if1"));
+        assertThat(inventoryStore.get("alarm:a1"), nullValue());
+        assertThat(referenceStore.get("SnmpInterface:n1:if1"), nullValue());
+        assertThat(Iterators.size(expiryStore.all()), equalTo(0));
+    }
+
+    @Test
+    public void canRestoreInventoryBeforeItExpires() {
+        final InventoryModelProtos.InventoryObject node = inventoryObject("Node", "n1");
+
+        long t = STEP;
+        pipeInventory("node:n1", t, node);
+        pipeInventory("node:n1", t);
+        assertThat(Iterators.size(expiryStore.all()), equalTo(1));
+
+        // Add it back before it expires
+        pipeInventory("node:n1", t, node);
+        assertThat(Iterators.size(expiryStore.all()), equalTo(0));
+
+        testDriver.advanceWallClockTime(STEP);
+        testDriver.advanceWallClockTime(STEP);
+        assertThat(addedInventory, containsInAnyOrder("Node:n1"));
+        assertThat(removedInventory, empty());
+        assertThat(inventoryStore.get("node:n1").getExpiresAt(), equalTo(0L));
+        assertThat(referenceStore.get("Node:n1"), equalTo(1));
+    }
+
+    private void pipeInventory(String key, long timestamp, InventoryModelProtos.InventoryObject... inventoryObjects) {
+        final byte[] value;
+        if (inventoryObjects.length < 1) {
+            value = null;
+        } else {
+            final InventoryModelProtos.InventoryObjects.Builder ios = InventoryModelProtos.InventoryObjects.newBuilder();
+            for (InventoryModelProtos.InventoryObject io : inventoryObjects) {
+                ios.addInventoryObject(io);
+            }
+            value = ios.build().toByteArray();
+        }
+        testDriver.pipeInput(inventoryRecordFactory.create(datasource.getInventoryTopic(), key, value, timestamp));
+    }
+
+    private static InventoryModelProtos.InventoryObject inventoryObject(String type, String id) {
+        return InventoryModelProtos.InventoryObject.newBuilder()
+                .setType(type)
+                .setId(id)
+                .build();
+    }
+
+    private static List<String> toKeys(Collection<InventoryObject> inventoryObjects) {
+        return inventoryObjects.stream()
+                .map(io -> io.getType() + ":" + io.getId())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void onInventoryAdded(Collection<InventoryObject> inventoryObjects) {
+        addedInventory.addAll(toKeys(inventoryObjects));
+    }
+
+    @Override
+    public void onInventoryRemoved(Collection<InventoryObject> inventoryObjects) {
+        removedInventory.addAll(toKeys(inventoryObjects));
+    }
+}
@@ -38,6 +38,7 @@ import static org.opennms.oce.datasource.opennms.OpennmsMapper.toNodeCriteria;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -53,6 +54,8 @@ import org.apache.kafka.streams.test.ConsumerRecordFactory;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 import org.opennms.oce.datasource.api.ResourceKey;
 import org.opennms.oce.datasource.common.inventory.ManagedObjectType;
 import org.opennms.oce.datasource.opennms.proto.InventoryModelProtos;
@@ -63,8 +66,22 @@ import org.osgi.service.cm.ConfigurationAdmin;
 
 import com.google.common.collect.Iterators;
 
+@RunWith(Parameterized.class)
 public class OpennmsDatasourceStoreTest {
 
+    @Parameterized.Parameters(name = "{index}: storeType({0})")
+    public static Iterable<Object[]> data() {
+        return Arrays.stream(StateStoreConfig.StoreType.values())
+                .map(storeType -> new Object[]{storeType})
+                .collect(Collectors.toList());
+    }
+
+    private final StateStoreConfig.StoreType storeType;
+
+    public OpennmsDatasourceStoreTest(StateStoreConfig.StoreType storeType) {
+        this.storeType = storeType;
+    }
+
     KeyValueStore<String, InventoryModelProtos.InventoryObjects> inventoryStore;
 
     @Rule
@@ -88,8 +105,9 @@ public class OpennmsDatasourceStoreTest {
         datasource.setInventoryTtlMs(step-1);
         datasource.setInventoryGcIntervalMs(step);
 
-        Topology topology = datasource.getKTopology();
         Properties props = datasource.loadStreamsProperties();
+        props.put(StateStoreConfig.PREFIX + StateStoreConfig.TYPE, storeType.getName());
+        Topology topology = datasource.getKTopology(new StateStoreConfig(props));
         props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test");
         props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
         props.put(StreamsConfig.STATE_DIR_CONFIG, temporaryFolder.newFolder().getAbsolutePath());
@@ -97,8 +115,10 @@ public class OpennmsDatasourceStoreTest {
 
         inventoryStore = testDriver.getKeyValueStore(OpennmsDatasource.INVENTORY_STORE);
         assertThat(inventoryStore, notNullValue());
+        // The inventory store is never evicted from, so it stays persistent when LRU is set for all of the stores
+        assertThat(inventoryStore.persistent(), equalTo(storeType != StateStoreConfig.StoreType.IN_MEMORY));
 
-        final KeyValueStore<String, OpennmsModelProtos.Alarm> alarmStore = testDriver.getKeyValueStore(OpennmsDatasource.ALARM_STORE);
+        final KeyValueStore<String, byte[]> alarmStore = testDriver.getKeyValueStore(OpennmsDatasource.ALARM_STORE);
         assertThat(alarmStore, notNullValue());
 
         final KeyValueStore<String, OpennmsModelProtos.Alarm> situationStore = testDriver.getKeyValueStore(OpennmsDatasource.SITUATION_STORE);
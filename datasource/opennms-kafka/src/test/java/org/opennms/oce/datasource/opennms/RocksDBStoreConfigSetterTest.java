@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+
+public class RocksDBStoreConfigSetterTest {
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    @Test
+    public void canConfigureStoresIndividually() {
+        final Map<String, Object> configs = new HashMap<>();
+        configs.put("oce.rocksdb.block.cache.size", "1048576");
+        configs.put("oce.rocksdb.alarmStore.block.cache.size", 2097152L);
+        configs.put("oce.rocksdb.alarmStore.bloom.filter.bits.per.key", "10");
+        configs.put("oce.rocksdb.alarmStore.compaction.style", "universal");
+        configs.put("oce.rocksdb.alarmStore.write.buffer.size", "8388608");
+        configs.put("oce.rocksdb.alarmStore.max.write.buffers", "4");
+
+        final RocksDBStoreConfigSetter configSetter = new RocksDBStoreConfigSetter();
+        try (Options alarmStoreOptions = newOptions(); Options inventoryStoreOptions = newOptions()) {
+            configSetter.setConfig(OpennmsDatasource.ALARM_STORE, alarmStoreOptions, configs);
+            assertThat(((BlockBasedTableConfig)alarmStoreOptions.tableFormatConfig()).blockCacheSize(), equalTo(2097152L));
+            assertThat(alarmStoreOptions.compactionStyle(), equalTo(CompactionStyle.UNIVERSAL));
+            assertThat(alarmStoreOptions.writeBufferSize(), equalTo(8388608L));
+            assertThat(alarmStoreOptions.maxWriteBufferNumber(), equalTo(4));
+
+            // Only the default block cache size applies to this one
+            final long writeBufferSize = inventoryStoreOptions.writeBufferSize();
+            configSetter.setConfig(OpennmsDatasource.INVENTORY_STORE, inventoryStoreOptions, configs);
+            assertThat(((BlockBasedTableConfig)inventoryStoreOptions.tableFormatConfig()).blockCacheSize(), equalTo(1048576L));
+            assertThat(inventoryStoreOptions.compactionStyle(), equalTo(CompactionStyle.LEVEL));
+            assertThat(inventoryStoreOptions.writeBufferSize(), equalTo(writeBufferSize));
+        }
+    }
+
+    private static Options newOptions() {
+        // Kafka Streams always sets a block based table config before calling the config setter
+        final Options options = new Options();
+        options.setTableFormatConfig(new BlockBasedTableConfig());
+        return options;
+    }
+}
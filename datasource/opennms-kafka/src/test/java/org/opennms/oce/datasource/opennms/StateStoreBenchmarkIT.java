@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.opennms.oce.datasource.opennms.OpennmsMapper.toNodeCriteria;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.test.ConsumerRecordFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.oce.datasource.opennms.proto.InventoryModelProtos;
+import org.opennms.oce.datasource.opennms.proto.OpennmsModelProtos;
+import org.opennms.oce.datasource.opennms.serialization.AlarmSerializer;
+import org.opennms.oce.datasource.opennms.serialization.NodeSerializer;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+
+/**
+ * Compares the per-record latency of the topology, and of the get-then-put done on the inventory store,
+ * when using the different state store backends.
+ *
+ * The records are processed synchronously with the {@link TopologyTestDriver}, so the changelogs are not
+ * written to Kafka and the results only reflect the cost of the stores and of the processing. The test driver
+ * commits, and hence flushes the RocksDB stores, after every record, which inflates the topology latency of the
+ * persistent stores well beyond what is seen with the regular commit interval.
+ */
+public class StateStoreBenchmarkIT {
+
+    private static final int NUM_NODES = 1000;
+    private static final int NUM_INTERFACES_PER_NODE = 4;
+    private static final int NUM_ALARM_UPDATES = 20000;
+    private static final int NUM_STORE_UPDATES = 200000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ConsumerRecordFactory<String, OpennmsModelProtos.Alarm> alarmRecordFactory =
+            new ConsumerRecordFactory<>(new StringSerializer(), new AlarmSerializer());
+    private final ConsumerRecordFactory<String, OpennmsModelProtos.Node> nodeRecordFactory =
+            new ConsumerRecordFactory<>(new StringSerializer(), new NodeSerializer());
+
+    @Test
+    public void canCompareStoreBackends() throws IOException {
+        final Map<String, Map<String, String>> variants = ImmutableMap.of(
+                "persistent", ImmutableMap.of("oce.store.type", "persistent"),
+                "persistent (tuned)", ImmutableMap.of("oce.store.type", "persistent",
+                        "oce.rocksdb.block.cache.size", Long.toString(128 * 1024 * 1024),
+                        "oce.rocksdb.bloom.filter.bits.per.key", "10",
+                        "oce.rocksdb.cache.index.and.filter.blocks", "true"),
+                "in-memory", ImmutableMap.of("oce.store.type", "in-memory"),
+                "lru", ImmutableMap.of("oce.store.type", "lru"));
+
+        // Warm up
+        for (Map<String, String> variant : variants.values()) {
+            run(variant);
+        }
+
+        System.out.printf("%-20s %20s %20s\n", "Backend", "Topology (us/record)", "Store (us/update)");
+        for (Map.Entry<String, Map<String, String>> variant : variants.entrySet()) {
+            final double[] result = run(variant.getValue());
+            System.out.printf("%-20s %20.2f %20.2f\n", variant.getKey(), result[0], result[1]);
+        }
+    }
+
+    private double[] run(Map<String, String> storeProperties) throws IOException {
+        final ConfigurationAdmin configAdmin = mock(ConfigurationAdmin.class, RETURNS_DEEP_STUBS);
+        final ScriptedInventoryService inventoryService = OpennmsKafkaScriptedInventory.withDefaults();
+        final OpennmsDatasource datasource = new OpennmsDatasource(configAdmin, new NodeToInventory(inventoryService),
+                new AlarmToInventory(inventoryService), new EdgeToInventory(inventoryService));
+
+        final Properties props = datasource.loadStreamsProperties();
+        props.putAll(storeProperties);
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "benchmark");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, temporaryFolder.newFolder().getAbsolutePath());
+
+        final List<OpennmsModelProtos.Node> nodes = new ArrayList<>(NUM_NODES);
+        for (int i = 0; i < NUM_NODES; i++) {
+            final OpennmsModelProtos.Node.Builder nodeBuilder = OpennmsModelProtos.Node.newBuilder()
+                    .setForeignSource("FS")
+                    .setForeignId("n" + i)
+                    .setId(i)
+                    .setLabel("n" + i);
+            for (int j = 1; j <= NUM_INTERFACES_PER_NODE; j++) {
+                nodeBuilder.addSnmpInterface(OpennmsModelProtos.SnmpInterface.newBuilder()
+                        .setIfIndex(j)
+                        .setIfAlias("eth" + j)
+                        .build());
+            }
+            nodes.add(nodeBuilder.build());
+        }
+
+        try (TopologyTestDriver testDriver = new TopologyTestDriver(datasource.getKTopology(new StateStoreConfig(props)), props, 0)) {
+            final Random r = new Random(42);
+            long t = 1;
+            final long topologyStart = System.nanoTime();
+            for (OpennmsModelProtos.Node node : nodes) {
+                testDriver.pipeInput(nodeRecordFactory.create(datasource.getNodeTopic(), toNodeCriteria(node), node, t++));
+            }
+            for (int i = 0; i < NUM_ALARM_UPDATES; i++) {
+                // Cycle through all of the interfaces, updating every alarm a few times
+                final OpennmsModelProtos.Alarm alarm = MockNetwork.createSnmpInterfaceDownAlarmFor(
+                        nodes.get(i % NUM_NODES), 1 + (i / NUM_NODES) % NUM_INTERFACES_PER_NODE, t++);
+                testDriver.pipeInput(alarmRecordFactory.create(datasource.getAlarmTopic(), alarm.getReductionKey(), alarm, t));
+            }
+            final double topologyUsPerRecord = (System.nanoTime() - topologyStart) / 1000d / (NUM_NODES + NUM_ALARM_UPDATES);
+
+            final KeyValueStore<String, byte[]> alarmStore = testDriver.getKeyValueStore(OpennmsDatasource.ALARM_STORE);
+            assertThat(Iterators.size(alarmStore.all()), equalTo(NUM_NODES * NUM_INTERFACES_PER_NODE));
+
+            // Update the inventory store in the same way as the inventory table processor does
+            final KeyValueStore<String, InventoryModelProtos.InventoryObjects> inventoryStore =
+                    testDriver.getKeyValueStore(OpennmsDatasource.INVENTORY_STORE);
+            final List<String> keys = new ArrayList<>();
+            inventoryStore.all().forEachRemaining(kv -> keys.add(kv.key));
+            final long storeStart = System.nanoTime();
+            for (int i = 0; i < NUM_STORE_UPDATES; i++) {
+                final String key = keys.get(r.nextInt(keys.size()));
+                final InventoryModelProtos.InventoryObjects ios = inventoryStore.get(key);
+                inventoryStore.put(key, ios.toBuilder().setExpiresAt(i).build());
+            }
+            final double storeUsPerUpdate = (System.nanoTime() - storeStart) / 1000d / NUM_STORE_UPDATES;
+            return new double[]{topologyUsPerRecord, storeUsPerUpdate};
+        }
+    }
+}
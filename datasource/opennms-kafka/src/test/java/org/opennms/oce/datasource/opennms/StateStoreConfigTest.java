@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class StateStoreConfigTest {
+
+    @Test
+    public void canConfigureStoresIndividually() {
+        final Map<String, Object> props = new HashMap<>();
+        StateStoreConfig config = new StateStoreConfig(props);
+        assertThat(config.getStoreType(OpennmsDatasource.ALARM_STORE), equalTo(StateStoreConfig.StoreType.PERSISTENT));
+        assertThat(config.getStoreSupplier(OpennmsDatasource.ALARM_STORE).get().persistent(), equalTo(true));
+
+        props.put("oce.store.type", "in-memory");
+        props.put("oce.store.situationStore.type", "LRU");
+        props.put("oce.store.situationStore.lru.max.entries", " 10 ");
+        config = new StateStoreConfig(props);
+        assertThat(config.getStoreType(OpennmsDatasource.ALARM_STORE), equalTo(StateStoreConfig.StoreType.IN_MEMORY));
+        assertThat(config.getStoreSupplier(OpennmsDatasource.ALARM_STORE).get().persistent(), equalTo(false));
+        assertThat(config.getStoreType(OpennmsDatasource.SITUATION_STORE), equalTo(StateStoreConfig.StoreType.LRU));
+        assertThat(config.getLruMaxEntries(OpennmsDatasource.SITUATION_STORE), equalTo(10));
+        assertThat(config.getLruMaxEntries(OpennmsDatasource.ALARM_STORE), equalTo(StateStoreConfig.DEFAULT_LRU_MAX_ENTRIES));
+    }
+
+    @Test
+    public void doesNotEvictFromAlarmAndInventoryStores() {
+        final Map<String, Object> props = new HashMap<>();
+        props.put("oce.store.type", "lru");
+        final StateStoreConfig config = new StateStoreConfig(props);
+        for (String storeName : StateStoreConfig.NON_EVICTABLE_STORES) {
+            assertThat(config.getStoreType(storeName), equalTo(StateStoreConfig.StoreType.PERSISTENT));
+            assertThat(config.getStoreSupplier(storeName).get().persistent(), equalTo(true));
+        }
+        assertThat(config.getStoreType(OpennmsDatasource.SITUATION_STORE), equalTo(StateStoreConfig.StoreType.LRU));
+        assertThat(config.getStoreType(OpennmsDatasource.EDGE_STORE), equalTo(StateStoreConfig.StoreType.LRU));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotConfigureLruForInventoryStore() {
+        final Map<String, Object> props = new HashMap<>();
+        props.put("oce.store.inventoryStore.type", "lru");
+        new StateStoreConfig(props).getStoreSupplier(OpennmsDatasource.INVENTORY_STORE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotConfigureInvalidStoreType() {
+        final Map<String, Object> props = new HashMap<>();
+        props.put("oce.store.alarmStore.type", "cassandra");
+        new StateStoreConfig(props).getStoreSupplier(OpennmsDatasource.ALARM_STORE);
+    }
+}
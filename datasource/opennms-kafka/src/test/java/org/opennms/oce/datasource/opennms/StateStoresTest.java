@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.junit.Test;
+
+public class StateStoresTest {
+
+    private final AtomicInteger numOpenIterators = new AtomicInteger();
+
+    @Test
+    public void canStreamStoresInParallel() {
+        final List<ReadOnlyKeyValueStore<Integer, String>> stores = new ArrayList<>();
+        final List<Integer> expectedKeys = new ArrayList<>();
+        int key = 0;
+        for (int i = 0; i < 8; i++) {
+            final NavigableMap<Integer, String> entries = new TreeMap<>();
+            // Leave some of the stores empty
+            for (int j = 0; j < (i % 3) * 1000; j++) {
+                entries.put(key, Integer.toString(key));
+                expectedKeys.add(key++);
+            }
+            stores.add(new MapStore(entries));
+        }
+
+        final List<Integer> keys;
+        try (Stream<KeyValue<Integer, String>> stream = StateStores.stream(stores, true)) {
+            keys = stream.peek(kv -> assertThat(kv.value, equalTo(Integer.toString(kv.key))))
+                    .map(kv -> kv.key)
+                    .collect(Collectors.toList());
+        }
+        // The order is preserved
+        assertThat(keys, equalTo(expectedKeys));
+        assertThat(numOpenIterators.get(), equalTo(0));
+    }
+
+    @Test
+    public void canSplitByStore() {
+        final List<ReadOnlyKeyValueStore<Integer, String>> stores = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final NavigableMap<Integer, String> entries = new TreeMap<>();
+            IntStream.range(i * 10, i * 10 + 10).forEach(k -> entries.put(k, Integer.toString(k)));
+            stores.add(new MapStore(entries));
+        }
+
+        try (Stream<KeyValue<Integer, String>> stream = StateStores.stream(stores, false)) {
+            final Spliterator<KeyValue<Integer, String>> spliterator = stream.spliterator();
+            assertThat(spliterator.estimateSize(), equalTo(40L));
+            final Spliterator<KeyValue<Integer, String>> prefix = spliterator.trySplit();
+            assertThat(prefix.estimateSize(), equalTo(20L));
+            assertThat(spliterator.estimateSize(), equalTo(20L));
+
+            // Once we start iterating, the spliterator can no longer be split
+            assertThat(spliterator.tryAdvance(kv -> assertThat(kv.key, equalTo(20))), equalTo(true));
+            assertThat(spliterator.trySplit(), nullValue());
+        }
+    }
+
+    @Test
+    public void canCloseIteratorsWhenStreamIsClosed() {
+        final List<ReadOnlyKeyValueStore<Integer, String>> stores = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final NavigableMap<Integer, String> entries = new TreeMap<>();
+            IntStream.range(i * 10, i * 10 + 10).forEach(k -> entries.put(k, Integer.toString(k)));
+            stores.add(new MapStore(entries));
+        }
+
+        try (Stream<KeyValue<Integer, String>> stream = StateStores.stream(stores, true)) {
+            // Only consume part of the stream
+            assertThat(stream.filter(kv -> kv.key % 10 == 5).findFirst().get().key, equalTo(5));
+        }
+        assertThat(numOpenIterators.get(), equalTo(0));
+    }
+
+    private class MapStore implements ReadOnlyKeyValueStore<Integer, String> {
+        private final NavigableMap<Integer, String> entries;
+
+        private MapStore(NavigableMap<Integer, String> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public String get(Integer key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public KeyValueIterator<Integer, String> range(Integer from, Integer to) {
+            return new MapIterator(entries.subMap(from, true, to, true));
+        }
+
+        @Override
+        public KeyValueIterator<Integer, String> all() {
+            return new MapIterator(entries);
+        }
+
+        @Override
+        public long approximateNumEntries() {
+            return entries.size();
+        }
+    }
+
+    private class MapIterator implements KeyValueIterator<Integer, String> {
+        private final NavigableMap<Integer, String> entries;
+        private final Iterator<Integer> keys;
+        private boolean closed;
+
+        private MapIterator(NavigableMap<Integer, String> entries) {
+            this.entries = entries;
+            this.keys = entries.navigableKeySet().iterator();
+            numOpenIterators.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                numOpenIterators.decrementAndGet();
+            }
+        }
+
+        @Override
+        public Integer peekNextKey() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return keys.hasNext();
+        }
+
+        @Override
+        public KeyValue<Integer, String> next() {
+            final Integer key = keys.next();
+            return new KeyValue<>(key, entries.get(key));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.datasource.opennms;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.streams.KafkaStreams;
+import org.junit.Test;
+
+public class StoreReadinessTest {
+
+    private static final String STORE_A = "a";
+    private static final String STORE_B = "b";
+
+    @Test
+    public void canCompleteFuturesWhenRunning() {
+        final StoreReadiness readiness = new StoreReadiness(Arrays.asList(STORE_A, STORE_B));
+        final CompletableFuture<Void> futureA = readiness.getReadyFuture(STORE_A);
+        final CompletableFuture<Void> futureAB = readiness.getReadyFuture(STORE_A, STORE_B);
+
+        // The streams transition to running when started, before the partitions are assigned
+        readiness.onChange(KafkaStreams.State.RUNNING, KafkaStreams.State.CREATED);
+        assertThat(futureA.isDone(), equalTo(false));
+        assertThat(futureAB.isDone(), equalTo(false));
+
+        readiness.onChange(KafkaStreams.State.REBALANCING, KafkaStreams.State.RUNNING);
+        assertThat(futureA.isDone(), equalTo(false));
+        assertThat(readiness.getReadyFuture(STORE_A), equalTo(futureA));
+
+        readiness.onChange(KafkaStreams.State.RUNNING, KafkaStreams.State.REBALANCING);
+        assertThat(futureA.isDone(), equalTo(true));
+        assertThat(futureAB.isDone(), equalTo(true));
+        assertThat(readiness.getReadyFuture(STORE_B).isDone(), equalTo(true));
+
+        // The stores are no longer ready while rebalancing
+        readiness.onChange(KafkaStreams.State.REBALANCING, KafkaStreams.State.RUNNING);
+        final CompletableFuture<Void> nextFutureA = readiness.getReadyFuture(STORE_A);
+        assertThat(nextFutureA.isDone(), equalTo(false));
+        readiness.onChange(KafkaStreams.State.RUNNING, KafkaStreams.State.REBALANCING);
+        assertThat(nextFutureA.isDone(), equalTo(true));
+    }
+
+    @Test
+    public void canFailFuturesOnShutdown() {
+        final StoreReadiness readiness = new StoreReadiness(Arrays.asList(STORE_A, STORE_B));
+        final CompletableFuture<Void> futureA = readiness.getReadyFuture(STORE_A);
+
+        readiness.onChange(KafkaStreams.State.RUNNING, KafkaStreams.State.CREATED);
+        readiness.onChange(KafkaStreams.State.REBALANCING, KafkaStreams.State.RUNNING);
+        readiness.onChange(KafkaStreams.State.ERROR, KafkaStreams.State.REBALANCING);
+        assertThat(futureA.isCompletedExceptionally(), equalTo(true));
+        assertThat(readiness.getReadyFuture(STORE_B).isCompletedExceptionally(), equalTo(true));
+        assertThat(readiness.getState(), equalTo(KafkaStreams.State.ERROR));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotWaitForUnknownStores() {
+        new StoreReadiness(Arrays.asList(STORE_A)).getReadyFuture(STORE_B);
+    }
+
+    @Test
+    public void canTrackRestoreProgress() {
+        final AtomicLong now = new AtomicLong(0);
+        final StoreReadiness readiness = new StoreReadiness(Arrays.asList(STORE_A, STORE_B), now::get);
+        final StoreReadiness.RestoreProgress progress = readiness.getRestoreProgress(STORE_A);
+        assertThat(progress.isRestoring(), equalTo(false));
+        assertThat(progress.getProgress(), equalTo(1d));
+        assertThat(progress.getEtaMs(), equalTo(0L));
+
+        final TopicPartition p0 = new TopicPartition("a-changelog", 0);
+        final TopicPartition p1 = new TopicPartition("a-changelog", 1);
+        readiness.onRestoreStart(p0, STORE_A, 0, 1000);
+        readiness.onRestoreStart(p1, STORE_A, 500, 1500);
+        assertThat(progress.isRestoring(), equalTo(true));
+        assertThat(progress.getNumRecordsToRestore(), equalTo(2000L));
+        // Nothing was restored yet
+        assertThat(progress.getEtaMs(), equalTo(-1L));
+
+        // 500 records per second
+        now.set(1000);
+        readiness.onBatchRestored(p0, STORE_A, 250, 250);
+        readiness.onBatchRestored(p1, STORE_A, 750, 250);
+        assertThat(progress.getNumRecordsRestored(), equalTo(500L));
+        assertThat(progress.getProgress(), closeTo(0.25d, 0.0001d));
+        assertThat(progress.getEtaMs(), equalTo(3000L));
+
+        // The first partition was compacted and only contained 400 records
+        now.set(1500);
+        readiness.onBatchRestored(p0, STORE_A, 1000, 150);
+        readiness.onRestoreEnd(p0, STORE_A, 400);
+        assertThat(progress.getNumRecordsToRestore(), equalTo(1400L));
+        // 650 records were restored in 1.5s, and 750 are left
+        assertThat(progress.getEtaMs(), equalTo(1730L));
+
+        readiness.onBatchRestored(p1, STORE_A, 1500, 750);
+        readiness.onRestoreEnd(p1, STORE_A, 1000);
+        assertThat(progress.isRestoring(), equalTo(false));
+        assertThat(progress.getProgress(), equalTo(1d));
+        assertThat(progress.getEtaMs(), equalTo(0L));
+
+        // Other stores are not affected, and unknown stores are ignored
+        assertThat(readiness.getRestoreProgress(STORE_B).getNumRecordsToRestore(), equalTo(0L));
+        readiness.onRestoreStart(p0, "c", 0, 1000);
+    }
+}
@@ -28,11 +28,10 @@
 
 package org.opennms.oce.driver.main;
 
+import java.util.Collection;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Objects;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -41,6 +40,7 @@ import org.opennms.oce.datasource.api.Alarm;
 import org.opennms.oce.datasource.api.AlarmDatasource;
 import org.opennms.oce.datasource.api.AlarmFeedback;
 import org.opennms.oce.datasource.api.AlarmFeedbackDatasource;
+import org.opennms.oce.datasource.api.AlarmHandler;
 import org.opennms.oce.datasource.api.InventoryDatasource;
 import org.opennms.oce.datasource.api.InventoryObject;
 import org.opennms.oce.datasource.api.Situation;
@@ -60,6 +60,9 @@ import org.slf4j.LoggerFactory;
 public class Driver {
     private static final Logger LOG = LoggerFactory.getLogger(Driver.class);
 
+    public static final TickScheduler.Mode DEFAULT_TICK_MODE = TickScheduler.Mode.FIXED_RATE;
+    public static final int DEFAULT_ALARM_CHANGE_THRESHOLD = 0;
+
     private final AlarmDatasource alarmDatasource;
     private final AlarmFeedbackDatasource alarmFeedbackDatasource;
     private final InventoryDatasource inventoryDatasource;
@@ -74,7 +77,10 @@ public class Driver {
 
     private Thread initThread;
     private Engine engine;
-    private Timer timer;
+    private TickScheduler tickScheduler;
+
+    private TickScheduler.Mode tickMode = DEFAULT_TICK_MODE;
+    private int alarmChangeThreshold = DEFAULT_ALARM_CHANGE_THRESHOLD;
 
     public Driver(BundleContext bundleContext, AlarmDatasource alarmDatasource,
                   AlarmFeedbackDatasource alarmFeedbackDatasource, InventoryDatasource inventoryDatasource,
@@ -111,7 +117,36 @@ public class Driver {
             }
         });
 
-        timer = new Timer();
+        final Engine theEngine = engine;
+        tickScheduler = new TickScheduler(engineFactory.getName(), theEngine::tick, ts -> theEngine.tick(ts, true),
+                theEngine.getTickResolutionMs(), tickMode, alarmChangeThreshold);
+        final TickScheduler scheduler = tickScheduler;
+        // Keep track of the alarm changes so that the scheduler can tick early when these build up
+        final AlarmHandler alarmHandler = new AlarmHandler() {
+            @Override
+            public void onAlarmCreatedOrUpdated(Alarm alarm) {
+                theEngine.onAlarmCreatedOrUpdated(alarm);
+                scheduler.onAlarmChange();
+            }
+
+            @Override
+            public void onAlarmCleared(Alarm alarm) {
+                theEngine.onAlarmCleared(alarm);
+                scheduler.onAlarmChange();
+            }
+
+            @Override
+            public void onAlarmsCreatedOrUpdated(Collection<Alarm> alarms) {
+                theEngine.onAlarmsCreatedOrUpdated(alarms);
+                scheduler.onAlarmChanges(alarms.size());
+            }
+
+            @Override
+            public void onAlarmsCleared(Collection<Alarm> alarms) {
+                theEngine.onAlarmsCleared(alarms);
+                scheduler.onAlarmChanges(alarms.size());
+            }
+        };
         // The get methods on the datasources may block, so we do this on a separate thread
         initThread = new Thread(() -> {
             try {
@@ -136,7 +171,7 @@ public class Driver {
                 LOG.info("Retrieving inventory...");
                 final List<InventoryObject> inventory = inventoryDatasource.getInventoryAndRegisterHandler(engine);
                 LOG.info("Retrieving alarms...");
-                final List<Alarm> alarms = alarmDatasource.getAlarmsAndRegisterHandler(engine);
+                final List<Alarm> alarms = alarmDatasource.getAlarmsAndRegisterHandler(alarmHandler);
                 LOG.info("Retrieving alarm feedback...");
                 final List<AlarmFeedback> alarmFeedback =
                         alarmFeedbackDatasource.getAlarmFeedbackAndRegisterHandler(engine);
@@ -160,18 +195,9 @@ public class Driver {
                 future.completeExceptionally(e);
                 return;
             }
-            LOG.info("Initialization successful. Scheduling ticks every {}ms", engine.getTickResolutionMs());
-
-            timer.scheduleAtFixedRate(new TimerTask() {
-                @Override
-                public void run() {
-                    try {
-                        engine.tick(System.currentTimeMillis());
-                    } catch (Exception e) {
-                        LOG.error("Tick failed with exception.", e);
-                    }
-                }
-            }, 0, engine.getTickResolutionMs());
+            LOG.info("Initialization successful. Scheduling ticks every {}ms ({}) with an alarm change threshold of {}.",
+                    engine.getTickResolutionMs(), tickMode, alarmChangeThreshold);
+            scheduler.start();
             future.complete(null);
         });
         initThread.setName(String.format("OCE Driver Startup [%s]", engineFactory.getName()));
@@ -199,13 +225,32 @@ public class Driver {
         if (serviceRegistration != null) {
             serviceRegistration.unregister();
         }
-        if (timer != null) {
-            timer.cancel();
-            timer = null;
+        if (tickScheduler != null) {
+            tickScheduler.stop();
         }
         if (engine != null) {
             engine.destroy();
             engine = null;
         }
     }
+
+    public TickScheduler getTickScheduler() {
+        return tickScheduler;
+    }
+
+    public TickScheduler.Mode getTickMode() {
+        return tickMode;
+    }
+
+    public void setTickMode(TickScheduler.Mode tickMode) {
+        this.tickMode = Objects.requireNonNull(tickMode);
+    }
+
+    public int getAlarmChangeThreshold() {
+        return alarmChangeThreshold;
+    }
+
+    public void setAlarmChangeThreshold(int alarmChangeThreshold) {
+        this.alarmChangeThreshold = alarmChangeThreshold;
+    }
 }
@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.driver.main;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the ticks of an engine on a dedicated thread.
+ *
+ * Ticks never overlap. When a tick takes longer than the tick resolution, the ticks that were missed
+ * in the meantime are coalesced into a single tick instead of being fired back-to-back.
+ *
+ * When an alarm change threshold is set, the scheduler also ticks as soon as that many alarm changes
+ * have been reported via {@link #onAlarmChange()} since the last tick, bounding the latency between
+ * alarms and situations during bursts. Early ticks are delivered to a separate consumer, since these happen
+ * before the tick resolution has elapsed and must not be ignored by the engine.
+ */
+public class TickScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(TickScheduler.class);
+
+    public enum Mode {
+        /**
+         * Ticks are scheduled at multiples of the tick resolution from the first tick.
+         */
+        FIXED_RATE,
+        /**
+         * Ticks are scheduled one tick resolution after the end of the previous tick.
+         */
+        FIXED_DELAY
+    }
+
+    private final String name;
+    private final LongConsumer tickConsumer;
+    private final LongConsumer earlyTickConsumer;
+    private final long tickResolutionMs;
+    private final Mode mode;
+    private final int alarmChangeThreshold;
+
+    private final AtomicInteger alarmChangesSinceLastTick = new AtomicInteger();
+    private final AtomicBoolean earlyTickPending = new AtomicBoolean();
+    private volatile long earlyTickRequestedTimestamp;
+    private ScheduledExecutorService executor;
+    private long nextTickTimestamp;
+
+    private volatile long numTicks;
+    private volatile long numEarlyTicks;
+    private volatile long numCoalescedTicks;
+    private volatile long lastTickDurationMs;
+    private volatile long maxTickDurationMs;
+    private volatile long lastTickLagMs;
+    private volatile long maxTickLagMs;
+
+    /**
+     * @param name name used for the scheduling thread
+     * @param tickConsumer called with the current timestamp on every tick
+     * @param tickResolutionMs time between ticks
+     * @param mode scheduling mode
+     * @param alarmChangeThreshold number of alarm changes after which a tick is triggered early, or 0 to disable
+     */
+    public TickScheduler(String name, LongConsumer tickConsumer, long tickResolutionMs, Mode mode, int alarmChangeThreshold) {
+        this(name, tickConsumer, tickConsumer, tickResolutionMs, mode, alarmChangeThreshold);
+    }
+
+    /**
+     * @param name name used for the scheduling thread
+     * @param tickConsumer called with the current timestamp on every scheduled tick
+     * @param earlyTickConsumer called with the current timestamp on every tick triggered by alarm changes
+     * @param tickResolutionMs time between ticks
+     * @param mode scheduling mode
+     * @param alarmChangeThreshold number of alarm changes after which a tick is triggered early, or 0 to disable
+     */
+    public TickScheduler(String name, LongConsumer tickConsumer, LongConsumer earlyTickConsumer, long tickResolutionMs,
+                         Mode mode, int alarmChangeThreshold) {
+        if (tickResolutionMs <= 0) {
+            throw new IllegalArgumentException("Tick resolution must be strictly positive. Got: " + tickResolutionMs);
+        }
+        if (alarmChangeThreshold < 0) {
+            throw new IllegalArgumentException("Alarm change threshold must be positive. Got: " + alarmChangeThreshold);
+        }
+        this.name = name;
+        this.tickConsumer = Objects.requireNonNull(tickConsumer);
+        this.earlyTickConsumer = Objects.requireNonNull(earlyTickConsumer);
+        this.tickResolutionMs = tickResolutionMs;
+        this.mode = Objects.requireNonNull(mode);
+        this.alarmChangeThreshold = alarmChangeThreshold;
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            throw new IllegalStateException("Scheduler was already started.");
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, String.format("OCE Ticker [%s]", name));
+            thread.setDaemon(true);
+            return thread;
+        });
+        nextTickTimestamp = System.currentTimeMillis();
+        executor.execute(this::runScheduledTick);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Called when an alarm was created, updated or cleared.
+     */
+    public void onAlarmChange() {
+        onAlarmChanges(1);
+    }
+
+    /**
+     * Called when a batch of alarms were created, updated or cleared.
+     *
+     * @param numAlarmChanges number of alarms in the batch
+     */
+    public void onAlarmChanges(int numAlarmChanges) {
+        if (alarmChangeThreshold < 1 || alarmChangesSinceLastTick.addAndGet(numAlarmChanges) < alarmChangeThreshold) {
+            return;
+        }
+        if (earlyTickPending.compareAndSet(false, true)) {
+            earlyTickRequestedTimestamp = System.currentTimeMillis();
+            try {
+                submit();
+            } catch (RejectedExecutionException e) {
+                // The scheduler was stopped
+                earlyTickPending.set(false);
+            }
+        }
+    }
+
+    private synchronized void submit() {
+        if (executor == null) {
+            throw new RejectedExecutionException("Scheduler is not running.");
+        }
+        executor.execute(this::runEarlyTick);
+    }
+
+    private void runScheduledTick() {
+        try {
+            lastTickLagMs = Math.max(0, System.currentTimeMillis() - nextTickTimestamp);
+            maxTickLagMs = Math.max(maxTickLagMs, lastTickLagMs);
+            tick(tickConsumer);
+        } finally {
+            scheduleNextTick();
+        }
+    }
+
+    private void runEarlyTick() {
+        if (!earlyTickPending.getAndSet(false) || alarmChangesSinceLastTick.get() < alarmChangeThreshold) {
+            // A scheduled tick already took care of these changes
+            return;
+        }
+        lastTickLagMs = Math.max(0, System.currentTimeMillis() - earlyTickRequestedTimestamp);
+        maxTickLagMs = Math.max(maxTickLagMs, lastTickLagMs);
+        numEarlyTicks++;
+        tick(earlyTickConsumer);
+    }
+
+    private void tick(LongConsumer consumer) {
+        alarmChangesSinceLastTick.set(0);
+        final long start = System.currentTimeMillis();
+        try {
+            consumer.accept(start);
+        } catch (Exception e) {
+            LOG.error("Tick failed with exception.", e);
+        }
+        lastTickDurationMs = System.currentTimeMillis() - start;
+        maxTickDurationMs = Math.max(maxTickDurationMs, lastTickDurationMs);
+        numTicks++;
+    }
+
+    private synchronized void scheduleNextTick() {
+        if (executor == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        if (mode == Mode.FIXED_DELAY) {
+            nextTickTimestamp = now + tickResolutionMs;
+        } else {
+            nextTickTimestamp += tickResolutionMs;
+            if (nextTickTimestamp < now) {
+                // We're behind, skip the ticks we missed and wait for the next slot instead of firing these back-to-back
+                final long numMissedTicks = (now - nextTickTimestamp) / tickResolutionMs + 1;
+                nextTickTimestamp += numMissedTicks * tickResolutionMs;
+                numCoalescedTicks += numMissedTicks;
+                LOG.warn("Tick took {}ms, which is longer than the tick resolution of {}ms. Skipped {} ticks.",
+                        lastTickDurationMs, tickResolutionMs, numMissedTicks);
+            }
+        }
+        executor.schedule(this::runScheduledTick, nextTickTimestamp - now, TimeUnit.MILLISECONDS);
+    }
+
+    public long getTickResolutionMs() {
+        return tickResolutionMs;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getAlarmChangeThreshold() {
+        return alarmChangeThreshold;
+    }
+
+    /**
+     * @return the total number of ticks, including the ones that were triggered early
+     */
+    public long getNumTicks() {
+        return numTicks;
+    }
+
+    /**
+     * @return the number of ticks that were triggered early by alarm changes
+     */
+    public long getNumEarlyTicks() {
+        return numEarlyTicks;
+    }
+
+    /**
+     * @return the number of scheduled ticks that were skipped because a previous tick overran
+     */
+    public long getNumCoalescedTicks() {
+        return numCoalescedTicks;
+    }
+
+    public long getLastTickDurationMs() {
+        return lastTickDurationMs;
+    }
+
+    public long getMaxTickDurationMs() {
+        return maxTickDurationMs;
+    }
+
+    /**
+     * @return the delay between the time at which the last tick was due, or requested for early ticks,
+     * and the time at which it started
+     */
+    public long getLastTickLagMs() {
+        return lastTickLagMs;
+    }
+
+    public long getMaxTickLagMs() {
+        return maxTickLagMs;
+    }
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.driver.main;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TickSchedulerTest {
+
+    @Test
+    public void canCoalesceOverdueTicks() throws InterruptedException {
+        final List<Long> ticks = new CopyOnWriteArrayList<>();
+        final TickScheduler tickScheduler = new TickScheduler("test", ts -> {
+            if (ticks.isEmpty()) {
+                // Make the first tick overrun by a few tick periods
+                sleep(350);
+            }
+            ticks.add(ts);
+        }, 100, TickScheduler.Mode.FIXED_RATE, 0);
+        tickScheduler.start();
+        try {
+            await().atMost(10, TimeUnit.SECONDS).until(() -> ticks.size() >= 3);
+        } finally {
+            tickScheduler.stop();
+        }
+
+        // The missed ticks should have been skipped instead of being fired back-to-back
+        assertThat(tickScheduler.getNumCoalescedTicks(), greaterThanOrEqualTo(3L));
+        assertThat(ticks.get(1) - ticks.get(0), greaterThanOrEqualTo(50L));
+        assertThat(tickScheduler.getMaxTickDurationMs(), greaterThanOrEqualTo(350L));
+    }
+
+    @Test
+    public void canTickEarlyOnAlarmChanges() {
+        final List<Long> ticks = new CopyOnWriteArrayList<>();
+        final TickScheduler tickScheduler = new TickScheduler("test", ticks::add,
+                TimeUnit.HOURS.toMillis(1), TickScheduler.Mode.FIXED_DELAY, 5);
+        tickScheduler.start();
+        try {
+            // The first tick is scheduled immediately
+            await().atMost(10, TimeUnit.SECONDS).until(() -> ticks.size() == 1);
+
+            // A few changes shouldn't trigger a tick
+            for (int i = 0; i < 4; i++) {
+                tickScheduler.onAlarmChange();
+            }
+            sleep(100);
+            assertThat(ticks.size(), equalTo(1));
+
+            // Reaching the threshold should
+            tickScheduler.onAlarmChange();
+            await().atMost(10, TimeUnit.SECONDS).until(() -> ticks.size() == 2);
+            assertThat(tickScheduler.getNumEarlyTicks(), equalTo(1L));
+
+            // Many more changes should trigger at most one tick per threshold
+            for (int i = 0; i < 100; i++) {
+                tickScheduler.onAlarmChange();
+            }
+            await().atMost(10, TimeUnit.SECONDS).until(() -> ticks.size() >= 3);
+            sleep(100);
+            assertThat(tickScheduler.getNumEarlyTicks(), lessThanOrEqualTo(1L + 100 / 5));
+        } finally {
+            tickScheduler.stop();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
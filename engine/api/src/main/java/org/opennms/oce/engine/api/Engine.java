@@ -52,6 +52,19 @@ public interface Engine extends AlarmHandler, InventoryHandler, AlarmFeedbackHan
 
     void tick(long timestampInMillis);
 
+    /**
+     * Tick, optionally forcing the engine to process the tick even if it would otherwise have ignored it,
+     * i.e. when less than the tick resolution has elapsed since the last tick.
+     *
+     * This is used to tick early when alarm changes build up between the scheduled ticks.
+     *
+     * @param timestampInMillis current timestamp
+     * @param force true if the tick must be processed
+     */
+    default void tick(long timestampInMillis, boolean force) {
+        tick(timestampInMillis);
+    }
+
     void destroy();
 
     /**
@@ -28,10 +28,12 @@
 
 package org.opennms.oce.engine.cluster;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -41,6 +43,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -107,12 +110,24 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
     private long problemTimeoutMs = TimeUnit.HOURS.toMillis(2);
     private long clearTimeoutMs = TimeUnit.MINUTES.toMillis(5);
 
-    private boolean alarmsChangedSinceLastTick = false;
+    private volatile boolean alarmsChangedSinceLastTick = false;
     private boolean feedbackChangedSinceLastTick = false;
-    private DijkstraShortestPath<CEVertex, CEEdge> shortestPath;
-    private Set<Long> disconnectedVertices = new HashSet<>();
+    /**
+     * The shortest paths of the weakly connected component of every vertex in the snapshot, by vertex id.
+     *
+     * There are no paths between vertices in different components, so the paths are computed separately
+     * for every component. Each component has its own lock, so that engines that cluster on more than one
+     * thread can compute the distances in different components concurrently.
+     */
+    private final Map<Long, ComponentShortestPaths> shortestPathsByVertexId = new ConcurrentHashMap<>();
+    /**
+     * Guards the assignment of the vertices to their components.
+     */
+    private final Object componentLock = new Object();
 
     private final GraphManager graphManager = new GraphManager();
+
+    private SpatialDistanceOracle spatialDistanceOracle;
     
     // Used to prevent processing callbacks before the init has completed
     private final CountDownLatch initLock = new CountDownLatch(1);
@@ -131,12 +146,33 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
         this.tickResolutionMs = tickResolutionMs;
     }
 
+    /**
+     * Use a {@link SpatialDistanceOracle} to pre-compute the spatial distances between
+     * all of the vertices that are within the given distance of one another.
+     *
+     * Distances that are further apart are still computed on demand.
+     *
+     * @param maxDistance maximum distance covered by the oracle
+     */
+    protected void useSpatialDistanceOracle(double maxDistance) {
+        spatialDistanceOracle = new SpatialDistanceOracle(graphManager.getSnapshot().getGraph(), maxDistance);
+    }
+
     @Override
     public void tick(long timestampInMillis) {
+        tick(timestampInMillis, false);
+    }
+
+    @Override
+    public void tick(long timestampInMillis, boolean force) {
         LOG.debug("Starting tick for {}", timestampInMillis);
         if (timestampInMillis - lastRun >= tickResolutionMs - 1) {
             onTick(timestampInMillis);
             lastRun = timestampInMillis;
+        } else if (force) {
+            // Leave the last run as-is, so that the next scheduled tick still happens on time
+            LOG.debug("Less than {} milliseconds elapsed since last tick, but the tick was forced.", tickResolutionMs);
+            onTick(timestampInMillis);
         } else {
             LOG.debug("Less than {} milliseconds elapsed since last tick. Ignoring.", tickResolutionMs);
         }
@@ -201,6 +237,18 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
 
     }
 
+    /**
+     * Called during a tick when the graph has changed since the last tick,
+     * after the affected spatial distances have been invalidated.
+     *
+     * Allows sub-classes to invalidate any state derived from these distances.
+     *
+     * @param affectedVertexIds ids of the vertices for which the spatial distances to other vertices may have changed
+     */
+    public void onGraphChanged(Set<Long> affectedVertexIds) {
+
+    }
+
     @Override
     public synchronized void deleteSituation(String situationId) throws InterruptedException {
         // Make sure the engine has init'd before we attempt to delete anything since situations can be provided on init
@@ -304,33 +352,28 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
         if (alarmsChangedSinceLastTick) {
             alarmsChangedSinceLastTick = false;
 
-            // Perform the clustering with the graph locked
-            graphManager.withGraph(g -> {
-                if (graphManager.getDidGraphChangeAndReset()) {
-                    // If the graph has changed, then reset the cache
-                    LOG.debug("{}: Graph has changed. Resetting hop cache.", timestampInMillis);
-                    spatialDistances.invalidateAll();
-                    shortestPath = null;
-                    disconnectedVertices = graphManager.getDisconnectedVertices();
-                }
-
-                // GC alarms from vertices
-                int numGarbageCollectedAlarms = 0;
-                int numAlarms = 0;
-                for (CEVertex v : g.getVertices()) {
-                    numGarbageCollectedAlarms += v.garbageCollectAlarms(timestampInMillis, problemTimeoutMs,
-                            clearTimeoutMs);
-                    numAlarms += v.getNumAlarms();
-                }
-                LOG.debug("{}: Garbage collected {} alarms.", timestampInMillis, numGarbageCollectedAlarms);
-
-                LOG.debug("{}: Clustering {} alarms.", timestampInMillis, numAlarms);
-                List<Cluster<AlarmInSpaceTime>> clustersOfAlarms = cluster(timestampInMillis, g);
-                if (clustersOfAlarms == null) {
-                    LOG.debug("{}: No clustering was performed.", timestampInMillis);
-                    return;
-                }
+            // Bring the snapshot up to date, the live graph is only locked while the changes are copied, so
+            // alarms and inventory can continue to be updated while the clustering is performed on the snapshot
+            final int numGarbageCollectedAlarms = graphManager.garbageCollectAlarms(timestampInMillis,
+                    problemTimeoutMs, clearTimeoutMs);
+            LOG.debug("{}: Garbage collected {} alarms.", timestampInMillis, numGarbageCollectedAlarms);
+            final GraphChangeSet changes = graphManager.updateSnapshot();
+            final Graph<CEVertex, CEEdge> g = graphManager.getSnapshot().getGraph();
+            if (!changes.isEmpty()) {
+                // If the graph has changed, then invalidate the affected entries in the cache
+                LOG.debug("{}: Graph has changed: {}. Invalidating affected hops.", timestampInMillis, changes);
+                final Set<Long> affectedVertexIds = invalidateSpatialDistances(g, changes);
+                onGraphChanged(affectedVertexIds);
+            }
 
+            final int numAlarms = g.getVertices().stream()
+                    .mapToInt(CEVertex::getNumAlarms)
+                    .sum();
+            LOG.debug("{}: Clustering {} alarms.", timestampInMillis, numAlarms);
+            List<Cluster<AlarmInSpaceTime>> clustersOfAlarms = cluster(timestampInMillis, g);
+            if (clustersOfAlarms == null) {
+                LOG.debug("{}: No clustering was performed.", timestampInMillis);
+            } else {
                 // Ignore clusters with less than 2 alarms
                 clustersOfAlarms = clustersOfAlarms.stream()
                         .filter(c -> c.getPoints().size() >= 2)
@@ -347,7 +390,7 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
                         mapClusterToSituations(clusterOfAlarms, context);
                     }
                 }
-            });
+            }
         }
 
         // Index and notify the situation handler
@@ -546,6 +589,29 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
         }
     }
 
+    @Override
+    public void onAlarmsCreatedOrUpdated(Collection<Alarm> alarms) {
+        handleAlarms(alarms, "onAlarmsCreatedOrUpdated");
+    }
+
+    @Override
+    public void onAlarmsCleared(Collection<Alarm> alarms) {
+        // Cleared alarms are kept in the graph until these are garbage collected, so these are handled the same way
+        handleAlarms(alarms, "onAlarmsCleared");
+    }
+
+    private void handleAlarms(Collection<Alarm> alarms, String callback) {
+        try {
+            initLock.await();
+            // Add all of the alarms while holding the lock on the graph once
+            graphManager.addOrUpdateAlarms(alarms);
+            alarmsChangedSinceLastTick = true;
+        } catch (InterruptedException ignore) {
+            LOG.debug("Interrupted while handling callback, skipping processing {}.", callback);
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public void onInventoryAdded(Collection<InventoryObject> inventory) {
         try {
@@ -658,17 +724,8 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
     }
 
     private Optional<Long> getOptionalVertexIdForAlarm(Alarm alarm) {
-        return graphManager.withGraph(g -> {
-            for (CEVertex v : graphManager.getGraph().getVertices()) {
-                final Optional<Alarm> match = v.getAlarms().stream()
-                        .filter(a -> a.equals(alarm))
-                        .findFirst();
-                if (match.isPresent()) {
-                    return Optional.of(v.getNumericId());
-                }
-            }
-            return Optional.empty();
-        });
+        return graphManager.getSnapshot().getVertexForAlarm(alarm)
+                .map(CEVertex::getNumericId);
     }
 
     private long getVertexIdForAlarm(Alarm alarm) {
@@ -712,6 +769,95 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
 
     @Override
     public double getSpatialDistanceBetween(long vertexIdA, long vertexIdB) {
+        final double distance = getSpatialDistanceFromOracle(vertexIdA, vertexIdB);
+        if (!Double.isNaN(distance) && distance != SpatialDistanceOracle.BEYOND_MAX_DISTANCE) {
+            return distance;
+        }
+        return getSpatialDistanceFromCache(vertexIdA, vertexIdB);
+    }
+
+    @Override
+    public double getSpatialDistanceBetween(long vertexIdA, long vertexIdB, double maxDistance) {
+        if (spatialDistanceOracle == null || maxDistance > spatialDistanceOracle.getMaxDistance()) {
+            return getSpatialDistanceBetween(vertexIdA, vertexIdB);
+        }
+        final double distance = getSpatialDistanceFromOracle(vertexIdA, vertexIdB);
+        if (Double.isNaN(distance)) {
+            return getSpatialDistanceFromCache(vertexIdA, vertexIdB);
+        } else if (distance == SpatialDistanceOracle.BEYOND_MAX_DISTANCE) {
+            // We don't know the exact distance, but we know it's too far
+            return Integer.valueOf(Integer.MAX_VALUE).doubleValue();
+        }
+        return distance;
+    }
+
+    /**
+     * @return the distance from the oracle, or NaN if the oracle cannot be used for this pair of vertices
+     */
+    private double getSpatialDistanceFromOracle(long vertexIdA, long vertexIdB) {
+        if (spatialDistanceOracle == null || vertexIdA == vertexIdB
+                || !SpatialDistanceOracle.isSupported(vertexIdA) || !SpatialDistanceOracle.isSupported(vertexIdB)) {
+            return Double.NaN;
+        }
+        final GraphSnapshot snapshot = graphManager.getSnapshot();
+        final CEVertex vertexA = snapshot.getVertexWithId(vertexIdA);
+        final CEVertex vertexB = snapshot.getVertexWithId(vertexIdB);
+        if (vertexA == null || vertexB == null) {
+            return Double.NaN;
+        }
+        return spatialDistanceOracle.getDistance(vertexA, vertexB);
+    }
+
+    /**
+     * Invalidate the spatial distances that may have been affected by the given changes.
+     *
+     * Adding or removing an edge can only change the distances between the vertices that are in the same weakly
+     * connected component as the endpoints of that edge (before or after the change), so we evict all of the pairs
+     * that have at least one vertex in these components, and leave the rest of the cache untouched.
+     *
+     * The oracle, which is bounded by a maximum distance, only needs to evict the searches that reached the
+     * vertices touched by the changes.
+     *
+     * @return the ids of the vertices in the affected components
+     */
+    private Set<Long> invalidateSpatialDistances(Graph<CEVertex, CEEdge> g, GraphChangeSet changes) {
+        final Set<CEVertex> touchedVertices = changes.getVerticesTouched();
+        final Set<CEVertex> affectedVertices = new HashSet<>(touchedVertices);
+        final Deque<CEVertex> verticesToVisit = new ArrayDeque<>();
+        for (CEVertex vertex : touchedVertices) {
+            if (g.containsVertex(vertex)) {
+                verticesToVisit.add(vertex);
+            }
+        }
+        while (!verticesToVisit.isEmpty()) {
+            for (CEVertex neighbor : g.getNeighbors(verticesToVisit.poll())) {
+                if (affectedVertices.add(neighbor)) {
+                    verticesToVisit.add(neighbor);
+                }
+            }
+        }
+
+        final Set<Long> affectedVertexIds = affectedVertices.stream()
+                .map(CEVertex::getNumericId)
+                .collect(Collectors.toSet());
+        final long numCachedDistances = spatialDistances.size();
+        spatialDistances.asMap().keySet()
+                .removeIf(key -> affectedVertexIds.contains(key.vertexIdA) || affectedVertexIds.contains(key.vertexIdB));
+        // Only the paths in the affected components need to be recomputed
+        affectedVertexIds.forEach(shortestPathsByVertexId::remove);
+        LOG.debug("Invalidated {} out of {} cached spatial distances for {} affected vertices.",
+                numCachedDistances - spatialDistances.size(), numCachedDistances, affectedVertexIds.size());
+
+        if (spatialDistanceOracle != null) {
+            final int numSourcesInvalidated = spatialDistanceOracle.invalidate(touchedVertices.stream()
+                    .map(CEVertex::getNumericId)
+                    .collect(Collectors.toSet()));
+            LOG.debug("Invalidated {} searches in the spatial distance oracle.", numSourcesInvalidated);
+        }
+        return affectedVertexIds;
+    }
+
+    private double getSpatialDistanceFromCache(long vertexIdA, long vertexIdB) {
         final EdgeKey key = new EdgeKey(vertexIdA, vertexIdB);
         try {
             return spatialDistances.get(key);
@@ -724,24 +870,27 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
             .maximumSize(10000)
             .build(new CacheLoader<EdgeKey, Double>() {
                         public Double load(EdgeKey key) {
+                            final GraphSnapshot snapshot = graphManager.getSnapshot();
+                            final Set<Long> disconnectedVertices = snapshot.getDisconnectedVertices();
                             if (disconnectedVertices.contains(key.vertexIdA) || disconnectedVertices.contains(key.vertexIdB)) {
                                 // No path exists
                                 return Integer.valueOf(Integer.MAX_VALUE).doubleValue();
                             }
-                            final CEVertex vertexA = graphManager.getVertexWithId(key.vertexIdA);
+                            final CEVertex vertexA = snapshot.getVertexWithId(key.vertexIdA);
                             if (vertexA == null) {
                                 throw new IllegalStateException("Could not find vertex with id: " + key.vertexIdA);
                             }
-                            final CEVertex vertexB = graphManager.getVertexWithId(key.vertexIdB);
+                            final CEVertex vertexB = snapshot.getVertexWithId(key.vertexIdB);
                             if (vertexB == null) {
                                 throw new IllegalStateException("Could not find vertex with id: " + key.vertexIdB);
                             }
 
-                            if (shortestPath == null) {
-                                shortestPath = new DijkstraShortestPath<>(graphManager.getGraph(), CEEdge::getWeight,true);
+                            final ComponentShortestPaths shortestPaths = getShortestPathsFor(snapshot.getGraph(), vertexA);
+                            if (shortestPathsByVertexId.get(key.vertexIdB) != shortestPaths) {
+                                // The vertices are in different components, no path exists
+                                return Integer.valueOf(Integer.MAX_VALUE).doubleValue();
                             }
-
-                            Number distance = shortestPath.getDistance(vertexA, vertexB);
+                            final Number distance = shortestPaths.getDistance(vertexA, vertexB);
 
                             if (distance == null) {
                                 // No path exists
@@ -752,6 +901,52 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
                         }
                     });
 
+    /**
+     * Retrieve the shortest paths of the component of the given vertex, assigning all of the vertices
+     * in that component to a new instance if the component was not visited yet.
+     */
+    private ComponentShortestPaths getShortestPathsFor(Graph<CEVertex, CEEdge> g, CEVertex vertex) {
+        final ComponentShortestPaths shortestPaths = shortestPathsByVertexId.get(vertex.getNumericId());
+        if (shortestPaths != null) {
+            return shortestPaths;
+        }
+        synchronized (componentLock) {
+            // Another thread may have visited the component while we were waiting
+            final ComponentShortestPaths existingShortestPaths = shortestPathsByVertexId.get(vertex.getNumericId());
+            if (existingShortestPaths != null) {
+                return existingShortestPaths;
+            }
+            final ComponentShortestPaths componentShortestPaths = new ComponentShortestPaths(g);
+            final Deque<CEVertex> verticesToVisit = new ArrayDeque<>();
+            verticesToVisit.add(vertex);
+            shortestPathsByVertexId.put(vertex.getNumericId(), componentShortestPaths);
+            while (!verticesToVisit.isEmpty()) {
+                for (CEVertex neighbor : g.getNeighbors(verticesToVisit.poll())) {
+                    if (shortestPathsByVertexId.putIfAbsent(neighbor.getNumericId(), componentShortestPaths) == null) {
+                        verticesToVisit.add(neighbor);
+                    }
+                }
+            }
+            return componentShortestPaths;
+        }
+    }
+
+    /**
+     * The shortest paths between the vertices of a single weakly connected component.
+     */
+    private static class ComponentShortestPaths {
+        private final DijkstraShortestPath<CEVertex, CEEdge> shortestPath;
+
+        private ComponentShortestPaths(Graph<CEVertex, CEEdge> g) {
+            // The searches never leave the component of their source, so the whole graph can be used
+            shortestPath = new DijkstraShortestPath<>(g, CEEdge::getWeight, true);
+        }
+
+        private synchronized Number getDistance(CEVertex vertexA, CEVertex vertexB) {
+            return shortestPath.getDistance(vertexA, vertexB);
+        }
+    }
+
     private static class EdgeKey {
         private long vertexIdA;
         private long vertexIdB;
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.cluster;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.function.BiPredicate;
+
+import org.opennms.oce.datasource.api.Alarm;
+
+/**
+ * Index of the alarms on the vertices of a graph, ordered by alarm time, used to efficiently
+ * find the alarms that are due to be garbage collected.
+ *
+ * Problem alarms and cleared alarms are kept in separate sets since these expire after different timeouts.
+ * Entries are replaced when an alarm is updated, so every alarm is referenced by at most one entry.
+ *
+ * This class is not thread safe.
+ */
+class AlarmExpiryIndex {
+
+    private final NavigableSet<Entry> problemAlarms = new TreeSet<>();
+    private final NavigableSet<Entry> clearedAlarms = new TreeSet<>();
+    private final Map<Key, Entry> entriesByKey = new HashMap<>();
+    private long sequence = 0;
+
+    void addOrUpdate(CEVertex vertex, Alarm alarm) {
+        final Key key = new Key(vertex, alarm.getId());
+        remove(key);
+        final Entry entry = new Entry(key, alarm.getTime(), alarm.isClear(), sequence++);
+        entriesByKey.put(key, entry);
+        getSetFor(entry).add(entry);
+    }
+
+    /**
+     * Remove all of the alarms on the given vertex from the index.
+     *
+     * @param vertex vertex that was removed from the graph
+     */
+    void removeAll(CEVertex vertex) {
+        for (Alarm alarm : vertex.getAlarms()) {
+            remove(new Key(vertex, alarm.getId()));
+        }
+    }
+
+    /**
+     * Remove the alarms that are due to be garbage collected from the index.
+     *
+     * Problem alarms expire once their time is before the current time minus the problem timeout,
+     * and cleared alarms once their time is before the current time minus the clear timeout.
+     *
+     * @param timestampInMillis current time
+     * @param problemTimeoutMs timeout for problem alarms
+     * @param clearTimeoutMs timeout for cleared alarms
+     * @param remover called with the vertex and the id of every expired alarm, returns true if the alarm was removed
+     * @return the number of alarms that were removed
+     */
+    int expire(long timestampInMillis, long problemTimeoutMs, long clearTimeoutMs, BiPredicate<CEVertex, String> remover) {
+        return expire(problemAlarms, timestampInMillis - problemTimeoutMs, remover)
+                + expire(clearedAlarms, timestampInMillis - clearTimeoutMs, remover);
+    }
+
+    int size() {
+        return entriesByKey.size();
+    }
+
+    private int expire(NavigableSet<Entry> entries, long cutoffMs, BiPredicate<CEVertex, String> remover) {
+        int numRemoved = 0;
+        while (!entries.isEmpty() && entries.first().time < cutoffMs) {
+            final Entry entry = entries.pollFirst();
+            entriesByKey.remove(entry.key);
+            if (remover.test(entry.key.vertex, entry.key.alarmId)) {
+                numRemoved++;
+            }
+        }
+        return numRemoved;
+    }
+
+    private void remove(Key key) {
+        final Entry entry = entriesByKey.remove(key);
+        if (entry != null) {
+            getSetFor(entry).remove(entry);
+        }
+    }
+
+    private NavigableSet<Entry> getSetFor(Entry entry) {
+        return entry.clear ? clearedAlarms : problemAlarms;
+    }
+
+    private static class Key {
+        private final CEVertex vertex;
+        private final String alarmId;
+
+        private Key(CEVertex vertex, String alarmId) {
+            this.vertex = Objects.requireNonNull(vertex);
+            this.alarmId = alarmId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return vertex == key.vertex &&
+                    Objects.equals(alarmId, key.alarmId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(vertex), alarmId);
+        }
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final Key key;
+        private final long time;
+        private final boolean clear;
+        private final long sequence;
+
+        private Entry(Key key, long time, boolean clear, long sequence) {
+            this.key = key;
+            this.time = time;
+            this.clear = clear;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            final int cmp = Long.compare(time, other.time);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -29,7 +29,6 @@
 package org.opennms.oce.engine.cluster;
 
 import java.util.Collection;
-import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -39,13 +38,9 @@ import org.opennms.oce.datasource.api.Alarm;
 import org.opennms.oce.datasource.api.InventoryObject;
 import org.opennms.oce.datasource.api.ResourceKey;
 import org.opennms.oce.features.graph.api.Vertex;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class CEVertex implements Vertex {
 
-    private static final Logger LOG = LoggerFactory.getLogger(AbstractClusterEngine.class);
-
     private final long id;
     private final InventoryObject inventoryObject;
     private final ResourceKey resourceKey;
@@ -65,6 +60,32 @@ public class CEVertex implements Vertex {
         updatedTimestamp = createdTimestamp;
     }
 
+    /**
+     * Used to create a copy of a vertex in a {@link GraphSnapshot}.
+     */
+    private CEVertex(CEVertex other) {
+        this.id = other.id;
+        this.resourceKey = other.resourceKey;
+        this.inventoryObject = other.inventoryObject;
+        this.createdTimestamp = other.createdTimestamp;
+        syncAlarmsWith(other);
+    }
+
+    CEVertex copy() {
+        return new CEVertex(this);
+    }
+
+    /**
+     * Replace the alarms on this vertex with the ones on the given vertex.
+     *
+     * @param other the vertex to copy the alarms from
+     */
+    void syncAlarmsWith(CEVertex other) {
+        alarmsById.clear();
+        alarmsById.putAll(other.alarmsById);
+        updatedTimestamp = other.updatedTimestamp;
+    }
+
     public ResourceKey getResourceKey() {
         return resourceKey;
     }
@@ -74,6 +95,16 @@ public class CEVertex implements Vertex {
         updatedTimestamp = System.currentTimeMillis();
     }
 
+    /**
+     * Remove the alarm with the given id from this vertex.
+     *
+     * @param alarmId id of the alarm
+     * @return the alarm that was removed, or null if no alarm with the given id was found
+     */
+    Alarm removeAlarm(String alarmId) {
+        return alarmsById.remove(alarmId);
+    }
+
     @Override
     public Collection<Alarm> getAlarms() {
         return alarmsById.values();
@@ -111,32 +142,6 @@ public class CEVertex implements Vertex {
         return id;
     }
 
-    public int garbageCollectAlarms(long timestampInMillis, long problemTimeoutMs, long clearTimeoutMs) {
-        final long problemCutoffMs = timestampInMillis - problemTimeoutMs;
-        final long clearCutoffMs = timestampInMillis - clearTimeoutMs;
-
-        int numAlarmsBefore = alarmsById.size();
-        alarmsById.entrySet().removeIf(entry -> {
-            final Alarm alarm = entry.getValue();
-            if (alarm.isClear() && alarm.getTime() < clearCutoffMs) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("GCing cleared alarm with id: {}, alarm time is: {} which is before the cutoff time of: {}",
-                            alarm.getId(), new Date(alarm.getTime()), new Date(clearCutoffMs));
-                }
-                return true;
-            } else if (!alarm.isClear() && alarm.getTime() < problemCutoffMs) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("GCing problem alarm with id: {}, alarm time is: {} which is before the cutoff time of: {}",
-                            alarm.getId(), new Date(alarm.getTime()), new Date(problemCutoffMs));
-                }
-                return true;
-            } else {
-                return false;
-            }
-        });
-        return numAlarmsBefore - alarmsById.size();
-    }
-
     @Override
     public String toString() {
         return String.format("CEVertex[id=%s, resourceKey=%s]", id, resourceKey);
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.cluster;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * The vertices and edges that were added to, or removed from the graph.
+ *
+ * The endpoints of the edges are tracked along with the edges themselves, since these
+ * can no longer be retrieved from the graph once the edges are removed.
+ */
+public class GraphChangeSet {
+    private final Set<CEVertex> verticesAdded = new HashSet<>();
+    private final Set<CEVertex> verticesRemoved = new HashSet<>();
+    private final Map<CEEdge, Pair<CEVertex>> edgesAdded = new HashMap<>();
+    private final Map<CEEdge, Pair<CEVertex>> edgesRemoved = new HashMap<>();
+
+    void vertexAdded(CEVertex vertex) {
+        verticesAdded.add(vertex);
+    }
+
+    void vertexRemoved(CEVertex vertex) {
+        verticesRemoved.add(vertex);
+    }
+
+    void edgeAdded(CEEdge edge, CEVertex vertexA, CEVertex vertexB) {
+        edgesAdded.put(edge, new Pair<>(vertexA, vertexB));
+    }
+
+    void edgeRemoved(CEEdge edge, Pair<CEVertex> endpoints) {
+        edgesRemoved.put(edge, endpoints);
+    }
+
+    public Set<CEVertex> getVerticesAdded() {
+        return Collections.unmodifiableSet(verticesAdded);
+    }
+
+    public Set<CEVertex> getVerticesRemoved() {
+        return Collections.unmodifiableSet(verticesRemoved);
+    }
+
+    public Map<CEEdge, Pair<CEVertex>> getEdgesAdded() {
+        return Collections.unmodifiableMap(edgesAdded);
+    }
+
+    public Map<CEEdge, Pair<CEVertex>> getEdgesRemoved() {
+        return Collections.unmodifiableMap(edgesRemoved);
+    }
+
+    /**
+     * @return the vertices that were added or removed, along with the endpoints of the edges that were added or removed
+     */
+    public Set<CEVertex> getVerticesTouched() {
+        final Set<CEVertex> vertices = new HashSet<>(verticesAdded);
+        vertices.addAll(verticesRemoved);
+        edgesAdded.values().forEach(endpoints -> endpoints.forEach(vertices::add));
+        edgesRemoved.values().forEach(endpoints -> endpoints.forEach(vertices::add));
+        return vertices;
+    }
+
+    public boolean isEmpty() {
+        return verticesAdded.isEmpty() && verticesRemoved.isEmpty() && edgesAdded.isEmpty() && edgesRemoved.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GraphChangeSet[verticesAdded=%d, verticesRemoved=%d, edgesAdded=%d, edgesRemoved=%d]",
+                verticesAdded.size(), verticesRemoved.size(), edgesAdded.size(), edgesRemoved.size());
+    }
+}
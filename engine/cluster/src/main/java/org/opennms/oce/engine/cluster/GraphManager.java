@@ -31,6 +31,7 @@ package org.opennms.oce.engine.cluster;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -38,7 +39,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -70,9 +70,10 @@ public class GraphManager {
 
     private final Graph<CEVertex, CEEdge> g = new SparseMultigraph<>();
 
-    private final AtomicBoolean didGraphChange = new AtomicBoolean();
-
-    private final Set<Long> disconnectedVertices = new HashSet<>();
+    private GraphChangeSet changeSet = new GraphChangeSet();
+    private final Set<CEVertex> verticesWithAlarmChanges = new HashSet<>();
+    private final AlarmExpiryIndex alarmExpiryIndex = new AlarmExpiryIndex();
+    private final GraphSnapshot snapshot = new GraphSnapshot();
 
     private final Map<ResourceKey, Set<InventoryObject>> deferredIosByDependency = new HashMap<>();
     private final Map<InventoryObject, Set<ResourceKey>> dependenciesByDeferredIos = new HashMap<>();
@@ -92,7 +93,7 @@ public class GraphManager {
                 LOG.trace("Adding vertex with resource key: {} for inventory object: {}", resourceKey, io);
                 final CEVertex vertex = createVertexFor(io);
                 g.addVertex(vertex);
-                didGraphChange.set(true);
+                changeSet.vertexAdded(vertex);
                 idtoVertexMap.put(vertex.getNumericId(), vertex);
                 verticesAdded.add(vertex);
                 return vertex;
@@ -117,7 +118,7 @@ public class GraphManager {
                     LOG.trace("Adding edge between child: {} and parent: {}", vertex, parentVertex);
                     final CEEdge edge = CEEdge.newParentEdge(edgeIdGenerator.getAndIncrement(), io.getWeightToParent());
                     g.addEdge(edge, parentVertex, vertex);
-                    didGraphChange.set(true);
+                    changeSet.edgeAdded(edge, parentVertex, vertex);
                 }
             }
 
@@ -133,7 +134,7 @@ public class GraphManager {
                     LOG.debug("Adding edge between peers A: {} and Z: {}", peerVertex, vertex);
                     final CEEdge edge = CEEdge.newPeerEdge(edgeIdGenerator.getAndIncrement(), peerRef);
                     g.addEdge(edge, peerVertex, vertex);
-                    didGraphChange.set(true);
+                    changeSet.edgeAdded(edge, peerVertex, vertex);
                 }
             }
 
@@ -149,7 +150,7 @@ public class GraphManager {
                     LOG.debug("Adding edge between relatives A: {} and Z: {}", relativeVertex, vertex);
                     final CEEdge edge = CEEdge.newRelativeEdge(edgeIdGenerator.getAndIncrement(), relativeRef);
                     g.addEdge(edge, relativeVertex, vertex);
-                    didGraphChange.set(true);
+                    changeSet.edgeAdded(edge, relativeVertex, vertex);
                 }
             }
 
@@ -161,13 +162,6 @@ public class GraphManager {
 
         // Update any deferred IOs that may be related to the vertices we've added
         handleDeferredIos(verticesAdded);
-
-        // Rebuild the list of disconnected vertices
-        disconnectedVertices.clear();
-        disconnectedVertices.addAll(g.getVertices().stream()
-                .filter(v -> g.getNeighborCount(v) == 0)
-                .map(CEVertex::getNumericId)
-                .collect(Collectors.toList()));
     }
 
     private void defer(InventoryObject io, ResourceKey... waitingFor) {
@@ -244,15 +238,20 @@ public class GraphManager {
             final CEVertex vertex = resourceKeyVertexMap.remove(resourceKey);
             if (vertex != null) {
                 // When a vertex that is referenced by edges is removed, the referencing edges are also removed
-                // automatically
+                // automatically, so keep track of these before removing the vertex
+                for (CEEdge edge : g.getIncidentEdges(vertex)) {
+                    changeSet.edgeRemoved(edge, g.getEndpoints(edge));
+                }
                 g.removeVertex(vertex);
-                didGraphChange.set(true);
+                changeSet.vertexRemoved(vertex);
+                verticesWithAlarmChanges.remove(vertex);
+                alarmExpiryIndex.removeAll(vertex);
             }
             clearDeferralsFor(io);
         }
     }
 
-    public synchronized void addOrUpdateAlarms(List<Alarm> alarms) {
+    public synchronized void addOrUpdateAlarms(Collection<Alarm> alarms) {
         for (Alarm alarm : alarms) {
             addOrUpdateAlarm(alarm);
         }
@@ -268,13 +267,15 @@ public class GraphManager {
             LOG.info("No existing vertex was found with resource key: {} for alarm with id: {}. Creating a new vertex.", resourceKey, alarm.getId());
             final CEVertex v = new CEVertex(vertexIdGenerator.getAndIncrement(), resourceKey);
             g.addVertex(v);
-            didGraphChange.set(true);
+            changeSet.vertexAdded(v);
             idtoVertexMap.put(v.getNumericId(), v);
             handleDeferredIos(Collections.singletonList(v));
             return v;
         });
         LOG.trace("Updating vertex: {} with alarm: {}", vertex, alarm);
         vertex.addOrUpdateAlarm(alarm);
+        verticesWithAlarmChanges.add(vertex);
+        alarmExpiryIndex.addOrUpdate(vertex, alarm);
         return Optional.of(vertex);
     }
 
@@ -338,24 +339,70 @@ public class GraphManager {
         return ResourceKey.key(relativeRef.getType(), relativeRef.getId());
     }
 
-    public boolean getDidGraphChangeAndReset() {
-        return didGraphChange.getAndSet(false);
+    /**
+     * Retrieve the vertices and edges that were added or removed since the last call.
+     *
+     * @return the changes, empty if the graph did not change
+     */
+    public synchronized GraphChangeSet getGraphChangesAndReset() {
+        final GraphChangeSet changes = changeSet;
+        changeSet = new GraphChangeSet();
+        return changes;
+    }
+
+    /**
+     * Garbage collect the alarms on the live graph.
+     *
+     * The alarms are kept in an index ordered by time, so only the alarms
+     * that are due to be garbage collected are visited.
+     *
+     * @return the number of alarms that were garbage collected
+     */
+    public synchronized int garbageCollectAlarms(long timestampInMillis, long problemTimeoutMs, long clearTimeoutMs) {
+        return alarmExpiryIndex.expire(timestampInMillis, problemTimeoutMs, clearTimeoutMs, (vertex, alarmId) -> {
+            final Alarm alarm = vertex.removeAlarm(alarmId);
+            if (alarm == null) {
+                return false;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("GCing {} alarm with id: {}, alarm time is: {}.", alarm.isClear() ? "cleared" : "problem",
+                        alarm.getId(), new Date(alarm.getTime()));
+            }
+            verticesWithAlarmChanges.add(vertex);
+            return true;
+        });
+    }
+
+    /**
+     * Bring the snapshot up to date with the live graph.
+     *
+     * This also resets the changes returned by {@link #getGraphChangesAndReset()}.
+     *
+     * @return the topology changes made to the snapshot since the last update
+     */
+    public synchronized GraphChangeSet updateSnapshot() {
+        final GraphChangeSet changes = snapshot.update(g, getGraphChangesAndReset(), verticesWithAlarmChanges);
+        verticesWithAlarmChanges.clear();
+        return changes;
     }
 
-    public Set<Long> getDisconnectedVertices() {
-        return disconnectedVertices;
+    /**
+     * @return the snapshot of the graph, as of the last call to {@link #updateSnapshot()}
+     */
+    public GraphSnapshot getSnapshot() {
+        return snapshot;
     }
 
     public int getNumDeferredObjects() {
         return dependenciesByDeferredIos.size();
     }
 
-    public Optional<CEVertex> getVertexFor(InventoryObject io) {
+    public synchronized Optional<CEVertex> getVertexFor(InventoryObject io) {
         final ResourceKey resourceKey = getResourceKeyFor(io);
         return Optional.ofNullable(resourceKeyVertexMap.get(resourceKey));
     }
 
-    public Optional<CEVertex> getVertexForParentOf(InventoryObject io) {
+    public synchronized Optional<CEVertex> getVertexForParentOf(InventoryObject io) {
         final ResourceKey resourceKey = getResourceKeyForParentOf(io);
         return Optional.ofNullable(resourceKeyVertexMap.get(resourceKey));
     }
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.cluster;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.opennms.oce.datasource.api.Alarm;
+import org.opennms.oce.datasource.api.InventoryObject;
+import org.opennms.oce.datasource.api.ResourceKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.SparseMultigraph;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A copy of the graph maintained by the {@link GraphManager}, on which the clustering is performed.
+ *
+ * The snapshot is brought up to date once per tick by {@link GraphManager#updateSnapshot()}, which holds the lock on
+ * the live graph only while copying the vertices and edges that were added or removed, and the alarms of the vertices
+ * that were updated, since the last update. The alarms and inventory can then continue to be updated on the live graph
+ * while the clustering is in progress.
+ *
+ * The copies of the vertices are retained between updates, so the vertices in the snapshot keep the same identity
+ * for as long as they remain in the graph.
+ *
+ * The snapshot is not thread safe, and must only be accessed by the thread performing the tick (or
+ * by the threads it hands work off to) between updates.
+ */
+public class GraphSnapshot {
+    private static final Logger LOG = LoggerFactory.getLogger(GraphSnapshot.class);
+
+    private final Graph<CEVertex, CEEdge> g = new SparseMultigraph<>();
+    private final Map<CEVertex, CEVertex> vertexByLiveVertex = new HashMap<>();
+    private final Map<Long, CEVertex> vertexById = new HashMap<>();
+    private final Map<ResourceKey, CEVertex> vertexByResourceKey = new HashMap<>();
+    private final Set<Long> disconnectedVertices = new HashSet<>();
+    /**
+     * Index of the vertices by the ids of the alarms they hold, along with the alarm held by each of these vertices.
+     * An alarm is normally held by a single vertex, but it may be held by more than one if it was moved to a different
+     * inventory object.
+     */
+    private final Map<String, Map<CEVertex, Alarm>> alarmsByVertexByAlarmId = new HashMap<>();
+
+    /**
+     * Apply the changes made to the live graph.
+     *
+     * @param liveGraph the live graph, which must be locked by the caller
+     * @param liveChanges the topology changes made to the live graph since the last update
+     * @param liveVerticesWithAlarmChanges the vertices on the live graph for which the alarms changed since the last update
+     * @return the topology changes made to the snapshot, referencing the vertices in the snapshot
+     */
+    GraphChangeSet update(Graph<CEVertex, CEEdge> liveGraph, GraphChangeSet liveChanges,
+                          Collection<CEVertex> liveVerticesWithAlarmChanges) {
+        final GraphChangeSet changes = new GraphChangeSet();
+
+        // Vertices that were added and possibly removed again since the last update are skipped
+        for (CEVertex liveVertex : liveChanges.getVerticesAdded()) {
+            if (liveGraph.containsVertex(liveVertex) && !vertexByLiveVertex.containsKey(liveVertex)) {
+                final CEVertex vertex = liveVertex.copy();
+                g.addVertex(vertex);
+                vertexByLiveVertex.put(liveVertex, vertex);
+                vertexById.put(vertex.getNumericId(), vertex);
+                vertexByResourceKey.put(vertex.getResourceKey(), vertex);
+                indexAlarmsOn(vertex);
+                changes.vertexAdded(vertex);
+            }
+        }
+
+        for (Map.Entry<CEEdge, Pair<CEVertex>> entry : liveChanges.getEdgesRemoved().entrySet()) {
+            final CEEdge edge = entry.getKey();
+            if (g.containsEdge(edge)) {
+                changes.edgeRemoved(edge, g.getEndpoints(edge));
+                g.removeEdge(edge);
+            }
+        }
+
+        for (CEVertex liveVertex : liveChanges.getVerticesRemoved()) {
+            if (liveGraph.containsVertex(liveVertex)) {
+                continue;
+            }
+            final CEVertex vertex = vertexByLiveVertex.remove(liveVertex);
+            if (vertex != null) {
+                // Any remaining edges are removed along with the vertex
+                for (CEEdge edge : g.getIncidentEdges(vertex)) {
+                    changes.edgeRemoved(edge, g.getEndpoints(edge));
+                }
+                g.removeVertex(vertex);
+                vertexById.remove(vertex.getNumericId());
+                vertexByResourceKey.remove(vertex.getResourceKey(), vertex);
+                unindexAlarmsOn(vertex);
+                changes.vertexRemoved(vertex);
+            }
+        }
+
+        for (CEEdge edge : liveChanges.getEdgesAdded().keySet()) {
+            if (!liveGraph.containsEdge(edge) || g.containsEdge(edge)) {
+                continue;
+            }
+            final Pair<CEVertex> liveEndpoints = liveGraph.getEndpoints(edge);
+            final CEVertex vertexA = vertexByLiveVertex.get(liveEndpoints.getFirst());
+            final CEVertex vertexB = vertexByLiveVertex.get(liveEndpoints.getSecond());
+            g.addEdge(edge, vertexA, vertexB);
+            changes.edgeAdded(edge, vertexA, vertexB);
+        }
+
+        // Update the list of disconnected vertices
+        for (CEVertex vertex : changes.getVerticesTouched()) {
+            if (g.containsVertex(vertex) && g.getNeighborCount(vertex) == 0) {
+                disconnectedVertices.add(vertex.getNumericId());
+            } else {
+                disconnectedVertices.remove(vertex.getNumericId());
+            }
+        }
+
+        // Copy the alarms
+        int numVerticesUpdated = 0;
+        for (CEVertex liveVertex : liveVerticesWithAlarmChanges) {
+            final CEVertex vertex = vertexByLiveVertex.get(liveVertex);
+            if (vertex != null) {
+                unindexAlarmsOn(vertex);
+                vertex.syncAlarmsWith(liveVertex);
+                indexAlarmsOn(vertex);
+                numVerticesUpdated++;
+            }
+        }
+
+        LOG.debug("Updated snapshot with {} and alarms on {} vertices.", changes, numVerticesUpdated);
+        return changes;
+    }
+
+    public Graph<CEVertex, CEEdge> getGraph() {
+        return g;
+    }
+
+    public CEVertex getVertexWithId(Long id) {
+        return vertexById.get(id);
+    }
+
+    /**
+     * Retrieve the vertex of the parent of the given inventory object.
+     *
+     * @param io the inventory object
+     * @return the vertex for the parent of the inventory object, if it is in the snapshot
+     */
+    public Optional<CEVertex> getVertexForParentOf(InventoryObject io) {
+        return Optional.ofNullable(vertexByResourceKey.get(ResourceKey.key(io.getParentType(), io.getParentId())));
+    }
+
+    /**
+     * Retrieve the vertex that holds the given alarm.
+     *
+     * @param alarm the alarm
+     * @return the vertex holding an alarm equal to the given alarm, if any
+     */
+    public Optional<CEVertex> getVertexForAlarm(Alarm alarm) {
+        final Map<CEVertex, Alarm> alarmsByVertex = alarmsByVertexByAlarmId.get(alarm.getId());
+        if (alarmsByVertex == null) {
+            return Optional.empty();
+        }
+        for (Map.Entry<CEVertex, Alarm> entry : alarmsByVertex.entrySet()) {
+            if (entry.getValue().equals(alarm)) {
+                return Optional.of(entry.getKey());
+            }
+        }
+        return Optional.empty();
+    }
+
+    public Set<Long> getDisconnectedVertices() {
+        return Collections.unmodifiableSet(disconnectedVertices);
+    }
+
+    private void indexAlarmsOn(CEVertex vertex) {
+        for (Alarm alarm : vertex.getAlarms()) {
+            alarmsByVertexByAlarmId.computeIfAbsent(alarm.getId(), id -> new LinkedHashMap<>()).put(vertex, alarm);
+        }
+    }
+
+    private void unindexAlarmsOn(CEVertex vertex) {
+        for (Alarm alarm : vertex.getAlarms()) {
+            final Map<CEVertex, Alarm> alarmsByVertex = alarmsByVertexByAlarmId.get(alarm.getId());
+            if (alarmsByVertex != null) {
+                alarmsByVertex.remove(vertex);
+                if (alarmsByVertex.isEmpty()) {
+                    alarmsByVertexByAlarmId.remove(alarm.getId());
+                }
+            }
+        }
+    }
+}
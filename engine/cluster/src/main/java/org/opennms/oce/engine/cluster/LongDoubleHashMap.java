@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.cluster;
+
+import java.util.Arrays;
+
+/**
+ * A compact hash map from non-negative longs to doubles, backed by primitive arrays.
+ *
+ * Uses open addressing with linear probing and backward shift deletion,
+ * so no boxing and no per-entry objects are required.
+ *
+ * This class is not thread safe.
+ */
+class LongDoubleHashMap {
+    private static final long EMPTY = -1L;
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final double MAX_LOAD_FACTOR = 0.6d;
+
+    private long[] keys;
+    private double[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    LongDoubleHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    LongDoubleHashMap(int initialCapacity) {
+        allocate(Integer.highestOneBit(Math.max(initialCapacity, 2) - 1) << 1);
+    }
+
+    /**
+     * @param key non-negative key
+     * @param defaultValue value to return if the key is not present
+     * @return the value associated with the key, or the default value if there is none
+     */
+    double get(long key, double defaultValue) {
+        final int idx = find(key);
+        return idx < 0 ? defaultValue : values[idx];
+    }
+
+    boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    void put(long key, double value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Keys must be non-negative. Got: " + key);
+        }
+        int idx = indexFor(key);
+        while (true) {
+            final long k = keys[idx];
+            if (k == EMPTY) {
+                keys[idx] = key;
+                values[idx] = value;
+                if (++size > resizeThreshold) {
+                    resize();
+                }
+                return;
+            } else if (k == key) {
+                values[idx] = value;
+                return;
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    boolean remove(long key) {
+        final int idx = find(key);
+        if (idx < 0) {
+            return false;
+        }
+
+        // Shift back any entries in the same run that would no longer be reachable
+        int gap = idx;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            final int home = indexFor(keys[next]);
+            // Move the entry if its home slot is not cyclically in (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private int find(long key) {
+        int idx = indexFor(key);
+        while (true) {
+            final long k = keys[idx];
+            if (k == EMPTY) {
+                return -1;
+            } else if (k == key) {
+                return idx;
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new double[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int)(capacity * MAX_LOAD_FACTOR);
+    }
+
+    private void resize() {
+        final long[] oldKeys = keys;
+        final double[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private int indexFor(long key) {
+        // Mix the bits (MurmurHash3 finalizer) since packed keys tend to have patterns
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int)h & mask;
+    }
+}
@@ -30,4 +30,20 @@ package org.opennms.oce.engine.cluster;
 
 public interface SpatialDistanceCalculator {
     double getSpatialDistanceBetween(long vertexIdA, long vertexIdB);
+
+    /**
+     * Retrieve the spatial distance between two vertices, when the caller is only interested in
+     * distances that are less than or equal to the given maximum.
+     *
+     * Implementations may return any value greater than the maximum when the vertices
+     * are further apart, which saves them from having to compute the exact distance.
+     *
+     * @param vertexIdA id of the first vertex
+     * @param vertexIdB id of the second vertex
+     * @param maxDistance maximum distance of interest
+     * @return the spatial distance, if less than or equal to maxDistance
+     */
+    default double getSpatialDistanceBetween(long vertexIdA, long vertexIdB, double maxDistance) {
+        return getSpatialDistanceBetween(vertexIdA, vertexIdB);
+    }
 }
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.cluster;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.jung.graph.Graph;
+
+/**
+ * Maintains the shortest path distances between all pairs of vertices that are within
+ * some maximum distance of one another.
+ *
+ * The distances are computed lazily by running a Dijkstra search bounded by the maximum distance
+ * from the first vertex of a pair for which the distance is requested - typically a vertex with alarms.
+ * The results are stored in a primitive map keyed by the ids of both vertices packed into a long.
+ *
+ * Once the search has been performed from a given source, all of the vertices that are
+ * not in the map are known to be further than the maximum distance from that source.
+ *
+ * When the graph changes, only the searches that reached one of the vertices that were touched by the change
+ * need to be discarded: a shortest path within the maximum distance that goes through an edge that was added or
+ * removed must start from a source that reached (at least) one of the endpoints of that edge.
+ *
+ * The graph must be locked by the caller while querying the oracle.
+ */
+public class SpatialDistanceOracle {
+    private static final Logger LOG = LoggerFactory.getLogger(SpatialDistanceOracle.class);
+
+    /**
+     * Value returned when the distance between two vertices is known to be greater than the maximum distance.
+     */
+    public static final double BEYOND_MAX_DISTANCE = Double.POSITIVE_INFINITY;
+
+    private static final long MAX_VERTEX_ID = Integer.MAX_VALUE;
+
+    private final Graph<CEVertex, CEEdge> g;
+    private final double maxDistance;
+
+    private final LongDoubleHashMap distances = new LongDoubleHashMap();
+    /**
+     * The ids of the vertices reached by every search, keyed by the id of the vertex from which the search was performed.
+     */
+    private final Map<Long, long[]> reachedBySource = new HashMap<>();
+
+    public SpatialDistanceOracle(Graph<CEVertex, CEEdge> g, double maxDistance) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("Max distance must be positive. Got: " + maxDistance);
+        }
+        this.g = Objects.requireNonNull(g);
+        this.maxDistance = maxDistance;
+    }
+
+    public double getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Retrieve the distance of the shortest path between two distinct vertices.
+     *
+     * @param vertexA first vertex
+     * @param vertexB second vertex
+     * @return the distance, or {@link #BEYOND_MAX_DISTANCE} if the vertices are further apart than the maximum distance
+     */
+    public synchronized double getDistance(CEVertex vertexA, CEVertex vertexB) {
+        final long vertexIdA = vertexA.getNumericId();
+        final long vertexIdB = vertexB.getNumericId();
+        if (vertexIdA > MAX_VERTEX_ID || vertexIdB > MAX_VERTEX_ID) {
+            throw new IllegalArgumentException("Vertex ids must be less than " + MAX_VERTEX_ID);
+        }
+        if (!reachedBySource.containsKey(vertexIdA) && !reachedBySource.containsKey(vertexIdB)) {
+            search(vertexA);
+        }
+        return distances.get(toKey(vertexIdA, vertexIdB), BEYOND_MAX_DISTANCE);
+    }
+
+    /**
+     * Verifies if the given vertex ids can be used with the oracle.
+     *
+     * @param vertexId vertex id
+     * @return true if the vertex id can be packed in a key
+     */
+    public static boolean isSupported(long vertexId) {
+        return vertexId >= 0 && vertexId <= MAX_VERTEX_ID;
+    }
+
+    /**
+     * Forget all of the distances.
+     */
+    public synchronized void invalidateAll() {
+        distances.clear();
+        reachedBySource.clear();
+    }
+
+    /**
+     * Forget the distances computed by all of the searches that reached any of the given vertices.
+     *
+     * @param vertexIds ids of the vertices that were touched by a change in the graph
+     * @return the number of searches that were discarded
+     */
+    public synchronized int invalidate(Set<Long> vertexIds) {
+        final Set<Long> sourcesToInvalidate = new HashSet<>();
+        for (Long sourceId : reachedBySource.keySet()) {
+            if (vertexIds.contains(sourceId)) {
+                sourcesToInvalidate.add(sourceId);
+                continue;
+            }
+            for (Long vertexId : vertexIds) {
+                if (isSupported(vertexId) && distances.containsKey(toKey(sourceId, vertexId))) {
+                    // The vertex is within the max distance of the source
+                    sourcesToInvalidate.add(sourceId);
+                    break;
+                }
+            }
+        }
+
+        for (Long sourceId : sourcesToInvalidate) {
+            for (long vertexId : reachedBySource.remove(sourceId)) {
+                // Pairs that were also found by a valid search from the other vertex remain valid
+                if (sourcesToInvalidate.contains(vertexId) || !reachedBySource.containsKey(vertexId)) {
+                    distances.remove(toKey(sourceId, vertexId));
+                }
+            }
+        }
+        return sourcesToInvalidate.size();
+    }
+
+    public synchronized int getNumSources() {
+        return reachedBySource.size();
+    }
+
+    public synchronized int getNumDistances() {
+        return distances.size();
+    }
+
+    private void search(CEVertex source) {
+        final long sourceId = source.getNumericId();
+        final Map<CEVertex, Double> distanceByVertex = getVerticesWithin(g, source, maxDistance);
+        final long[] reached = new long[distanceByVertex.size()];
+        int k = 0;
+        for (Map.Entry<CEVertex, Double> entry : distanceByVertex.entrySet()) {
+            final long vertexId = entry.getKey().getNumericId();
+            distances.put(toKey(sourceId, vertexId), entry.getValue());
+            reached[k++] = vertexId;
+        }
+        reachedBySource.put(sourceId, reached);
+        LOG.trace("Found {} vertices within {} of vertex with id: {}.", distanceByVertex.size(), maxDistance, sourceId);
+    }
+
+    /**
+     * Run a Dijkstra search from the given source, without following any path
+     * that is longer than the given maximum distance.
+     *
+     * The graph must be locked by the caller, or must not be modified while searching.
+     *
+     * @param g graph
+     * @param source vertex from which to search
+     * @param maxDistance maximum distance
+     * @return the distance to all of the vertices within the maximum distance of the source, excluding the source itself
+     */
+    public static Map<CEVertex, Double> getVerticesWithin(Graph<CEVertex, CEEdge> g, CEVertex source, double maxDistance) {
+        final Map<CEVertex, Double> distanceByVertex = new HashMap<>();
+        final PriorityQueue<VertexWithDistance> queue = new PriorityQueue<>();
+
+        distanceByVertex.put(source, 0d);
+        queue.add(new VertexWithDistance(source, 0d));
+        while (!queue.isEmpty()) {
+            final VertexWithDistance current = queue.poll();
+            if (current.distance > distanceByVertex.get(current.vertex)) {
+                // Stale entry
+                continue;
+            }
+            for (CEEdge edge : g.getIncidentEdges(current.vertex)) {
+                final CEVertex neighbor = g.getOpposite(current.vertex, edge);
+                final double distance = current.distance + edge.getWeight();
+                if (distance > maxDistance) {
+                    continue;
+                }
+                final Double existingDistance = distanceByVertex.get(neighbor);
+                if (existingDistance == null || distance < existingDistance) {
+                    distanceByVertex.put(neighbor, distance);
+                    queue.add(new VertexWithDistance(neighbor, distance));
+                }
+            }
+        }
+
+        distanceByVertex.remove(source);
+        return distanceByVertex;
+    }
+
+    private static long toKey(long vertexIdA, long vertexIdB) {
+        if (vertexIdA <= vertexIdB) {
+            return (vertexIdA << 32) | vertexIdB;
+        } else {
+            return (vertexIdB << 32) | vertexIdA;
+        }
+    }
+
+    private static class VertexWithDistance implements Comparable<VertexWithDistance> {
+        private final CEVertex vertex;
+        private final double distance;
+
+        private VertexWithDistance(CEVertex vertex, double distance) {
+            this.vertex = vertex;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(VertexWithDistance other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+}
@@ -219,6 +219,39 @@ public class ClusterEngineTest implements SituationHandler {
         assertThat(engine.getSituationsById().size(), equalTo(0));
     }
 
+    @Test
+    public void canClusterAlarmsDeliveredInBatches() {
+        long now = System.currentTimeMillis();
+        engine.setTickResolutionMs(TimeUnit.SECONDS.toMillis(30));
+
+        final Alarm alarm1 = ImmutableAlarm.newBuilder()
+                .setId("1")
+                .setInventoryObjectType(MockInventoryType.COMPONENT.getType())
+                .setInventoryObjectId("a")
+                .setTime(now)
+                .build();
+        final Alarm alarm2 = ImmutableAlarm.newBuilder()
+                .setId("2")
+                .setInventoryObjectType(MockInventoryType.COMPONENT.getType())
+                .setInventoryObjectId("a")
+                .setTime(now+1)
+                .build();
+        engine.onAlarmsCreatedOrUpdated(Arrays.asList(alarm1, alarm2));
+
+        // Both alarms should be on the same vertex
+        engine.getGraphManager().withVertex(MockInventoryType.COMPONENT.getType(), "a", (g,v) -> {
+            assertThat(v.getAlarms(), containsInAnyOrder(alarm1, alarm2));
+        });
+
+        // Tick
+        engine.tick(now+2);
+
+        // We should now have a single situation with both alarms
+        assertThat(situationsById.keySet(), hasSize(1));
+        Situation situation = situationsById.values().iterator().next();
+        assertThat(situation.getAlarms(), containsInAnyOrder(alarm1, alarm2));
+    }
+
     @Test
     public void canBlacklistAlarms() {
         long now = System.currentTimeMillis();
@@ -376,6 +409,8 @@ public class ClusterEngineTest implements SituationHandler {
 
         // Process the cluster
         engine.setSituations(Arrays.asList(situation1, situation2));
+        // The clusters are normally processed on tick, once the snapshot of the graph has been updated
+        engine.getGraphManager().updateSnapshot();
         AbstractClusterEngine.TickContext context = engine.getTickContextFor(0L);
         engine.mapClusterToSituations(cluster, context);
 
@@ -404,6 +439,8 @@ public class ClusterEngineTest implements SituationHandler {
                         MockInventoryType.COMPONENT, "d")
                 .withRelativeRelation(MockInventoryType.COMPONENT, "e", MockInventoryType.COMPONENT, "d")
                 .getInventory());
+        // The distances are computed on the snapshot of the graph, which is normally updated on tick
+        engine.getGraphManager().updateSnapshot();
 
         // A-B is a parent relationship
         assertThat(engine.getSpatialDistanceBetween(getVertexIdForComponentId("a"), getVertexIdForComponentId("b")),
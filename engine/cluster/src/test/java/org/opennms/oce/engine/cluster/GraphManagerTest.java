@@ -34,9 +34,12 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
@@ -90,6 +93,173 @@ public class GraphManagerTest {
         });
     }
 
+    @Test
+    public void canTrackGraphChanges() {
+        final GraphManager graphManager = new GraphManager();
+        final List<InventoryObject> inventory = MockInventory.getSampleNetwork();
+        graphManager.addInventory(inventory);
+
+        // All of the vertices and edges should be part of the first change set
+        GraphChangeSet changes = graphManager.getGraphChangesAndReset();
+        assertThat(changes.getVerticesAdded(), hasSize(MockInventory.SAMPLE_NETWORK.size()));
+        final int numEdges = graphManager.withGraph(g -> {
+            return g.getEdgeCount();
+        });
+        assertThat(changes.getEdgesAdded().size(), equalTo(numEdges));
+        // The changes should be reset once retrieved
+        assertThat(graphManager.getGraphChangesAndReset().isEmpty(), equalTo(true));
+
+        // Adding the same inventory again should not generate any changes
+        graphManager.addInventory(inventory);
+        assertThat(graphManager.getGraphChangesAndReset().isEmpty(), equalTo(true));
+
+        // Removing a vertex should also remove the edges attached to it
+        final InventoryObject port = inventory.stream()
+                .filter(io -> "n2-c1-p2".equals(io.getId()))
+                .findFirst().get();
+        graphManager.removeInventory(Collections.singletonList(port));
+        changes = graphManager.getGraphChangesAndReset();
+        assertThat(changes.getVerticesRemoved(), hasSize(1));
+        assertThat(changes.getEdgesRemoved().size(), equalTo(1));
+        // The port and its parent card should have been touched
+        assertThat(changes.getVerticesTouched(), hasSize(2));
+    }
+
+    @Test
+    public void canMaintainSnapshot() {
+        final GraphManager graphManager = new GraphManager();
+        final List<InventoryObject> inventory = MockInventory.getSampleNetwork();
+        graphManager.addInventory(inventory);
+        graphManager.addOrUpdateAlarms(new MockAlarmBuilder()
+                .withId("a1")
+                .withInventoryObject(MockInventoryType.PORT, "n1-c1-p1")
+                .withEvent(SECONDS.toMillis(1), Severity.MAJOR)
+                .build());
+
+        // The snapshot should be empty until it is updated
+        final GraphSnapshot snapshot = graphManager.getSnapshot();
+        assertThat(snapshot.getGraph().getVertexCount(), equalTo(0));
+        graphManager.updateSnapshot();
+        assertThat(snapshot.getGraph().getVertexCount(), equalTo(MockInventory.SAMPLE_NETWORK.size()));
+        final int numEdges = graphManager.withGraph(g -> {
+            return g.getEdgeCount();
+        });
+        assertThat(snapshot.getGraph().getEdgeCount(), equalTo(numEdges));
+        final CEVertex vertex = graphManager.getVertexFor(inventory.stream()
+                .filter(io -> "n1-c1-p1".equals(io.getId()))
+                .findFirst().get()).get();
+        final CEVertex vertexInSnapshot = snapshot.getVertexWithId(vertex.getNumericId());
+        assertThat(vertexInSnapshot.getAlarms(), hasSize(1));
+        // The parents should be resolved to the vertices in the snapshot
+        final CEVertex parentInSnapshot = snapshot.getVertexForParentOf(vertex.getInventoryObject().get()).get();
+        assertThat(parentInSnapshot == snapshot.getVertexWithId(parentInSnapshot.getNumericId()), equalTo(true));
+        assertThat(parentInSnapshot.getInventoryObject().get().getId(), equalTo("n1-c1"));
+
+        // Changes made to the live graph should not be visible until the snapshot is updated
+        graphManager.addOrUpdateAlarms(new MockAlarmBuilder()
+                .withId("a2")
+                .withInventoryObject(MockInventoryType.PORT, "n1-c1-p1")
+                .withEvent(SECONDS.toMillis(2), Severity.MAJOR)
+                .build());
+        final InventoryObject port = inventory.stream()
+                .filter(io -> "n2-c1-p2".equals(io.getId()))
+                .findFirst().get();
+        graphManager.removeInventory(Collections.singletonList(port));
+        assertThat(vertexInSnapshot.getAlarms(), hasSize(1));
+        assertThat(snapshot.getGraph().getVertexCount(), equalTo(MockInventory.SAMPLE_NETWORK.size()));
+
+        final GraphChangeSet changes = graphManager.updateSnapshot();
+        assertThat(changes.getVerticesRemoved(), hasSize(1));
+        assertThat(vertexInSnapshot.getAlarms(), hasSize(2));
+        assertThat(snapshot.getGraph().getVertexCount(), equalTo(MockInventory.SAMPLE_NETWORK.size() - 1));
+        assertThat(snapshot.getGraph().getEdgeCount(), equalTo(numEdges - 1));
+        // The vertices in the snapshot should be retained between updates
+        assertThat(snapshot.getVertexWithId(vertex.getNumericId()) == vertexInSnapshot, equalTo(true));
+
+        // Vertices created for alarms that are not associated with any inventory are disconnected
+        final CEVertex disconnectedVertex = graphManager.addOrUpdateAlarm(ImmutableAlarm.newBuilder()
+                .setId("a3")
+                .setInventoryObjectType("Unknown")
+                .setInventoryObjectId("u1")
+                .setTime(SECONDS.toMillis(2))
+                .setSeverity(Severity.MAJOR)
+                .build()).get();
+        graphManager.updateSnapshot();
+        assertThat(snapshot.getDisconnectedVertices().contains(disconnectedVertex.getNumericId()), equalTo(true));
+        assertThat(snapshot.getDisconnectedVertices().contains(vertex.getNumericId()), equalTo(false));
+
+        // The vertices should be indexed by the alarms they hold
+        for (Alarm alarm : vertexInSnapshot.getAlarms()) {
+            assertThat(snapshot.getVertexForAlarm(alarm).get() == vertexInSnapshot, equalTo(true));
+        }
+        // Alarms that are garbage collected should no longer be indexed
+        final Alarm alarm = vertexInSnapshot.getAlarms().iterator().next();
+        graphManager.garbageCollectAlarms(SECONDS.toMillis(3), 0, 0);
+        graphManager.updateSnapshot();
+        assertThat(vertexInSnapshot.getAlarms(), hasSize(0));
+        assertThat(snapshot.getVertexForAlarm(alarm).isPresent(), equalTo(false));
+    }
+
+    /**
+     * Verifies that the alarms garbage collected using the expiry index are the same
+     * as the ones garbage collected by scanning all of the alarms on all of the vertices.
+     */
+    @Test
+    public void canGarbageCollectAlarms() {
+        final GraphManager graphManager = new GraphManager();
+        final GraphManager referenceGraphManager = new GraphManager();
+        final List<InventoryObject> inventory = MockInventory.getSampleNetwork();
+        graphManager.addInventory(inventory);
+        referenceGraphManager.addInventory(inventory);
+
+        final long problemTimeoutMs = 60000;
+        final long clearTimeoutMs = 10000;
+        final Random r = new Random(42);
+        for (int tick = 1; tick <= 100; tick++) {
+            final long now = tick * 5000L;
+            // Add or update some alarms, possibly moving these back or forward in time
+            for (int i = 0; i < 10; i++) {
+                final InventoryObject io = inventory.get(r.nextInt(inventory.size()));
+                final Alarm alarm = ImmutableAlarm.newBuilder()
+                        .setId(Integer.toString(r.nextInt(50)))
+                        .setInventoryObjectType(io.getType())
+                        .setInventoryObjectId(io.getId())
+                        .setTime(now - r.nextInt(20000))
+                        .setSeverity(r.nextBoolean() ? Severity.CLEARED : Severity.MAJOR)
+                        .build();
+                graphManager.addOrUpdateAlarm(alarm);
+                referenceGraphManager.addOrUpdateAlarm(alarm);
+            }
+
+            final int numGarbageCollectedAlarms = graphManager.garbageCollectAlarms(now, problemTimeoutMs, clearTimeoutMs);
+            final int expectedNumGarbageCollectedAlarms = referenceGraphManager.withGraph(g -> {
+                return g.getVertices().stream()
+                        .mapToInt(v -> garbageCollectAlarmsOn(v, now, problemTimeoutMs, clearTimeoutMs))
+                        .sum();
+            });
+            assertThat(numGarbageCollectedAlarms, equalTo(expectedNumGarbageCollectedAlarms));
+            for (InventoryObject io : inventory) {
+                assertThat(new ArrayList<>(graphManager.getVertexFor(io).get().getAlarms()),
+                        equalTo(new ArrayList<>(referenceGraphManager.getVertexFor(io).get().getAlarms())));
+            }
+        }
+    }
+
+    /**
+     * Garbage collect the alarms on the given vertex by scanning all of them.
+     */
+    private static int garbageCollectAlarmsOn(CEVertex vertex, long now, long problemTimeoutMs, long clearTimeoutMs) {
+        int numRemoved = 0;
+        for (Alarm alarm : new ArrayList<>(vertex.getAlarms())) {
+            final long timeoutMs = alarm.isClear() ? clearTimeoutMs : problemTimeoutMs;
+            if (alarm.getTime() < now - timeoutMs) {
+                vertex.removeAlarm(alarm.getId());
+                numRemoved++;
+            }
+        }
+        return numRemoved;
+    }
+
     @Test
     public void canHandleSameInventory() {
         // Create a new graph manager and add some inventory
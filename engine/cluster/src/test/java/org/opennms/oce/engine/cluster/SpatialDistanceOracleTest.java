@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.cluster;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.oce.datasource.api.InventoryObject;
+import org.opennms.oce.driver.test.MockInventory;
+import org.opennms.oce.driver.test.MockInventoryType;
+
+import edu.uci.ics.jung.algorithms.shortestpath.DijkstraShortestPath;
+import edu.uci.ics.jung.graph.Graph;
+
+public class SpatialDistanceOracleTest {
+
+    /**
+     * Verifies that the oracle returns the same distances as an unbounded
+     * Dijkstra search for all of the pairs within the maximum distance.
+     */
+    /**
+     * Verifies that the oracle returns the same distances as an unbounded
+     * Dijkstra search for all of the pairs within the maximum distance.
+     */
+    @Test
+    public void canComputeSameDistancesAsDijkstra() {
+        final GraphManager graphManager = new GraphManager();
+        graphManager.addInventory(MockInventory.getSampleNetwork());
+
+        graphManager.withGraph(g -> {
+            for (double maxDistance : new double[]{0, 100, 250, 1000}) {
+                final SpatialDistanceOracle oracle = new SpatialDistanceOracle(g, maxDistance);
+                assertSameDistancesAsDijkstra(g, oracle);
+                // The distances from the last vertex are all known once the searches from the other vertices are complete
+                assertThat(oracle.getNumSources(), lessThan(g.getVertexCount()));
+            }
+        });
+    }
+
+    /**
+     * Verifies that the oracle only discards the searches that are affected
+     * by a change, and that the remaining distances are still valid.
+     */
+    @Test
+    public void canInvalidateAffectedDistances() {
+        final GraphManager graphManager = new GraphManager();
+        final List<InventoryObject> inventory = MockInventory.getSampleNetwork();
+        graphManager.addInventory(inventory);
+        graphManager.getGraphChangesAndReset();
+
+        final SpatialDistanceOracle oracle = graphManager.withGraph(g -> {
+            final SpatialDistanceOracle o = new SpatialDistanceOracle(g, 2 * InventoryObject.DEFAULT_WEIGHT);
+            assertSameDistancesAsDijkstra(g, o);
+            return o;
+        });
+        final int numSources = oracle.getNumSources();
+
+        // Remove the link between the nodes
+        final List<InventoryObject> links = inventory.stream()
+                .filter(io -> MockInventoryType.LINK.getType().equals(io.getType()))
+                .collect(Collectors.toList());
+        graphManager.removeInventory(links);
+        assertThat(oracle.invalidate(getTouchedVertexIds(graphManager.getGraphChangesAndReset())), allOf(greaterThan(0), lessThan(numSources)));
+        graphManager.withGraph(g -> {
+            assertSameDistancesAsDijkstra(g, oracle);
+        });
+
+        // Add it back
+        graphManager.addInventory(links);
+        assertThat(oracle.invalidate(getTouchedVertexIds(graphManager.getGraphChangesAndReset())), greaterThan(0));
+        graphManager.withGraph(g -> {
+            assertSameDistancesAsDijkstra(g, oracle);
+        });
+    }
+
+    @Test
+    public void canInvalidateAllDistances() {
+        final GraphManager graphManager = new GraphManager();
+        graphManager.addInventory(MockInventory.getSampleNetwork());
+
+        graphManager.withGraph(g -> {
+            final SpatialDistanceOracle oracle = new SpatialDistanceOracle(g, 1000);
+            final List<CEVertex> vertices = new ArrayList<>(g.getVertices());
+            oracle.getDistance(vertices.get(0), vertices.get(1));
+            assertThat(oracle.getNumSources(), equalTo(1));
+            assertThat(oracle.getNumDistances(), greaterThan(0));
+
+            oracle.invalidateAll();
+            assertThat(oracle.getNumSources(), equalTo(0));
+            assertThat(oracle.getNumDistances(), equalTo(0));
+        });
+    }
+
+    private static void assertSameDistancesAsDijkstra(Graph<CEVertex, CEEdge> g, SpatialDistanceOracle oracle) {
+        final DijkstraShortestPath<CEVertex, CEEdge> shortestPath = new DijkstraShortestPath<>(g, CEEdge::getWeight, true);
+        final List<CEVertex> vertices = new ArrayList<>(g.getVertices());
+        for (CEVertex vertexA : vertices) {
+            for (CEVertex vertexB : vertices) {
+                if (vertexA == vertexB) {
+                    continue;
+                }
+                final Number expectedDistance = shortestPath.getDistance(vertexA, vertexB);
+                final double actualDistance = oracle.getDistance(vertexA, vertexB);
+                if (expectedDistance != null && expectedDistance.doubleValue() <= oracle.getMaxDistance()) {
+                    assertThat(actualDistance, equalTo(expectedDistance.doubleValue()));
+                } else {
+                    assertThat(actualDistance, equalTo(SpatialDistanceOracle.BEYOND_MAX_DISTANCE));
+                }
+            }
+        }
+    }
+
+    private static Set<Long> getTouchedVertexIds(GraphChangeSet changes) {
+        return changes.getVerticesTouched().stream()
+                .map(CEVertex::getNumericId)
+                .collect(Collectors.toSet());
+    }
+}
@@ -52,6 +52,19 @@ public class AlarmInSpaceTimeDistanceMeasure implements DistanceMeasure {
 
     @Override
     public double compute(double[] a, double[] b) throws DimensionMismatchException {
+        return compute(a, b, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Compute the distance between two points, when the caller is only interested
+     * in distances that are less than or equal to the given maximum.
+     *
+     * @param a first point
+     * @param b second point
+     * @param maxDistance maximum distance of interest
+     * @return the distance, or some value greater than maxDistance if the points are further apart
+     */
+    public double compute(double[] a, double[] b, double maxDistance) {
         final double timeA = a[0];
         final double timeB = b[0];
 
@@ -60,7 +73,8 @@ public class AlarmInSpaceTimeDistanceMeasure implements DistanceMeasure {
 
         double spatialDistance = 0;
         if (vertexIdA != vertexIdB) {
-            spatialDistance = spatialDistanceCalculator.getSpatialDistanceBetween(vertexIdA, vertexIdB);
+            spatialDistance = spatialDistanceCalculator.getSpatialDistanceBetween(vertexIdA, vertexIdB,
+                    getMaxSpatialDistance(maxDistance));
             if (spatialDistance == 0) {
                 // No path
                 spatialDistance = Integer.MAX_VALUE;
@@ -80,4 +94,41 @@ public class AlarmInSpaceTimeDistanceMeasure implements DistanceMeasure {
         return alpha * ( beta * (Math.abs(timeA - timeB) / 1000d / 60d) + (1-beta) * spatialDistance / DEFAULT_WEIGHT);
     }
 
+    /**
+     * Since the spatial distance is never negative, the distance between two alarms is bounded
+     * below by the temporal component. Use this to determine the largest difference in time two
+     * alarms can have, while remaining within the given distance of one another.
+     *
+     * @param maxDistance maximum distance
+     * @return upper bound on the time difference in milliseconds, or {@link Double#POSITIVE_INFINITY} if
+     * the time difference cannot be bounded
+     */
+    public double getMaxTimeDeltaMs(double maxDistance) {
+        if (alpha <= 0 || beta <= 0 || beta > 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double maxTimeDeltaMs = maxDistance / (alpha * beta) * 60d * 1000d;
+        // Widen the bound slightly to avoid excluding points due to rounding errors,
+        // candidates are always verified against the actual distance
+        return maxTimeDeltaMs * (1 + 1e-9) + 1;
+    }
+
+    /**
+     * Since the time difference is never negative, the distance between two alarms is bounded
+     * below by the spatial component. Use this to determine the largest spatial distance two
+     * alarms can have, while remaining within the given distance of one another.
+     *
+     * @param maxDistance maximum distance
+     * @return upper bound on the spatial distance, or {@link Double#POSITIVE_INFINITY} if
+     * the spatial distance cannot be bounded
+     */
+    public double getMaxSpatialDistance(double maxDistance) {
+        if (alpha <= 0 || beta < 0 || beta >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double maxSpatialDistance = maxDistance / (alpha * (1 - beta)) * DEFAULT_WEIGHT;
+        // Widen the bound slightly to avoid excluding points due to rounding errors
+        return maxSpatialDistance * (1 + 1e-9);
+    }
+
 }
@@ -31,10 +31,11 @@ package org.opennms.oce.engine.dbscan;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import org.apache.commons.math3.ml.clustering.Cluster;
-import org.apache.commons.math3.ml.clustering.DBSCANClusterer;
 import org.opennms.oce.engine.cluster.AlarmInSpaceTime;
 import org.opennms.oce.engine.cluster.CEEdge;
 import org.opennms.oce.engine.cluster.CEVertex;
@@ -70,23 +71,79 @@ public class DBScanEngine extends AbstractClusterEngine {
     public static final double  DEFAULT_EPSILON = 100d;
     public static final double DEFAULT_ALPHA = 144.47117699d;
     public static final double DEFAULT_BETA = 0.55257784d;
+    public static final boolean DEFAULT_INCREMENTAL = false;
+    public static final boolean DEFAULT_USE_SPATIAL_DISTANCE_ORACLE = false;
+    public static final int DEFAULT_PARALLELISM = 1;
+
+    private static final int MIN_PTS = 1;
 
     private final double epsilon;
     private final AlarmInSpaceTimeDistanceMeasure distanceMeasure;
+    private final IncrementalDBSCANClusterer incrementalClusterer;
+    private final ForkJoinPool forkJoinPool;
+    private final ParallelDBSCANClusterer parallelClusterer;
 
     public DBScanEngine() {
         this(DEFAULT_EPSILON, DEFAULT_ALPHA, DEFAULT_BETA);
     }
 
     public DBScanEngine(double epsilon, double alpha, double beta) {
+        this(epsilon, alpha, beta, DEFAULT_INCREMENTAL);
+    }
+
+    public DBScanEngine(double epsilon, double alpha, double beta, boolean incremental) {
+        this(epsilon, alpha, beta, incremental, DEFAULT_USE_SPATIAL_DISTANCE_ORACLE);
+    }
+
+    public DBScanEngine(double epsilon, double alpha, double beta, boolean incremental, boolean useSpatialDistanceOracle) {
+        this(epsilon, alpha, beta, incremental, useSpatialDistanceOracle, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param incremental when true, the eps-neighbourhoods of the alarms are maintained between ticks
+     *                    and only the alarms that were added, updated or removed since the last tick are re-evaluated
+     * @param useSpatialDistanceOracle when true, the spatial distances between all of the vertices that can be
+     *                                 within epsilon of one another are computed using bounded searches
+     * @param parallelism when greater than 1, the alarms are partitioned by weakly connected component and
+     *                    the partitions are clustered concurrently on a pool with the given number of threads
+     */
+    public DBScanEngine(double epsilon, double alpha, double beta, boolean incremental, boolean useSpatialDistanceOracle,
+                        int parallelism) {
         this.epsilon = epsilon;
         distanceMeasure = new AlarmInSpaceTimeDistanceMeasure(this, alpha, beta);
+        final double maxSpatialDistance = distanceMeasure.getMaxSpatialDistance(epsilon);
+        if (useSpatialDistanceOracle) {
+            if (Double.isFinite(maxSpatialDistance)) {
+                useSpatialDistanceOracle(maxSpatialDistance);
+            } else {
+                LOG.warn("The spatial distance cannot be bounded with alpha: {} and beta: {}. The oracle will not be used.", alpha, beta);
+            }
+        }
+        incrementalClusterer = incremental ? new IncrementalDBSCANClusterer(epsilon, MIN_PTS, distanceMeasure) : null;
+
+        boolean clusterInParallel = parallelism > 1;
+        if (clusterInParallel && incremental) {
+            LOG.warn("Parallel clustering is not supported in incremental mode. The alarms will be clustered on a single thread.");
+            clusterInParallel = false;
+        } else if (clusterInParallel && !Double.isFinite(maxSpatialDistance)) {
+            // Alarms in disconnected components may be neighbours, so we can't partition these
+            LOG.warn("The spatial distance cannot be bounded with alpha: {} and beta: {}. The alarms will be clustered on a single thread.", alpha, beta);
+            clusterInParallel = false;
+        }
+        forkJoinPool = clusterInParallel ? new ForkJoinPool(parallelism) : null;
+        parallelClusterer = clusterInParallel ? new ParallelDBSCANClusterer(epsilon, MIN_PTS, distanceMeasure, forkJoinPool) : null;
+    }
+
+    @Override
+    public void onDestroy() {
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdown();
+        }
     }
 
     @Override
     public List<Cluster<AlarmInSpaceTime>> cluster(long timestampInMillis, Graph<CEVertex, CEEdge> g) {
         // Ensure the points are sorted in order to make sure that the output of the clusterer is deterministic
-        // OPTIMIZATION: Can we avoid doing this every tick?
         final List<AlarmInSpaceTime> alarms = g.getVertices().stream()
                 .map(v -> v.getAlarms().stream()
                         .map(a -> new AlarmInSpaceTime(v, a))
@@ -96,14 +153,32 @@ public class DBScanEngine extends AbstractClusterEngine {
                 .collect(Collectors.toList());
         if (alarms.size() < 1) {
             LOG.debug("{}: The graph contains no alarms. No clustering will be performed.", timestampInMillis);
+            if (incrementalClusterer != null) {
+                incrementalClusterer.reset();
+            }
             return null;
         }
 
         LOG.debug("{}: Clustering {} alarms.", timestampInMillis, alarms.size());
-        final DBSCANClusterer<AlarmInSpaceTime> clusterer = new DBSCANClusterer<>(epsilon, 1, distanceMeasure);
+        if (incrementalClusterer != null) {
+            return incrementalClusterer.cluster(alarms);
+        } else if (parallelClusterer != null) {
+            return parallelClusterer.cluster(alarms, g);
+        }
+        // Without any previous state, the clusterer computes all of the neighbourhoods from scratch and generates the
+        // same output as the DBSCANClusterer, but uses a time index to limit the number of distance computations
+        final IncrementalDBSCANClusterer clusterer = new IncrementalDBSCANClusterer(epsilon, MIN_PTS, distanceMeasure);
         return clusterer.cluster(alarms);
     }
 
+    @Override
+    public void onGraphChanged(Set<Long> affectedVertexIds) {
+        if (incrementalClusterer != null) {
+            // The distances between the alarms on these vertices may have changed
+            incrementalClusterer.invalidate(affectedVertexIds);
+        }
+    }
+
     @Override
     public double getDistanceBetween(double t1, double t2, double distance) {
         return distanceMeasure.compute(t1, t2, distance);
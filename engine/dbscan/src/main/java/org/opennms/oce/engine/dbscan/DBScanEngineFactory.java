@@ -36,6 +36,9 @@ public class DBScanEngineFactory implements EngineFactory {
     private double epsilon = DBScanEngine.DEFAULT_EPSILON;
     private double alpha = DBScanEngine.DEFAULT_ALPHA;
     private double beta = DBScanEngine.DEFAULT_BETA;
+    private boolean incremental = DBScanEngine.DEFAULT_INCREMENTAL;
+    private boolean useSpatialDistanceOracle = DBScanEngine.DEFAULT_USE_SPATIAL_DISTANCE_ORACLE;
+    private int parallelism = DBScanEngine.DEFAULT_PARALLELISM;
 
     @Override
     public String getName() {
@@ -44,7 +47,7 @@ public class DBScanEngineFactory implements EngineFactory {
 
     @Override
     public AbstractClusterEngine createEngine() {
-        return new DBScanEngine(epsilon, alpha, beta);
+        return new DBScanEngine(epsilon, alpha, beta, incremental, useSpatialDistanceOracle, parallelism);
     }
 
     public double getEpsilon() {
@@ -70,4 +73,28 @@ public class DBScanEngineFactory implements EngineFactory {
     public void setBeta(double beta) {
         this.beta = beta;
     }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isUseSpatialDistanceOracle() {
+        return useSpatialDistanceOracle;
+    }
+
+    public void setUseSpatialDistanceOracle(boolean useSpatialDistanceOracle) {
+        this.useSpatialDistanceOracle = useSpatialDistanceOracle;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
 }
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.dbscan;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.commons.math3.ml.clustering.Cluster;
+import org.opennms.oce.engine.cluster.AlarmInSpaceTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A DBSCAN clusterer that maintains the eps-neighbourhoods of the points between calls.
+ *
+ * On every call we compare the given alarms with the ones we saw on the previous call and
+ * only compute the distances for alarms that were added or updated (in space or time).
+ * Alarms that are no longer present are removed from the neighbourhoods of their neighbours.
+ *
+ * Region queries are first bounded in time, using the lower bound on the distance provided by
+ * {@link AlarmInSpaceTimeDistanceMeasure#getMaxTimeDeltaMs(double)}, and the full distance is only
+ * computed for the points that fall within that window.
+ *
+ * The clusters are then built by expanding the neighbourhoods in the same way the
+ * {@link org.apache.commons.math3.ml.clustering.DBSCANClusterer} does, so given the same
+ * (ordered) list of points, both clusterers produce the same output.
+ *
+ * The distances are assumed to remain stable between calls. If the underlying graph changes,
+ * {@link #invalidate(Set)} must be called with the vertices for which the distances may have changed.
+ */
+public class IncrementalDBSCANClusterer {
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalDBSCANClusterer.class);
+
+    private final double epsilon;
+    private final int minPts;
+    private final AlarmInSpaceTimeDistanceMeasure distanceMeasure;
+    private final double maxTimeDeltaMs;
+
+    private final Map<PointKey, Point> pointsByKey = new HashMap<>();
+    private final TimeIndex<Point> timeIndex = new TimeIndex<>();
+
+    public IncrementalDBSCANClusterer(double epsilon, int minPts, AlarmInSpaceTimeDistanceMeasure distanceMeasure) {
+        if (epsilon < 0.0d) {
+            throw new IllegalArgumentException("Epsilon must be positive. Got: " + epsilon);
+        }
+        if (minPts < 0) {
+            throw new IllegalArgumentException("MinPts must be positive. Got: " + minPts);
+        }
+        this.epsilon = epsilon;
+        this.minPts = minPts;
+        this.distanceMeasure = Objects.requireNonNull(distanceMeasure);
+        maxTimeDeltaMs = distanceMeasure.getMaxTimeDeltaMs(epsilon);
+    }
+
+    private static class Point {
+        private AlarmInSpaceTime alarm;
+        private final Set<Point> neighbors = new HashSet<>();
+        private int index;
+        private List<Point> sortedNeighbors;
+
+        private Point(AlarmInSpaceTime alarm) {
+            this.alarm = alarm;
+        }
+
+        private List<Point> getSortedNeighbors() {
+            if (sortedNeighbors == null) {
+                sortedNeighbors = new ArrayList<>(neighbors);
+                sortedNeighbors.sort(Comparator.comparingInt(p -> p.index));
+            }
+            return sortedNeighbors;
+        }
+    }
+
+    /**
+     * The same alarm may be present on more than one vertex, so we key the points
+     * using both the alarm id and the vertex id.
+     */
+    private static class PointKey {
+        private final String alarmId;
+        private final long vertexId;
+
+        private PointKey(AlarmInSpaceTime alarm) {
+            this.alarmId = alarm.getAlarmId();
+            this.vertexId = alarm.getVertex().getNumericId();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PointKey pointKey = (PointKey) o;
+            return vertexId == pointKey.vertexId &&
+                    Objects.equals(alarmId, pointKey.alarmId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(alarmId, vertexId);
+        }
+    }
+
+    private enum PointStatus {
+        NOISE,
+        PART_OF_CLUSTER
+    }
+
+    /**
+     * Cluster the given alarms.
+     *
+     * @param alarms sorted list of alarms, the order is used to make the output deterministic
+     * @return the clusters
+     */
+    public List<Cluster<AlarmInSpaceTime>> cluster(List<AlarmInSpaceTime> alarms) {
+        update(alarms);
+
+        final List<Point> points = new ArrayList<>(alarms.size());
+        for (AlarmInSpaceTime alarm : alarms) {
+            final Point point = pointsByKey.get(new PointKey(alarm));
+            point.index = points.size();
+            point.sortedNeighbors = null;
+            points.add(point);
+        }
+
+        final List<Cluster<AlarmInSpaceTime>> clusters = new ArrayList<>();
+        final Map<Point, PointStatus> visited = new HashMap<>();
+        for (Point point : points) {
+            if (visited.get(point) != null) {
+                continue;
+            }
+            final List<Point> neighbors = point.getSortedNeighbors();
+            if (neighbors.size() >= minPts) {
+                clusters.add(expandCluster(point, neighbors, visited));
+            } else {
+                visited.put(point, PointStatus.NOISE);
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * Forget all of the previously computed neighbourhoods.
+     */
+    public void reset() {
+        pointsByKey.clear();
+        timeIndex.clear();
+    }
+
+    /**
+     * Forget the neighbourhoods of the points on the given vertices.
+     *
+     * These will be recomputed on the next call to {@link #cluster(List)}.
+     *
+     * @param vertexIds ids of the vertices
+     */
+    public void invalidate(Set<Long> vertexIds) {
+        int numRemoved = 0;
+        final Iterator<Map.Entry<PointKey, Point>> it = pointsByKey.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<PointKey, Point> entry = it.next();
+            if (vertexIds.contains(entry.getKey().vertexId)) {
+                unlink(entry.getValue());
+                it.remove();
+                numRemoved++;
+            }
+        }
+        LOG.debug("Invalidated {} points. Tracking {} points.", numRemoved, pointsByKey.size());
+    }
+
+    private void update(List<AlarmInSpaceTime> alarms) {
+        final Map<PointKey, AlarmInSpaceTime> alarmsByKey = new LinkedHashMap<>();
+        for (AlarmInSpaceTime alarm : alarms) {
+            alarmsByKey.put(new PointKey(alarm), alarm);
+        }
+
+        // Remove the points that are gone, or that have moved in time
+        int numRemoved = 0;
+        final Iterator<Map.Entry<PointKey, Point>> it = pointsByKey.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<PointKey, Point> entry = it.next();
+            final Point point = entry.getValue();
+            final AlarmInSpaceTime alarm = alarmsByKey.get(entry.getKey());
+            if (alarm != null && alarm.getAlarmTime() == point.alarm.getAlarmTime()) {
+                // Same position in space and time, the neighbourhood is still valid
+                // but make sure we keep a reference to the latest alarm
+                point.alarm = alarm;
+                continue;
+            }
+
+            unlink(point);
+            it.remove();
+            numRemoved++;
+        }
+
+        // Compute the neighbourhoods for the new or updated points
+        int numAdded = 0;
+        for (Map.Entry<PointKey, AlarmInSpaceTime> entry : alarmsByKey.entrySet()) {
+            if (pointsByKey.containsKey(entry.getKey())) {
+                continue;
+            }
+            final AlarmInSpaceTime alarm = entry.getValue();
+            final Point point = new Point(alarm);
+            // Only consider the points that are close enough in time, and compute the full
+            // distance (which may require computing the spatial distance) for these
+            timeIndex.forEachWithin(alarm.getAlarmTime(), maxTimeDeltaMs, other -> {
+                if (distanceMeasure.compute(other.alarm.getPoint(), alarm.getPoint(), epsilon) <= epsilon) {
+                    point.neighbors.add(other);
+                    other.neighbors.add(point);
+                }
+            });
+            pointsByKey.put(entry.getKey(), point);
+            timeIndex.add(alarm.getAlarmTime(), point);
+            numAdded++;
+        }
+
+        LOG.debug("Removed {} points and added {} points. Tracking {} points.",
+                numRemoved, numAdded, pointsByKey.size());
+    }
+
+    private void unlink(Point point) {
+        for (Point neighbor : point.neighbors) {
+            neighbor.neighbors.remove(point);
+        }
+        timeIndex.remove(point.alarm.getAlarmTime(), point);
+    }
+
+    private Cluster<AlarmInSpaceTime> expandCluster(Point point, List<Point> neighbors, Map<Point, PointStatus> visited) {
+        final Cluster<AlarmInSpaceTime> cluster = new Cluster<>();
+        cluster.addPoint(point.alarm);
+        visited.put(point, PointStatus.PART_OF_CLUSTER);
+
+        final List<Point> seeds = new ArrayList<>(neighbors);
+        final Set<Point> seedSet = new HashSet<>(neighbors);
+        int index = 0;
+        while (index < seeds.size()) {
+            final Point current = seeds.get(index);
+            final PointStatus pStatus = visited.get(current);
+            // only check non-visited points
+            if (pStatus == null) {
+                final List<Point> currentNeighbors = current.getSortedNeighbors();
+                if (currentNeighbors.size() >= minPts) {
+                    for (Point currentNeighbor : currentNeighbors) {
+                        if (seedSet.add(currentNeighbor)) {
+                            seeds.add(currentNeighbor);
+                        }
+                    }
+                }
+            }
+
+            if (pStatus != PointStatus.PART_OF_CLUSTER) {
+                visited.put(current, PointStatus.PART_OF_CLUSTER);
+                cluster.addPoint(current.alarm);
+            }
+
+            index++;
+        }
+        return cluster;
+    }
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.dbscan;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.commons.math3.ml.clustering.Cluster;
+import org.opennms.oce.engine.cluster.AlarmInSpaceTime;
+import org.opennms.oce.engine.cluster.CEEdge;
+import org.opennms.oce.engine.cluster.CEVertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.jung.graph.Graph;
+
+/**
+ * A DBSCAN clusterer that partitions the alarms by the weakly connected component of their vertex
+ * and clusters the partitions concurrently on a {@link ForkJoinPool}.
+ *
+ * There is no path between vertices in different components, so alarms in different partitions
+ * can never be neighbours, as long as the spatial component of the distance function carries some weight.
+ *
+ * Each partition keeps the relative order of the given alarms and the resulting clusters are ordered
+ * by the position of their first alarm in the given list, so given the same (ordered) list of alarms,
+ * the output is the same as the one generated by clustering all of the alarms on a single thread.
+ */
+public class ParallelDBSCANClusterer {
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelDBSCANClusterer.class);
+
+    /**
+     * Ranges of partitions with fewer alarms than this are clustered on a single task.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 64;
+
+    private final double epsilon;
+    private final int minPts;
+    private final AlarmInSpaceTimeDistanceMeasure distanceMeasure;
+    private final ForkJoinPool pool;
+
+    public ParallelDBSCANClusterer(double epsilon, int minPts, AlarmInSpaceTimeDistanceMeasure distanceMeasure, ForkJoinPool pool) {
+        this.epsilon = epsilon;
+        this.minPts = minPts;
+        this.distanceMeasure = Objects.requireNonNull(distanceMeasure);
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+    /**
+     * Cluster the given alarms.
+     *
+     * @param alarms sorted list of alarms, the order is used to make the output deterministic
+     * @param g graph containing the vertices of the alarms
+     * @return the clusters
+     */
+    public List<Cluster<AlarmInSpaceTime>> cluster(List<AlarmInSpaceTime> alarms, Graph<CEVertex, CEEdge> g) {
+        final List<List<AlarmInSpaceTime>> partitions = partition(alarms, g);
+        LOG.debug("Clustering {} alarms in {} partitions.", alarms.size(), partitions.size());
+
+        final List<Cluster<AlarmInSpaceTime>> clusters = pool.invoke(new ClusterPartitionsTask(partitions, 0, partitions.size()));
+
+        // Order the clusters by the position of their first point, as the sequential clusterer would
+        final Map<AlarmInSpaceTime, Integer> indexByAlarm = new IdentityHashMap<>();
+        for (int i = 0; i < alarms.size(); i++) {
+            indexByAlarm.put(alarms.get(i), i);
+        }
+        clusters.sort(Comparator.comparingInt(c -> indexByAlarm.get(c.getPoints().get(0))));
+        return clusters;
+    }
+
+    /**
+     * Group the alarms by the weakly connected component of their vertex.
+     *
+     * Only the components that contain alarms are traversed.
+     */
+    static List<List<AlarmInSpaceTime>> partition(List<AlarmInSpaceTime> alarms, Graph<CEVertex, CEEdge> g) {
+        final Map<CEVertex, Integer> componentByVertex = new HashMap<>();
+        final Map<Integer, List<AlarmInSpaceTime>> alarmsByComponent = new LinkedHashMap<>();
+        for (AlarmInSpaceTime alarm : alarms) {
+            final CEVertex vertex = alarm.getVertex();
+            Integer component = componentByVertex.get(vertex);
+            if (component == null) {
+                component = alarmsByComponent.size();
+                componentByVertex.put(vertex, component);
+                if (g.containsVertex(vertex)) {
+                    final Deque<CEVertex> verticesToVisit = new ArrayDeque<>();
+                    verticesToVisit.add(vertex);
+                    while (!verticesToVisit.isEmpty()) {
+                        for (CEVertex neighbor : g.getNeighbors(verticesToVisit.poll())) {
+                            if (componentByVertex.putIfAbsent(neighbor, component) == null) {
+                                verticesToVisit.add(neighbor);
+                            }
+                        }
+                    }
+                }
+            }
+            alarmsByComponent.computeIfAbsent(component, c -> new ArrayList<>()).add(alarm);
+        }
+        return new ArrayList<>(alarmsByComponent.values());
+    }
+
+    /**
+     * Clusters a range of partitions, splitting the range in two while it contains enough alarms
+     * to make it worthwhile for idle workers to steal one of the halves.
+     */
+    private class ClusterPartitionsTask extends RecursiveTask<List<Cluster<AlarmInSpaceTime>>> {
+        private final List<List<AlarmInSpaceTime>> partitions;
+        private final int from;
+        private final int to;
+
+        private ClusterPartitionsTask(List<List<AlarmInSpaceTime>> partitions, int from, int to) {
+            this.partitions = partitions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Cluster<AlarmInSpaceTime>> compute() {
+            if (to - from > 1 && getNumAlarms() >= SEQUENTIAL_THRESHOLD) {
+                final int mid = (from + to) >>> 1;
+                final ClusterPartitionsTask left = new ClusterPartitionsTask(partitions, from, mid);
+                final ClusterPartitionsTask right = new ClusterPartitionsTask(partitions, mid, to);
+                left.fork();
+                final List<Cluster<AlarmInSpaceTime>> clusters = right.compute();
+                clusters.addAll(left.join());
+                return clusters;
+            }
+
+            final List<Cluster<AlarmInSpaceTime>> clusters = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                final IncrementalDBSCANClusterer clusterer = new IncrementalDBSCANClusterer(epsilon, minPts, distanceMeasure);
+                clusters.addAll(clusterer.cluster(partitions.get(i)));
+            }
+            return clusters;
+        }
+
+        private int getNumAlarms() {
+            int numAlarms = 0;
+            for (int i = from; i < to; i++) {
+                numAlarms += partitions.get(i).size();
+            }
+            return numAlarms;
+        }
+    }
+}
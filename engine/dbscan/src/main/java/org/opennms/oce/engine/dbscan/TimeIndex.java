@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.dbscan;
+
+import java.util.HashSet;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Index of items sorted by time, used to efficiently find all of the items
+ * within some time window.
+ *
+ * @param <T> type of items
+ */
+class TimeIndex<T> {
+
+    private final NavigableMap<Long, Set<T>> itemsByTime = new TreeMap<>();
+
+    void add(long time, T item) {
+        itemsByTime.computeIfAbsent(time, t -> new HashSet<>()).add(item);
+    }
+
+    void remove(long time, T item) {
+        final Set<T> items = itemsByTime.get(time);
+        if (items == null) {
+            return;
+        }
+        items.remove(item);
+        if (items.isEmpty()) {
+            itemsByTime.remove(time);
+        }
+    }
+
+    void clear() {
+        itemsByTime.clear();
+    }
+
+    /**
+     * Visit all of the items with a time in [time - maxDelta, time + maxDelta].
+     *
+     * @param time center of the window
+     * @param maxDelta half-width of the window, may be infinite
+     * @param consumer called for every item in the window
+     */
+    void forEachWithin(long time, double maxDelta, Consumer<T> consumer) {
+        final long from = saturatedCast(Math.floor(time - maxDelta));
+        final long to = saturatedCast(Math.ceil(time + maxDelta));
+        for (Set<T> items : itemsByTime.subMap(from, true, to, true).values()) {
+            items.forEach(consumer);
+        }
+    }
+
+    private static long saturatedCast(double value) {
+        if (value >= Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        } else if (value <= Long.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        return (long)value;
+    }
+}
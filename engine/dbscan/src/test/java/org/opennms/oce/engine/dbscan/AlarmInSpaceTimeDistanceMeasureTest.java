@@ -28,6 +28,9 @@
 
 package org.opennms.oce.engine.dbscan;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.mockito.Mockito.mock;
 import static org.opennms.oce.datasource.api.InventoryObject.DEFAULT_WEIGHT;
 
@@ -59,6 +62,32 @@ public class AlarmInSpaceTimeDistanceMeasureTest {
         }
     }
 
+    @Test
+    public void canBoundTimeDelta() {
+        final AbstractClusterEngine clusterEngine = mock(AbstractClusterEngine.class);
+        final AlarmInSpaceTimeDistanceMeasure alarmInSpaceTimeDistanceMeasure = new AlarmInSpaceTimeDistanceMeasure(clusterEngine, DBScanEngine.DEFAULT_ALPHA, DBScanEngine.DEFAULT_BETA);
+        final double maxTimeDeltaMs = alarmInSpaceTimeDistanceMeasure.getMaxTimeDeltaMs(DBScanEngine.DEFAULT_EPSILON);
+
+        // Alarms on the same vertex within the bound may be within epsilon
+        assertThat(eval(maxTimeDeltaMs - 1000, 0), lessThanOrEqualTo(DBScanEngine.DEFAULT_EPSILON));
+        // Alarms outside of the bound are never within epsilon, regardless of the spatial distance
+        assertThat(eval(maxTimeDeltaMs + 1, 0), greaterThan(DBScanEngine.DEFAULT_EPSILON));
+        assertThat(eval(maxTimeDeltaMs + 1, DEFAULT_WEIGHT), greaterThan(DBScanEngine.DEFAULT_EPSILON));
+    }
+
+    @Test
+    public void canBoundSpatialDistance() {
+        final AbstractClusterEngine clusterEngine = mock(AbstractClusterEngine.class);
+        final AlarmInSpaceTimeDistanceMeasure alarmInSpaceTimeDistanceMeasure = new AlarmInSpaceTimeDistanceMeasure(clusterEngine, DBScanEngine.DEFAULT_ALPHA, DBScanEngine.DEFAULT_BETA);
+        final double maxSpatialDistance = alarmInSpaceTimeDistanceMeasure.getMaxSpatialDistance(DBScanEngine.DEFAULT_EPSILON);
+
+        // Simultaneous alarms within the bound may be within epsilon
+        assertThat(eval(0, maxSpatialDistance - 1), lessThanOrEqualTo(DBScanEngine.DEFAULT_EPSILON));
+        // Alarms outside of the bound are never within epsilon, regardless of the time delta
+        assertThat(eval(0, maxSpatialDistance + 1), greaterThan(DBScanEngine.DEFAULT_EPSILON));
+        assertThat(eval(TimeUnit.SECONDS.toMillis(1), maxSpatialDistance + 1), greaterThan(DBScanEngine.DEFAULT_EPSILON));
+    }
+
     double eval(double timeDeltaMs, double spatialDistance) {
         final AbstractClusterEngine clusterEngine = mock(AbstractClusterEngine.class);
         final AlarmInSpaceTimeDistanceMeasure alarmInSpaceTimeDistanceMeasure = new AlarmInSpaceTimeDistanceMeasure(clusterEngine, DBScanEngine.DEFAULT_ALPHA, DBScanEngine.DEFAULT_BETA);
@@ -28,12 +28,29 @@
 
 package org.opennms.oce.engine.dbscan;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assume.assumeThat;
+
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
+import org.apache.commons.math3.ml.clustering.Cluster;
 import org.junit.Test;
+import org.opennms.oce.datasource.api.InventoryObject;
 import org.opennms.oce.datasource.common.ImmutableAlarm;
 import org.opennms.oce.datasource.common.ImmutableInventoryObject;
 import org.opennms.oce.driver.test.MockInventoryType;
+import org.opennms.oce.engine.cluster.AlarmInSpaceTime;
+import org.opennms.oce.engine.cluster.CEEdge;
+import org.opennms.oce.engine.cluster.CEVertex;
+
+import edu.uci.ics.jung.graph.Graph;
 
 public class DBScanEnginePerfTest {
 
@@ -72,4 +89,90 @@ public class DBScanEnginePerfTest {
             System.out.printf("%d ms for %d vertices.\n", delta, K);
         }
     }
+
+    /**
+     * Verifies that the components are clustered faster on many threads than on a single one,
+     * which requires the spatial distances in different components to be computed concurrently.
+     */
+    @Test
+    public void canClusterComponentsConcurrently() {
+        final int parallelism = Math.min(4, Runtime.getRuntime().availableProcessors());
+        assumeThat("Needs more than one processor.", parallelism, greaterThanOrEqualTo(2));
+
+        // Warm up
+        clusterComponents(1);
+        clusterComponents(parallelism);
+
+        long sequentialMs = Long.MAX_VALUE;
+        long parallelMs = Long.MAX_VALUE;
+        for (int run = 0; run < 2; run++) {
+            sequentialMs = Math.min(sequentialMs, clusterComponents(1));
+            parallelMs = Math.min(parallelMs, clusterComponents(parallelism));
+        }
+        System.out.printf("%d ms on 1 thread, %d ms on %d threads.\n", sequentialMs, parallelMs, parallelism);
+        assertThat(parallelMs, lessThan(sequentialMs));
+    }
+
+    /**
+     * Cluster alarms on many vertices of a few large components, starting without any cached distances.
+     *
+     * @return the time spent clustering, in milliseconds
+     */
+    private static long clusterComponents(int numThreads) {
+        final int numComponents = 8;
+        final int numVerticesPerComponent = 1000;
+        final int numAlarmsPerComponent = 200;
+
+        final DBScanEngine engine = new DBScanEngine();
+        engine.init(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+        final Random r = new Random(42);
+        final List<InventoryObject> inventory = new ArrayList<>();
+        for (int c = 0; c < numComponents; c++) {
+            for (int v = 0; v < numVerticesPerComponent; v++) {
+                final ImmutableInventoryObject.Builder io = ImmutableInventoryObject.newBuilder()
+                        .setType(MockInventoryType.COMPONENT.getType())
+                        .setId(c + "-" + v);
+                if (v > 0) {
+                    // Build a random tree
+                    io.setParentType(MockInventoryType.COMPONENT.getType())
+                            .setParentId(c + "-" + r.nextInt(v));
+                }
+                inventory.add(io.build());
+            }
+        }
+        engine.onInventoryAdded(inventory);
+        for (int c = 0; c < numComponents; c++) {
+            for (int k = 0; k < numAlarmsPerComponent; k++) {
+                engine.onAlarmCreatedOrUpdated(ImmutableAlarm.newBuilder()
+                        .setTime(0)
+                        .setId(c + "-" + k)
+                        .setInventoryObjectType(MockInventoryType.COMPONENT.getType())
+                        .setInventoryObjectId(c + "-" + r.nextInt(numVerticesPerComponent))
+                        .build());
+            }
+        }
+        engine.getGraphManager().updateSnapshot();
+
+        final Graph<CEVertex, CEEdge> g = engine.getGraphManager().getSnapshot().getGraph();
+        final List<AlarmInSpaceTime> alarms = new ArrayList<>();
+        for (CEVertex v : g.getVertices()) {
+            v.getAlarms().forEach(a -> alarms.add(new AlarmInSpaceTime(v, a)));
+        }
+        alarms.sort(Comparator.comparing(AlarmInSpaceTime::getAlarmTime).thenComparing(AlarmInSpaceTime::getAlarmId));
+
+        final ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            final ParallelDBSCANClusterer clusterer = new ParallelDBSCANClusterer(DBScanEngine.DEFAULT_EPSILON, 1,
+                    new AlarmInSpaceTimeDistanceMeasure(engine, DBScanEngine.DEFAULT_ALPHA, DBScanEngine.DEFAULT_BETA),
+                    pool);
+            final long start = System.currentTimeMillis();
+            final List<Cluster<AlarmInSpaceTime>> clusters = clusterer.cluster(alarms, g);
+            final long delta = System.currentTimeMillis() - start;
+            assertThat(clusters.size(), greaterThanOrEqualTo(numComponents));
+            return delta;
+        } finally {
+            pool.shutdown();
+            engine.destroy();
+        }
+    }
 }
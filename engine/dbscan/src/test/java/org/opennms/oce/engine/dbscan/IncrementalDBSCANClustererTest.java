@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.dbscan;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.apache.commons.math3.ml.clustering.Cluster;
+import org.apache.commons.math3.ml.clustering.DBSCANClusterer;
+import org.junit.Test;
+import org.opennms.oce.datasource.api.InventoryObject;
+import org.opennms.oce.datasource.api.ResourceKey;
+import org.opennms.oce.datasource.common.ImmutableAlarm;
+import org.opennms.oce.engine.cluster.AlarmInSpaceTime;
+import org.opennms.oce.engine.cluster.CEVertex;
+import org.opennms.oce.engine.cluster.SpatialDistanceCalculator;
+
+public class IncrementalDBSCANClustererTest {
+
+    private static final int NUM_VERTICES = 20;
+
+    /**
+     * Verifies that the incremental clusterer generates the same output as
+     * the batch clusterer as alarms are added, updated and removed.
+     */
+    @Test
+    public void canGenerateSameClustersAsBatchClusterer() {
+        final List<CEVertex> vertices = new ArrayList<>();
+        for (int i = 0; i < NUM_VERTICES; i++) {
+            vertices.add(new CEVertex(i, ResourceKey.key("type", Integer.toString(i))));
+        }
+        // Vertices are "placed" on a line
+        final SpatialDistanceCalculator spatialDistanceCalculator = (vertexIdA, vertexIdB) ->
+                Math.abs(vertexIdA - vertexIdB) * InventoryObject.DEFAULT_WEIGHT;
+        final AlarmInSpaceTimeDistanceMeasure distanceMeasure = new AlarmInSpaceTimeDistanceMeasure(
+                spatialDistanceCalculator, DBScanEngine.DEFAULT_ALPHA, DBScanEngine.DEFAULT_BETA);
+
+        final IncrementalDBSCANClusterer incrementalClusterer = new IncrementalDBSCANClusterer(
+                DBScanEngine.DEFAULT_EPSILON, 1, distanceMeasure);
+        final DBSCANClusterer<AlarmInSpaceTime> batchClusterer = new DBSCANClusterer<>(
+                DBScanEngine.DEFAULT_EPSILON, 1, distanceMeasure);
+
+        final Random r = new Random(42);
+        final Map<String, AlarmInSpaceTime> alarmsById = new LinkedHashMap<>();
+        int nextAlarmId = 0;
+        for (int tick = 0; tick < 50; tick++) {
+            // Add some alarms
+            final int numAlarmsToAdd = r.nextInt(20);
+            for (int i = 0; i < numAlarmsToAdd; i++) {
+                final String alarmId = Integer.toString(nextAlarmId++);
+                alarmsById.put(alarmId, createAlarm(alarmId, vertices.get(r.nextInt(NUM_VERTICES)), r));
+            }
+            // Update some alarms
+            final List<String> alarmIds = new ArrayList<>(alarmsById.keySet());
+            for (int i = 0; i < alarmIds.size() / 10; i++) {
+                final String alarmId = alarmIds.get(r.nextInt(alarmIds.size()));
+                alarmsById.put(alarmId, createAlarm(alarmId, vertices.get(r.nextInt(NUM_VERTICES)), r));
+            }
+            // Remove some alarms
+            for (int i = 0; i < alarmIds.size() / 10; i++) {
+                alarmsById.remove(alarmIds.get(r.nextInt(alarmIds.size())));
+            }
+
+            final List<AlarmInSpaceTime> alarms = alarmsById.values().stream()
+                    .sorted(Comparator.comparing(AlarmInSpaceTime::getAlarmTime).thenComparing(AlarmInSpaceTime::getAlarmId))
+                    .collect(Collectors.toList());
+            assertThat(toAlarmIds(incrementalClusterer.cluster(alarms)), equalTo(toAlarmIds(batchClusterer.cluster(alarms))));
+        }
+    }
+
+    private static AlarmInSpaceTime createAlarm(String alarmId, CEVertex vertex, Random r) {
+        return new AlarmInSpaceTime(vertex, ImmutableAlarm.newBuilder()
+                .setId(alarmId)
+                .setTime(r.nextInt(3600) * 1000L)
+                .build());
+    }
+
+    private static List<List<String>> toAlarmIds(List<Cluster<AlarmInSpaceTime>> clusters) {
+        return clusters.stream()
+                .map(c -> c.getPoints().stream()
+                        .map(AlarmInSpaceTime::getAlarmId)
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.dbscan;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.apache.commons.math3.ml.clustering.Cluster;
+import org.junit.Test;
+import org.opennms.oce.datasource.api.InventoryObject;
+import org.opennms.oce.datasource.api.ResourceKey;
+import org.opennms.oce.datasource.common.ImmutableAlarm;
+import org.opennms.oce.engine.cluster.AlarmInSpaceTime;
+import org.opennms.oce.engine.cluster.CEEdge;
+import org.opennms.oce.engine.cluster.CEVertex;
+import org.opennms.oce.engine.cluster.SpatialDistanceCalculator;
+
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.SparseMultigraph;
+
+public class ParallelDBSCANClustererTest {
+
+    private static final int NUM_COMPONENTS = 8;
+    private static final int NUM_VERTICES_PER_COMPONENT = 10;
+
+    /**
+     * Verifies that clustering the components in parallel generates
+     * the same output as clustering all of the alarms on a single thread.
+     */
+    @Test
+    public void canGenerateSameClustersAsSequentialClusterer() {
+        // Build a graph with disconnected components, where the vertices in every component are placed on a line
+        final Graph<CEVertex, CEEdge> g = new SparseMultigraph<>();
+        final List<CEVertex> vertices = new ArrayList<>();
+        int edgeId = 0;
+        for (int i = 0; i < NUM_COMPONENTS * NUM_VERTICES_PER_COMPONENT; i++) {
+            final CEVertex vertex = new CEVertex(i, ResourceKey.key("type", Integer.toString(i)));
+            g.addVertex(vertex);
+            if (i % NUM_VERTICES_PER_COMPONENT != 0) {
+                g.addEdge(CEEdge.newParentEdge(edgeId++, InventoryObject.DEFAULT_WEIGHT), vertices.get(i - 1), vertex);
+            }
+            vertices.add(vertex);
+        }
+        final SpatialDistanceCalculator spatialDistanceCalculator = (vertexIdA, vertexIdB) -> {
+            if (vertexIdA / NUM_VERTICES_PER_COMPONENT != vertexIdB / NUM_VERTICES_PER_COMPONENT) {
+                // No path exists
+                return Integer.valueOf(Integer.MAX_VALUE).doubleValue();
+            }
+            return Math.abs(vertexIdA - vertexIdB) * InventoryObject.DEFAULT_WEIGHT;
+        };
+        final AlarmInSpaceTimeDistanceMeasure distanceMeasure = new AlarmInSpaceTimeDistanceMeasure(
+                spatialDistanceCalculator, DBScanEngine.DEFAULT_ALPHA, DBScanEngine.DEFAULT_BETA);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final ParallelDBSCANClusterer parallelClusterer = new ParallelDBSCANClusterer(
+                    DBScanEngine.DEFAULT_EPSILON, 1, distanceMeasure, pool);
+            final Random r = new Random(42);
+            for (int run = 0; run < 20; run++) {
+                final List<AlarmInSpaceTime> alarms = new ArrayList<>();
+                final int numAlarms = r.nextInt(500);
+                for (int i = 0; i < numAlarms; i++) {
+                    alarms.add(new AlarmInSpaceTime(vertices.get(r.nextInt(vertices.size())), ImmutableAlarm.newBuilder()
+                            .setId(Integer.toString(i))
+                            .setTime(r.nextInt(3600) * 1000L)
+                            .build()));
+                }
+                alarms.sort(Comparator.comparing(AlarmInSpaceTime::getAlarmTime).thenComparing(AlarmInSpaceTime::getAlarmId));
+
+                final IncrementalDBSCANClusterer sequentialClusterer = new IncrementalDBSCANClusterer(
+                        DBScanEngine.DEFAULT_EPSILON, 1, distanceMeasure);
+                assertThat(toAlarmIds(parallelClusterer.cluster(alarms, g)), equalTo(toAlarmIds(sequentialClusterer.cluster(alarms))));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void canPartitionAlarmsByComponent() {
+        final Graph<CEVertex, CEEdge> g = new SparseMultigraph<>();
+        final CEVertex a = new CEVertex(0, ResourceKey.key("type", "a"));
+        final CEVertex b = new CEVertex(1, ResourceKey.key("type", "b"));
+        final CEVertex c = new CEVertex(2, ResourceKey.key("type", "c"));
+        g.addEdge(CEEdge.newParentEdge(0, InventoryObject.DEFAULT_WEIGHT), a, b);
+        g.addVertex(c);
+
+        final List<AlarmInSpaceTime> alarms = new ArrayList<>();
+        alarms.add(new AlarmInSpaceTime(c, ImmutableAlarm.newBuilder().setId("1").setTime(1).build()));
+        alarms.add(new AlarmInSpaceTime(a, ImmutableAlarm.newBuilder().setId("2").setTime(2).build()));
+        alarms.add(new AlarmInSpaceTime(b, ImmutableAlarm.newBuilder().setId("3").setTime(3).build()));
+        alarms.add(new AlarmInSpaceTime(c, ImmutableAlarm.newBuilder().setId("4").setTime(4).build()));
+
+        final List<List<String>> partitions = ParallelDBSCANClusterer.partition(alarms, g).stream()
+                .map(p -> p.stream()
+                        .map(AlarmInSpaceTime::getAlarmId)
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+        // The partitions are ordered by their first alarm, and keep the order of the alarms
+        final List<List<String>> expectedPartitions = new ArrayList<>();
+        expectedPartitions.add(Arrays.asList("1", "4"));
+        expectedPartitions.add(Arrays.asList("2", "3"));
+        assertThat(partitions, equalTo(expectedPartitions));
+    }
+
+    private static List<List<String>> toAlarmIds(List<Cluster<AlarmInSpaceTime>> clusters) {
+        return clusters.stream()
+                .map(c -> c.getPoints().stream()
+                        .map(AlarmInSpaceTime::getAlarmId)
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uses a {@link DistilledRelationModel} as a first stage filter in front of a slower model.
+ *
+ * Pairs for which the probability given by the distilled model is below the lower threshold are
+ * considered unrelated, and pairs for which it is above the upper threshold are considered related.
+ * Only the remaining, uncertain, pairs are evaluated by the slower model, in a single batch.
+ */
+public class CascadingRelationModel implements RelationModel {
+
+    private final DistilledRelationModel fastModel;
+    private final RelationModel slowModel;
+    private final double lowerThreshold;
+    private final double upperThreshold;
+
+    private final AtomicLong numDecidedByFastModel = new AtomicLong();
+    private final AtomicLong numDecidedBySlowModel = new AtomicLong();
+
+    public CascadingRelationModel(DistilledRelationModel fastModel, RelationModel slowModel, double lowerThreshold, double upperThreshold) {
+        if (lowerThreshold < 0 || upperThreshold > 1 || lowerThreshold > upperThreshold) {
+            throw new IllegalArgumentException(String.format("Thresholds must satisfy 0 <= lower <= upper <= 1. Got lower: %f, upper: %f",
+                    lowerThreshold, upperThreshold));
+        }
+        this.fastModel = Objects.requireNonNull(fastModel);
+        this.slowModel = Objects.requireNonNull(slowModel);
+        this.lowerThreshold = lowerThreshold;
+        this.upperThreshold = upperThreshold;
+    }
+
+    @Override
+    public boolean isRelated(InputVector inputVector) {
+        final double probability = fastModel.getProbability(inputVector);
+        if (probability < lowerThreshold) {
+            numDecidedByFastModel.incrementAndGet();
+            return false;
+        } else if (probability > upperThreshold) {
+            numDecidedByFastModel.incrementAndGet();
+            return true;
+        }
+        numDecidedBySlowModel.incrementAndGet();
+        return slowModel.isRelated(inputVector);
+    }
+
+    @Override
+    public boolean[] isRelated(List<InputVector> inputVectors) {
+        final boolean[] related = new boolean[inputVectors.size()];
+        final List<InputVector> uncertainVectors = new ArrayList<>();
+        final List<Integer> uncertainIndices = new ArrayList<>();
+        for (int i = 0; i < related.length; i++) {
+            final double probability = fastModel.getProbability(inputVectors.get(i));
+            if (probability > upperThreshold) {
+                related[i] = true;
+            } else if (probability >= lowerThreshold) {
+                uncertainVectors.add(inputVectors.get(i));
+                uncertainIndices.add(i);
+            }
+        }
+        numDecidedByFastModel.addAndGet(related.length - uncertainVectors.size());
+        if (!uncertainVectors.isEmpty()) {
+            numDecidedBySlowModel.addAndGet(uncertainVectors.size());
+            final boolean[] uncertainRelated = slowModel.isRelated(uncertainVectors);
+            for (int i = 0; i < uncertainRelated.length; i++) {
+                related[uncertainIndices.get(i)] = uncertainRelated[i];
+            }
+        }
+        return related;
+    }
+
+    /**
+     * @return the number of pairs that were decided by the distilled model alone
+     */
+    public long getNumDecidedByFastModel() {
+        return numDecidedByFastModel.get();
+    }
+
+    /**
+     * @return the number of pairs that were evaluated by the slower model
+     */
+    public long getNumDecidedBySlowModel() {
+        return numDecidedBySlowModel.get();
+    }
+
+    public DistilledRelationModel getFastModel() {
+        return fastModel;
+    }
+
+    public RelationModel getSlowModel() {
+        return slowModel;
+    }
+
+    public void resetStatistics() {
+        numDecidedByFastModel.set(0);
+        numDecidedBySlowModel.set(0);
+    }
+
+    @Override
+    public void close() {
+        fastModel.close();
+        slowModel.close();
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A lock-free disjoint set over the elements 0 to n-1.
+ *
+ * Roots are always linked under the root with the smaller index, so the parent of an element
+ * never has a greater index than the element itself and the representative of a set is always its
+ * smallest element. Paths are compressed with path halving, which is safe to perform concurrently
+ * since it only ever moves an element closer to its root.
+ *
+ * All of the methods can be called concurrently from any number of threads.
+ */
+class ConcurrentUnionFind {
+
+    private final AtomicIntegerArray parents;
+
+    ConcurrentUnionFind(int n) {
+        parents = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; i++) {
+            parents.set(i, i);
+        }
+    }
+
+    /**
+     * @return the representative of the set that contains the given element, the smallest element in that set
+     */
+    int find(int x) {
+        int parent = parents.get(x);
+        while (parent != x) {
+            final int grandparent = parents.get(parent);
+            // Path halving: point x to its grandparent, no harm done if another thread beat us to it
+            parents.compareAndSet(x, parent, grandparent);
+            x = grandparent;
+            parent = parents.get(x);
+        }
+        return x;
+    }
+
+    /**
+     * Merge the sets that contain the given elements.
+     */
+    void union(int a, int b) {
+        while (true) {
+            final int rootA = find(a);
+            final int rootB = find(b);
+            if (rootA == rootB) {
+                return;
+            }
+            final int minRoot = Math.min(rootA, rootB);
+            final int maxRoot = Math.max(rootA, rootB);
+            // Only link the root if it's still a root, otherwise try again from the new roots
+            if (parents.compareAndSet(maxRoot, maxRoot, minRoot)) {
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return parents.length();
+    }
+}
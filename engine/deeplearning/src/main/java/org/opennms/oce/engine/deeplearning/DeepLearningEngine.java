@@ -30,6 +30,7 @@ package org.opennms.oce.engine.deeplearning;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import org.apache.commons.math3.ml.clustering.Cluster;
 import org.opennms.oce.engine.cluster.AbstractClusterEngine;
@@ -38,6 +39,8 @@ import org.opennms.oce.engine.cluster.CEEdge;
 import org.opennms.oce.engine.cluster.CEVertex;
 import org.osgi.framework.BundleContext;
 
+import com.google.common.base.Strings;
+
 import edu.uci.ics.jung.graph.Graph;
 
 /**
@@ -48,35 +51,72 @@ import edu.uci.ics.jung.graph.Graph;
  */
 public class DeepLearningEngine extends AbstractClusterEngine {
     private final DeepLearningEngineConf conf;
-    private final TFModel tfModel;
+    private final ModelManager modelManager;
     private Vectorizer vectorizer;
     private TFClusterer tfClusterer;
 
     public DeepLearningEngine(BundleContext bundleContext, DeepLearningEngineConf conf) {
-        this(new TFModel(bundleContext, conf.getModelPath()), conf);
+        this.conf = Objects.requireNonNull(conf);
+        modelManager = new ModelManager(conf.getModelPath(), modelPath -> createModel(bundleContext, conf, modelPath));
     }
 
-    private DeepLearningEngine(TFModel tfModel, DeepLearningEngineConf conf) {
-        this.tfModel = Objects.requireNonNull(tfModel);
-        this.conf = Objects.requireNonNull(conf);
+    private static RelationModel createModel(BundleContext bundleContext, DeepLearningEngineConf conf, String modelPath) {
+        final RelationModel model;
+        switch (conf.getModelBackend()) {
+            case JAVA:
+                model = new JavaRelationModel(modelPath);
+                break;
+            case TENSORFLOW:
+            default:
+                model = new TFModel(bundleContext, modelPath);
+        }
+        if (Strings.isNullOrEmpty(conf.getFastPathModelPath())) {
+            return model;
+        }
+        // Only send the pairs for which the distilled model is uncertain to the model
+        final DistilledRelationModel fastModel;
+        try {
+            fastModel = DistilledRelationModel.load(conf.getFastPathModelPath());
+        } catch (RuntimeException e) {
+            model.close();
+            throw e;
+        }
+        return new CascadingRelationModel(fastModel, model, conf.getFastPathLowerThreshold(), conf.getFastPathUpperThreshold());
     }
 
     @Override
     public void onInit() {
         vectorizer = new Vectorizer(getGraphManager(), this);
-        tfClusterer = new TFClusterer(tfModel, vectorizer, conf);
+        tfClusterer = new TFClusterer(modelManager.getModel(), vectorizer, conf);
         tfClusterer.init();
     }
 
     @Override
     public void onDestroy() {
         tfClusterer.destroy();
-        tfModel.close();
+        modelManager.close();
+    }
+
+    @Override
+    public void onGraphChanged(Set<Long> affectedVertexIds) {
+        vectorizer.invalidate(affectedVertexIds);
+        tfClusterer.invalidate(affectedVertexIds);
     }
 
     @Override
     public List<Cluster<AlarmInSpaceTime>> cluster(long timestampInMillis, Graph<CEVertex, CEEdge> g) {
+        // Swap the model between ticks, while no tasks are using it
+        if (modelManager.swapPendingModel()) {
+            tfClusterer.setModel(modelManager.getModel());
+        }
         return tfClusterer.cluster(g);
     }
 
+    /**
+     * @return the manager used to load new models while the engine is running
+     */
+    public ModelManager getModelManager() {
+        return modelManager;
+    }
+
 }
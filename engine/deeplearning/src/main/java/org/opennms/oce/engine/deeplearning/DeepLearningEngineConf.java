@@ -34,12 +34,45 @@ import java.util.Objects;
  * Everything we need to configure a deep learning engine.
  */
 public class DeepLearningEngineConf {
+
+    public enum ModelBackend {
+        /**
+         * Evaluate the model with a TensorFlow session, using the native library.
+         */
+        TENSORFLOW,
+        /**
+         * Evaluate the model in plain Java, see {@link JavaRelationModel}.
+         */
+        JAVA
+    }
+
+    public enum DistanceSearch {
+        /**
+         * Compute the distance between every pair of vertices with alarms in a subgraph.
+         */
+        ALL_PAIRS,
+        /**
+         * Run a single search bounded by epsilon from every vertex with new or updated alarms,
+         * and only consider the vertices with alarms that were reached by the search.
+         */
+        BOUNDED
+    }
+
     private static final int DEFAULT_NUM_GRAPH_THREADS = 2;
     private static final int DEFAULT_NUM_TF_THREADS = Math.max(Runtime.getRuntime().availableProcessors() - 3, 1);
     private static final double DEFAULT_EPSILON = 500;
+    private static final ModelBackend DEFAULT_MODEL_BACKEND = ModelBackend.TENSORFLOW;
+    private static final DistanceSearch DEFAULT_DISTANCE_SEARCH = DistanceSearch.ALL_PAIRS;
+    private static final double DEFAULT_FAST_PATH_LOWER_THRESHOLD = 0.05;
+    private static final double DEFAULT_FAST_PATH_UPPER_THRESHOLD = 0.95;
 
     private String modelPath;
+    private ModelBackend modelBackend = DEFAULT_MODEL_BACKEND;
+    private String fastPathModelPath;
+    private double fastPathLowerThreshold = DEFAULT_FAST_PATH_LOWER_THRESHOLD;
+    private double fastPathUpperThreshold = DEFAULT_FAST_PATH_UPPER_THRESHOLD;
     private double epsilon = DEFAULT_EPSILON;
+    private DistanceSearch distanceSearch = DEFAULT_DISTANCE_SEARCH;
     private int numGraphProcessingThreads = DEFAULT_NUM_GRAPH_THREADS;
     private int numTensorFlowProcessingThreads = DEFAULT_NUM_TF_THREADS;
 
@@ -51,6 +84,47 @@ public class DeepLearningEngineConf {
         this.modelPath = modelPath;
     }
 
+    public ModelBackend getModelBackend() {
+        return modelBackend;
+    }
+
+    public void setModelBackend(ModelBackend modelBackend) {
+        this.modelBackend = Objects.requireNonNull(modelBackend);
+    }
+
+    /**
+     * @return path to a distilled model used to filter the pairs before these are evaluated by the model, or null/empty if disabled
+     */
+    public String getFastPathModelPath() {
+        return fastPathModelPath;
+    }
+
+    public void setFastPathModelPath(String fastPathModelPath) {
+        this.fastPathModelPath = fastPathModelPath;
+    }
+
+    public double getFastPathLowerThreshold() {
+        return fastPathLowerThreshold;
+    }
+
+    public void setFastPathLowerThreshold(double fastPathLowerThreshold) {
+        if (fastPathLowerThreshold < 0 || fastPathLowerThreshold > 1) {
+            throw new IllegalArgumentException("Fast path lower threshold must be between 0 and 1. Got: " + fastPathLowerThreshold);
+        }
+        this.fastPathLowerThreshold = fastPathLowerThreshold;
+    }
+
+    public double getFastPathUpperThreshold() {
+        return fastPathUpperThreshold;
+    }
+
+    public void setFastPathUpperThreshold(double fastPathUpperThreshold) {
+        if (fastPathUpperThreshold < 0 || fastPathUpperThreshold > 1) {
+            throw new IllegalArgumentException("Fast path upper threshold must be between 0 and 1. Got: " + fastPathUpperThreshold);
+        }
+        this.fastPathUpperThreshold = fastPathUpperThreshold;
+    }
+
     public double getEpsilon() {
         return epsilon;
     }
@@ -62,6 +136,14 @@ public class DeepLearningEngineConf {
         this.epsilon = epsilon;
     }
 
+    public DistanceSearch getDistanceSearch() {
+        return distanceSearch;
+    }
+
+    public void setDistanceSearch(DistanceSearch distanceSearch) {
+        this.distanceSearch = Objects.requireNonNull(distanceSearch);
+    }
+
     public int getNumGraphProcessingThreads() {
         return numGraphProcessingThreads;
     }
@@ -94,21 +176,31 @@ public class DeepLearningEngineConf {
         if (o == null || getClass() != o.getClass()) return false;
         DeepLearningEngineConf that = (DeepLearningEngineConf) o;
         return Objects.equals(modelPath, that.modelPath) &&
+                Objects.equals(modelBackend, that.modelBackend) &&
+                Objects.equals(fastPathModelPath, that.fastPathModelPath) &&
+                Objects.equals(fastPathLowerThreshold, that.fastPathLowerThreshold) &&
+                Objects.equals(fastPathUpperThreshold, that.fastPathUpperThreshold) &&
                 Objects.equals(epsilon, that.epsilon) &&
+                Objects.equals(distanceSearch, that.distanceSearch) &&
                 Objects.equals(numGraphProcessingThreads, that.numGraphProcessingThreads) &&
                 Objects.equals(numTensorFlowProcessingThreads, that.numTensorFlowProcessingThreads);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(modelPath, epsilon, numGraphProcessingThreads, numTensorFlowProcessingThreads);
+        return Objects.hash(modelPath, modelBackend, fastPathModelPath, fastPathLowerThreshold, fastPathUpperThreshold, epsilon, distanceSearch, numGraphProcessingThreads, numTensorFlowProcessingThreads);
     }
 
     @Override
     public String toString() {
         return "DeepLearningEngineConf{" +
                 "modelPath='" + getModelPath() + '\'' +
+                ", modelBackend=" + getModelBackend() +
+                ", fastPathModelPath='" + getFastPathModelPath() + '\'' +
+                ", fastPathLowerThreshold=" + getFastPathLowerThreshold() +
+                ", fastPathUpperThreshold=" + getFastPathUpperThreshold() +
                 ", epsilon=" + getEpsilon() +
+                ", distanceSearch=" + getDistanceSearch() +
                 ", numGraphProcessingThreads=" + getNumGraphProcessingThreads() +
                 ", numTensorFlowProcessingThreads=" + getNumTensorFlowProcessingThreads() +
                 '}';
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Trains a {@link DistilledRelationModel} with stochastic gradient descent.
+ *
+ * The examples are typically the vectors exported by the vectorize command, labeled
+ * with the predictions of the model that is being distilled, see {@link #label(RelationModel, List)}.
+ */
+public class DistilledModelTrainer {
+
+    private static final int TEACHER_BATCH_SIZE = 4096;
+
+    private int numEpochs = 30;
+    private double learningRate = 0.05;
+    private double l2Regularization = 1e-6;
+    private long seed = 42;
+
+    public void setNumEpochs(int numEpochs) {
+        if (numEpochs < 1) {
+            throw new IllegalArgumentException("Number of epochs must be strictly positive. Got: " + numEpochs);
+        }
+        this.numEpochs = numEpochs;
+    }
+
+    public void setLearningRate(double learningRate) {
+        if (learningRate <= 0) {
+            throw new IllegalArgumentException("Learning rate must be strictly positive. Got: " + learningRate);
+        }
+        this.learningRate = learningRate;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Label the given input vectors with the predictions of the given model.
+     *
+     * @param teacher model to distill
+     * @param inputVectors input vectors
+     * @return the labeled vectors
+     */
+    public static List<OutputVector> label(RelationModel teacher, List<InputVector> inputVectors) {
+        final List<OutputVector> examples = new ArrayList<>(inputVectors.size());
+        for (int from = 0; from < inputVectors.size(); from += TEACHER_BATCH_SIZE) {
+            final List<InputVector> batch = inputVectors.subList(from, Math.min(from + TEACHER_BATCH_SIZE, inputVectors.size()));
+            final boolean[] related = teacher.isRelated(batch);
+            for (int i = 0; i < related.length; i++) {
+                examples.add(OutputVector.builder()
+                        .inputVector(batch.get(i))
+                        .areAlarmsRelated(related[i])
+                        .build());
+            }
+        }
+        return examples;
+    }
+
+    public DistilledRelationModel train(List<OutputVector> examples) {
+        if (examples.isEmpty()) {
+            throw new IllegalArgumentException("No examples to train on.");
+        }
+
+        // Index the types, the weights of the types are stored first, followed by the binary and numerical features
+        final Map<String, Integer> typeAIndices = new LinkedHashMap<>();
+        final Map<String, Integer> typeBIndices = new LinkedHashMap<>();
+        final TreeSet<String> typesA = new TreeSet<>();
+        final TreeSet<String> typesB = new TreeSet<>();
+        for (OutputVector example : examples) {
+            typesA.add(example.getInputVector().getTypeA());
+            typesB.add(example.getInputVector().getTypeB());
+        }
+        for (String type : typesA) {
+            typeAIndices.put(type, typeAIndices.size());
+        }
+        for (String type : typesB) {
+            typeBIndices.put(type, typesA.size() + typeBIndices.size());
+        }
+        final int binaryOffset = typesA.size() + typesB.size();
+        final int numericalOffset = binaryOffset + DistilledRelationModel.NUM_BINARY_FEATURES;
+        final double[] weights = new double[numericalOffset + DistilledRelationModel.NUM_NUMERICAL_FEATURES];
+
+        // Standardize the numerical features
+        final double[] means = new double[DistilledRelationModel.NUM_NUMERICAL_FEATURES];
+        final double[] stdDevs = new double[DistilledRelationModel.NUM_NUMERICAL_FEATURES];
+        final double[][] numericalFeatures = new double[examples.size()][];
+        for (int k = 0; k < examples.size(); k++) {
+            numericalFeatures[k] = DistilledRelationModel.getNumericalFeatures(examples.get(k).getInputVector());
+            for (int i = 0; i < means.length; i++) {
+                means[i] += numericalFeatures[k][i] / examples.size();
+            }
+        }
+        for (double[] features : numericalFeatures) {
+            for (int i = 0; i < stdDevs.length; i++) {
+                stdDevs[i] += (features[i] - means[i]) * (features[i] - means[i]) / examples.size();
+            }
+        }
+        for (int i = 0; i < stdDevs.length; i++) {
+            stdDevs[i] = stdDevs[i] > 0 ? Math.sqrt(stdDevs[i]) : 1;
+        }
+        for (double[] features : numericalFeatures) {
+            for (int i = 0; i < features.length; i++) {
+                features[i] = (features[i] - means[i]) / stdDevs[i];
+            }
+        }
+
+        // Minimize the log loss, one example at a time
+        double bias = 0;
+        final List<Integer> order = new ArrayList<>(examples.size());
+        for (int k = 0; k < examples.size(); k++) {
+            order.add(k);
+        }
+        final Random random = new Random(seed);
+        final int[] activeIndices = new int[2 + DistilledRelationModel.NUM_BINARY_FEATURES];
+        for (int epoch = 0; epoch < numEpochs; epoch++) {
+            Collections.shuffle(order, random);
+            final double rate = learningRate / Math.sqrt(1 + epoch);
+            for (int k : order) {
+                final InputVector inputVector = examples.get(k).getInputVector();
+                int numActive = 0;
+                activeIndices[numActive++] = typeAIndices.get(inputVector.getTypeA());
+                activeIndices[numActive++] = typeBIndices.get(inputVector.getTypeB());
+                if (inputVector.isSameInstance()) {
+                    activeIndices[numActive++] = binaryOffset;
+                }
+                if (inputVector.isSameParent()) {
+                    activeIndices[numActive++] = binaryOffset + 1;
+                }
+                if (inputVector.isShareAncestor()) {
+                    activeIndices[numActive++] = binaryOffset + 2;
+                }
+
+                double logit = bias;
+                for (int i = 0; i < numActive; i++) {
+                    logit += weights[activeIndices[i]];
+                }
+                for (int i = 0; i < DistilledRelationModel.NUM_NUMERICAL_FEATURES; i++) {
+                    logit += weights[numericalOffset + i] * numericalFeatures[k][i];
+                }
+
+                final double gradient = 1 / (1 + Math.exp(-logit)) - (examples.get(k).areAlarmsRelated() ? 1 : 0);
+                bias -= rate * gradient;
+                for (int i = 0; i < numActive; i++) {
+                    weights[activeIndices[i]] -= rate * (gradient + l2Regularization * weights[activeIndices[i]]);
+                }
+                for (int i = 0; i < DistilledRelationModel.NUM_NUMERICAL_FEATURES; i++) {
+                    final int index = numericalOffset + i;
+                    weights[index] -= rate * (gradient * numericalFeatures[k][i] + l2Regularization * weights[index]);
+                }
+            }
+        }
+
+        // Quantize the weights to signed bytes with a shared scale, the bias is kept as is
+        double maxAbsWeight = 0;
+        for (double weight : weights) {
+            maxAbsWeight = Math.max(maxAbsWeight, Math.abs(weight));
+        }
+        final double scale = maxAbsWeight > 0 ? maxAbsWeight / Byte.MAX_VALUE : 1;
+
+        final DistilledRelationModel.Parameters parameters = new DistilledRelationModel.Parameters();
+        parameters.bias = bias;
+        parameters.scale = scale;
+        typeAIndices.forEach((type, index) -> parameters.typeAWeights.put(type, quantize(weights[index], scale)));
+        typeBIndices.forEach((type, index) -> parameters.typeBWeights.put(type, quantize(weights[index], scale)));
+        for (int i = 0; i < DistilledRelationModel.NUM_BINARY_FEATURES; i++) {
+            parameters.binaryWeights[i] = quantize(weights[binaryOffset + i], scale);
+        }
+        for (int i = 0; i < DistilledRelationModel.NUM_NUMERICAL_FEATURES; i++) {
+            parameters.numericalMeans[i] = means[i];
+            parameters.numericalStdDevs[i] = stdDevs[i];
+            parameters.numericalWeights[i] = quantize(weights[numericalOffset + i], scale);
+        }
+        return new DistilledRelationModel(parameters);
+    }
+
+    private static byte quantize(double weight, double scale) {
+        return (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, Math.round(weight / scale)));
+    }
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * A compact relation model distilled from a larger model, see {@link DistilledModelTrainer}.
+ *
+ * The model is a logistic regression over the same features as the TensorFlow model: a weight
+ * for every type of the first and second inventory objects, a weight for every binary feature, and
+ * a weight for every standardized numerical feature. All of the weights are quantized to signed
+ * bytes that share a single scale, so the whole model fits in a few hundred bytes and is evaluated
+ * with a handful of integer multiply-adds.
+ *
+ * The model is stored as JSON.
+ */
+public class DistilledRelationModel implements RelationModel {
+
+    static final int NUM_BINARY_FEATURES = 3;
+    static final int NUM_NUMERICAL_FEATURES = 4;
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Parameters parameters;
+
+    DistilledRelationModel(Parameters parameters) {
+        this.parameters = Objects.requireNonNull(parameters);
+        if (parameters.binaryWeights.length != NUM_BINARY_FEATURES
+                || parameters.numericalWeights.length != NUM_NUMERICAL_FEATURES
+                || parameters.numericalMeans.length != NUM_NUMERICAL_FEATURES
+                || parameters.numericalStdDevs.length != NUM_NUMERICAL_FEATURES) {
+            throw new IllegalArgumentException("Invalid number of weights.");
+        }
+    }
+
+    /**
+     * Load a model from the given file.
+     *
+     * @param modelPath path to the JSON file
+     * @return the model
+     */
+    public static DistilledRelationModel load(String modelPath) {
+        final Path path = Paths.get(modelPath);
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return read(reader);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read model from: " + path, e);
+        }
+    }
+
+    public static DistilledRelationModel read(Reader reader) {
+        final Parameters parameters = gson.fromJson(reader, Parameters.class);
+        if (parameters == null) {
+            throw new IllegalArgumentException("No model found.");
+        }
+        return new DistilledRelationModel(parameters);
+    }
+
+    public void write(Writer writer) {
+        gson.toJson(parameters, writer);
+    }
+
+    /**
+     * Compute the probability that the alarms described by the given input vector are related.
+     *
+     * @param inputVector input vector
+     * @return the probability, between 0 and 1
+     */
+    public double getProbability(InputVector inputVector) {
+        return 1 / (1 + Math.exp(-getLogit(inputVector)));
+    }
+
+    double getLogit(InputVector inputVector) {
+        final Parameters p = parameters;
+        // Accumulate the quantized weights of the categorical and binary features as integers
+        int sum = p.typeAWeights.getOrDefault(inputVector.getTypeA(), p.unknownTypeAWeight)
+                + p.typeBWeights.getOrDefault(inputVector.getTypeB(), p.unknownTypeBWeight);
+        if (inputVector.isSameInstance()) {
+            sum += p.binaryWeights[0];
+        }
+        if (inputVector.isSameParent()) {
+            sum += p.binaryWeights[1];
+        }
+        if (inputVector.isShareAncestor()) {
+            sum += p.binaryWeights[2];
+        }
+        double logit = sum;
+        final double[] numericalFeatures = getNumericalFeatures(inputVector);
+        for (int i = 0; i < NUM_NUMERICAL_FEATURES; i++) {
+            logit += p.numericalWeights[i] * (numericalFeatures[i] - p.numericalMeans[i]) / p.numericalStdDevs[i];
+        }
+        return p.bias + p.scale * logit;
+    }
+
+    @Override
+    public boolean isRelated(InputVector inputVector) {
+        return getProbability(inputVector) >= parameters.threshold;
+    }
+
+    @Override
+    public boolean[] isRelated(List<InputVector> inputVectors) {
+        final boolean[] related = new boolean[inputVectors.size()];
+        for (int i = 0; i < related.length; i++) {
+            related[i] = isRelated(inputVectors.get(i));
+        }
+        return related;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    static double[] getNumericalFeatures(InputVector inputVector) {
+        return new double[]{
+                inputVector.getTimeDifferenceInSeconds(),
+                inputVector.getDistanceOnGraph(),
+                inputVector.getSimilarityOfInventoryObjectIds(),
+                inputVector.getSimilarityOfInventoryObjectLabels()
+        };
+    }
+
+    /**
+     * The parameters of the model, as stored in JSON.
+     */
+    static class Parameters {
+        double threshold = 0.5;
+        double bias;
+        /**
+         * The quantized weights are multiplied by this value.
+         */
+        double scale;
+        Map<String, Byte> typeAWeights = new HashMap<>();
+        byte unknownTypeAWeight;
+        Map<String, Byte> typeBWeights = new HashMap<>();
+        byte unknownTypeBWeight;
+        byte[] binaryWeights = new byte[NUM_BINARY_FEATURES];
+        double[] numericalMeans = new double[NUM_NUMERICAL_FEATURES];
+        double[] numericalStdDevs = new double[NUM_NUMERICAL_FEATURES];
+        byte[] numericalWeights = new byte[NUM_NUMERICAL_FEATURES];
+    }
+}
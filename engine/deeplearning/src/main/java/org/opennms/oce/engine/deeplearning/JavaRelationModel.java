@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+/**
+ * Evaluates the model trained with Ludwig in plain Java, without the native TensorFlow library.
+ *
+ * The weights are read from the checkpoint of the saved model, and the network is evaluated on primitive arrays:
+ *
+ *  * The categorical features are embedded, and the binary features are cast to floats
+ *  * The numerical features go through a dense layer with a single unit
+ *  * All of the features are concatenated, and fed to a dense layer with a single unit which outputs the logit
+ *  * The alarms are related when the sigmoid of the logit is greater than the threshold
+ *
+ * All of these are linear, so the contribution of the categorical features is folded into a lookup table per category,
+ * and the numerical features into a scale and an offset, leaving a handful of multiply-adds per input vector.
+ */
+public class JavaRelationModel implements RelationModel {
+    private static final Logger LOG = LoggerFactory.getLogger(JavaRelationModel.class);
+    private static final String CLASSPATH_MODEL_PATH = "/tf_model";
+
+    private static final String TYPE_A_EMBEDDINGS = "type_a/embeddings";
+    private static final String TYPE_B_EMBEDDINGS = "type_b/embeddings";
+    private static final String[] NUMERICAL_FEATURES = new String[]{"time_delta_seconds", "distance_on_graph",
+            "io_id_similarity", "io_label_similarity"};
+    private static final String OUTPUT_WEIGHTS = "related/predictions_related/weights";
+    private static final String OUTPUT_BIASES = "related/predictions_related/biases";
+
+    private final ModelHyperParameters hyperParameters;
+
+    /**
+     * Contribution of every type to the logit, indexed by type id.
+     */
+    private final float[] typeAContributions;
+    private final float[] typeBContributions;
+
+    private final float sameInstanceWeight;
+    private final float sameParentWeight;
+    private final float shareAncestorWeight;
+
+    private final float timeDeltaScale;
+    private final float distanceOnGraphScale;
+    private final float ioIdSimilarityScale;
+    private final float ioLabelSimilarityScale;
+
+    /**
+     * The output bias, along with the contribution of the biases of the numerical features.
+     */
+    private final float offset;
+
+    /**
+     * The logit above which the alarms are related.
+     */
+    private final float logitThreshold;
+
+    public JavaRelationModel() {
+        this("");
+    }
+
+    public JavaRelationModel(String modelPath) {
+        if (Strings.isNullOrEmpty(modelPath)) {
+            LOG.info("No model path is set. Using default model from class-path.");
+        } else {
+            LOG.info("Loading model from: {}", modelPath);
+        }
+
+        final TensorBundleReader variables;
+        try (Reader reader = new InputStreamReader(open(modelPath, ModelHyperParameters.FILENAME), StandardCharsets.UTF_8);
+             InputStream index = open(modelPath, "variables/" + TensorBundleReader.INDEX_FILENAME);
+             InputStream data = open(modelPath, "variables/" + TensorBundleReader.DATA_FILENAME)) {
+            hyperParameters = new ModelHyperParameters(reader);
+            variables = new TensorBundleReader(IOUtils.toByteArray(index), IOUtils.toByteArray(data));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load model.", e);
+        }
+
+        // The input to the output layer is the concatenation of the features, in the order in which these are defined
+        final int typeAEmbeddingSize = getEmbeddingSize(variables, TYPE_A_EMBEDDINGS, hyperParameters.getTypeAVocabSize());
+        final int typeBEmbeddingSize = getEmbeddingSize(variables, TYPE_B_EMBEDDINGS, hyperParameters.getTypeBVocabSize());
+        final float[] outputWeights = variables.getVariable(OUTPUT_WEIGHTS).getValues();
+        final int expectedNumInputs = typeAEmbeddingSize + typeBEmbeddingSize + 3 + NUMERICAL_FEATURES.length;
+        if (outputWeights.length != expectedNumInputs) {
+            throw new IllegalStateException(String.format("Expected %d output weights, but got %d.",
+                    expectedNumInputs, outputWeights.length));
+        }
+
+        int k = 0;
+        typeAContributions = foldEmbeddings(variables.getVariable(TYPE_A_EMBEDDINGS).getValues(), typeAEmbeddingSize, outputWeights, k);
+        k += typeAEmbeddingSize;
+        typeBContributions = foldEmbeddings(variables.getVariable(TYPE_B_EMBEDDINGS).getValues(), typeBEmbeddingSize, outputWeights, k);
+        k += typeBEmbeddingSize;
+        sameInstanceWeight = outputWeights[k++];
+        sameParentWeight = outputWeights[k++];
+        shareAncestorWeight = outputWeights[k++];
+
+        float offset = variables.getVariable(OUTPUT_BIASES).getValues()[0];
+        final float[] scales = new float[NUMERICAL_FEATURES.length];
+        for (int i = 0; i < NUMERICAL_FEATURES.length; i++, k++) {
+            final float weight = getScalar(variables, NUMERICAL_FEATURES[i] + "/weights");
+            final float bias = getScalar(variables, NUMERICAL_FEATURES[i] + "/biases");
+            // (x * weight + bias) * outputWeight = x * (weight * outputWeight) + bias * outputWeight
+            scales[i] = weight * outputWeights[k];
+            offset += bias * outputWeights[k];
+        }
+        timeDeltaScale = scales[0];
+        distanceOnGraphScale = scales[1];
+        ioIdSimilarityScale = scales[2];
+        ioLabelSimilarityScale = scales[3];
+        this.offset = offset;
+
+        // sigmoid(logit) > threshold <=> logit > log(threshold / (1 - threshold))
+        final double threshold = hyperParameters.getThreshold();
+        logitThreshold = (float)Math.log(threshold / (1 - threshold));
+    }
+
+    @Override
+    public boolean isRelated(InputVector inputVector) {
+        return isRelated(Collections.singletonList(inputVector))[0];
+    }
+
+    @Override
+    public boolean[] isRelated(List<InputVector> inputVectors) {
+        final int n = inputVectors.size();
+        final float[] logits = new float[n];
+        Arrays.fill(logits, offset);
+
+        // Gather the contribution of the features that require lookups
+        for (int i = 0; i < n; i++) {
+            final InputVector inputVector = inputVectors.get(i);
+            float logit = typeAContributions[hyperParameters.toTypeIdA(inputVector.getTypeA())]
+                    + typeBContributions[hyperParameters.toTypeIdB(inputVector.getTypeB())];
+            if (inputVector.isSameInstance()) {
+                logit += sameInstanceWeight;
+            }
+            if (inputVector.isSameParent()) {
+                logit += sameParentWeight;
+            }
+            if (inputVector.isShareAncestor()) {
+                logit += shareAncestorWeight;
+            }
+            logits[i] += logit;
+        }
+
+        // Accumulate the numerical features column by column, so that the loops can be vectorized
+        final float[] column = new float[n];
+        for (int i = 0; i < n; i++) {
+            column[i] = (float)inputVectors.get(i).getTimeDifferenceInSeconds();
+        }
+        multiplyAdd(logits, column, timeDeltaScale);
+        for (int i = 0; i < n; i++) {
+            column[i] = (float)inputVectors.get(i).getDistanceOnGraph();
+        }
+        multiplyAdd(logits, column, distanceOnGraphScale);
+        for (int i = 0; i < n; i++) {
+            column[i] = (float)inputVectors.get(i).getSimilarityOfInventoryObjectIds();
+        }
+        multiplyAdd(logits, column, ioIdSimilarityScale);
+        for (int i = 0; i < n; i++) {
+            column[i] = (float)inputVectors.get(i).getSimilarityOfInventoryObjectLabels();
+        }
+        multiplyAdd(logits, column, ioLabelSimilarityScale);
+
+        final boolean[] related = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            related[i] = logits[i] > logitThreshold;
+        }
+        return related;
+    }
+
+    private static void multiplyAdd(float[] accumulator, float[] values, float scale) {
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] += values[i] * scale;
+        }
+    }
+
+    /**
+     * Compute the dot product of every embedding with the corresponding slice of the output weights.
+     */
+    private static float[] foldEmbeddings(float[] embeddings, int embeddingSize, float[] outputWeights, int outputWeightsOffset) {
+        final int vocabSize = embeddings.length / embeddingSize;
+        final float[] contributions = new float[vocabSize];
+        for (int i = 0; i < vocabSize; i++) {
+            for (int j = 0; j < embeddingSize; j++) {
+                contributions[i] += embeddings[i * embeddingSize + j] * outputWeights[outputWeightsOffset + j];
+            }
+        }
+        return contributions;
+    }
+
+    private static int getEmbeddingSize(TensorBundleReader variables, String name, int vocabSize) {
+        final long[] shape = variables.getVariable(name).getShape();
+        if (shape.length != 2 || shape[0] != vocabSize) {
+            throw new IllegalStateException(String.format("Expected embeddings %s to have shape [%d, ?], but got %s.",
+                    name, vocabSize, Arrays.toString(shape)));
+        }
+        return (int)shape[1];
+    }
+
+    private static float getScalar(TensorBundleReader variables, String name) {
+        final float[] values = variables.getVariable(name).getValues();
+        if (values.length != 1) {
+            throw new IllegalStateException(String.format("Expected %s to hold a single value, but got %d.", name, values.length));
+        }
+        return values[0];
+    }
+
+    private static InputStream open(String modelPath, String filename) throws IOException {
+        if (Strings.isNullOrEmpty(modelPath)) {
+            final InputStream is = JavaRelationModel.class.getResourceAsStream(CLASSPATH_MODEL_PATH + "/" + filename);
+            if (is == null) {
+                throw new IOException("No resource found for: " + CLASSPATH_MODEL_PATH + "/" + filename);
+            }
+            return is;
+        }
+        return new FileInputStream(Paths.get(modelPath, filename).toFile());
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+}
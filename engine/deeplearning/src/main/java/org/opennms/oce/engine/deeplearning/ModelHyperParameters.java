@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+
+/**
+ * The hyper parameters of a model trained with Ludwig, as stored in the model_hyperparameters.json file.
+ */
+class ModelHyperParameters {
+    static final String FILENAME = "model_hyperparameters.json";
+
+    private static final Gson gson = new Gson();
+
+    private final Map<String,Integer> typeA_ioTypeToId = new HashMap<>();
+    private final Map<String,Integer> typeB_ioTypeToId = new HashMap<>();
+    private final int typeA_vocabSize;
+    private final int typeB_vocabSize;
+    private final double threshold;
+
+    @SuppressWarnings("unchecked")
+    ModelHyperParameters(Reader reader) {
+        List<String> type_a_vocab = null;
+        List<String> type_b_vocab = null;
+        Double relatedThreshold = null;
+
+        Map<String,Object> result = gson.fromJson(reader , Map.class);
+        List<Map<String,Object>> inputFeatures = (List<Map<String,Object>>)result.get("input_features");
+        for (Map<String,Object> inputFeature : inputFeatures) {
+            if ("type_a".equals(inputFeature.get("name"))) {
+                type_a_vocab = (List<String>)inputFeature.get("vocab");
+            } else if ("type_b".equals(inputFeature.get("name"))) {
+                type_b_vocab = (List<String>)inputFeature.get("vocab");
+            }
+        }
+        List<Map<String,Object>> outputFeatures = (List<Map<String,Object>>)result.get("output_features");
+        if (outputFeatures != null) {
+            for (Map<String,Object> outputFeature : outputFeatures) {
+                if ("related".equals(outputFeature.get("name"))) {
+                    relatedThreshold = (Double)outputFeature.get("threshold");
+                }
+            }
+        }
+
+        if (type_a_vocab == null) {
+            throw new IllegalStateException("Failed to find vocabulary for type_a");
+        }
+        if (type_b_vocab == null) {
+            throw new IllegalStateException("Failed to find vocabulary for type_b");
+        }
+
+        for (int i = 0; i < type_a_vocab.size(); i++) {
+            typeA_ioTypeToId.put(type_a_vocab.get(i), i);
+        }
+        for (int i = 0; i < type_b_vocab.size(); i++) {
+            typeB_ioTypeToId.put(type_b_vocab.get(i), i);
+        }
+        typeA_vocabSize = type_a_vocab.size();
+        typeB_vocabSize = type_b_vocab.size();
+        // Ludwig defaults to 0.5 for binary output features
+        threshold = relatedThreshold != null ? relatedThreshold : 0.5d;
+    }
+
+    /**
+     * Unknown types are mapped to the first entry in the vocabulary, <UNK>.
+     */
+    int toTypeIdA(String inventoryObjectType) {
+        return typeA_ioTypeToId.getOrDefault(inventoryObjectType, 0);
+    }
+
+    int toTypeIdB(String inventoryObjectType) {
+        return typeB_ioTypeToId.getOrDefault(inventoryObjectType, 0);
+    }
+
+    int getTypeAVocabSize() {
+        return typeA_vocabSize;
+    }
+
+    int getTypeBVocabSize() {
+        return typeB_vocabSize;
+    }
+
+    /**
+     * @return the probability above which the alarms are considered to be related
+     */
+    double getThreshold() {
+        return threshold;
+    }
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages the model used by the engine, and allows it to be replaced without restarting the engine.
+ *
+ * New models are loaded and warmed up on a background thread, and are then staged until
+ * {@link #swapPendingModel()} is called by the engine between ticks. This way the model is never
+ * replaced while alarms are being clustered, and the first tick after the swap does not pay for
+ * the initialization of the model.
+ */
+public class ModelManager implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(ModelManager.class);
+
+    /**
+     * Number of vectors in the synthetic batch used to warm up the models,
+     * matches the largest batch evaluated by the clusterer.
+     */
+    static final int WARM_UP_BATCH_SIZE = 4096;
+
+    private static final int NUM_WARM_UP_ITERATIONS = 3;
+
+    private static final String[] WARM_UP_TYPES = new String[]{"node", "card", "port", "link", "snmp-interface"};
+
+    private final Function<String, RelationModel> modelLoader;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "oce-model-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile LoadedModel activeModel;
+    private final AtomicReference<LoadedModel> pendingModel = new AtomicReference<>();
+
+    private volatile long numSwaps;
+    private volatile long lastSwapTimestamp;
+    private volatile String lastFailure;
+
+    /**
+     * @param modelPath path of the initial model, an empty path refers to the default model
+     * @param modelLoader used to load the models from their path
+     */
+    public ModelManager(String modelPath, Function<String, RelationModel> modelLoader) {
+        this.modelLoader = Objects.requireNonNull(modelLoader);
+        // The initial model is loaded and warmed up synchronously, so that it is ready for the first tick
+        activeModel = load(modelPath);
+    }
+
+    /**
+     * @return the model that should currently be used to cluster alarms
+     */
+    public RelationModel getModel() {
+        return activeModel.model;
+    }
+
+    /**
+     * Load and warm up the model at the given path in the background.
+     *
+     * Once this is complete, the model is staged and will be used after the next call to {@link #swapPendingModel()}.
+     * If another model was already staged, it is discarded.
+     *
+     * @param modelPath path of the model, an empty path refers to the default model
+     * @return a future which completes once the model is staged
+     */
+    public CompletableFuture<Void> loadModel(String modelPath) {
+        return CompletableFuture.runAsync(() -> {
+            final LoadedModel loadedModel;
+            try {
+                loadedModel = load(modelPath);
+            } catch (RuntimeException e) {
+                LOG.error("Failed to load model from path: {}", modelPath, e);
+                lastFailure = String.format("Failed to load model from path: %s: %s", modelPath, e.getMessage());
+                throw e;
+            }
+            final LoadedModel previouslyPendingModel = pendingModel.getAndSet(loadedModel);
+            if (previouslyPendingModel != null) {
+                LOG.info("Discarding pending model from path: {}", previouslyPendingModel.modelPath);
+                previouslyPendingModel.model.close();
+            }
+            lastFailure = null;
+        }, executor);
+    }
+
+    /**
+     * Replace the active model with the pending model, if any.
+     *
+     * Must be called while the active model is not in use, since the previous model is closed.
+     *
+     * @return true if the model was replaced, false if there was no pending model
+     */
+    public boolean swapPendingModel() {
+        final LoadedModel loadedModel = pendingModel.getAndSet(null);
+        if (loadedModel == null) {
+            return false;
+        }
+        final LoadedModel previousModel = activeModel;
+        activeModel = loadedModel;
+        numSwaps++;
+        lastSwapTimestamp = System.currentTimeMillis();
+        LOG.info("Swapped model from path: {} with model from path: {}", previousModel.modelPath, loadedModel.modelPath);
+        previousModel.model.close();
+        return true;
+    }
+
+    public String getModelPath() {
+        return activeModel.modelPath;
+    }
+
+    public long getLoadDurationMs() {
+        return activeModel.loadDurationMs;
+    }
+
+    public long getWarmUpDurationMs() {
+        return activeModel.warmUpDurationMs;
+    }
+
+    /**
+     * @return the path of the model that will be used after the next swap, or null if there is no pending model
+     */
+    public String getPendingModelPath() {
+        final LoadedModel loadedModel = pendingModel.get();
+        return loadedModel != null ? loadedModel.modelPath : null;
+    }
+
+    public long getNumSwaps() {
+        return numSwaps;
+    }
+
+    public long getLastSwapTimestamp() {
+        return lastSwapTimestamp;
+    }
+
+    /**
+     * @return a description of the failure if the last model failed to load, or null otherwise
+     */
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        final LoadedModel loadedModel = pendingModel.getAndSet(null);
+        if (loadedModel != null) {
+            loadedModel.model.close();
+        }
+        activeModel.model.close();
+    }
+
+    private LoadedModel load(String modelPath) {
+        final long start = System.currentTimeMillis();
+        final RelationModel model = modelLoader.apply(modelPath);
+        final long loadedAt = System.currentTimeMillis();
+        try {
+            warmUp(model);
+            if (model instanceof CascadingRelationModel) {
+                // Only count the pairs that were actually clustered
+                ((CascadingRelationModel) model).resetStatistics();
+            }
+        } catch (RuntimeException e) {
+            model.close();
+            throw e;
+        }
+        final long warmedUpAt = System.currentTimeMillis();
+        LOG.info("Loaded model from path: {} in {}ms and warmed it up in {}ms.", modelPath, loadedAt - start, warmedUpAt - loadedAt);
+        return new LoadedModel(model, modelPath, loadedAt - start, warmedUpAt - loadedAt);
+    }
+
+    /**
+     * Evaluate the model a few times with a synthetic batch of input vectors, so that the
+     * graph is initialized and the buffers are allocated before the model is used.
+     *
+     * @param model model to warm up
+     */
+    static void warmUp(RelationModel model) {
+        final Random r = new Random(42);
+        final List<InputVector> inputVectors = new ArrayList<>(WARM_UP_BATCH_SIZE);
+        for (int i = 0; i < WARM_UP_BATCH_SIZE; i++) {
+            inputVectors.add(InputVector.builder()
+                    .typeA(WARM_UP_TYPES[r.nextInt(WARM_UP_TYPES.length)])
+                    .typeB(WARM_UP_TYPES[r.nextInt(WARM_UP_TYPES.length)])
+                    .sameInstance(r.nextBoolean())
+                    .sameParent(r.nextBoolean())
+                    .shareAncestors(r.nextBoolean())
+                    .timeDifferenceInSeconds((double) r.nextInt(3600))
+                    .distanceOnGraph((double) r.nextInt(1000))
+                    .similarityOfInventoryObjectIds(r.nextDouble())
+                    .similarityOfInventoryObjectLabels(r.nextDouble())
+                    .build());
+        }
+        for (int i = 0; i < NUM_WARM_UP_ITERATIONS; i++) {
+            model.isRelated(inputVectors);
+        }
+    }
+
+    private static class LoadedModel {
+        private final RelationModel model;
+        private final String modelPath;
+        private final long loadDurationMs;
+        private final long warmUpDurationMs;
+
+        private LoadedModel(RelationModel model, String modelPath, long loadDurationMs, long warmUpDurationMs) {
+            this.model = Objects.requireNonNull(model);
+            this.modelPath = modelPath;
+            this.loadDurationMs = loadDurationMs;
+            this.warmUpDurationMs = warmUpDurationMs;
+        }
+    }
+}
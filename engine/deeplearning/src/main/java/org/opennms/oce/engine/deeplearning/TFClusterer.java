@@ -29,32 +29,32 @@
 package org.opennms.oce.engine.deeplearning;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.commons.math3.ml.clustering.Cluster;
 import org.opennms.oce.datasource.api.Alarm;
 import org.opennms.oce.engine.cluster.AlarmInSpaceTime;
 import org.opennms.oce.engine.cluster.CEEdge;
 import org.opennms.oce.engine.cluster.CEVertex;
+import org.opennms.oce.engine.cluster.SpatialDistanceOracle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Sets;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import edu.uci.ics.jung.algorithms.cluster.WeakComponentClusterer;
 import edu.uci.ics.jung.graph.Graph;
@@ -62,45 +62,68 @@ import edu.uci.ics.jung.graph.Graph;
 /**
  * Build clusters of alarms by using the binary classification function provided by the model.
  *
+ * The relations found by the model are kept across calls, keyed by alarm id, so that only the pairs
+ * in which at least one of the alarms is new or was updated since the previous call need to be scored.
+ *
  * @author jwhite
  */
 public class TFClusterer {
     private static final Logger LOG = LoggerFactory.getLogger(TFClusterer.class);
 
-    private final TFModel tfModel;
+    private volatile RelationModel tfModel;
     private final Vectorizer vectorizer;
 
+    /**
+     * Pairing tasks that cover more pairs than this are split in two, the leaves are
+     * small enough to be evaluated with a single call to the model.
+     */
+    private static final long MAX_PAIRS_PER_TASK = 4096;
+
+    /**
+     * Subgraphs with more vertices than this are split into ranges of rows of the distance matrix.
+     */
+    private static final int MAX_VERTICES_PER_TASK = 16;
+
     private final double epsilon;
-    private final int numGraphThreads;
-    private final int numTfThreads;
+    private final DeepLearningEngineConf.DistanceSearch distanceSearch;
+    private final int parallelism;
 
-    private ExecutorService graphExecutor;
-    private ExecutorService tfExecutor;
+    private ForkJoinPool pool;
 
     private final WeakComponentClusterer<CEVertex, CEEdge> weakComponentClusterer = new WeakComponentClusterer<>();
 
-    public TFClusterer(TFModel tfModel, Vectorizer vectorizer, DeepLearningEngineConf conf) {
+    /**
+     * The alarms that were scored in the previous call, by alarm id.
+     */
+    private final Map<String, AlarmInSpaceTime> scoredAlarmsById = new HashMap<>();
+
+    /**
+     * The ids of the alarms that were found to be related to each alarm, by alarm id.
+     * Relations are symmetric, so each relation is stored in both directions.
+     */
+    private final Map<String, Set<String>> relatedAlarmIdsById = new ConcurrentHashMap<>();
+
+    public TFClusterer(RelationModel tfModel, Vectorizer vectorizer, DeepLearningEngineConf conf) {
         this.tfModel = Objects.requireNonNull(tfModel);
         this.vectorizer = Objects.requireNonNull(vectorizer);
         Objects.requireNonNull(conf);
 
         epsilon = conf.getEpsilon();
-        numGraphThreads = conf.getNumGraphProcessingThreads();
-        numTfThreads = conf.getNumTensorFlowProcessingThreads();
+        distanceSearch = conf.getDistanceSearch();
+        // The graph processing and the TF processing share the same pool
+        parallelism = conf.getNumGraphProcessingThreads() + conf.getNumTensorFlowProcessingThreads();
     }
 
     public void init() {
-        graphExecutor = Executors.newFixedThreadPool(numGraphThreads, new ThreadFactoryBuilder()
-                .setNameFormat("tf-clusterer-graph-%d")
-                .build());
-        tfExecutor = Executors.newFixedThreadPool(numTfThreads, new ThreadFactoryBuilder()
-                .setNameFormat("tf-clusterer-tf-%d")
-                .build());
+        pool = new ForkJoinPool(parallelism, p -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("tf-clusterer-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
     }
 
     public void destroy() {
-        graphExecutor.shutdown();
-        tfExecutor.shutdown();
+        pool.shutdown();
     }
 
     /**
@@ -112,252 +135,478 @@ public class TFClusterer {
      * 4. For every vertex with alarms:
      * 4.a) Compare all of the alarms on that vertex
      * 4.b) Find and compare alarms on all other vertices within an epsilon radius
+     * 5. Only compare pairs of alarms in which at least one of the alarms is new or
+     *    was updated since the previous call, the relations between the other pairs are
+     *    carried over from the previous calls
+     *
+     * When using the {@link DeepLearningEngineConf.DistanceSearch#BOUNDED} distance search, steps 2 to 4.b)
+     * are replaced by a single Dijkstra search bounded by epsilon from every vertex with new or updated alarms,
+     * and only the vertices with alarms that were reached by the search are compared. The work is then
+     * proportional to the size of the neighborhoods of the changed vertices, instead of the square of the
+     * number of vertices with alarms in their subgraphs.
+     *
+     * All of the work is performed by fork/join tasks on a single work-stealing pool.
      *
-     * We use two different thread pools to accomplish this.
+     * Graph processing tasks traverse the subgraphs and match candidate vertices,
+     * splitting the subgraphs with many vertices into ranges. When alarms on these
+     * vertices need to be matched, a "pairing" task is forked.
      *
-     * Threads in the graph processing pool are used to traverse the graph and
-     * match candidate vertices. When alarms on these vertices need to be matched
-     * a task is placed on a queue.
+     * Pairing tasks that cover many pairs of alarms are split recursively into ranges
+     * of alarms, so that the pairs on a vertex with many alarms are spread across the
+     * threads, which steal work from one another when idle. The pairing tasks merge the
+     * sets of the alarms that are related in a concurrent union-find structure, so
+     * clusters are built as the results are available.
      *
-     * Threads in the TensorFlow processing pool consume and process the "pairing"
-     * tasks generated the by graph processing. When pairs are matched successfully,
-     * the result is placed on a different queue.
+     * The main thread (caller) remains blocked until all of the tasks have
+     * been completed, and then gathers the clusters from the union-find.
      *
-     * The main thread (caller) processes the matches to build clusters incrementally
-     * as the results are available and will remain blocked until all of the tasks have
-     * been completed.
+     * The relations found between the alarms are cached across calls, along with the alarms that were scored,
+     * so that only the pairs involving new or updated alarms are passed to the model. The cached relations are
+     * discarded for the alarms on the vertices given to {@link #invalidate(Set)} when the graph changes,
+     * and entirely when the model is replaced with {@link #setModel(RelationModel)}.
      *
      * Further optimizations include:
      *  * Work to avoid processing alarms that are already in clusters
-     *  * Cache previous results?
      *  * Find additional ways of limiting the number of comparisons
      *
      * @param g graph with alarms to cluster
      * @return clusters of alarms
      */
     public List<Cluster<AlarmInSpaceTime>> cluster(Graph<CEVertex, CEEdge> g) {
-        // Gather the list of vertices with alarms
-        final Set<CEVertex> verticesWithAlarms = new LinkedHashSet<>();
+        // Gather the list of vertices with alarms, and assign a dense index to each of the alarms
+        final Map<CEVertex, List<Alarm>> alarmsByVertex = new LinkedHashMap<>();
+        final List<AlarmInSpaceTime> alarms = new ArrayList<>();
+        final Map<String, Integer> alarmIndexById = new HashMap<>();
         for (CEVertex v : g.getVertices()) {
             if (v.hasAlarms()) {
-                verticesWithAlarms.add(v);
+                final List<Alarm> alarmsOnVertex = new ArrayList<>(v.getAlarms());
+                alarmsByVertex.put(v, alarmsOnVertex);
+                for (Alarm alarm : alarmsOnVertex) {
+                    if (alarmIndexById.putIfAbsent(alarm.getId(), alarms.size()) == null) {
+                        alarms.add(new AlarmInSpaceTime(v, alarm));
+                    }
+                }
             }
         }
 
-        // Split the graph into disconnected sub-graphs - this has complexity O(|V| + |E|)
-        final Set<Set<CEVertex>> subgraphs = weakComponentClusterer.apply(g);
+        // Determine which alarms are new or were updated since the last call, and forget about
+        // the relations of these, as well as the ones of the alarms that are gone
+        final Set<String> changedAlarmIds = new HashSet<>();
+        final Set<CEVertex> verticesWithChangedAlarms = new HashSet<>();
+        for (AlarmInSpaceTime alarm : alarms) {
+            final AlarmInSpaceTime scoredAlarm = scoredAlarmsById.get(alarm.getAlarmId());
+            if (scoredAlarm == null
+                    || scoredAlarm.getVertex().getNumericId() != alarm.getVertex().getNumericId()
+                    || !scoredAlarm.getAlarm().equals(alarm.getAlarm())) {
+                changedAlarmIds.add(alarm.getAlarmId());
+                verticesWithChangedAlarms.add(alarm.getVertex());
+            }
+        }
+        for (String alarmId : new ArrayList<>(relatedAlarmIdsById.keySet())) {
+            if (!alarmIndexById.containsKey(alarmId) || changedAlarmIds.contains(alarmId)) {
+                removeRelationsFor(alarmId);
+            }
+        }
+        LOG.debug("{} out of {} alarms are new or were updated.", changedAlarmIds.size(), alarms.size());
+
+        // Related alarms are merged directly by the pairing tasks
+        final ConcurrentUnionFind relatedAlarms = new ConcurrentUnionFind(alarms.size());
+        final TFTaskContext context = new TFTaskContext(g, alarmsByVertex, verticesWithChangedAlarms, alarmIndexById,
+                changedAlarmIds, relatedAlarms);
+
+        final List<RecursiveAction> subgraphTasks = new ArrayList<>();
+        if (distanceSearch == DeepLearningEngineConf.DistanceSearch.BOUNDED) {
+            // The searches never go further than epsilon, so there is no need to split the graph into subgraphs
+            final List<CEVertex> sources = new ArrayList<>(verticesWithChangedAlarms);
+            subgraphTasks.add(new SearchWithinEpsilonTask(context, sources, 0, sources.size()));
+        } else {
+            // Split the graph into disconnected sub-graphs - this has complexity O(|V| + |E|)
+            final Set<Set<CEVertex>> subgraphs = weakComponentClusterer.apply(g);
+            for (Set<CEVertex> subgraph : subgraphs) {
+                // Only consider the subgraphs that contain some vertex with a new or updated alarm
+                final Set<CEVertex> verticesInSubgraphWithAlarmsAsSet = Sets.intersection(subgraph, alarmsByVertex.keySet());
+                if (Sets.intersection(verticesInSubgraphWithAlarmsAsSet, verticesWithChangedAlarms).isEmpty()) {
+                    // Ignore this subgraph
+                    continue;
+                }
+                final List<CEVertex> verticesInSubgraphWithAlarms = new ArrayList<>(verticesInSubgraphWithAlarmsAsSet);
+                subgraphTasks.add(new ProcessSubgraphTask(context, verticesInSubgraphWithAlarms, 0, verticesInSubgraphWithAlarms.size()));
+            }
+        }
+        final ForkJoinTask<?> rootTask = pool.submit(() -> {
+            ForkJoinTask.invokeAll(subgraphTasks);
+        });
 
-        final BlockingQueue<TFClustererTasks.Task> taskQueue = new LinkedBlockingQueue<>();
-        final BlockingQueue<TFClustererTasks.RelatesTo> relationQueue = new LinkedBlockingQueue<>();
+        // Merge the relations that were carried over while the new pairs are being scored
+        for (Map.Entry<String, Set<String>> entry : relatedAlarmIdsById.entrySet()) {
+            final int alarmIndex = alarmIndexById.get(entry.getKey());
+            for (String relatedAlarmId : entry.getValue()) {
+                relatedAlarms.union(alarmIndex, alarmIndexById.get(relatedAlarmId));
+            }
+        }
 
-        final AtomicBoolean doneSubmittingTasks = new AtomicBoolean(false);
+        try {
+            // Wait for all of the tasks to complete
+            rootTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.info("Interrupted while waiting for results. Aborting cluster operation.");
+            // The relations of the changed alarms may be incomplete, so these will need to be scored again
+            scoredAlarmsById.keySet().removeAll(changedAlarmIds);
+            rootTask.cancel(true);
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            scoredAlarmsById.keySet().removeAll(changedAlarmIds);
+            throw new RuntimeException(e.getCause());
+        }
 
-        // Spawn K TF processing threads
-        List<CompletableFuture<Void>> tfProcessingFutures = new LinkedList<>();
-        for (int k = 0; k < numTfThreads; k++) {
-            tfProcessingFutures.add(CompletableFuture.supplyAsync(() -> {
-                        processTfTasks(taskQueue, relationQueue, doneSubmittingTasks);
-                        // The task processer will return when we're done submitting tasks
-                        // and the queue is empty
-                        return null;
-                    }));
+        // Remember the alarms that were scored, unless some of the tasks failed, in which case
+        // the relations of the changed alarms may be incomplete and these will need to be scored again
+        scoredAlarmsById.clear();
+        for (AlarmInSpaceTime alarm : alarms) {
+            if (!context.failed || !changedAlarmIds.contains(alarm.getAlarmId())) {
+                scoredAlarmsById.put(alarm.getAlarmId(), alarm);
+            }
         }
 
-        List<CompletableFuture<Void>> subgraphProcessingFutures = new LinkedList<>();
-        for (Set<CEVertex> subgraph : subgraphs) {
-            // Only consider the subgraphs that contain some vertex with an alarm
-            final Set<CEVertex> verticesInSubgraphWithAlarmsAsSet = Sets.intersection(subgraph, verticesWithAlarms);
-            if (verticesInSubgraphWithAlarmsAsSet.isEmpty()) {
-                // Ignore this subgraph
+        // Build the clusters from the disjoint sets, the representative of a set is its smallest index,
+        // so the clusters are ordered by their first alarm
+        final Map<Integer, List<AlarmInSpaceTime>> alarmsByRoot = new LinkedHashMap<>();
+        for (int i = 0; i < alarms.size(); i++) {
+            alarmsByRoot.computeIfAbsent(relatedAlarms.find(i), root -> new ArrayList<>()).add(alarms.get(i));
+        }
+        List<Cluster<AlarmInSpaceTime>> clusters = new LinkedList<>();
+        for (List<AlarmInSpaceTime> clusterAsList : alarmsByRoot.values()) {
+            if (clusterAsList.size() < 2) {
+                // This alarm was not related to any other alarm
                 continue;
             }
+            Cluster<AlarmInSpaceTime> cluster = new Cluster<>();
+            for (AlarmInSpaceTime point : clusterAsList) {
+                cluster.addPoint(point);
+            }
+            clusters.add(cluster);
+        }
+        return clusters;
+    }
 
-            subgraphProcessingFutures.add(CompletableFuture.supplyAsync(() -> {
-                processSubgraph(verticesInSubgraphWithAlarmsAsSet, taskQueue);
-                return null;
-            }, graphExecutor));
+    /**
+     * Forget about the relations of the alarms on the given vertices, so that these
+     * get scored again on the next call.
+     *
+     * Used when the graph changes, since the features of the alarms on these vertices,
+     * and the distances between these, may have changed.
+     *
+     * @param vertexIds ids of the vertices
+     */
+    public void invalidate(Set<Long> vertexIds) {
+        final Iterator<AlarmInSpaceTime> it = scoredAlarmsById.values().iterator();
+        while (it.hasNext()) {
+            final AlarmInSpaceTime alarm = it.next();
+            if (vertexIds.contains(alarm.getVertex().getNumericId())) {
+                removeRelationsFor(alarm.getAlarmId());
+                it.remove();
+            }
         }
+    }
 
-        // Wait for the graph processing threads to complete
-        CompletableFuture<Void> subgraphProcessed = CompletableFuture.allOf(subgraphProcessingFutures.toArray(new CompletableFuture[0]));
-        subgraphProcessed.whenComplete((r,e) -> {
-            LOG.trace("Done submitting TF tasks.");
-            doneSubmittingTasks.set(true);
-        });
+    /**
+     * Replace the model used to relate the alarms.
+     *
+     * The relations found by the previous model are discarded, so that all of the pairs get scored
+     * again by the new model on the next call. Must not be called while alarms are being clustered.
+     *
+     * @param tfModel the new model
+     */
+    public void setModel(RelationModel tfModel) {
+        this.tfModel = Objects.requireNonNull(tfModel);
+        scoredAlarmsById.clear();
+        relatedAlarmIdsById.clear();
+    }
 
-        // Wait for the TF processing threads to complete
-        CompletableFuture<Void> relationsProcessed = CompletableFuture.allOf(tfProcessingFutures.toArray(new CompletableFuture[0]));
+    /**
+     * @return the number of relations that are currently known between alarms
+     */
+    public long getNumRelations() {
+        return relatedAlarmIdsById.values().stream()
+                .mapToLong(Set::size)
+                .sum() / 2;
+    }
 
-        // Iteratively build the clusters as results are pushed
-        int nextClusterIndex = 0;
-        Map<String, Integer> alarmIdToClusterId = new LinkedHashMap<>();
-        Map<Integer, List<AlarmInSpaceTime>> clustersById = new LinkedHashMap<>();
+    private void addRelation(String alarmIdA, String alarmIdB) {
+        relatedAlarmIdsById.computeIfAbsent(alarmIdA, id -> ConcurrentHashMap.newKeySet()).add(alarmIdB);
+        relatedAlarmIdsById.computeIfAbsent(alarmIdB, id -> ConcurrentHashMap.newKeySet()).add(alarmIdA);
+    }
 
-        while (!subgraphProcessed.isDone()
-                || !relationsProcessed.isDone()
-                || !relationQueue.isEmpty()) {
-            try {
-                final TFClustererTasks.RelatesTo relatesTo = relationQueue.poll(20, TimeUnit.MILLISECONDS);
-                if (relatesTo == null) {
-                    continue;
+    private void removeRelationsFor(String alarmId) {
+        final Set<String> relatedAlarmIds = relatedAlarmIdsById.remove(alarmId);
+        if (relatedAlarmIds == null) {
+            return;
+        }
+        for (String relatedAlarmId : relatedAlarmIds) {
+            relatedAlarmIdsById.computeIfPresent(relatedAlarmId, (id, ids) -> {
+                ids.remove(alarmId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    /**
+     * Computes the distance between the vertices with alarms in a subgraph, for a range of rows of the distance matrix,
+     * and forks pairing tasks for the vertices that are within an epsilon radius of one another.
+     */
+    private class ProcessSubgraphTask extends RecursiveAction {
+        private final TFTaskContext context;
+        private final List<CEVertex> verticesInSubgraphWithAlarms;
+        private final int from;
+        private final int to;
+
+        private ProcessSubgraphTask(TFTaskContext context, List<CEVertex> verticesInSubgraphWithAlarms, int from, int to) {
+            this.context = context;
+            this.verticesInSubgraphWithAlarms = verticesInSubgraphWithAlarms;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > MAX_VERTICES_PER_TASK) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new ProcessSubgraphTask(context, verticesInSubgraphWithAlarms, from, mid),
+                        new ProcessSubgraphTask(context, verticesInSubgraphWithAlarms, mid, to));
+                return;
+            }
+
+            // Compute the distance between all of the vertices with alarms in this subgraph,
+            // as long as one of these has alarms that were not scored yet
+            final List<PairAlarmsTask> pairAlarmsTasks = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                final CEVertex v1 = verticesInSubgraphWithAlarms.get(i);
+                final List<Alarm> alarmsOnV1 = context.alarmsByVertex.get(v1);
+                final boolean v1HasChangedAlarms = context.verticesWithChangedAlarms.contains(v1);
+                if (v1HasChangedAlarms && alarmsOnV1.size() > 1) {
+                    pairAlarmsTasks.add(new PairAlarmsTask(context, new TFClustererTasks.PairAlarmsOnVertex(v1, alarmsOnV1)));
                 }
 
-                final AlarmInSpaceTime a1 = relatesTo.getA1();
-                final AlarmInSpaceTime a2 = relatesTo.getA2();
-
-                // a1 and a2 are related, so they should be in the same cluster
-
-                // is either a1 or a2 already in a cluster?
-                Integer a1c = alarmIdToClusterId.get(a1.getAlarmId());
-                Integer a2c = alarmIdToClusterId.get(a2.getAlarmId());
-                if (a1c == null && a2c == null) {
-                    // no existing cluster, create a new one
-                    int clusterIndex = ++nextClusterIndex;
-                    alarmIdToClusterId.put(a1.getAlarmId(), clusterIndex);
-                    alarmIdToClusterId.put(a2.getAlarmId(), clusterIndex);
-                    clustersById.put(clusterIndex, new LinkedList<>(Arrays.asList(a1, a2)));
-                } else if (a1c != null && a2c == null) {
-                    // a1 is already in a cluster, but a2 is not, add a2 to the same cluster
-                    int clusterIndex = a1c;
-                    alarmIdToClusterId.put(a2.getAlarmId(), clusterIndex);
-                    clustersById.get(clusterIndex).add(a2);
-                } else if (a1c == null && a2c != null) {
-                    // a2 is already in a cluster, but a1 is not, add a1 to the same cluster
-                    int clusterIndex = a2c;
-                    alarmIdToClusterId.put(a1.getAlarmId(), clusterIndex);
-                    clustersById.get(clusterIndex).add(a1);
-                } else if (!a1c.equals(a2c)) {
-                    // they are both already in clusters, but not the same cluster
-                    // merge the clusters
-                    int clusterIndexToMergeTo = a1c;
-                    int clusterIndexToMergeFrom = a2c;
-
-                    List<AlarmInSpaceTime> clusterToMergeTo = clustersById.get(clusterIndexToMergeTo);
-                    for (AlarmInSpaceTime alarm : clustersById.remove(clusterIndexToMergeFrom)) {
-                        clusterToMergeTo.add(alarm);
-                        alarmIdToClusterId.put(alarm.getAlarmId(), clusterIndexToMergeTo);
+                for (int j = i + 1; j < verticesInSubgraphWithAlarms.size(); j++) {
+                    final CEVertex v2 = verticesInSubgraphWithAlarms.get(j);
+                    if (!v1HasChangedAlarms && !context.verticesWithChangedAlarms.contains(v2)) {
+                        // All of the pairs were already scored
+                        continue;
+                    }
+                    final double distance = vectorizer.distanceOnGraph(v1, v2);
+                    if (distance <= epsilon) {
+                        // We want to try and pair alarms on v1 with alarms on v2
+                        pairAlarmsTasks.add(new PairAlarmsTask(context, new TFClustererTasks.PairAlarmsOnVertices(
+                                v1, alarmsOnV1, v2, context.alarmsByVertex.get(v2), distance)));
                     }
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                LOG.info("Interrupted while waiting for results. Aborting cluster operation.");
-                throw new RuntimeException(e);
             }
+            invokeAll(pairAlarmsTasks);
         }
+    }
 
-        // Build clusters from the maps
-        List<Cluster<AlarmInSpaceTime>> clusters = new LinkedList<>();
-        for (List<AlarmInSpaceTime> clusterAsList : clustersById.values()) {
-            Cluster<AlarmInSpaceTime> cluster = new Cluster<>();
-            for (AlarmInSpaceTime point : clusterAsList) {
-                cluster.addPoint(point);
-            }
-            clusters.add(cluster);
+    /**
+     * Searches for the vertices with alarms that are within an epsilon radius of a range of vertices
+     * with new or updated alarms, and forks pairing tasks for these.
+     */
+    private class SearchWithinEpsilonTask extends RecursiveAction {
+        private final TFTaskContext context;
+        private final List<CEVertex> verticesWithChangedAlarms;
+        private final int from;
+        private final int to;
+
+        private SearchWithinEpsilonTask(TFTaskContext context, List<CEVertex> verticesWithChangedAlarms, int from, int to) {
+            this.context = context;
+            this.verticesWithChangedAlarms = verticesWithChangedAlarms;
+            this.from = from;
+            this.to = to;
         }
-        return clusters;
-    }
 
-    private void processSubgraph(Set<CEVertex> verticesInSubgraphWithAlarmsAsSet, BlockingQueue<TFClustererTasks.Task> taskQueue) {
-        LOG.trace("Graph Processing thread started.");
-        // Compute the distance between all of the vertices with alarms in this subgraph
-        final List<CEVertex> verticesInSubgraphWithAlarms = new ArrayList<>(verticesInSubgraphWithAlarmsAsSet);
-        for (int i = 0; i < verticesInSubgraphWithAlarms.size(); i++) {
-            final CEVertex v1 = verticesInSubgraphWithAlarms.get(i);
-            if (v1.getNumAlarms() > 1) {
-                taskQueue.add(new TFClustererTasks.PairAlarmsOnVertex(v1));
+        @Override
+        protected void compute() {
+            if (to - from > MAX_VERTICES_PER_TASK) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new SearchWithinEpsilonTask(context, verticesWithChangedAlarms, from, mid),
+                        new SearchWithinEpsilonTask(context, verticesWithChangedAlarms, mid, to));
+                return;
             }
 
-            for (int j = i + 1; j < verticesInSubgraphWithAlarms.size(); j++) {
-                final CEVertex v2 = verticesInSubgraphWithAlarms.get(j);
-                final double distance = vectorizer.distanceOnGraph(v1, v2);
-                if (distance <= epsilon) {
-                    // We want to try and pair alarms on v1 with alarms on v2
-                    taskQueue.add(new TFClustererTasks.PairAlarmsOnVertices(v1, v2, distance));
+            final List<PairAlarmsTask> pairAlarmsTasks = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                final CEVertex v1 = verticesWithChangedAlarms.get(i);
+                final List<Alarm> alarmsOnV1 = context.alarmsByVertex.get(v1);
+                if (alarmsOnV1.size() > 1) {
+                    pairAlarmsTasks.add(new PairAlarmsTask(context, new TFClustererTasks.PairAlarmsOnVertex(v1, alarmsOnV1)));
+                }
+
+                for (Map.Entry<CEVertex, Double> entry : SpatialDistanceOracle.getVerticesWithin(context.g, v1, epsilon).entrySet()) {
+                    final CEVertex v2 = entry.getKey();
+                    final List<Alarm> alarmsOnV2 = context.alarmsByVertex.get(v2);
+                    if (alarmsOnV2 == null) {
+                        // No alarms on this vertex
+                        continue;
+                    }
+                    if (context.verticesWithChangedAlarms.contains(v2) && v2.getNumericId() < v1.getNumericId()) {
+                        // The search from v2 also reached v1, only pair the alarms once
+                        continue;
+                    }
+                    pairAlarmsTasks.add(new PairAlarmsTask(context, new TFClustererTasks.PairAlarmsOnVertices(
+                            v1, alarmsOnV1, v2, alarmsOnV2, entry.getValue())));
                 }
             }
+            invokeAll(pairAlarmsTasks);
         }
-        LOG.trace("Graph Processing thread finished.");
     }
 
-    private void processTfTasks(BlockingQueue<TFClustererTasks.Task> taskQueue, BlockingQueue<TFClustererTasks.RelatesTo> relationQueue, AtomicBoolean doneSubmittingTasks) {
-        LOG.trace("TF Processing thread started.");
-        while (!doneSubmittingTasks.get() || !taskQueue.isEmpty()) {
-            try {
-                // If the timeout is any higher, simulations take a while...
-                final TFClustererTasks.Task task = taskQueue.poll(50, TimeUnit.MILLISECONDS);
-                if (task == null) {
-                    continue;
-                }
+    /**
+     * Processes a pairing task, splitting it recursively while it covers too many pairs.
+     */
+    private class PairAlarmsTask extends RecursiveAction {
+        private final TFTaskContext context;
+        private final TFClustererTasks.Task task;
+
+        private PairAlarmsTask(TFTaskContext context, TFClustererTasks.Task task) {
+            this.context = context;
+            this.task = task;
+        }
 
-                LOG.trace("Processing task: {}", task);
-                try {
-                    final TFTaskVisitor visitor = new TFTaskVisitor(tfModel, vectorizer, relationQueue);
-                    task.visit(visitor);
-                    LOG.trace("Done processing task. {} related calls total.", visitor.getNumIsRelatedCalls());
-                } catch (Exception e) {
-                    LOG.error("Error occurred while executing task: {}: {}", task, e.getMessage(), e);
+        @Override
+        protected void compute() {
+            if (task.getNumPairs() > MAX_PAIRS_PER_TASK) {
+                final TFClustererTasks.Task[] halves = task.split();
+                if (halves != null) {
+                    invokeAll(new PairAlarmsTask(context, halves[0]), new PairAlarmsTask(context, halves[1]));
+                    return;
                 }
-            } catch (InterruptedException e) {
-                LOG.info("Interrupted while waiting for the next task. Exiting thread.");
-                return;
             }
+            processTfTask(task, context);
+        }
+    }
+
+    private void processTfTask(TFClustererTasks.Task task, TFTaskContext context) {
+        LOG.trace("Processing task: {}", task);
+        try {
+            final TFTaskVisitor visitor = new TFTaskVisitor(context);
+            task.visit(visitor);
+            LOG.trace("Done processing task. {} related calls total.", visitor.getNumIsRelatedCalls());
+        } catch (Exception e) {
+            LOG.error("Error occurred while executing task: {}: {}", task, e.getMessage(), e);
+            context.failed = true;
+        }
+    }
+
+    /**
+     * State shared by all of the tasks processed in a call to {@link #cluster(Graph)}.
+     */
+    private static class TFTaskContext {
+        private final Graph<CEVertex, CEEdge> g;
+        private final Map<CEVertex, List<Alarm>> alarmsByVertex;
+        private final Set<CEVertex> verticesWithChangedAlarms;
+        private final Map<String, Integer> alarmIndexById;
+        private final Set<String> changedAlarmIds;
+        private final ConcurrentUnionFind relatedAlarms;
+        private volatile boolean failed = false;
+
+        private TFTaskContext(Graph<CEVertex, CEEdge> g, Map<CEVertex, List<Alarm>> alarmsByVertex, Set<CEVertex> verticesWithChangedAlarms,
+                              Map<String, Integer> alarmIndexById, Set<String> changedAlarmIds, ConcurrentUnionFind relatedAlarms) {
+            this.g = g;
+            this.alarmsByVertex = alarmsByVertex;
+            this.verticesWithChangedAlarms = verticesWithChangedAlarms;
+            this.alarmIndexById = alarmIndexById;
+            this.changedAlarmIds = changedAlarmIds;
+            this.relatedAlarms = relatedAlarms;
         }
-        LOG.trace("TF Processing thread finished.");
     }
 
-    private static class TFTaskVisitor implements TFClustererTasks.TaskVisitor {
+    private class TFTaskVisitor implements TFClustererTasks.TaskVisitor {
+        /**
+         * Maximum number of pairs evaluated with a single call to the model,
+         * bounds the amount of memory used by the vectors and tensors of a task.
+         */
+        private static final int MAX_BATCH_SIZE = 4096;
 
-        private final TFModel tfModel;
-        private final Vectorizer vectorizer;
-        private final BlockingQueue<TFClustererTasks.RelatesTo> relationQueue;
+        private final TFTaskContext context;
+
+        private final List<AlarmInSpaceTime> batchA1 = new ArrayList<>();
+        private final List<AlarmInSpaceTime> batchA2 = new ArrayList<>();
+        private final List<InputVector> batchInputVectors = new ArrayList<>();
 
         private long numIsRelatedCalls = 0;
 
-        public TFTaskVisitor(TFModel tfModel, Vectorizer vectorizer, BlockingQueue<TFClustererTasks.RelatesTo> relationQueue) {
-            this.tfModel = tfModel;
-            this.vectorizer = vectorizer;
-            this.relationQueue = relationQueue;
+        public TFTaskVisitor(TFTaskContext context) {
+            this.context = context;
         }
 
         @Override
         public void pairAlarmsOnVertex(TFClustererTasks.PairAlarmsOnVertex task) {
-            // Match all of the alarms on the vertex
+            // Match the alarms in the range with all of the alarms that follow these on the vertex
             // there are N (N -1) / 2 total combinations to check - where N is the number of alarms -> O(n^2)
             final CEVertex vertex = task.getVertex();
-            final List<Alarm> alarms = new ArrayList<>(task.getVertex().getAlarms());
-            for (int i = 0; i < alarms.size(); i++) {
+            final List<Alarm> alarms = task.getAlarms();
+            for (int i = task.getFrom(); i < task.getTo(); i++) {
                 final Alarm a1 = alarms.get(i);
                 final AlarmInSpaceTime a1st = new AlarmInSpaceTime(vertex, a1);
                 for (int j = i + 1; j < alarms.size(); j++) {
                     final Alarm a2 = alarms.get(j);
                     final AlarmInSpaceTime a2st = new AlarmInSpaceTime(vertex, a2);
-                    final InputVector inputVector = vectorizer.vectorize(a1st, a2st);
-                    if (tfModel.isRelated(inputVector)) {
-                        relationQueue.add(new TFClustererTasks.RelatesTo(a1st, a2st, inputVector));
-                    }
-                    numIsRelatedCalls++;
+                    addToBatch(a1st, a2st);
                 }
             }
+            flushBatch();
         }
 
         @Override
         public void pairAlarmsOnVertices(TFClustererTasks.PairAlarmsOnVertices pairAlarmsOnVertices) {
-            // Compare all the alarms on v1 to all of the alarms on v2
+            // Compare the alarms in the range on v1 to the alarms in the range on v2
             final CEVertex v1 = pairAlarmsOnVertices.getV1();
             final CEVertex v2 = pairAlarmsOnVertices.getV2();
+            final List<Alarm> alarms1 = pairAlarmsOnVertices.getAlarms1();
+            final List<Alarm> alarms2 = pairAlarmsOnVertices.getAlarms2();
 
-            for (Alarm a1 : v1.getAlarms()) {
-                final AlarmInSpaceTime a1st = new AlarmInSpaceTime(v1, a1);
+            for (int i = pairAlarmsOnVertices.getFrom1(); i < pairAlarmsOnVertices.getTo1(); i++) {
+                final AlarmInSpaceTime a1st = new AlarmInSpaceTime(v1, alarms1.get(i));
 
-                for (Alarm a2 : v2.getAlarms()) {
-                    final AlarmInSpaceTime a2st = new AlarmInSpaceTime(v2, a2);
-                    final InputVector inputVector = vectorizer.vectorize(a1st, a2st);
-                    if (tfModel.isRelated(inputVector)) {
-                        relationQueue.add(new TFClustererTasks.RelatesTo(a1st, a2st, inputVector));
-                    }
-                    numIsRelatedCalls++;
+                for (int j = pairAlarmsOnVertices.getFrom2(); j < pairAlarmsOnVertices.getTo2(); j++) {
+                    final AlarmInSpaceTime a2st = new AlarmInSpaceTime(v2, alarms2.get(j));
+                    addToBatch(a1st, a2st);
+                }
+            }
+            flushBatch();
+        }
+
+        private void addToBatch(AlarmInSpaceTime a1st, AlarmInSpaceTime a2st) {
+            if (!context.changedAlarmIds.contains(a1st.getAlarmId()) && !context.changedAlarmIds.contains(a2st.getAlarmId())) {
+                // This pair was already scored, and the relation (if any) was carried over
+                return;
+            }
+            batchA1.add(a1st);
+            batchA2.add(a2st);
+            batchInputVectors.add(vectorizer.vectorize(a1st, a2st));
+            if (batchInputVectors.size() >= MAX_BATCH_SIZE) {
+                flushBatch();
+            }
+        }
+
+        private void flushBatch() {
+            if (batchInputVectors.isEmpty()) {
+                return;
+            }
+            // Evaluate all of the pairs in the batch with a single call to the model
+            final boolean[] related = tfModel.isRelated(batchInputVectors);
+            for (int i = 0; i < related.length; i++) {
+                if (related[i]) {
+                    // a1 and a2 are related, so they should be in the same cluster
+                    final String a1 = batchA1.get(i).getAlarmId();
+                    final String a2 = batchA2.get(i).getAlarmId();
+                    addRelation(a1, a2);
+                    context.relatedAlarms.union(context.alarmIndexById.get(a1), context.alarmIndexById.get(a2));
                 }
             }
+            numIsRelatedCalls += related.length;
+            batchA1.clear();
+            batchA2.clear();
+            batchInputVectors.clear();
         }
 
         public long getNumIsRelatedCalls() {
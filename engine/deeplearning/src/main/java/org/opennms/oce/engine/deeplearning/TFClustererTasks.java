@@ -28,9 +28,10 @@
 
 package org.opennms.oce.engine.deeplearning;
 
+import java.util.List;
 import java.util.Objects;
 
-import org.opennms.oce.engine.cluster.AlarmInSpaceTime;
+import org.opennms.oce.datasource.api.Alarm;
 import org.opennms.oce.engine.cluster.CEVertex;
 
 public class TFClustererTasks {
@@ -44,13 +45,38 @@ public class TFClustererTasks {
     interface Task {
 
         void visit(TaskVisitor visitor);
+
+        /**
+         * @return the number of pairs of alarms covered by this task
+         */
+        long getNumPairs();
+
+        /**
+         * Split the task into two tasks that cover the same pairs of alarms.
+         *
+         * @return the two halves, or null if the task cannot be split any further
+         */
+        Task[] split();
     }
 
+    /**
+     * Pair every alarm in the given range with all of the following alarms on the same vertex.
+     */
     static class PairAlarmsOnVertex implements Task {
         private final CEVertex v;
+        private final List<Alarm> alarms;
+        private final int from;
+        private final int to;
+
+        public PairAlarmsOnVertex(CEVertex v, List<Alarm> alarms) {
+            this(v, alarms, 0, alarms.size());
+        }
 
-        public PairAlarmsOnVertex(CEVertex v) {
+        public PairAlarmsOnVertex(CEVertex v, List<Alarm> alarms, int from, int to) {
             this.v = Objects.requireNonNull(v);
+            this.alarms = Objects.requireNonNull(alarms);
+            this.from = from;
+            this.to = to;
         }
 
         @Override
@@ -58,19 +84,78 @@ public class TFClustererTasks {
             visitor.pairAlarmsOnVertex(this);
         }
 
+        @Override
+        public long getNumPairs() {
+            return getNumPairs(from, to);
+        }
+
+        private long getNumPairs(int fromIndex, int toIndex) {
+            // The alarm at index i is paired with the (N - 1 - i) alarms that follow it
+            final long n = alarms.size();
+            final long numRows = toIndex - fromIndex;
+            return numRows * (n - 1) - (fromIndex + toIndex - 1) * numRows / 2;
+        }
+
+        @Override
+        public Task[] split() {
+            if (to - from > 1) {
+                // Split the rows so that both halves have roughly the same number of pairs
+                final long halfNumPairs = getNumPairs() / 2;
+                int mid = from + 1;
+                while (mid < to - 1 && getNumPairs(from, mid) < halfNumPairs) {
+                    mid++;
+                }
+                return new Task[]{new PairAlarmsOnVertex(v, alarms, from, mid), new PairAlarmsOnVertex(v, alarms, mid, to)};
+            }
+            // A single alarm paired with all of the alarms that follow it
+            return new PairAlarmsOnVertices(v, alarms, from, to, v, alarms, from + 1, alarms.size(), 0).split();
+        }
+
         public CEVertex getVertex() {
             return v;
         }
+
+        public List<Alarm> getAlarms() {
+            return alarms;
+        }
+
+        public int getFrom() {
+            return from;
+        }
+
+        public int getTo() {
+            return to;
+        }
     }
 
+    /**
+     * Pair every alarm in the given range on v1 with every alarm in the given range on v2.
+     */
     static class PairAlarmsOnVertices implements Task {
         private final CEVertex v1;
+        private final List<Alarm> alarms1;
+        private final int from1;
+        private final int to1;
         private final CEVertex v2;
+        private final List<Alarm> alarms2;
+        private final int from2;
+        private final int to2;
         private final double distance;
 
-        public PairAlarmsOnVertices(CEVertex v1, CEVertex v2, double distance) {
+        public PairAlarmsOnVertices(CEVertex v1, List<Alarm> alarms1, CEVertex v2, List<Alarm> alarms2, double distance) {
+            this(v1, alarms1, 0, alarms1.size(), v2, alarms2, 0, alarms2.size(), distance);
+        }
+
+        public PairAlarmsOnVertices(CEVertex v1, List<Alarm> alarms1, int from1, int to1,
+                                    CEVertex v2, List<Alarm> alarms2, int from2, int to2, double distance) {
             this.v1 = v1;
+            this.alarms1 = alarms1;
+            this.from1 = from1;
+            this.to1 = to1;
             this.v2 = v2;
+            this.alarms2 = alarms2;
+            this.from2 = from2;
+            this.to2 = to2;
             this.distance = distance;
         }
 
@@ -79,40 +164,60 @@ public class TFClustererTasks {
             visitor.pairAlarmsOnVertices(this);
         }
 
+        @Override
+        public long getNumPairs() {
+            return (long)(to1 - from1) * (to2 - from2);
+        }
+
+        @Override
+        public Task[] split() {
+            // Split the longest of the two ranges in half
+            if (to1 - from1 >= to2 - from2 && to1 - from1 > 1) {
+                final int mid = (from1 + to1) >>> 1;
+                return new Task[]{new PairAlarmsOnVertices(v1, alarms1, from1, mid, v2, alarms2, from2, to2, distance),
+                        new PairAlarmsOnVertices(v1, alarms1, mid, to1, v2, alarms2, from2, to2, distance)};
+            } else if (to2 - from2 > 1) {
+                final int mid = (from2 + to2) >>> 1;
+                return new Task[]{new PairAlarmsOnVertices(v1, alarms1, from1, to1, v2, alarms2, from2, mid, distance),
+                        new PairAlarmsOnVertices(v1, alarms1, from1, to1, v2, alarms2, mid, to2, distance)};
+            }
+            return null;
+        }
+
         public CEVertex getV1() {
             return v1;
         }
 
-        public CEVertex getV2() {
-            return v2;
+        public List<Alarm> getAlarms1() {
+            return alarms1;
         }
 
-        public double getDistance() {
-            return distance;
+        public int getFrom1() {
+            return from1;
         }
-    }
 
-    static class RelatesTo {
-        private final AlarmInSpaceTime a1;
-        private final AlarmInSpaceTime a2;
-        private final InputVector inputVector;
+        public int getTo1() {
+            return to1;
+        }
 
-        public RelatesTo(AlarmInSpaceTime a1, AlarmInSpaceTime a2, InputVector inputVector) {
-            this.a1 = a1;
-            this.a2 = a2;
-            this.inputVector = inputVector;
+        public CEVertex getV2() {
+            return v2;
         }
 
-        public AlarmInSpaceTime getA1() {
-            return a1;
+        public List<Alarm> getAlarms2() {
+            return alarms2;
         }
 
-        public AlarmInSpaceTime getA2() {
-            return a2;
+        public int getFrom2() {
+            return from2;
         }
 
-        public InputVector getInputVector() {
-            return inputVector;
+        public int getTo2() {
+            return to2;
+        }
+
+        public double getDistance() {
+            return distance;
         }
     }
 
@@ -30,13 +30,14 @@ package org.opennms.oce.engine.deeplearning;
 
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.FileUtils;
 import org.osgi.framework.BundleContext;
@@ -47,20 +48,19 @@ import org.tensorflow.Session;
 import org.tensorflow.Tensor;
 
 import com.google.common.base.Strings;
-import com.google.gson.Gson;
-import com.google.gson.stream.JsonReader;
 
-public class TFModel implements AutoCloseable {
+/**
+ * Evaluates the model using a TensorFlow session.
+ */
+public class TFModel implements RelationModel {
     private static final Logger LOG = LoggerFactory.getLogger(TFModel.class);
     private static final String CLASSPATH_MODEL_PATH = "/tf_model";
 
-    private static final Gson gson = new Gson();
-
-    private final Map<String,Integer> typeA_ioTypeToId = new HashMap<>();
-    private final Map<String,Integer> typeB_ioTypeToId = new HashMap<>();
-
+    private final ModelHyperParameters hyperParameters;
     private final Session sess;
     private final Path tempDir;
+    private final TensorStats tensorStats = new TensorStats();
+    private final AtomicLong numVectorsEvaluated = new AtomicLong();
 
     public TFModel() {
         this("");
@@ -96,86 +96,125 @@ public class TFModel implements AutoCloseable {
         this.sess = savedModelBundle.session();
 
         // Load vocabulary maps
-        loadModelHyperParameters(effectiveModelPath);
+        hyperParameters = loadModelHyperParameters(effectiveModelPath);
     }
 
+    @Override
     public boolean isRelated(InputVector inputVector) {
-        final List<Tensor<?>> inputTensors = toTensors(inputVector);
-        List<Tensor<?>> outputTensors = sess.runner()
-                .feed("type_a/type_a_placeholder", inputTensors.get(0))
-                .feed("type_b/type_b_placeholder", inputTensors.get(1))
-                .feed("same_instance/same_instance_placeholder", inputTensors.get(2))
-                .feed("same_parent/same_parent_placeholder", inputTensors.get(3))
-                .feed("share_ancestor/share_ancestor_placeholder", inputTensors.get(4))
-                .feed("distance_on_graph/distance_on_graph_placeholder", inputTensors.get(5))
-                .feed("time_delta_seconds/time_delta_seconds_placeholder", inputTensors.get(6))
-                .feed("io_id_similarity/io_id_similarity_placeholder", inputTensors.get(7))
-                .feed("io_label_similarity/io_label_similarity_placeholder", inputTensors.get(8))
-                .fetch("related/predictions_related/predictions_related")
-                .run();
-
-        Tensor result = outputTensors.get(0);
-
-        boolean[] outputBuffer = new boolean[1];
-        result.copyTo(outputBuffer);
-        return outputBuffer[0];
+        return isRelated(Collections.singletonList(inputVector))[0];
     }
 
-    public List<Tensor<?>> toTensors(InputVector inputVector) {
-        return Arrays.asList(
-                Tensor.create(new int[]{toTypeIdA(inputVector.getTypeA())}, Integer.class), // type_a
-                Tensor.create(new int[]{toTypeIdB(inputVector.getTypeB())}, Integer.class), // type_b
-                Tensor.create(new boolean[]{inputVector.isSameInstance()}, Boolean.class), // same_instance
-                Tensor.create(new boolean[]{inputVector.isSameParent()}, Boolean.class), // same_parent
-                Tensor.create(new boolean[]{inputVector.isShareAncestor()}, Boolean.class), // share_ancestor
-                Tensor.create(new float[]{(float)inputVector.getDistanceOnGraph()}, Float.class), // distance_on_graph
-                Tensor.create(new float[]{(float)inputVector.getTimeDifferenceInSeconds()}, Float.class), // time_delta_seconds
-                Tensor.create(new float[]{(float)inputVector.getSimilarityOfInventoryObjectIds()}, Float.class), // io_id_similarity
-                Tensor.create(new float[]{(float)inputVector.getSimilarityOfInventoryObjectLabels()}, Float.class) // io_label_similarity
-        );
-    }
-
-    private void loadModelHyperParameters(String modelPath) {
-        List<String> type_a_vocab = null;
-        List<String> type_b_vocab = null;
-
-        try (FileReader fileReader = new FileReader(Paths.get(modelPath, "model_hyperparameters.json").toFile());
-             JsonReader reader = new JsonReader(fileReader)
-        ) {
-            Map<String,Object> result = gson.fromJson(reader , Map.class);
-            List<Map<String,Object>> inputFeatures = (List<Map<String,Object>>)result.get("input_features");
-            for (Map<String,Object> inputFeature : inputFeatures) {
-                if ("type_a".equals(inputFeature.get("name"))) {
-                    type_a_vocab = (List<String>)inputFeature.get("vocab");
-                } else if ("type_b".equals(inputFeature.get("name"))) {
-                    type_b_vocab = (List<String>)inputFeature.get("vocab");
-                }
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to load model hyper parameters.", e);
+    /**
+     * Evaluate the model for many input vectors at once.
+     *
+     * The features of all of the vectors are packed into a single tensor per placeholder, so the model
+     * is evaluated with a single call to the session, and all of the tensors are released before returning.
+     *
+     * @param inputVectors input vectors
+     * @return an array with the prediction for every input vector, in the same order as the given list
+     */
+    @Override
+    public boolean[] isRelated(List<InputVector> inputVectors) {
+        final boolean[] related = new boolean[inputVectors.size()];
+        if (inputVectors.isEmpty()) {
+            return related;
         }
 
-        if (type_a_vocab == null) {
-            throw new IllegalStateException("Failed to find vocabulary for type_a");
-        }
-        if (type_b_vocab == null) {
-            throw new IllegalStateException("Failed to find vocabulary for type_b");
+        try (TensorArena arena = newArena()) {
+            final List<Tensor<?>> inputTensors = toTensors(inputVectors, arena);
+            final List<Tensor<?>> outputTensors = sess.runner()
+                    .feed("type_a/type_a_placeholder", inputTensors.get(0))
+                    .feed("type_b/type_b_placeholder", inputTensors.get(1))
+                    .feed("same_instance/same_instance_placeholder", inputTensors.get(2))
+                    .feed("same_parent/same_parent_placeholder", inputTensors.get(3))
+                    .feed("share_ancestor/share_ancestor_placeholder", inputTensors.get(4))
+                    .feed("distance_on_graph/distance_on_graph_placeholder", inputTensors.get(5))
+                    .feed("time_delta_seconds/time_delta_seconds_placeholder", inputTensors.get(6))
+                    .feed("io_id_similarity/io_id_similarity_placeholder", inputTensors.get(7))
+                    .feed("io_label_similarity/io_label_similarity_placeholder", inputTensors.get(8))
+                    .fetch("related/predictions_related/predictions_related")
+                    .run();
+            // The output tensors are allocated by the session, make sure these are released too
+            outputTensors.forEach(arena::register);
+            outputTensors.get(0).copyTo(related);
         }
+        numVectorsEvaluated.addAndGet(related.length);
+        return related;
+    }
 
-        for (int i = 0; i < type_a_vocab.size(); i++) {
-            typeA_ioTypeToId.put(type_a_vocab.get(i), i);
-        }
-        for (int i = 0; i < type_b_vocab.size(); i++) {
-            typeB_ioTypeToId.put(type_b_vocab.get(i), i);
+    /**
+     * Create an arena used to release the tensors allocated for this model.
+     */
+    public TensorArena newArena() {
+        return new TensorArena(tensorStats);
+    }
+
+    /**
+     * Convert the vector to tensors, which are released when the arena is closed.
+     */
+    public List<Tensor<?>> toTensors(InputVector inputVector, TensorArena arena) {
+        return toTensors(Collections.singletonList(inputVector), arena);
+    }
+
+    /**
+     * Convert the vectors to tensors, with one tensor per feature, which are released when the arena is closed.
+     */
+    public List<Tensor<?>> toTensors(List<InputVector> inputVectors, TensorArena arena) {
+        final int n = inputVectors.size();
+        final int[] typeA = new int[n];
+        final int[] typeB = new int[n];
+        final boolean[] sameInstance = new boolean[n];
+        final boolean[] sameParent = new boolean[n];
+        final boolean[] shareAncestor = new boolean[n];
+        final float[] distanceOnGraph = new float[n];
+        final float[] timeDeltaSeconds = new float[n];
+        final float[] ioIdSimilarity = new float[n];
+        final float[] ioLabelSimilarity = new float[n];
+        for (int i = 0; i < n; i++) {
+            final InputVector inputVector = inputVectors.get(i);
+            typeA[i] = hyperParameters.toTypeIdA(inputVector.getTypeA());
+            typeB[i] = hyperParameters.toTypeIdB(inputVector.getTypeB());
+            sameInstance[i] = inputVector.isSameInstance();
+            sameParent[i] = inputVector.isSameParent();
+            shareAncestor[i] = inputVector.isShareAncestor();
+            distanceOnGraph[i] = (float)inputVector.getDistanceOnGraph();
+            timeDeltaSeconds[i] = (float)inputVector.getTimeDifferenceInSeconds();
+            ioIdSimilarity[i] = (float)inputVector.getSimilarityOfInventoryObjectIds();
+            ioLabelSimilarity[i] = (float)inputVector.getSimilarityOfInventoryObjectLabels();
         }
+
+        // The tensors are registered as soon as these are created, so that these are released
+        // along with the others if one of the allocations fails
+        final List<Tensor<?>> tensors = new ArrayList<>(9);
+        tensors.add(arena.register(Tensor.create(typeA, Integer.class))); // type_a
+        tensors.add(arena.register(Tensor.create(typeB, Integer.class))); // type_b
+        tensors.add(arena.register(Tensor.create(sameInstance, Boolean.class))); // same_instance
+        tensors.add(arena.register(Tensor.create(sameParent, Boolean.class))); // same_parent
+        tensors.add(arena.register(Tensor.create(shareAncestor, Boolean.class))); // share_ancestor
+        tensors.add(arena.register(Tensor.create(distanceOnGraph, Float.class))); // distance_on_graph
+        tensors.add(arena.register(Tensor.create(timeDeltaSeconds, Float.class))); // time_delta_seconds
+        tensors.add(arena.register(Tensor.create(ioIdSimilarity, Float.class))); // io_id_similarity
+        tensors.add(arena.register(Tensor.create(ioLabelSimilarity, Float.class))); // io_label_similarity
+        return tensors;
     }
 
-    private int toTypeIdA(String inventoryObjectType) {
-        return typeA_ioTypeToId.getOrDefault(inventoryObjectType, 0);
+    public long getNumVectorsEvaluated() {
+        return numVectorsEvaluated.get();
     }
 
-    private int toTypeIdB(String inventoryObjectType) {
-        return typeB_ioTypeToId.getOrDefault(inventoryObjectType, 0);
+    /**
+     * @return statistics on the tensors allocated for this model
+     */
+    public TensorStats getTensorStats() {
+        return tensorStats;
+    }
+
+    private static ModelHyperParameters loadModelHyperParameters(String modelPath) {
+        try (Reader reader = new FileReader(Paths.get(modelPath, ModelHyperParameters.FILENAME).toFile())) {
+            return new ModelHyperParameters(reader);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load model hyper parameters.", e);
+        }
     }
 
     @Override
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.tensorflow.Tensor;
+
+/**
+ * Owns the tensors used to evaluate a batch, and releases all of these at once when closed.
+ *
+ * Tensors hold native memory that is only reclaimed by the GC when the heap is under pressure,
+ * which may never happen, so every tensor must be registered with an arena that is used
+ * in a try-with-resources block.
+ *
+ * This class is not thread safe.
+ */
+public class TensorArena implements AutoCloseable {
+
+    private final TensorStats stats;
+    private final List<Tensor<?>> tensors = new ArrayList<>();
+
+    TensorArena(TensorStats stats) {
+        this.stats = Objects.requireNonNull(stats);
+    }
+
+    /**
+     * Register a tensor with the arena, the tensor will be closed when the arena is closed.
+     *
+     * @param tensor tensor
+     * @return the same tensor
+     */
+    public <T> Tensor<T> register(Tensor<T> tensor) {
+        tensors.add(tensor);
+        stats.onAllocated(tensor.numBytes());
+        return tensor;
+    }
+
+    /**
+     * @return the number of tensors owned by the arena
+     */
+    public int size() {
+        return tensors.size();
+    }
+
+    /**
+     * Close all of the tensors owned by the arena.
+     *
+     * A failure to close one tensor does not prevent the others from being closed,
+     * the first failure is rethrown once all of the tensors were visited.
+     */
+    @Override
+    public void close() {
+        RuntimeException failure = null;
+        try {
+            for (Tensor<?> tensor : tensors) {
+                try {
+                    closeTensor(tensor);
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        } finally {
+            tensors.clear();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void closeTensor(Tensor<?> tensor) {
+        final int numBytes = tensor.numBytes();
+        try {
+            tensor.close();
+        } finally {
+            stats.onReleased(numBytes);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the float variables from a TensorFlow checkpoint (the variables.index and variables.data-* files
+ * of a saved model) without the native library.
+ *
+ * The index is a sorted string table that maps the names of the variables to BundleEntryProto messages,
+ * which hold the type, the shape and the location of the values in the data file.
+ * Only uncompressed tables with a single data shard are supported, which is what TensorFlow generates
+ * when saving models.
+ */
+class TensorBundleReader {
+    static final String INDEX_FILENAME = "variables.index";
+    static final String DATA_FILENAME = "variables.data-00000-of-00001";
+
+    private static final long TABLE_MAGIC_NUMBER = 0xdb4775248b80fb57L;
+    private static final int FOOTER_LENGTH = 48;
+    private static final int BLOCK_TRAILER_LENGTH = 5;
+    private static final int DT_FLOAT = 1;
+
+    private final Map<String, Variable> variablesByName = new HashMap<>();
+
+    TensorBundleReader(byte[] index, byte[] data) {
+        final ByteBuffer footer = ByteBuffer.wrap(index, index.length - FOOTER_LENGTH, FOOTER_LENGTH);
+        final long magic = ByteBuffer.wrap(index, index.length - 8, 8).order(ByteOrder.LITTLE_ENDIAN).getLong();
+        if (magic != TABLE_MAGIC_NUMBER) {
+            throw new IllegalStateException("Invalid checkpoint index: bad magic number.");
+        }
+        // Skip the handle to the meta index block, we only need the index block
+        readVarint(footer);
+        readVarint(footer);
+        final int indexBlockOffset = (int)readVarint(footer);
+        final int indexBlockSize = (int)readVarint(footer);
+
+        // Every entry in the index block points to a data block
+        for (byte[] blockHandle : readBlock(index, indexBlockOffset, indexBlockSize).values()) {
+            final ByteBuffer handle = ByteBuffer.wrap(blockHandle);
+            final int blockOffset = (int)readVarint(handle);
+            final int blockSize = (int)readVarint(handle);
+            for (Map.Entry<String, byte[]> entry : readBlock(index, blockOffset, blockSize).entrySet()) {
+                if (entry.getKey().isEmpty()) {
+                    // The entry with the empty key is the header
+                    continue;
+                }
+                final Variable variable = readEntry(entry.getValue(), data);
+                if (variable != null) {
+                    variablesByName.put(entry.getKey(), variable);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the variable with the given name
+     * @throws IllegalStateException if no float variable with the given name exists
+     */
+    Variable getVariable(String name) {
+        final Variable variable = variablesByName.get(name);
+        if (variable == null) {
+            throw new IllegalStateException("No float variable named '" + name + "' found in checkpoint.");
+        }
+        return variable;
+    }
+
+    /**
+     * Parse the entries in a block, the keys are prefix compressed against the previous key.
+     */
+    private static Map<String, byte[]> readBlock(byte[] table, int offset, int size) {
+        if (table[offset + size] != 0) {
+            throw new IllegalStateException("Compressed checkpoint indices are not supported.");
+        }
+        if (offset + size + BLOCK_TRAILER_LENGTH > table.length) {
+            throw new IllegalStateException("Invalid checkpoint index: block is out of bounds.");
+        }
+        final ByteBuffer block = ByteBuffer.wrap(table, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+        final int numRestarts = block.getInt(offset + size - 4);
+        final int limit = offset + size - 4 * (numRestarts + 1);
+
+        final Map<String, byte[]> entries = new HashMap<>();
+        byte[] key = new byte[0];
+        while (block.position() < limit) {
+            final int shared = (int)readVarint(block);
+            final int nonShared = (int)readVarint(block);
+            final int valueLength = (int)readVarint(block);
+            final byte[] nextKey = Arrays.copyOf(key, shared + nonShared);
+            block.get(nextKey, shared, nonShared);
+            final byte[] value = new byte[valueLength];
+            block.get(value);
+            entries.put(new String(nextKey, StandardCharsets.UTF_8), value);
+            key = nextKey;
+        }
+        return entries;
+    }
+
+    /**
+     * Parse a BundleEntryProto and read the values it points to.
+     *
+     * @return the variable, or null if the variable does not hold floats
+     */
+    private static Variable readEntry(byte[] entry, byte[] data) {
+        final ByteBuffer proto = ByteBuffer.wrap(entry);
+        int dtype = 0;
+        List<Long> shape = Collections.emptyList();
+        long shardId = 0;
+        long offset = 0;
+        long size = 0;
+        while (proto.hasRemaining()) {
+            final long tag = readVarint(proto);
+            final int field = (int)(tag >>> 3);
+            final int wireType = (int)(tag & 0x7);
+            if (field == 1 && wireType == 0) {
+                dtype = (int)readVarint(proto);
+            } else if (field == 2 && wireType == 2) {
+                shape = readShape(readLengthDelimited(proto));
+            } else if (field == 3 && wireType == 0) {
+                shardId = readVarint(proto);
+            } else if (field == 4 && wireType == 0) {
+                offset = readVarint(proto);
+            } else if (field == 5 && wireType == 0) {
+                size = readVarint(proto);
+            } else if (field == 7) {
+                throw new IllegalStateException("Sliced checkpoint variables are not supported.");
+            } else {
+                skipField(proto, wireType);
+            }
+        }
+
+        if (dtype != DT_FLOAT) {
+            return null;
+        }
+        if (shardId != 0) {
+            throw new IllegalStateException("Sharded checkpoints are not supported.");
+        }
+        if (offset + size > data.length) {
+            throw new IllegalStateException("Invalid checkpoint data: variable is out of bounds.");
+        }
+        final float[] values = new float[(int)(size / Float.BYTES)];
+        ByteBuffer.wrap(data, (int)offset, (int)size).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(values);
+        return new Variable(shape.stream().mapToLong(Long::longValue).toArray(), values);
+    }
+
+    /**
+     * Parse the dimensions of a TensorShapeProto.
+     */
+    private static List<Long> readShape(ByteBuffer proto) {
+        final List<Long> dims = new ArrayList<>();
+        while (proto.hasRemaining()) {
+            final long tag = readVarint(proto);
+            final int wireType = (int)(tag & 0x7);
+            if ((tag >>> 3) == 2 && wireType == 2) {
+                final ByteBuffer dim = readLengthDelimited(proto);
+                long dimSize = 0;
+                while (dim.hasRemaining()) {
+                    final long dimTag = readVarint(dim);
+                    if ((dimTag >>> 3) == 1 && (dimTag & 0x7) == 0) {
+                        dimSize = readVarint(dim);
+                    } else {
+                        skipField(dim, (int)(dimTag & 0x7));
+                    }
+                }
+                dims.add(dimSize);
+            } else {
+                skipField(proto, wireType);
+            }
+        }
+        return dims;
+    }
+
+    private static ByteBuffer readLengthDelimited(ByteBuffer buffer) {
+        final int length = (int)readVarint(buffer);
+        final ByteBuffer value = buffer.slice();
+        value.limit(length);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void skipField(ByteBuffer buffer, int wireType) {
+        switch (wireType) {
+            case 0:
+                readVarint(buffer);
+                break;
+            case 1:
+                buffer.position(buffer.position() + 8);
+                break;
+            case 2:
+                readLengthDelimited(buffer);
+                break;
+            case 5:
+                buffer.position(buffer.position() + 4);
+                break;
+            default:
+                throw new IllegalStateException("Unsupported wire type: " + wireType);
+        }
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long)(b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint.");
+    }
+
+    static class Variable {
+        private final long[] shape;
+        private final float[] values;
+
+        private Variable(long[] shape, float[] values) {
+            this.shape = shape;
+            this.values = values;
+        }
+
+        long[] getShape() {
+            return shape;
+        }
+
+        /**
+         * @return the values, in row-major order
+         */
+        float[] getValues() {
+            return values;
+        }
+    }
+}
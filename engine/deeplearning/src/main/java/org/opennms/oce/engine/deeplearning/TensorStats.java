@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the tensors allocated and released by a model.
+ *
+ * Tensors are backed by native memory which is not visible to heap monitoring,
+ * so these counters are the only way to tell if tensors are being leaked.
+ */
+public class TensorStats {
+
+    private final AtomicLong numTensorsAllocated = new AtomicLong();
+    private final AtomicLong numTensorsReleased = new AtomicLong();
+    private final AtomicLong numBytesAllocated = new AtomicLong();
+    private final AtomicLong numBytesReleased = new AtomicLong();
+    private final AtomicLong maxLiveBytes = new AtomicLong();
+
+    void onAllocated(long numBytes) {
+        numTensorsAllocated.incrementAndGet();
+        final long liveBytes = numBytesAllocated.addAndGet(numBytes) - numBytesReleased.get();
+        maxLiveBytes.accumulateAndGet(liveBytes, Math::max);
+    }
+
+    void onReleased(long numBytes) {
+        numTensorsReleased.incrementAndGet();
+        numBytesReleased.addAndGet(numBytes);
+    }
+
+    public long getNumTensorsAllocated() {
+        return numTensorsAllocated.get();
+    }
+
+    public long getNumTensorsReleased() {
+        return numTensorsReleased.get();
+    }
+
+    /**
+     * @return the number of tensors that were allocated and not yet released
+     */
+    public long getNumLiveTensors() {
+        // Read the releases first so that the result is never negative
+        final long released = numTensorsReleased.get();
+        return numTensorsAllocated.get() - released;
+    }
+
+    public long getNumBytesAllocated() {
+        return numBytesAllocated.get();
+    }
+
+    public long getNumBytesReleased() {
+        return numBytesReleased.get();
+    }
+
+    /**
+     * @return the number of bytes held by the tensors that were allocated and not yet released
+     */
+    public long getNumLiveBytes() {
+        final long released = numBytesReleased.get();
+        return numBytesAllocated.get() - released;
+    }
+
+    /**
+     * @return the largest number of bytes that were held by live tensors at once
+     */
+    public long getMaxLiveBytes() {
+        return maxLiveBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TensorStats{" +
+                "numTensorsAllocated=" + getNumTensorsAllocated() +
+                ", numTensorsReleased=" + getNumTensorsReleased() +
+                ", numBytesAllocated=" + getNumBytesAllocated() +
+                ", numBytesReleased=" + getNumBytesReleased() +
+                ", maxLiveBytes=" + getMaxLiveBytes() +
+                '}';
+    }
+}
@@ -30,27 +30,45 @@ package org.opennms.oce.engine.deeplearning;
 
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 import org.opennms.oce.datasource.api.InventoryObject;
 import org.opennms.oce.engine.cluster.AlarmInSpaceTime;
 import org.opennms.oce.engine.cluster.CEVertex;
 import org.opennms.oce.engine.cluster.GraphManager;
+import org.opennms.oce.engine.cluster.GraphSnapshot;
 import org.opennms.oce.engine.cluster.SpatialDistanceCalculator;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import info.debatty.java.stringsimilarity.NormalizedLevenshtein;
 
 /**
  * Used to build a {@link InputVector} from two {@link AlarmInSpaceTime} alarms.
  *
+ * The features derived from the inventory only depend on the vertices of the alarms, so these are cached
+ * for every pair of vertices and only the time difference is computed for every pair of alarms.
+ * The cached features must be invalidated via {@link #invalidate(Set)} when the graph changes.
+ *
+ * The ancestors of the inventory objects are resolved on the {@link GraphSnapshot}, which is the graph the
+ * alarms are clustered on, so that the threads building the vectors never contend for the lock on the live graph.
+ *
  * @author jwhite
  */
 public class Vectorizer {
+    private static final long MAX_NUM_CACHED_VERTEX_PAIRS = 100000;
+
     private final GraphManager graphManager;
     private final SpatialDistanceCalculator spatialDistanceCalculator;
     private final NormalizedLevenshtein normalizedLevenshtein = new NormalizedLevenshtein();
 
+    private final Cache<VertexPairKey, VertexPairFeatures> vertexPairFeatures = CacheBuilder.newBuilder()
+            .maximumSize(MAX_NUM_CACHED_VERTEX_PAIRS)
+            .build();
+
     public Vectorizer(GraphManager graphManager, SpatialDistanceCalculator spatialDistanceCalculator) {
         this.graphManager = Objects.requireNonNull(graphManager);
         this.spatialDistanceCalculator = Objects.requireNonNull(spatialDistanceCalculator);
@@ -61,11 +79,48 @@ public class Vectorizer {
     }
 
     public InputVector vectorize(AlarmInSpaceTime a1, AlarmInSpaceTime a2, double distanceOnGraph) {
-        // Build the input vector
-        final InputVector.Builder builder = InputVector.builder()
+        final VertexPairFeatures features = getVertexPairFeatures(a1, a2);
+        final int firstAncestorMatch = features.firstAncestorMatch;
+        return InputVector.builder()
                 .typeA(a1.getAlarm().getInventoryObjectType())
                 .typeB(a2.getAlarm().getInventoryObjectType())
-                .similarityOfInventoryObjectIds(getSimilarityOfInventoryObjectIds(a1.getAlarm().getInventoryObjectId(), a2.getAlarm().getInventoryObjectId()));
+                .similarityOfInventoryObjectIds(features.similarityOfInventoryObjectIds)
+                .sameInstance(firstAncestorMatch == 0)
+                .sameParent(firstAncestorMatch == 0 || firstAncestorMatch == 1)
+                .shareAncestors(firstAncestorMatch >= 0)
+                .timeDifferenceInSeconds(timeDeltaInSeconds(a1, a2))
+                .distanceOnGraph(distanceOnGraph)
+                .similarityOfInventoryObjectLabels(features.similarityOfInventoryObjectLabels)
+                .build();
+    }
+
+    /**
+     * Invalidate the cached features for all of the pairs that include one of the given vertices.
+     *
+     * @param vertexIds ids of the vertices that were added, removed, or whose ancestry may have changed
+     */
+    public void invalidate(Set<Long> vertexIds) {
+        vertexPairFeatures.asMap().keySet()
+                .removeIf(key -> vertexIds.contains(key.vertexIdA) || vertexIds.contains(key.vertexIdB));
+    }
+
+    public long getNumCachedVertexPairs() {
+        return vertexPairFeatures.size();
+    }
+
+    private VertexPairFeatures getVertexPairFeatures(AlarmInSpaceTime a1, AlarmInSpaceTime a2) {
+        final VertexPairKey key = new VertexPairKey(a1.getVertex().getNumericId(), a2.getVertex().getNumericId());
+        try {
+            return vertexPairFeatures.get(key, () -> computeVertexPairFeatures(a1, a2));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private VertexPairFeatures computeVertexPairFeatures(AlarmInSpaceTime a1, AlarmInSpaceTime a2) {
+        // The alarms are attached to the vertices of their inventory object, so the ids are the same
+        // for all of the alarms on these vertices
+        final double similarityOfInventoryObjectIds = getSimilarityOfInventoryObjectIds(a1.getAlarm().getInventoryObjectId(), a2.getAlarm().getInventoryObjectId());
 
         // Process additional facts if we can obtain the IO
         int firstAncestorMatch = -1;
@@ -78,15 +133,7 @@ public class Vectorizer {
             firstAncestorMatch = getFirstAncestorMatch(ioa, iob);
             similarityOfInventoryObjectLabels = getSimilarityOfInventoryObjectLabels(ioa, iob);
         }
-
-        builder.sameInstance(firstAncestorMatch == 0)
-                .sameParent(firstAncestorMatch == 0 || firstAncestorMatch == 1)
-                .shareAncestors(firstAncestorMatch >= 0)
-                .timeDifferenceInSeconds(timeDeltaInSeconds(a1, a2))
-                .distanceOnGraph(distanceOnGraph)
-                .similarityOfInventoryObjectLabels(similarityOfInventoryObjectLabels);
-
-        return builder.build();
+        return new VertexPairFeatures(similarityOfInventoryObjectIds, firstAncestorMatch, similarityOfInventoryObjectLabels);
     }
 
     private double getSimilarityOfInventoryObjectIds(String ioId1, String ioId2) {
@@ -101,6 +148,7 @@ public class Vectorizer {
     }
 
     private int getFirstAncestorMatch(final InventoryObject io1, final InventoryObject io2) {
+        final GraphSnapshot snapshot = graphManager.getSnapshot();
         InventoryObject ioa = io1;
         InventoryObject iob = io2;
 
@@ -126,13 +174,13 @@ public class Vectorizer {
             // We now know that both IOs have parents, and they are not the same, let's go up a level
             level++;
 
-            Optional<CEVertex> va = graphManager.getVertexForParentOf(ioa);
+            Optional<CEVertex> va = snapshot.getVertexForParentOf(ioa);
             if (!va.isPresent() || !va.get().getInventoryObject().isPresent()) {
                 return -1;
             }
             ioa = va.get().getInventoryObject().get();
 
-            Optional<CEVertex> vb = graphManager.getVertexForParentOf(iob);
+            Optional<CEVertex> vb = snapshot.getVertexForParentOf(iob);
             if (!vb.isPresent() || !vb.get().getInventoryObject().isPresent()) {
                 return -1;
             }
@@ -151,4 +199,48 @@ public class Vectorizer {
     public double distanceOnGraph(CEVertex v1, CEVertex v2) {
         return spatialDistanceCalculator.getSpatialDistanceBetween(v1.getNumericId(), v2.getNumericId());
     }
+
+    /**
+     * The features that only depend on the vertices, all of which are symmetric.
+     */
+    private static class VertexPairFeatures {
+        private final double similarityOfInventoryObjectIds;
+        private final int firstAncestorMatch;
+        private final double similarityOfInventoryObjectLabels;
+
+        private VertexPairFeatures(double similarityOfInventoryObjectIds, int firstAncestorMatch, double similarityOfInventoryObjectLabels) {
+            this.similarityOfInventoryObjectIds = similarityOfInventoryObjectIds;
+            this.firstAncestorMatch = firstAncestorMatch;
+            this.similarityOfInventoryObjectLabels = similarityOfInventoryObjectLabels;
+        }
+    }
+
+    private static class VertexPairKey {
+        private final long vertexIdA;
+        private final long vertexIdB;
+
+        private VertexPairKey(long vertexIdA, long vertexIdB) {
+            if (vertexIdA <= vertexIdB) {
+                this.vertexIdA = vertexIdA;
+                this.vertexIdB = vertexIdB;
+            } else {
+                this.vertexIdA = vertexIdB;
+                this.vertexIdB = vertexIdA;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            VertexPairKey that = (VertexPairKey) o;
+            return vertexIdA == that.vertexIdA &&
+                    vertexIdB == that.vertexIdB;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(vertexIdA, vertexIdB);
+        }
+    }
 }
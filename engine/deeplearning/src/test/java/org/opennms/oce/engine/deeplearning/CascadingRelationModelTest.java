@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class CascadingRelationModelTest {
+
+    /**
+     * Verifies that only the uncertain pairs are sent to the slow model,
+     * and that the predictions remain close to the ones of the slow model.
+     */
+    @Test
+    public void canFilterPairsWithDistilledModel() {
+        final AtomicInteger numSlowEvaluations = new AtomicInteger();
+        try (JavaRelationModel teacher = new JavaRelationModel("")) {
+            final RelationModel slowModel = new RelationModel() {
+                @Override
+                public boolean isRelated(InputVector inputVector) {
+                    numSlowEvaluations.incrementAndGet();
+                    return teacher.isRelated(inputVector);
+                }
+
+                @Override
+                public boolean[] isRelated(List<InputVector> inputVectors) {
+                    numSlowEvaluations.addAndGet(inputVectors.size());
+                    return teacher.isRelated(inputVectors);
+                }
+
+                @Override
+                public void close() {
+                    // The teacher is closed by the test
+                }
+            };
+
+            final DistilledRelationModel fastModel = new DistilledModelTrainer().train(DistilledModelTrainer.label(teacher,
+                    DistilledRelationModelTest.generateInputVectors(20000, 1)));
+            final CascadingRelationModel model = new CascadingRelationModel(fastModel, slowModel, 0.05, 0.95);
+            numSlowEvaluations.set(0);
+
+            final List<InputVector> testVectors = DistilledRelationModelTest.generateInputVectors(10000, 2);
+            final boolean[] expected = teacher.isRelated(testVectors);
+            final boolean[] actual = model.isRelated(testVectors);
+            int numAgreements = 0;
+            for (int i = 0; i < testVectors.size(); i++) {
+                if (actual[i] == expected[i]) {
+                    numAgreements++;
+                }
+            }
+            assertThat((double) numAgreements / testVectors.size(), greaterThan(0.99));
+
+            // Only part of the pairs should have been sent to the slow model
+            assertThat(numSlowEvaluations.get(), lessThan(testVectors.size() / 2));
+            assertThat(model.getNumDecidedBySlowModel(), equalTo((long) numSlowEvaluations.get()));
+            assertThat(model.getNumDecidedByFastModel() + model.getNumDecidedBySlowModel(), equalTo((long) testVectors.size()));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class ConcurrentUnionFindTest {
+
+    @Test
+    public void canMergeSets() {
+        final ConcurrentUnionFind uf = new ConcurrentUnionFind(6);
+        for (int i = 0; i < uf.size(); i++) {
+            assertThat(uf.find(i), equalTo(i));
+        }
+
+        uf.union(5, 3);
+        uf.union(1, 2);
+        assertThat(uf.find(5), equalTo(3));
+        assertThat(uf.find(2), equalTo(1));
+
+        // The representative of the set is the smallest element
+        uf.union(5, 2);
+        for (int i : new int[]{1, 2, 3, 5}) {
+            assertThat(uf.find(i), equalTo(1));
+        }
+        assertThat(uf.find(0), equalTo(0));
+        assertThat(uf.find(4), equalTo(4));
+
+        // Merging elements in the same set is a no-op
+        uf.union(3, 1);
+        assertThat(uf.find(3), equalTo(1));
+    }
+
+    /**
+     * Verifies that unions performed concurrently from many threads
+     * lead to the same sets as the same unions performed on a single thread.
+     */
+    @Test
+    public void canMergeSetsConcurrently() throws Exception {
+        final int n = 10000;
+        final int numThreads = 8;
+        final int numUnionsPerThread = 2000;
+
+        final Random r = new Random(42);
+        final int[][] unions = new int[numThreads * numUnionsPerThread][];
+        for (int i = 0; i < unions.length; i++) {
+            unions[i] = new int[]{r.nextInt(n), r.nextInt(n)};
+        }
+
+        final ConcurrentUnionFind expected = new ConcurrentUnionFind(n);
+        for (int[] union : unions) {
+            expected.union(union[0], union[1]);
+        }
+
+        final ConcurrentUnionFind actual = new ConcurrentUnionFind(n);
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                final int offset = t * numUnionsPerThread;
+                futures.add(executor.submit(() -> {
+                    for (int i = offset; i < offset + numUnionsPerThread; i++) {
+                        actual.union(unions[i][0], unions[i][1]);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < n; i++) {
+            assertThat(actual.find(i), equalTo(expected.find(i)));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DistilledRelationModelTest {
+
+    private static JavaRelationModel teacher;
+
+    @BeforeClass
+    public static void setUpClass() {
+        teacher = new JavaRelationModel("");
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        teacher.close();
+    }
+
+    /**
+     * Verifies that the distilled model agrees with the model it was distilled from on most of the pairs,
+     * and that the pairs on which it is confident are almost always right.
+     */
+    @Test
+    public void canDistillModel() {
+        final DistilledModelTrainer trainer = new DistilledModelTrainer();
+        final DistilledRelationModel model = trainer.train(DistilledModelTrainer.label(teacher, generateInputVectors(20000, 1)));
+
+        final List<InputVector> testVectors = generateInputVectors(10000, 2);
+        final boolean[] expected = teacher.isRelated(testVectors);
+        final boolean[] actual = model.isRelated(testVectors);
+        int numAgreements = 0;
+        int numConfident = 0;
+        int numConfidentAgreements = 0;
+        for (int i = 0; i < testVectors.size(); i++) {
+            if (actual[i] == expected[i]) {
+                numAgreements++;
+            }
+            final double probability = model.getProbability(testVectors.get(i));
+            if (probability < 0.05 || probability > 0.95) {
+                numConfident++;
+                if (actual[i] == expected[i]) {
+                    numConfidentAgreements++;
+                }
+            }
+        }
+        assertThat((double) numAgreements / testVectors.size(), greaterThan(0.95));
+        assertThat((double) numConfident / testVectors.size(), greaterThan(0.5));
+        assertThat((double) numConfidentAgreements / numConfident, greaterThan(0.99));
+    }
+
+    @Test
+    public void canReadAndWriteModel() {
+        final DistilledModelTrainer trainer = new DistilledModelTrainer();
+        trainer.setNumEpochs(2);
+        final DistilledRelationModel model = trainer.train(DistilledModelTrainer.label(teacher, generateInputVectors(1000, 1)));
+
+        final StringWriter writer = new StringWriter();
+        model.write(writer);
+        final DistilledRelationModel readModel = DistilledRelationModel.read(new StringReader(writer.toString()));
+        for (InputVector inputVector : generateInputVectors(1000, 2)) {
+            assertThat(readModel.getProbability(inputVector), equalTo(model.getProbability(inputVector)));
+        }
+    }
+
+    static List<InputVector> generateInputVectors(int numVectors, long seed) {
+        final Random r = new Random(seed);
+        final String[] types = new String[]{"BgpPeer", "SnmpInterface", "Node", "SnmpInterfaceLink", "Unknown"};
+        final List<InputVector> inputVectors = new ArrayList<>(numVectors);
+        for (int i = 0; i < numVectors; i++) {
+            final boolean sameInstance = r.nextInt(10) == 0;
+            final boolean sameParent = sameInstance || r.nextBoolean();
+            inputVectors.add(InputVector.builder()
+                    .typeA(types[r.nextInt(types.length)])
+                    .typeB(types[r.nextInt(types.length)])
+                    .sameInstance(sameInstance)
+                    .sameParent(sameParent)
+                    .shareAncestors(sameParent || r.nextBoolean())
+                    .timeDifferenceInSeconds((double) r.nextInt(7200))
+                    .distanceOnGraph((double) r.nextInt(1000))
+                    .similarityOfInventoryObjectIds(r.nextDouble())
+                    .similarityOfInventoryObjectLabels(r.nextInt(4) == 0 ? -1d : r.nextDouble())
+                    .build());
+        }
+        return inputVectors;
+    }
+}
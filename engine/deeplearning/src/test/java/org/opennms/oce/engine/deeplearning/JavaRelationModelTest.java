@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class JavaRelationModelTest {
+
+    private static TFModel tfModel;
+    private static JavaRelationModel javaModel;
+
+    @BeforeClass
+    public static void setUpClass() {
+        tfModel = new TFModel();
+        javaModel = new JavaRelationModel();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        tfModel.close();
+        javaModel.close();
+    }
+
+    /**
+     * Verifies that the model evaluated in Java makes the same predictions as the TensorFlow session.
+     */
+    @Test
+    public void canMakeSamePredictionsAsTensorFlow() {
+        final Random r = new Random(42);
+        final String[] types = new String[]{"BgpPeer", "SnmpInterface", "Node", "SnmpInterfaceLink", "Unknown"};
+        final List<InputVector> inputVectors = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            final boolean sameInstance = r.nextInt(10) == 0;
+            final boolean sameParent = sameInstance || r.nextBoolean();
+            inputVectors.add(InputVector.builder()
+                    .typeA(types[r.nextInt(types.length)])
+                    .typeB(types[r.nextInt(types.length)])
+                    .sameInstance(sameInstance)
+                    .sameParent(sameParent)
+                    .shareAncestors(sameParent || r.nextBoolean())
+                    .timeDifferenceInSeconds((double) r.nextInt(7200))
+                    .distanceOnGraph((double) r.nextInt(1000))
+                    .similarityOfInventoryObjectIds(r.nextDouble())
+                    .similarityOfInventoryObjectLabels(r.nextInt(4) == 0 ? -1d : r.nextDouble())
+                    .build());
+        }
+
+        final boolean[] expected = tfModel.isRelated(inputVectors);
+        final boolean[] actual = javaModel.isRelated(inputVectors);
+        int numRelated = 0;
+        for (int i = 0; i < inputVectors.size(); i++) {
+            assertThat("Prediction differs for: " + inputVectors.get(i), actual[i], equalTo(expected[i]));
+            assertThat(javaModel.isRelated(inputVectors.get(i)), equalTo(expected[i]));
+            if (expected[i]) {
+                numRelated++;
+            }
+        }
+        // Make sure we've covered both outcomes
+        assertThat(numRelated, greaterThan(0));
+        assertThat(numRelated, lessThan(inputVectors.size()));
+    }
+}
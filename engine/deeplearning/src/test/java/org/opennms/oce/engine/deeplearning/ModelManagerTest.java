@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+public class ModelManagerTest {
+
+    @Test
+    public void canSwapModels() throws Exception {
+        final RelationModel initialModel = mock(RelationModel.class);
+        final RelationModel newModel = mock(RelationModel.class);
+        final Map<String, RelationModel> modelsByPath = new HashMap<>();
+        modelsByPath.put("", initialModel);
+        modelsByPath.put("/new", newModel);
+
+        try (ModelManager modelManager = new ModelManager("", path -> {
+            final RelationModel model = modelsByPath.get(path);
+            if (model == null) {
+                throw new IllegalArgumentException("No model at: " + path);
+            }
+            return model;
+        })) {
+            // The initial model should be warmed up before it is used
+            assertThat(modelManager.getModel(), sameInstance(initialModel));
+            verify(initialModel, times(3)).isRelated(anyList());
+
+            // Nothing to swap
+            assertThat(modelManager.swapPendingModel(), equalTo(false));
+
+            // Load the new model, it should be warmed up but not used until it is swapped
+            modelManager.loadModel("/new").get();
+            verify(newModel, times(3)).isRelated(anyList());
+            assertThat(modelManager.getModel(), sameInstance(initialModel));
+            assertThat(modelManager.getPendingModelPath(), equalTo("/new"));
+
+            // Swap it in, the initial model should be closed
+            assertThat(modelManager.swapPendingModel(), equalTo(true));
+            assertThat(modelManager.getModel(), sameInstance(newModel));
+            assertThat(modelManager.getModelPath(), equalTo("/new"));
+            assertThat(modelManager.getPendingModelPath(), nullValue());
+            assertThat(modelManager.getNumSwaps(), equalTo(1L));
+            verify(initialModel).close();
+            verify(newModel, never()).close();
+
+            // Failures to load a model should not affect the model in use
+            try {
+                modelManager.loadModel("/missing").get();
+                fail("Loading the model should have failed.");
+            } catch (ExecutionException e) {
+                // Expected
+            }
+            assertThat(modelManager.getLastFailure(), notNullValue());
+            assertThat(modelManager.swapPendingModel(), equalTo(false));
+            assertThat(modelManager.getModel(), sameInstance(newModel));
+        }
+        verify(newModel).close();
+    }
+
+    @Test
+    public void canWarmUpModel() {
+        try (JavaRelationModel model = new JavaRelationModel("")) {
+            ModelManager.warmUp(model);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.deeplearning;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.opennms.oce.datasource.api.Alarm;
+import org.opennms.oce.datasource.api.ResourceKey;
+import org.opennms.oce.datasource.common.ImmutableAlarm;
+import org.opennms.oce.engine.cluster.CEVertex;
+
+public class TFClustererTasksTest {
+
+    @Test
+    public void canSplitPairsOnVertex() {
+        for (int numAlarms : new int[]{0, 1, 2, 3, 10, 101}) {
+            final CEVertex v = new CEVertex(0, ResourceKey.key("v"));
+            final List<Alarm> alarms = createAlarms("a", numAlarms);
+            final TFClustererTasks.Task task = new TFClustererTasks.PairAlarmsOnVertex(v, alarms);
+
+            final Set<String> expectedPairs = new HashSet<>();
+            for (int i = 0; i < numAlarms; i++) {
+                for (int j = i + 1; j < numAlarms; j++) {
+                    expectedPairs.add(alarms.get(i).getId() + "-" + alarms.get(j).getId());
+                }
+            }
+            assertThat(task.getNumPairs(), equalTo((long)expectedPairs.size()));
+
+            for (int maxPairsPerTask : new int[]{1, 7, 100}) {
+                assertThat(splitAndCollectPairs(task, maxPairsPerTask), equalTo(expectedPairs));
+            }
+        }
+    }
+
+    @Test
+    public void canSplitPairsOnVertices() {
+        final CEVertex v1 = new CEVertex(0, ResourceKey.key("v1"));
+        final CEVertex v2 = new CEVertex(1, ResourceKey.key("v2"));
+        for (int numAlarms1 : new int[]{1, 2, 33}) {
+            for (int numAlarms2 : new int[]{1, 5, 64}) {
+                final List<Alarm> alarms1 = createAlarms("a", numAlarms1);
+                final List<Alarm> alarms2 = createAlarms("b", numAlarms2);
+                final TFClustererTasks.Task task = new TFClustererTasks.PairAlarmsOnVertices(v1, alarms1, v2, alarms2, 1);
+
+                final Set<String> expectedPairs = new HashSet<>();
+                for (Alarm a1 : alarms1) {
+                    for (Alarm a2 : alarms2) {
+                        expectedPairs.add(a1.getId() + "-" + a2.getId());
+                    }
+                }
+                assertThat(task.getNumPairs(), equalTo((long)expectedPairs.size()));
+
+                for (int maxPairsPerTask : new int[]{1, 7, 100}) {
+                    assertThat(splitAndCollectPairs(task, maxPairsPerTask), equalTo(expectedPairs));
+                }
+            }
+        }
+    }
+
+    /**
+     * Recursively split the task until the tasks are small enough,
+     * and gather the pairs covered by all of the resulting tasks.
+     */
+    private static Set<String> splitAndCollectPairs(TFClustererTasks.Task task, int maxPairsPerTask) {
+        final List<String> pairs = new ArrayList<>();
+        final TFClustererTasks.TaskVisitor visitor = new TFClustererTasks.TaskVisitor() {
+            @Override
+            public void pairAlarmsOnVertex(TFClustererTasks.PairAlarmsOnVertex t) {
+                for (int i = t.getFrom(); i < t.getTo(); i++) {
+                    for (int j = i + 1; j < t.getAlarms().size(); j++) {
+                        pairs.add(t.getAlarms().get(i).getId() + "-" + t.getAlarms().get(j).getId());
+                    }
+                }
+            }
+
+            @Override
+            public void pairAlarmsOnVertices(TFClustererTasks.PairAlarmsOnVertices t) {
+                for (int i = t.getFrom1(); i < t.getTo1(); i++) {
+                    for (int j = t.getFrom2(); j < t.getTo2(); j++) {
+                        pairs.add(t.getAlarms1().get(i).getId() + "-" + t.getAlarms2().get(j).getId());
+                    }
+                }
+            }
+        };
+
+        final List<TFClustererTasks.Task> tasks = new ArrayList<>();
+        tasks.add(task);
+        while (!tasks.isEmpty()) {
+            final TFClustererTasks.Task t = tasks.remove(tasks.size() - 1);
+            final TFClustererTasks.Task[] halves = t.getNumPairs() > maxPairsPerTask ? t.split() : null;
+            if (halves != null) {
+                assertThat(halves[0].getNumPairs() + halves[1].getNumPairs(), equalTo(t.getNumPairs()));
+                tasks.add(halves[0]);
+                tasks.add(halves[1]);
+            } else {
+                assertThat(t.getNumPairs(), lessThanOrEqualTo((long)maxPairsPerTask));
+                final int numPairsBefore = pairs.size();
+                t.visit(visitor);
+                assertThat((long)(pairs.size() - numPairsBefore), equalTo(t.getNumPairs()));
+            }
+        }
+
+        // Every pair must be covered exactly once
+        final Set<String> uniquePairs = new HashSet<>(pairs);
+        assertThat(uniquePairs.size(), equalTo(pairs.size()));
+        return uniquePairs;
+    }
+
+    private static List<Alarm> createAlarms(String prefix, int numAlarms) {
+        final List<Alarm> alarms = new ArrayList<>();
+        for (int i = 0; i < numAlarms; i++) {
+            alarms.add(ImmutableAlarm.newBuilder().setId(prefix + i).setTime(i).build());
+        }
+        return alarms;
+    }
+}
@@ -29,13 +29,22 @@
 package org.opennms.oce.engine.deeplearning;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.apache.commons.math3.ml.clustering.Cluster;
 import org.junit.Test;
@@ -46,9 +55,14 @@ import org.opennms.oce.driver.test.MockInventory;
 import org.opennms.oce.driver.test.MockInventoryBuilder;
 import org.opennms.oce.driver.test.MockInventoryType;
 import org.opennms.oce.engine.cluster.AlarmInSpaceTime;
+import org.opennms.oce.engine.cluster.CEEdge;
+import org.opennms.oce.engine.cluster.CEVertex;
 import org.opennms.oce.engine.cluster.GraphManager;
 import org.opennms.oce.engine.cluster.SpatialDistanceCalculator;
 
+import edu.uci.ics.jung.algorithms.shortestpath.DijkstraDistance;
+import edu.uci.ics.jung.graph.Graph;
+
 public class TFClustererTest {
 
     // Define our own network instead of using the MockInventory.SAMPLE_NETWORK
@@ -78,7 +92,12 @@ public class TFClustererTest {
 
         // Build our clusterer
         TFModel tfModel = mock(TFModel.class);
-        when(tfModel.isRelated(any())).thenReturn(true);
+        when(tfModel.isRelated(anyList())).thenAnswer(invocation -> {
+            // All of the pairs are related
+            final boolean[] related = new boolean[invocation.<List<?>>getArgument(0).size()];
+            Arrays.fill(related, true);
+            return related;
+        });
         SpatialDistanceCalculator spatialDistanceCalculator = mock(SpatialDistanceCalculator.class);
         Vectorizer vectorizer = new Vectorizer(graphManager, spatialDistanceCalculator);
         TFClusterer tfClusterer = new TFClusterer(tfModel, vectorizer, new DeepLearningEngineConf());
@@ -103,6 +122,178 @@ public class TFClustererTest {
         assertThat(clusters.get(0).getPoints(), hasSize(2));
     }
 
+    /**
+     * Verifies that only the pairs of alarms that include new or
+     * updated alarms are scored, and that relations are carried over.
+     */
+    @Test
+    public void canClusterIncrementally() {
+        GraphManager graphManager = new GraphManager();
+        graphManager.addInventory(network);
+
+        // Relate all of the pairs, and keep track of how many pairs were scored
+        final AtomicInteger numPairsScored = new AtomicInteger();
+        TFModel tfModel = mock(TFModel.class);
+        when(tfModel.isRelated(anyList())).thenAnswer(invocation -> {
+            final boolean[] related = new boolean[invocation.<List<?>>getArgument(0).size()];
+            Arrays.fill(related, true);
+            numPairsScored.addAndGet(related.length);
+            return related;
+        });
+        SpatialDistanceCalculator spatialDistanceCalculator = mock(SpatialDistanceCalculator.class);
+        Vectorizer vectorizer = new Vectorizer(graphManager, spatialDistanceCalculator);
+        TFClusterer tfClusterer = new TFClusterer(tfModel, vectorizer, new DeepLearningEngineConf());
+        tfClusterer.init();
+
+        try {
+            ImmutableAlarm.Builder alarmBuilder = ImmutableAlarm.newBuilder()
+                    .setInventoryObjectId("n1-c1-p1")
+                    .setInventoryObjectType(MockInventoryType.PORT.getType())
+                    .setTime(0);
+            graphManager.addOrUpdateAlarms(Arrays.asList(alarmBuilder.setId("a1").build(), alarmBuilder.setId("a2").build()));
+
+            List<Cluster<AlarmInSpaceTime>> clusters = graphManager.withGraph(tfClusterer::cluster);
+            assertThat(clusters, hasSize(1));
+            assertThat(numPairsScored.getAndSet(0), equalTo(1));
+            assertThat(tfClusterer.getNumRelations(), equalTo(1L));
+
+            // Nothing changed, so no pairs should be scored, but we should get the same clusters
+            clusters = graphManager.withGraph(tfClusterer::cluster);
+            assertThat(clusters, hasSize(1));
+            assertThat(clusters.get(0).getPoints(), hasSize(2));
+            assertThat(numPairsScored.getAndSet(0), equalTo(0));
+
+            // Add a new alarm, only the pairs with the new alarm should be scored
+            graphManager.addOrUpdateAlarm(alarmBuilder.setId("a3").build());
+            clusters = graphManager.withGraph(tfClusterer::cluster);
+            assertThat(clusters, hasSize(1));
+            assertThat(clusters.get(0).getPoints(), hasSize(3));
+            assertThat(numPairsScored.getAndSet(0), equalTo(2));
+            assertThat(tfClusterer.getNumRelations(), equalTo(3L));
+
+            // Update an existing alarm, only the pairs with the updated alarm should be scored
+            graphManager.addOrUpdateAlarm(alarmBuilder.setId("a1").setTime(1).build());
+            graphManager.withGraph(tfClusterer::cluster);
+            assertThat(numPairsScored.getAndSet(0), equalTo(2));
+
+            // Invalidate the vertex, all of the pairs should be scored again
+            final long vertexId = graphManager.withGraph(g -> {
+                return g.getVertices().stream().filter(CEVertex::hasAlarms).findFirst().get().getNumericId();
+            });
+            tfClusterer.invalidate(Collections.singleton(vertexId));
+            graphManager.withGraph(tfClusterer::cluster);
+            assertThat(numPairsScored.getAndSet(0), equalTo(3));
+
+            // Replace the model, the relations found by the previous model should be dropped
+            tfClusterer.setModel(tfModel);
+            assertThat(tfClusterer.getNumRelations(), equalTo(0L));
+            graphManager.withGraph(tfClusterer::cluster);
+            assertThat(numPairsScored.getAndSet(0), equalTo(3));
+
+            // Garbage collect the alarms, the relations should be dropped
+            graphManager.garbageCollectAlarms(Long.MAX_VALUE, 1, 1);
+            clusters = graphManager.withGraph(tfClusterer::cluster);
+            assertThat(clusters, hasSize(0));
+            assertThat(tfClusterer.getNumRelations(), equalTo(0L));
+        } finally {
+            tfClusterer.destroy();
+        }
+    }
+
+    /**
+     * Verifies that the bounded distance search generates the same clusters,
+     * and scores the same pairs, as the search over all of the pairs of vertices.
+     */
+    @Test
+    public void canClusterWithBoundedDistanceSearch() {
+        GraphManager graphManager = new GraphManager();
+        graphManager.addInventory(network);
+
+        // Compute the distances between all of the vertices, using the same weights as the engine
+        final Map<Long, Map<Long, Double>> distances = new HashMap<>();
+        graphManager.withGraph(g -> {
+            final DijkstraDistance<CEVertex, CEEdge> dijkstraDistance = new DijkstraDistance<>(g, CEEdge::getWeight, true);
+            for (CEVertex source : g.getVertices()) {
+                final Map<Long, Double> distancesFromSource = new HashMap<>();
+                dijkstraDistance.getDistanceMap(source).forEach((v, d) -> distancesFromSource.put(v.getNumericId(), d.doubleValue()));
+                distances.put(source.getNumericId(), distancesFromSource);
+            }
+        });
+        SpatialDistanceCalculator spatialDistanceCalculator = (vertexIdA, vertexIdB) ->
+                distances.get(vertexIdA).getOrDefault(vertexIdB, Double.valueOf(Integer.MAX_VALUE));
+
+        // Only the vertices that are at most 2 hops away from one another are within epsilon
+        final DeepLearningEngineConf allPairsConf = new DeepLearningEngineConf();
+        allPairsConf.setEpsilon(2 * InventoryObject.DEFAULT_WEIGHT);
+        final DeepLearningEngineConf boundedConf = new DeepLearningEngineConf();
+        boundedConf.setEpsilon(2 * InventoryObject.DEFAULT_WEIGHT);
+        boundedConf.setDistanceSearch(DeepLearningEngineConf.DistanceSearch.BOUNDED);
+
+        // Relate all of the pairs, and keep track of how many pairs were scored
+        final AtomicInteger numPairsScored = new AtomicInteger();
+        TFModel tfModel = mock(TFModel.class);
+        when(tfModel.isRelated(anyList())).thenAnswer(invocation -> {
+            final boolean[] related = new boolean[invocation.<List<?>>getArgument(0).size()];
+            Arrays.fill(related, true);
+            numPairsScored.addAndGet(related.length);
+            return related;
+        });
+        Vectorizer vectorizer = new Vectorizer(graphManager, spatialDistanceCalculator);
+        TFClusterer allPairsClusterer = new TFClusterer(tfModel, vectorizer, allPairsConf);
+        allPairsClusterer.init();
+        TFClusterer boundedClusterer = new TFClusterer(tfModel, vectorizer, boundedConf);
+        boundedClusterer.init();
+
+        // The vectorizer locks the graph manager from the threads of the clusterers, so cluster the graph outside of the lock
+        final Graph<CEVertex, CEEdge> g = graphManager.withGraph(Function.identity());
+        try {
+            graphManager.addOrUpdateAlarms(Arrays.asList(
+                    createAlarm("a1", "n1-c1-p1", MockInventoryType.PORT),
+                    createAlarm("a2", "n1-c1-p2", MockInventoryType.PORT),
+                    createAlarm("a3", "n1-c2-p1", MockInventoryType.PORT),
+                    createAlarm("a4", "n2-c1-p1", MockInventoryType.PORT),
+                    createAlarm("a5", "n2-c1", MockInventoryType.CARD)));
+
+            List<Cluster<AlarmInSpaceTime>> clusters = allPairsClusterer.cluster(g);
+            final int numPairsScoredWithAllPairs = numPairsScored.getAndSet(0);
+            assertThat(toAlarmIds(clusters), equalTo(toAlarmIds(boundedClusterer.cluster(g))));
+            assertThat(numPairsScored.getAndSet(0), equalTo(numPairsScoredWithAllPairs));
+
+            // a1 & a2 are 2 hops apart, as are a4 & a5, but a3 is 4 hops away from both a1 and a2
+            assertThat(toAlarmIds(clusters), equalTo(new HashSet<>(Arrays.asList(
+                    new HashSet<>(Arrays.asList("a1", "a2")),
+                    new HashSet<>(Arrays.asList("a4", "a5"))))));
+
+            // Add an alarm next to a3, only the pairs with the new alarm should be scored
+            graphManager.addOrUpdateAlarm(createAlarm("a6", "n1-c2", MockInventoryType.CARD));
+            clusters = allPairsClusterer.cluster(g);
+            assertThat(numPairsScored.getAndSet(0), equalTo(1));
+            assertThat(toAlarmIds(clusters), equalTo(toAlarmIds(boundedClusterer.cluster(g))));
+            assertThat(numPairsScored.getAndSet(0), equalTo(1));
+            assertThat(clusters, hasSize(3));
+        } finally {
+            allPairsClusterer.destroy();
+            boundedClusterer.destroy();
+        }
+    }
+
+    private static Alarm createAlarm(String id, String inventoryObjectId, MockInventoryType type) {
+        return ImmutableAlarm.newBuilder()
+                .setId(id)
+                .setInventoryObjectId(inventoryObjectId)
+                .setInventoryObjectType(type.getType())
+                .setTime(0)
+                .build();
+    }
+
+    private static Set<Set<String>> toAlarmIds(List<Cluster<AlarmInSpaceTime>> clusters) {
+        return clusters.stream()
+                .map(c -> c.getPoints().stream()
+                        .map(AlarmInSpaceTime::getAlarmId)
+                        .collect(Collectors.toSet()))
+                .collect(Collectors.toSet());
+    }
+
     @Test(timeout = 180000)
     public void canPerformanceTestClusterer() {
         // Build a graph from the inventory
@@ -29,9 +29,14 @@
 package org.opennms.oce.engine.deeplearning;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasSize;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 import org.tensorflow.Tensor;
@@ -55,8 +60,48 @@ public class TFModelTest {
                 .similarityOfInventoryObjectLabels(1.0)
                 .similarityOfInventoryObjectIds(1.0)
                 .build();
-        List<Tensor<?>> tensors = tfModel.toTensors(inputVector);
-        assertThat(tensors, hasSize(9));
+        try (TensorArena arena = tfModel.newArena()) {
+            List<Tensor<?>> tensors = tfModel.toTensors(inputVector, arena);
+            assertThat(tensors, hasSize(9));
+            assertThat(arena.size(), equalTo(9));
+            assertThat(tfModel.getTensorStats().getNumLiveTensors(), equalTo(9L));
+        }
+        assertThat(tfModel.getTensorStats().getNumLiveTensors(), equalTo(0L));
+        assertThat(tfModel.getTensorStats().getNumLiveBytes(), equalTo(0L));
+    }
+
+    /**
+     * Verifies that all of the tensors allocated when evaluating the model,
+     * including the ones allocated by the session, are released.
+     */
+    @Test
+    public void canReleaseTensors() {
+        final List<InputVector> inputVectors = generateInputVectors(100);
+        final TensorStats tensorStats = tfModel.getTensorStats();
+        for (int i = 0; i < 10; i++) {
+            tfModel.isRelated(inputVectors);
+            assertThat(tensorStats.getNumLiveTensors(), equalTo(0L));
+            assertThat(tensorStats.getNumLiveBytes(), equalTo(0L));
+        }
+        // 9 input tensors and 1 output tensor per call
+        assertThat(tensorStats.getNumTensorsAllocated(), equalTo(100L));
+        assertThat(tensorStats.getNumTensorsReleased(), equalTo(100L));
+        assertThat(tensorStats.getMaxLiveBytes(), greaterThan(0L));
+    }
+
+    /**
+     * Verifies that evaluating vectors in a batch yields the same results
+     * as evaluating these one at a time.
+     */
+    @Test
+    public void canEvaluateVectorsInBatch() {
+        final List<InputVector> inputVectors = generateInputVectors(500);
+        final boolean[] related = tfModel.isRelated(inputVectors);
+        assertThat(related.length, equalTo(inputVectors.size()));
+        for (int i = 0; i < inputVectors.size(); i++) {
+            assertThat(related[i], equalTo(tfModel.isRelated(inputVectors.get(i))));
+        }
+        assertThat(tfModel.isRelated(Collections.emptyList()).length, equalTo(0));
     }
 
     /**
@@ -84,5 +129,32 @@ public class TFModelTest {
         long deltaMs = System.currentTimeMillis() - startMs;
 
         System.out.printf("Took %d ms for %d calls - %.2f ms on average.\n", deltaMs, N, deltaMs / (double)N);
+
+        final List<InputVector> inputVectors = Collections.nCopies(N, inputVector);
+        startMs = System.currentTimeMillis();
+        tfModel.isRelated(inputVectors);
+        deltaMs = System.currentTimeMillis() - startMs;
+
+        System.out.printf("Took %d ms for a batch of %d vectors - %.4f ms on average.\n", deltaMs, N, deltaMs / (double)N);
+    }
+
+    private static List<InputVector> generateInputVectors(int numVectors) {
+        final Random r = new Random(42);
+        final String[] types = new String[]{"a", "b", "Port", "Card", "Node"};
+        final List<InputVector> inputVectors = new ArrayList<>();
+        for (int i = 0; i < numVectors; i++) {
+            inputVectors.add(InputVector.builder()
+                    .typeA(types[r.nextInt(types.length)])
+                    .typeB(types[r.nextInt(types.length)])
+                    .sameInstance(r.nextBoolean())
+                    .sameParent(r.nextBoolean())
+                    .shareAncestors(r.nextBoolean())
+                    .timeDifferenceInSeconds((double) r.nextInt(3600))
+                    .distanceOnGraph((double) r.nextInt(10))
+                    .similarityOfInventoryObjectLabels(r.nextDouble())
+                    .similarityOfInventoryObjectIds(r.nextDouble())
+                    .build());
+        }
+        return inputVectors;
     }
 }
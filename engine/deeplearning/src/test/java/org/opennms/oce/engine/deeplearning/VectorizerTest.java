@@ -33,6 +33,8 @@ import static org.hamcrest.number.IsCloseTo.closeTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Mockito.mock;
 
+import java.util.Collections;
+
 import org.junit.Test;
 import org.opennms.oce.datasource.api.Alarm;
 import org.opennms.oce.datasource.common.ImmutableAlarm;
@@ -79,6 +81,8 @@ public class VectorizerTest {
                 .setId("3")
                 .build();
         CEVertex n2_c1_p2 = graphManager.addOrUpdateAlarm(a3_n2_c1_p2).get();
+        // The ancestors are resolved on the snapshot
+        graphManager.updateSnapshot();
 
         InputVector v = vectorizer.vectorize(new AlarmInSpaceTime(n1_c1_p1, a1_n1_c1_p1), new AlarmInSpaceTime(n1_c2_p1, a2_n1_c2_p1));
         assertThat(v.isSameParent(), equalTo(false));
@@ -94,4 +98,45 @@ public class VectorizerTest {
         assertThat(v.isSameParent(), equalTo(false));
         assertThat(v.isShareAncestor(), equalTo(false));
     }
+
+    @Test
+    public void canCacheFeaturesByVertexPair() {
+        GraphManager graphManager = new GraphManager();
+        graphManager.addInventory(MockInventory.SAMPLE_NETWORK);
+        SpatialDistanceCalculator spatialDistanceCalculator = mock(SpatialDistanceCalculator.class);
+        Vectorizer vectorizer = new Vectorizer(graphManager, spatialDistanceCalculator);
+
+        ImmutableAlarm.Builder n1_c1_p1_builder = ImmutableAlarm.newBuilder()
+                .setInventoryObjectId("n1-c1-p1")
+                .setInventoryObjectType(MockInventoryType.PORT.getType());
+        Alarm a1_n1_c1_p1 = n1_c1_p1_builder.setId("1").setTime(0).build();
+        Alarm a2_n1_c1_p1 = n1_c1_p1_builder.setId("2").setTime(10).build();
+        CEVertex n1_c1_p1 = graphManager.addOrUpdateAlarm(a1_n1_c1_p1).get();
+        graphManager.addOrUpdateAlarm(a2_n1_c1_p1);
+
+        Alarm a3_n1_c1_p2 = ImmutableAlarm.newBuilder()
+                .setInventoryObjectId("n1-c1-p2")
+                .setInventoryObjectType(MockInventoryType.PORT.getType())
+                .setTime(4)
+                .setId("3")
+                .build();
+        CEVertex n1_c1_p2 = graphManager.addOrUpdateAlarm(a3_n1_c1_p2).get();
+        graphManager.updateSnapshot();
+
+        InputVector v = vectorizer.vectorize(new AlarmInSpaceTime(n1_c1_p1, a1_n1_c1_p1), new AlarmInSpaceTime(n1_c1_p2, a3_n1_c1_p2));
+        assertThat(v.isSameParent(), equalTo(true));
+        assertThat(v.getTimeDifferenceInSeconds(), closeTo(4, 0.001));
+        assertThat(vectorizer.getNumCachedVertexPairs(), equalTo(1L));
+
+        // Alarms on the same vertices reuse the cached features, but not the time difference
+        InputVector v2 = vectorizer.vectorize(new AlarmInSpaceTime(n1_c1_p2, a3_n1_c1_p2), new AlarmInSpaceTime(n1_c1_p1, a2_n1_c1_p1));
+        assertThat(v2.isSameParent(), equalTo(true));
+        assertThat(v2.getSimilarityOfInventoryObjectIds(), closeTo(v.getSimilarityOfInventoryObjectIds(), 0.001));
+        assertThat(v2.getTimeDifferenceInSeconds(), closeTo(6, 0.001));
+        assertThat(vectorizer.getNumCachedVertexPairs(), equalTo(1L));
+
+        // Invalidating either one of the vertices clears the entry
+        vectorizer.invalidate(Collections.singleton(n1_c1_p2.getNumericId()));
+        assertThat(vectorizer.getNumCachedVertexPairs(), equalTo(0L));
+    }
 }
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.itest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.opennms.oce.datasource.api.Alarm;
+import org.opennms.oce.datasource.api.InventoryObject;
+import org.opennms.oce.datasource.api.Severity;
+import org.opennms.oce.datasource.api.SituationHandler;
+import org.opennms.oce.driver.test.MockAlarmBuilder;
+import org.opennms.oce.driver.test.MockInventoryBuilder;
+import org.opennms.oce.engine.deeplearning.DeepLearningEngine;
+import org.opennms.oce.engine.deeplearning.DeepLearningEngineConf;
+import org.opennms.oce.engine.deeplearning.TFModel;
+import org.opennms.oce.engine.deeplearning.TensorStats;
+
+/**
+ * Runs the deep learning engine over millions of pairs of alarms and verifies
+ * that the native memory used by the TensorFlow model does not grow.
+ *
+ * This takes close to a minute, so it is run as an integration test.
+ */
+public class DeepLearningEngineSoakIT {
+
+    private static final Path PROC_SELF_STATUS = Paths.get("/proc/self/status");
+
+    private static final int NUM_INTERFACES = 100;
+    private static final int NUM_ALARMS_PER_ROUND = 100;
+    private static final long NUM_PAIRS = 2000000;
+    private static final long NUM_PAIRS_IN_FIRST_HALF = NUM_PAIRS / 2;
+    // Upper bound on the native memory held by the tensors of a single batch
+    private static final long MAX_LIVE_BYTES = 1024L * 1024;
+    // Allowed growth of the resident set over the second half of the run, this covers heap and allocator noise,
+    // whereas leaking the millions of tensors allocated in that half would grow it by hundreds of megabytes
+    private static final long RSS_GROWTH_TOLERANCE = 32L * 1024 * 1024;
+
+    @Test(timeout = 600000)
+    public void canRunWithoutLeakingNativeMemory() throws IOException {
+        // The resident set size is only available on Linux
+        assumeTrue(Files.isReadable(PROC_SELF_STATUS));
+
+        final MockInventoryBuilder inventoryBuilder = new MockInventoryBuilder()
+                .withInventoryObject("Node", "n1");
+        for (int i = 0; i < NUM_INTERFACES; i++) {
+            inventoryBuilder.withInventoryObject("SnmpInterface", "n1-if" + i, "Node", "n1");
+        }
+        final List<InventoryObject> inventory = inventoryBuilder.getInventory();
+
+        final DeepLearningEngine engine = new DeepLearningEngine(null, new DeepLearningEngineConf());
+        engine.registerSituationHandler(new SituationHandler() {});
+        engine.init(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), inventory);
+        try {
+            final TFModel tfModel = (TFModel) engine.getModelManager().getModel();
+            final TensorStats tensorStats = tfModel.getTensorStats();
+            final Random r = new Random(42);
+
+            long now = 1525579974000L;
+            int alarmId = 0;
+            long rssAfterFirstHalf = -1;
+            long numBytesAllocatedAfterFirstHalf = -1;
+            while (tfModel.getNumVectorsEvaluated() < NUM_PAIRS) {
+                // Raise alarms on random interfaces, all of which are within epsilon of one another,
+                // and clear these a minute later so that they are garbage collected before the next round
+                final List<Alarm> clearedAlarms = new ArrayList<>(NUM_ALARMS_PER_ROUND);
+                for (int i = 0; i < NUM_ALARMS_PER_ROUND; i++) {
+                    final List<Alarm> alarmStates = new MockAlarmBuilder()
+                            .withId("a" + alarmId++)
+                            .withInventoryObject("SnmpInterface", "n1-if" + r.nextInt(NUM_INTERFACES))
+                            .withEvent(now + r.nextInt(30) * 1000L, Severity.MAJOR)
+                            .withEvent(now + 60000L, Severity.CLEARED)
+                            .build();
+                    engine.onAlarmCreatedOrUpdated(alarmStates.get(0));
+                    clearedAlarms.add(alarmStates.get(1));
+                }
+                engine.tick(now + 30000L);
+                clearedAlarms.forEach(engine::onAlarmCleared);
+                engine.tick(now + 60000L);
+                now += 600000L;
+
+                // Every tensor must be released by the time the tick completes
+                assertThat(tensorStats.getNumLiveTensors(), equalTo(0L));
+                assertThat(tensorStats.getNumLiveBytes(), equalTo(0L));
+
+                if (rssAfterFirstHalf < 0 && tfModel.getNumVectorsEvaluated() >= NUM_PAIRS_IN_FIRST_HALF) {
+                    rssAfterFirstHalf = getResidentSetSizeInBytes();
+                    numBytesAllocatedAfterFirstHalf = tensorStats.getNumBytesAllocated();
+                }
+            }
+            final long rssGrowth = getResidentSetSizeInBytes() - rssAfterFirstHalf;
+            final long numBytesAllocated = tensorStats.getNumBytesAllocated() - numBytesAllocatedAfterFirstHalf;
+            System.out.printf("Evaluated %d pairs. %s\n", tfModel.getNumVectorsEvaluated(), tensorStats);
+            System.out.printf("Resident set size grew by %d bytes while %d bytes were allocated for tensors in the second half.\n",
+                    rssGrowth, numBytesAllocated);
+
+            assertThat(tfModel.getNumVectorsEvaluated(), greaterThanOrEqualTo(NUM_PAIRS));
+            assertThat(tensorStats.getNumLiveTensors(), equalTo(0L));
+            assertThat(tensorStats.getNumLiveBytes(), equalTo(0L));
+            assertThat(tensorStats.getMaxLiveBytes(), lessThanOrEqualTo(MAX_LIVE_BYTES));
+            // The first half of the run lets the heap and the native allocator settle,
+            // the resident set must stay flat from there on
+            assertThat(rssGrowth, lessThan(RSS_GROWTH_TOLERANCE));
+        } finally {
+            engine.destroy();
+        }
+    }
+
+    private static long getResidentSetSizeInBytes() throws IOException {
+        for (String line : Files.readAllLines(PROC_SELF_STATUS)) {
+            if (line.startsWith("VmRSS:")) {
+                // i.e. VmRSS:	  123456 kB
+                return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024L;
+            }
+        }
+        throw new IllegalStateException("No VmRSS entry in " + PROC_SELF_STATUS);
+    }
+}
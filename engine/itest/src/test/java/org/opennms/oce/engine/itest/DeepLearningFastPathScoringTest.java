@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.itest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.oce.datasource.api.Alarm;
+import org.opennms.oce.datasource.api.InventoryObject;
+import org.opennms.oce.datasource.api.Severity;
+import org.opennms.oce.datasource.api.Situation;
+import org.opennms.oce.datasource.common.ImmutableSituation;
+import org.opennms.oce.driver.test.MockAlarmBuilder;
+import org.opennms.oce.driver.test.MockInventoryBuilder;
+import org.opennms.oce.driver.test.TestDriver;
+import org.opennms.oce.engine.api.Engine;
+import org.opennms.oce.engine.api.EngineFactory;
+import org.opennms.oce.engine.deeplearning.CascadingRelationModel;
+import org.opennms.oce.engine.deeplearning.DeepLearningEngine;
+import org.opennms.oce.engine.deeplearning.DeepLearningEngineConf;
+import org.opennms.oce.engine.deeplearning.DistilledModelTrainer;
+import org.opennms.oce.engine.deeplearning.DistilledRelationModel;
+import org.opennms.oce.engine.deeplearning.InputVector;
+import org.opennms.oce.engine.deeplearning.TFModel;
+import org.opennms.oce.features.score.api.ScoreMetric;
+import org.opennms.oce.features.score.api.ScoreReport;
+import org.opennms.oce.features.score.api.ScoringStrategy;
+import org.opennms.oce.features.score.impl.MatrixScoringStrategy;
+import org.opennms.oce.features.score.impl.PeerScoringStrategy;
+import org.opennms.oce.features.score.impl.SetIntersectionScoringStrategy;
+
+/**
+ * Compares the situations generated by the deep learning engine when using the TensorFlow model
+ * alone, and when using a distilled model as a fast path in front of it.
+ */
+public class DeepLearningFastPathScoringTest {
+
+    // Use the types known to the default model
+    private static final String NODE_TYPE = "Node";
+    private static final String INTERFACE_TYPE = "SnmpInterface";
+
+    private static final int NUM_NODES = 20;
+    private static final int NUM_INTERFACES_PER_NODE = 4;
+    private static final int NUM_INCIDENTS = 20;
+    private static final int NUM_ALARMS_PER_INCIDENT = 3;
+    private static final int NUM_NOISE_ALARMS = 20;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<InventoryObject> inventory = new ArrayList<>();
+    private final List<Alarm> alarms = new ArrayList<>();
+    private final Set<Situation> expectedSituations = new HashSet<>();
+
+    @Test(timeout = 300000)
+    public void canScoreFastPathAgainstTensorFlow() throws IOException {
+        generateScenario(new Random(42));
+
+        // Distill the TensorFlow model
+        final DistilledRelationModel distilledModel;
+        try (TFModel tfModel = new TFModel()) {
+            distilledModel = new DistilledModelTrainer().train(DistilledModelTrainer.label(tfModel, generateInputVectors(20000, new Random(42))));
+        }
+        final File distilledModelFile = temporaryFolder.newFile("distilled-model.json");
+        try (Writer writer = Files.newBufferedWriter(distilledModelFile.toPath())) {
+            distilledModel.write(writer);
+        }
+
+        final DeepLearningEngineConf tfConf = new DeepLearningEngineConf();
+        final Set<Situation> tfSituations = run(tfConf, new AtomicReference<>());
+
+        final DeepLearningEngineConf fastPathConf = new DeepLearningEngineConf();
+        fastPathConf.setFastPathModelPath(distilledModelFile.getAbsolutePath());
+        final AtomicReference<DeepLearningEngine> fastPathEngine = new AtomicReference<>();
+        final Set<Situation> fastPathSituations = run(fastPathConf, fastPathEngine);
+
+        final CascadingRelationModel cascadingModel = (CascadingRelationModel) fastPathEngine.get().getModelManager().getModel();
+        System.out.printf("%d pairs were decided by the distilled model, and %d by the TensorFlow model.\n",
+                cascadingModel.getNumDecidedByFastModel(), cascadingModel.getNumDecidedBySlowModel());
+
+        for (ScoringStrategy scoringStrategy : Arrays.asList(new PeerScoringStrategy(), new SetIntersectionScoringStrategy(), new MatrixScoringStrategy())) {
+            printReport(scoringStrategy, "TensorFlow", scoringStrategy.score(expectedSituations, tfSituations));
+            printReport(scoringStrategy, "Fast path", scoringStrategy.score(expectedSituations, fastPathSituations));
+            printReport(scoringStrategy, "Fast path vs TensorFlow", scoringStrategy.score(tfSituations, fastPathSituations));
+        }
+
+        // Most of the pairs should be decided by the distilled model
+        assertThat(cascadingModel.getNumDecidedByFastModel(), greaterThan(cascadingModel.getNumDecidedBySlowModel()));
+        // The fast path should not do (much) worse than the TensorFlow model alone
+        final PeerScoringStrategy peerScoringStrategy = new PeerScoringStrategy();
+        final ScoreReport tfReport = peerScoringStrategy.score(expectedSituations, tfSituations);
+        final ScoreReport fastPathReport = peerScoringStrategy.score(expectedSituations, fastPathSituations);
+        assertThat(fastPathReport.getScore(), lessThanOrEqualTo(tfReport.getScore() + 0.05 * tfReport.getMaxScore()));
+    }
+
+    private Set<Situation> run(DeepLearningEngineConf conf, AtomicReference<DeepLearningEngine> engineRef) {
+        final EngineFactory engineFactory = new EngineFactory() {
+            @Override
+            public String getName() {
+                return "deeplearning";
+            }
+
+            @Override
+            public Engine createEngine() {
+                // The default model is loaded from the class-path when there is no bundle context
+                final DeepLearningEngine engine = new DeepLearningEngine(null, conf);
+                engineRef.set(engine);
+                return engine;
+            }
+        };
+        final TestDriver driver = TestDriver.builder()
+                .withEngineFactory(engineFactory)
+                .build();
+        return new HashSet<>(driver.run(alarms, inventory));
+    }
+
+    /**
+     * Generates incidents in which an interface triggers a few different alarms in a short period of time,
+     * one hour apart from one another, mixed with alarms on random interfaces that are not related to anything.
+     */
+    private void generateScenario(Random r) {
+        final MockInventoryBuilder inventoryBuilder = new MockInventoryBuilder();
+        for (int n = 0; n < NUM_NODES; n++) {
+            final String node = "n" + n;
+            inventoryBuilder.withInventoryObject(NODE_TYPE, node);
+            for (int i = 0; i < NUM_INTERFACES_PER_NODE; i++) {
+                inventoryBuilder.withInventoryObject(INTERFACE_TYPE, node + "-if" + i, NODE_TYPE, node);
+            }
+        }
+        inventory.addAll(inventoryBuilder.getInventory());
+
+        final long start = 1525579974000L;
+        int alarmId = 0;
+        for (int k = 0; k < NUM_INCIDENTS; k++) {
+            final long incidentStart = start + k * 3600000L;
+            final String snmpInterface = "n" + r.nextInt(NUM_NODES) + "-if" + r.nextInt(NUM_INTERFACES_PER_NODE);
+            final ImmutableSituation.Builder situationBuilder = ImmutableSituation.newBuilder()
+                    .setId("s" + k)
+                    .setCreationTime(incidentStart);
+            for (int i = 0; i < NUM_ALARMS_PER_INCIDENT; i++) {
+                situationBuilder.addAlarm(addAlarm("a" + alarmId++, INTERFACE_TYPE, snmpInterface,
+                        incidentStart + r.nextInt(30) * 1000L));
+            }
+            expectedSituations.add(situationBuilder.build());
+        }
+        for (int k = 0; k < NUM_NOISE_ALARMS; k++) {
+            // Place these half way between incidents, the engine does not generate situations with a single alarm
+            // so these are not part of the expected situations
+            final String snmpInterface = "n" + r.nextInt(NUM_NODES) + "-if" + r.nextInt(NUM_INTERFACES_PER_NODE);
+            addAlarm("a" + alarmId++, INTERFACE_TYPE, snmpInterface, start + r.nextInt(NUM_INCIDENTS) * 3600000L + 1800000L);
+        }
+    }
+
+    private Alarm addAlarm(String id, String type, String inventoryObjectId, long time) {
+        final List<Alarm> alarmEvents = new MockAlarmBuilder()
+                .withId(id)
+                .withInventoryObject(type, inventoryObjectId)
+                .withEvent(time, Severity.MAJOR)
+                .withEvent(time + 300000L, Severity.CLEARED)
+                .build();
+        alarms.addAll(alarmEvents);
+        return alarmEvents.get(alarmEvents.size() - 1);
+    }
+
+    /**
+     * Generates random vectors spanning the range of features found in the scenario.
+     */
+    private static List<InputVector> generateInputVectors(int numVectors, Random r) {
+        final String[] types = new String[]{NODE_TYPE, INTERFACE_TYPE};
+        final List<InputVector> inputVectors = new ArrayList<>(numVectors);
+        for (int i = 0; i < numVectors; i++) {
+            final boolean sameInstance = r.nextInt(4) == 0;
+            final boolean sameParent = sameInstance || r.nextBoolean();
+            inputVectors.add(InputVector.builder()
+                    .typeA(types[r.nextInt(types.length)])
+                    .typeB(types[r.nextInt(types.length)])
+                    .sameInstance(sameInstance)
+                    .sameParent(sameParent)
+                    .shareAncestors(sameParent || r.nextBoolean())
+                    // The vectorizer measures the time difference in milliseconds
+                    .timeDifferenceInSeconds((double) r.nextInt(7200) * 1000L)
+                    .distanceOnGraph((double) r.nextInt(3) * MockInventoryBuilder.PARENT_WEIGHT)
+                    .similarityOfInventoryObjectIds(r.nextDouble())
+                    .similarityOfInventoryObjectLabels(-1d)
+                    .build());
+        }
+        return inputVectors;
+    }
+
+    private static void printReport(ScoringStrategy scoringStrategy, String name, ScoreReport report) {
+        System.out.printf("%s - %s: score: %.2f (max: %.2f)\n", scoringStrategy.getName(), name, report.getScore(), report.getMaxScore());
+        for (ScoreMetric metric : report.getMetrics()) {
+            System.out.printf("\tMetric - Name: %s, Value: %.2f\n", metric.getName(), metric.getValue());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.engine.itest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opennms.oce.datasource.api.Alarm;
+import org.opennms.oce.datasource.api.Severity;
+import org.opennms.oce.driver.main.TickScheduler;
+import org.opennms.oce.driver.test.MockAlarmBuilder;
+import org.opennms.oce.engine.dbscan.DBScanEngine;
+
+/**
+ * Verifies that the ticks triggered by alarm changes are processed by the cluster engines,
+ * even though these happen before the tick resolution has elapsed.
+ */
+public class EarlyTickTest {
+
+    @Test(timeout = 30000)
+    public void canProcessEarlyTicks() throws InterruptedException {
+        final List<Long> ticks = new CopyOnWriteArrayList<>();
+        final DBScanEngine engine = new DBScanEngine() {
+            @Override
+            public synchronized void onTick(long timestampInMillis) {
+                ticks.add(timestampInMillis);
+                super.onTick(timestampInMillis);
+            }
+        };
+        engine.setTickResolutionMs(TimeUnit.HOURS.toMillis(1));
+        engine.init(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+        // Wire the engine as the driver does
+        final TickScheduler tickScheduler = new TickScheduler("test", engine::tick, ts -> engine.tick(ts, true),
+                engine.getTickResolutionMs(), TickScheduler.Mode.FIXED_DELAY, 2);
+        tickScheduler.start();
+        try {
+            // The first tick is scheduled immediately
+            while (ticks.size() < 1) {
+                Thread.sleep(10);
+            }
+
+            final long now = System.currentTimeMillis();
+            for (int i = 0; i < 2; i++) {
+                final Alarm alarm = new MockAlarmBuilder()
+                        .withId("a" + i)
+                        .withInventoryObject("Node", "n1")
+                        .withEvent(now, Severity.MAJOR)
+                        .build()
+                        .get(0);
+                engine.onAlarmCreatedOrUpdated(alarm);
+                tickScheduler.onAlarmChange();
+            }
+
+            // The early tick should reach the engine well before the next scheduled tick
+            while (tickScheduler.getNumTicks() < 2) {
+                Thread.sleep(10);
+            }
+            assertThat(tickScheduler.getNumEarlyTicks(), equalTo(1L));
+            assertThat(ticks.size(), equalTo(2));
+        } finally {
+            tickScheduler.stop();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.deeplearning.shell;
+
+import java.util.function.BiConsumer;
+
+import org.opennms.oce.engine.deeplearning.DeepLearningEngine;
+import org.opennms.oce.features.graph.api.GraphProvider;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Locates the running deep learning engines.
+ *
+ * The driver exposes the running engines as graph providers, so we look these up and keep the deep learning engines.
+ */
+class DeepLearningEngines {
+
+    static boolean withDeepLearningEngines(BundleContext bundleContext, BiConsumer<String, DeepLearningEngine> consumer) {
+        boolean didFindEngine = false;
+        final ServiceReference<?>[] graphProviderRefs;
+        try {
+            graphProviderRefs = bundleContext.getAllServiceReferences(GraphProvider.class.getCanonicalName(), null);
+        } catch (InvalidSyntaxException e) {
+            throw new RuntimeException(e);
+        }
+        if (graphProviderRefs == null) {
+            return false;
+        }
+        for (ServiceReference<?> graphProviderRef : graphProviderRefs) {
+            final Object graphProvider = bundleContext.getService(graphProviderRef);
+            try {
+                if (graphProvider instanceof DeepLearningEngine) {
+                    didFindEngine = true;
+                    consumer.accept((String)graphProviderRef.getProperty("name"), (DeepLearningEngine)graphProvider);
+                }
+            } finally {
+                bundleContext.ungetService(graphProviderRef);
+            }
+        }
+        return didFindEngine;
+    }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.deeplearning.shell;
+
+import java.io.BufferedWriter;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.opennms.oce.engine.deeplearning.DistilledModelTrainer;
+import org.opennms.oce.engine.deeplearning.DistilledRelationModel;
+import org.opennms.oce.engine.deeplearning.InputVector;
+import org.opennms.oce.engine.deeplearning.OutputVector;
+import org.opennms.oce.engine.deeplearning.TFModel;
+
+@Command(scope = "oce", name = "tensorflow-distill", description = "Distill a TensorFlow model into a compact model that can be used as a fast path, " +
+        "using the vectors generated by the tensorflow-vectorize command.")
+@Service
+public class Distill implements Action {
+
+    @Option(name = "--csv-in", description = "CSV file generated by the tensorflow-vectorize command", required = true)
+    private String csvIn;
+
+    @Option(name = "--model-out", description = "Output JSON file for the distilled model", required = true)
+    private String modelOut;
+
+    @Option(name = "--teacher-model", description = "Path to the TensorFlow model to distill, the default model is used if not set")
+    private String teacherModelPath = "";
+
+    @Option(name = "--use-csv-labels", description = "Train on the labels in the CSV file instead of the predictions of the TensorFlow model")
+    private boolean useCsvLabels = false;
+
+    @Option(name = "--epochs", description = "Number of passes over the vectors")
+    private int numEpochs = 30;
+
+    @Override
+    public Object execute() throws Exception {
+        System.out.printf("Reading vectors from: %s\n", csvIn);
+        final List<OutputVector> csvVectors = readVectors();
+        System.out.printf("Read %d vectors.\n", csvVectors.size());
+
+        final List<OutputVector> examples;
+        if (useCsvLabels) {
+            examples = csvVectors;
+        } else {
+            System.out.println("Labeling the vectors with the TensorFlow model...");
+            final List<InputVector> inputVectors = new ArrayList<>(csvVectors.size());
+            for (OutputVector outputVector : csvVectors) {
+                inputVectors.add(outputVector.getInputVector());
+            }
+            try (TFModel tfModel = new TFModel(teacherModelPath)) {
+                examples = DistilledModelTrainer.label(tfModel, inputVectors);
+            }
+        }
+
+        System.out.println("Training...");
+        final DistilledModelTrainer trainer = new DistilledModelTrainer();
+        trainer.setNumEpochs(numEpochs);
+        final DistilledRelationModel model = trainer.train(examples);
+
+        int numAgreements = 0;
+        for (OutputVector example : examples) {
+            if (model.isRelated(example.getInputVector()) == example.areAlarmsRelated()) {
+                numAgreements++;
+            }
+        }
+        System.out.printf("The distilled model agrees with %.2f%% of the labels.\n", 100d * numAgreements / examples.size());
+
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(modelOut))) {
+            model.write(writer);
+        }
+        System.out.printf("Wrote model to: %s\n", modelOut);
+        return null;
+    }
+
+    private List<OutputVector> readVectors() throws Exception {
+        final List<OutputVector> vectors = new ArrayList<>();
+        try (Reader reader = Files.newBufferedReader(Paths.get(csvIn))) {
+            for (CSVRecord record : CSVFormat.DEFAULT.withHeader(Vectorize.getHeader()).withSkipHeaderRecord().parse(reader)) {
+                vectors.add(OutputVector.builder()
+                        .inputVector(InputVector.builder()
+                                .typeA(record.get("type_a"))
+                                .typeB(record.get("type_b"))
+                                .sameInstance("1".equals(record.get("same_instance")))
+                                .sameParent("1".equals(record.get("same_parent")))
+                                .shareAncestors("1".equals(record.get("share_ancestor")))
+                                .timeDifferenceInSeconds(Double.parseDouble(record.get("time_delta_seconds")))
+                                .distanceOnGraph(Double.parseDouble(record.get("distance_on_graph")))
+                                .similarityOfInventoryObjectIds(Double.parseDouble(record.get("io_id_similarity")))
+                                .similarityOfInventoryObjectLabels(Double.parseDouble(record.get("io_label_similarity")))
+                                .build())
+                        .areAlarmsRelated("1".equals(record.get("related")))
+                        .build());
+            }
+        }
+        return vectors;
+    }
+}
@@ -28,21 +28,38 @@
 
 package org.opennms.features.deeplearning.shell;
 
+import java.util.concurrent.ExecutionException;
+
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Argument;
 import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.opennms.oce.engine.deeplearning.ModelManager;
 import org.opennms.oce.engine.deeplearning.TFModel;
+import org.osgi.framework.BundleContext;
 
-@Command(scope = "oce", name = "tensorflow-load-model", description = "Validate that the TensorFlow model at the given path can be loaded.")
+@Command(scope = "oce", name = "tensorflow-load-model", description = "Validate that the TensorFlow model at the given path can be loaded, " +
+        "or load it in the running deep learning engines.")
 @Service
 public class LoadModel implements Action {
 
+    @Reference
+    private BundleContext bundleContext;
+
     @Argument(name="model path", required = true)
     private String modelPath;
 
+    @Option(name = "--swap", description = "Load and warm up the model in the running deep learning engines, and use it from the next tick on")
+    private boolean swap = false;
+
     @Override
     public Object execute() {
+        if (swap) {
+            swapModel();
+            return null;
+        }
         try (TFModel tfModel = new TFModel(modelPath)) {
             System.out.println("Model successfully loaded: " + modelPath);
         } catch (Throwable t) {
@@ -52,4 +69,23 @@ public class LoadModel implements Action {
         return null;
     }
 
+    private void swapModel() {
+        final boolean didFindEngine = DeepLearningEngines.withDeepLearningEngines(bundleContext, (name, engine) -> {
+            final ModelManager modelManager = engine.getModelManager();
+            try {
+                modelManager.loadModel(modelPath).get();
+                System.out.printf("%s: Model successfully loaded from path: %s. It will be used from the next tick on.\n", name, modelPath);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.out.printf("%s: Interrupted while loading model from path: %s\n", name, modelPath);
+            } catch (ExecutionException e) {
+                System.out.printf("%s: Failed to load model from path: %s\n", name, modelPath);
+                e.getCause().printStackTrace();
+            }
+        });
+        if (!didFindEngine) {
+            System.out.println("(No deep learning engines found)");
+        }
+    }
+
 }
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.deeplearning.shell;
+
+import java.util.Date;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.opennms.oce.engine.deeplearning.CascadingRelationModel;
+import org.opennms.oce.engine.deeplearning.ModelManager;
+import org.opennms.oce.engine.deeplearning.RelationModel;
+import org.opennms.oce.engine.deeplearning.TFModel;
+import org.opennms.oce.engine.deeplearning.TensorStats;
+import org.osgi.framework.BundleContext;
+
+@Command(scope = "oce", name = "tensorflow-model-status", description = "Display the models used by the running deep learning engines.")
+@Service
+public class ModelStatus implements Action {
+
+    @Reference
+    private BundleContext bundleContext;
+
+    @Override
+    public Object execute() {
+        final boolean didFindEngine = DeepLearningEngines.withDeepLearningEngines(bundleContext, (name, engine) -> {
+            final ModelManager modelManager = engine.getModelManager();
+            System.out.printf("%s:\n", name);
+            System.out.printf("\tModel path: %s\n", toDisplayPath(modelManager.getModelPath()));
+            System.out.printf("\tLoaded in: %dms, warmed up in: %dms\n", modelManager.getLoadDurationMs(), modelManager.getWarmUpDurationMs());
+            final RelationModel model = modelManager.getModel();
+            if (model instanceof CascadingRelationModel) {
+                final CascadingRelationModel cascadingModel = (CascadingRelationModel) model;
+                System.out.printf("\tPairs decided by the fast path: %d, by the model: %d\n",
+                        cascadingModel.getNumDecidedByFastModel(), cascadingModel.getNumDecidedBySlowModel());
+            }
+            final RelationModel tfModel = model instanceof CascadingRelationModel ? ((CascadingRelationModel) model).getSlowModel() : model;
+            if (tfModel instanceof TFModel) {
+                final TensorStats tensorStats = ((TFModel) tfModel).getTensorStats();
+                System.out.printf("\tTensors allocated: %d, released: %d, live: %d\n", tensorStats.getNumTensorsAllocated(),
+                        tensorStats.getNumTensorsReleased(), tensorStats.getNumLiveTensors());
+                System.out.printf("\tTensor bytes allocated: %d, live: %d, max live: %d\n", tensorStats.getNumBytesAllocated(),
+                        tensorStats.getNumLiveBytes(), tensorStats.getMaxLiveBytes());
+            }
+            final String pendingModelPath = modelManager.getPendingModelPath();
+            if (pendingModelPath != null) {
+                System.out.printf("\tPending model path: %s\n", toDisplayPath(pendingModelPath));
+            }
+            System.out.printf("\tNumber of swaps: %d\n", modelManager.getNumSwaps());
+            if (modelManager.getNumSwaps() > 0) {
+                System.out.printf("\tLast swap: %s\n", new Date(modelManager.getLastSwapTimestamp()));
+            }
+            if (modelManager.getLastFailure() != null) {
+                System.out.printf("\tLast failure: %s\n", modelManager.getLastFailure());
+            }
+        });
+        if (!didFindEngine) {
+            System.out.println("(No deep learning engines found)");
+        }
+        return null;
+    }
+
+    private static String toDisplayPath(String modelPath) {
+        return modelPath == null || modelPath.isEmpty() ? "(default)" : modelPath;
+    }
+}
@@ -208,7 +208,7 @@ public class Vectorize implements Action {
         driver.run(alarms, inventory);
     }
 
-    private static String[] getHeader() {
+    static String[] getHeader() {
         return new String[]{
                 "type_a",
                 "type_b",